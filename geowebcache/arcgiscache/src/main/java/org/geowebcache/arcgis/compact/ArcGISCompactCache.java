@@ -37,8 +37,12 @@ public abstract class ArcGISCompactCache {
 
     protected static final int BUNDLX_MAXIDX = 128;
 
+    protected static final int MAPPED_FILES_CACHE_SIZE = 256;
+
     protected String pathToCacheRoot = "";
 
+    protected final MappedBundleCache mappedFiles = new MappedBundleCache(MAPPED_FILES_CACHE_SIZE);
+
     /**
      * Get Resource object for tile.
      *
@@ -102,14 +106,14 @@ public abstract class ArcGISCompactCache {
     protected ByteBuffer readFromLittleEndianFile(String filePath, long offset, int length) {
         ByteBuffer result = null;
 
-        try (RandomAccessFile file = new RandomAccessFile(filePath, "r")) {
-            file.seek(offset);
-            // pad to multiples of 4 so we can use getInt() and getLong()
-            int padding = 4 - (length % 4);
-            byte data[] = new byte[length + padding];
+        // pad to multiples of 4 so we can use getInt() and getLong()
+        int padding = 4 - (length % 4);
+        byte data[] = new byte[length + padding];
 
-            if (file.read(data, 0, length) != length)
-                throw new IOException("not enough bytes read or reached end of file");
+        try {
+            ByteBuffer mapped = mappedFiles.get(filePath, offset, length);
+            if (mapped != null) mapped.get(data, 0, length);
+            else readFromFile(filePath, offset, data, length);
 
             result = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
         } catch (IOException e) {
@@ -118,4 +122,14 @@ public abstract class ArcGISCompactCache {
 
         return result;
     }
+
+    private void readFromFile(String filePath, long offset, byte[] data, int length)
+            throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filePath, "r")) {
+            file.seek(offset);
+
+            if (file.read(data, 0, length) != length)
+                throw new IOException("not enough bytes read or reached end of file");
+        }
+    }
 }
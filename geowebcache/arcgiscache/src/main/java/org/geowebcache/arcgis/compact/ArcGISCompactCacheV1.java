@@ -61,7 +61,9 @@ public class ArcGISCompactCacheV1 extends ArcGISCompactCache {
 
         if ((entry = indexCache.get(key)) != null) {
             if (entry.size > 0)
-                res = new BundleFileResource(entry.pathToBundleFile, entry.offset, entry.size);
+                res =
+                        new BundleFileResource(
+                                entry.pathToBundleFile, entry.offset, entry.size, mappedFiles);
         } else {
 
             String basePath = buildBundleFilePath(zoom, row, col);
@@ -76,7 +78,10 @@ public class ArcGISCompactCacheV1 extends ArcGISCompactCache {
 
             tileOffset += 4;
 
-            if (tileSize > 0) res = new BundleFileResource(pathToBundleFile, tileOffset, tileSize);
+            if (tileSize > 0)
+                res =
+                        new BundleFileResource(
+                                pathToBundleFile, tileOffset, tileSize, mappedFiles);
 
             entry = new BundlxCache.CacheEntry(pathToBundleFile, tileOffset, tileSize);
 
@@ -63,7 +63,9 @@ public class ArcGISCompactCacheV2 extends ArcGISCompactCache {
 
         if ((entry = indexCache.get(key)) != null) {
             if (entry.size > 0)
-                res = new BundleFileResource(entry.pathToBundleFile, entry.offset, entry.size);
+                res =
+                        new BundleFileResource(
+                                entry.pathToBundleFile, entry.offset, entry.size, mappedFiles);
         } else {
 
             String basePath = buildBundleFilePath(zoom, row, col);
@@ -74,7 +76,9 @@ public class ArcGISCompactCacheV2 extends ArcGISCompactCache {
             entry = createCacheEntry(pathToBundleFile, row, col);
 
             if (entry.size > 0)
-                res = new BundleFileResource(pathToBundleFile, entry.offset, entry.size);
+                res =
+                        new BundleFileResource(
+                                pathToBundleFile, entry.offset, entry.size, mappedFiles);
 
             indexCache.put(key, entry);
         }
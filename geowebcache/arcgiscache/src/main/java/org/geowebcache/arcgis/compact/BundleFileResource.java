@@ -19,6 +19,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
@@ -36,10 +37,27 @@ public class BundleFileResource implements Resource {
 
     private final int tileSize;
 
+    private final MappedBundleCache mappedFiles;
+
     public BundleFileResource(String bundleFilePath, long tileOffset, int tileSize) {
+        this(bundleFilePath, tileOffset, tileSize, null);
+    }
+
+    /**
+     * @param mappedFiles Cache of mapped files the tile is read from, if null the tile is read from
+     *     the file.
+     */
+    public BundleFileResource(
+            String bundleFilePath, long tileOffset, int tileSize, MappedBundleCache mappedFiles) {
         this.bundleFilePath = bundleFilePath;
         this.tileOffset = tileOffset;
         this.tileSize = tileSize;
+        this.mappedFiles = mappedFiles;
+    }
+
+    /** Returns the tile data from the mapped bundle file, or null if it's not mapped. */
+    private ByteBuffer getMappedTile() throws IOException {
+        return mappedFiles == null ? null : mappedFiles.get(bundleFilePath, tileOffset, tileSize);
     }
 
     /** @see org.geowebcache.io.Resource#getSize() */
@@ -50,6 +68,11 @@ public class BundleFileResource implements Resource {
     /** @see org.geowebcache.io.Resource#transferTo(WritableByteChannel) */
     @SuppressWarnings("PMD.EmptyWhileStmt")
     public long transferTo(WritableByteChannel target) throws IOException {
+        ByteBuffer tile = getMappedTile();
+        if (tile != null) {
+            while (tile.hasRemaining()) target.write(tile);
+            return tileSize;
+        }
         try (FileInputStream fin = new FileInputStream(new File(bundleFilePath));
                 FileChannel in = fin.getChannel()) {
             final long size = tileSize;
@@ -71,6 +94,9 @@ public class BundleFileResource implements Resource {
 
     /** @see org.geowebcache.io.Resource#getInputStream() */
     public InputStream getInputStream() throws IOException {
+        ByteBuffer tile = getMappedTile();
+        if (tile != null) return new ByteBufferInputStream(tile);
+
         FileInputStream fis = new FileInputStream(bundleFilePath);
         long skipped = fis.skip(tileOffset);
         if (skipped != tileOffset) {
@@ -102,4 +128,32 @@ public class BundleFileResource implements Resource {
 
         return f.lastModified();
     }
+
+    /** InputStream over the remaining bytes of a buffer. */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int read = Math.min(len, buffer.remaining());
+            buffer.get(b, off, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
 }
@@ -0,0 +1,104 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.arcgis.compact;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Cache of memory mapped .bundle and .bundlx files.
+ *
+ * <p>Reading a tile or an index entry becomes a copy from the mapped file instead of opening,
+ * seeking, reading and closing it. Files are mapped as a whole, so files larger than 2GB can't be
+ * mapped and have to be read the usual way. As for {@link BundlxCache}, the files are assumed not
+ * to change while the cache is in use.
+ */
+public class MappedBundleCache {
+    private static final Log logger = LogFactory.getLog(MappedBundleCache.class);
+
+    private final LoadingCache<String, Optional<ByteBuffer>> mappedFiles;
+
+    /**
+     * Cache of memory mapped files.
+     *
+     * @param maxSize Maximum number of mapped files. If the size of the cache equals maxSize,
+     *     mapping a new file will drop the least recently used mapping from the cache.
+     */
+    public MappedBundleCache(int maxSize) {
+        mappedFiles =
+                CacheBuilder.newBuilder()
+                        .maximumSize(maxSize)
+                        .build(
+                                new CacheLoader<String, Optional<ByteBuffer>>() {
+                                    @Override
+                                    public Optional<ByteBuffer> load(String path)
+                                            throws IOException {
+                                        return map(path);
+                                    }
+                                });
+    }
+
+    /**
+     * Get a part of a mapped file.
+     *
+     * @param path Path to the file.
+     * @param offset Offset of the part.
+     * @param length Length of the part.
+     * @return Read only buffer with the part, positioned at its start. Returns null if the file
+     *     can't be mapped.
+     * @throws IOException if the file can't be read or the part is out of its bounds.
+     */
+    public ByteBuffer get(String path, long offset, int length) throws IOException {
+        Optional<ByteBuffer> mapped;
+        try {
+            mapped = mappedFiles.get(path);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new IOException("Failed to map file " + path, e.getCause());
+        }
+        if (!mapped.isPresent()) return null;
+
+        ByteBuffer buffer = mapped.get().duplicate();
+        if (offset < 0 || length < 0 || offset + length > buffer.capacity())
+            throw new IOException("not enough bytes read or reached end of file");
+
+        // Buffer methods, as ByteBuffer overrides them since Java 9
+        ((Buffer) buffer).position((int) offset).limit((int) offset + length);
+        return buffer.slice();
+    }
+
+    private static Optional<ByteBuffer> map(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                logger.debug("File " + path + " is too large to be mapped");
+                return Optional.empty();
+            }
+            // the mapping stays valid once the channel is closed
+            return Optional.of(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package org.geowebcache.arcgis.compact;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.util.Arrays;
 import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
 import org.geowebcache.io.Resource;
 
 /**
@@ -158,6 +163,25 @@ public class ArcGISCompactCacheTest extends TestCase {
         f.delete();
     }
 
+    public void testBundleFileResourceInputStream() throws Exception {
+        URL url = getClass().getResource("/compactcache/_alllayers/");
+        ArcGISCompactCache cache = new ArcGISCompactCacheV1(url.toURI().getPath());
+
+        Resource resource = cache.getBundleFileResource(5, 12, 7);
+        assertNotNull(resource);
+
+        ByteArrayOutputStream transferred = new ByteArrayOutputStream();
+        resource.transferTo(Channels.newChannel(transferred));
+        assertEquals(6342, transferred.size());
+
+        // the stream is limited to the tile data
+        byte[] read;
+        try (InputStream is = resource.getInputStream()) {
+            read = IOUtils.toByteArray(is);
+        }
+        assertTrue(Arrays.equals(transferred.toByteArray(), read));
+    }
+
     private boolean startsWithJPEGHeader(File f) {
         try (FileInputStream fis = new FileInputStream(f); ) {
 
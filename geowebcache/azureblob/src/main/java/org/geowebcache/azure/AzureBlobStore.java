@@ -17,13 +17,17 @@ package org.geowebcache.azure;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.util.Objects.isNull;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterators;
 import com.microsoft.azure.storage.blob.BlockBlobURL;
 import com.microsoft.azure.storage.blob.DownloadResponse;
+import com.microsoft.azure.storage.blob.ListBlobsOptions;
+import com.microsoft.azure.storage.blob.models.BlobFlatListSegment;
 import com.microsoft.azure.storage.blob.models.BlobGetPropertiesResponse;
 import com.microsoft.azure.storage.blob.models.BlobHTTPHeaders;
 import com.microsoft.azure.storage.blob.models.BlobItem;
+import com.microsoft.azure.storage.blob.models.ContainerListBlobFlatSegmentResponse;
 import com.microsoft.rest.v2.RestException;
 import com.microsoft.rest.v2.util.FlowableUtil;
 import io.reactivex.Flowable;
@@ -56,6 +60,7 @@ import org.geowebcache.storage.StorageException;
 import org.geowebcache.storage.TileObject;
 import org.geowebcache.storage.TileRange;
 import org.geowebcache.storage.TileRangeIterator;
+import org.geowebcache.storage.TileScanVisitor;
 import org.springframework.http.HttpStatus;
 
 public class AzureBlobStore implements BlobStore {
@@ -231,13 +236,18 @@ public class AzureBlobStore implements BlobStore {
                                     keyBuilder.forLocation(
                                             coordsPrefix, tl, tileRange.getMimeType()));
             // split the iteration in parts to avoid memory accumulation
-            Iterator<List<String>> partition =
-                    Iterators.partition(keysIterator, DeleteManager.PAGE_SIZE);
-
-            while (partition.hasNext() && !shutDown) {
-                List<String> locations = partition.next();
-                deleteManager.deleteParallel(locations);
-            }
+            final Iterator<List<String>> partition =
+                    Iterators.partition(keysIterator, DeleteManager.DELETE_BATCH_SIZE);
+            Iterator<List<String>> batches =
+                    new AbstractIterator<List<String>>() {
+                        @Override
+                        protected List<String> computeNext() {
+                            return partition.hasNext() && !shutDown
+                                    ? partition.next()
+                                    : endOfData();
+                        }
+                    };
+            deleteManager.deleteParallel(batches);
 
         } else {
             // if we need to gather info, we'll end up just calling "delete" on each tile
@@ -275,6 +285,63 @@ public class AzureBlobStore implements BlobStore {
         return true;
     }
 
+    /** Lists the tiles of each zoom level of the range, one flat blob listing per zoom level */
+    @Override
+    public boolean scan(TileRange tileRange, TileScanVisitor visitor) throws StorageException {
+        final String coordsPrefix = keyBuilder.coordinatesPrefix(tileRange);
+        for (int z = tileRange.getZoomStart(); z <= tileRange.getZoomStop(); z++) {
+            final String zoomPrefix = coordsPrefix + z + "/";
+            final ListBlobsOptions options =
+                    new ListBlobsOptions()
+                            .withPrefix(zoomPrefix)
+                            .withMaxResults(DeleteManager.PAGE_SIZE);
+            String marker = null;
+            do {
+                if (shutDown) {
+                    throw new StorageException("Blob store shut down while scanning " + zoomPrefix);
+                }
+                ContainerListBlobFlatSegmentResponse response;
+                try {
+                    response =
+                            client.getContainer()
+                                    .listBlobsFlatSegment(marker, options, null)
+                                    .blockingGet();
+                } catch (RestException e) {
+                    throw new StorageException("Failed to list blobs under " + zoomPrefix, e);
+                }
+                BlobFlatListSegment segment = response.body().segment();
+                if (segment != null) {
+                    for (BlobItem item : segment.blobItems()) {
+                        long[] xy = parseColumnAndRow(item.name().substring(zoomPrefix.length()));
+                        if (xy != null && tileRange.contains(xy[0], xy[1], z)) {
+                            visitor.visit(xy[0], xy[1], z, item.properties().contentLength());
+                        }
+                    }
+                }
+                marker = Strings.emptyToNull(response.body().nextMarker());
+            } while (marker != null);
+        }
+        return true;
+    }
+
+    /** Parses {@code <x>/<y>.<extension>}, returns {@code null} if the key isn't a tile one */
+    @Nullable
+    private static long[] parseColumnAndRow(String name) {
+        int slash = name.indexOf('/');
+        int dot = name.lastIndexOf('.');
+        if (slash <= 0 || dot <= slash + 1) {
+            return null;
+        }
+        try {
+            return new long[] {
+                Long.parseLong(name.substring(0, slash)),
+                Long.parseLong(name.substring(slash + 1, dot))
+            };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     @Override
     public boolean get(TileObject obj) throws StorageException {
         final String key = keyBuilder.forTile(obj);
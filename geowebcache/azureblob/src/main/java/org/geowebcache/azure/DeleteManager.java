@@ -17,30 +17,34 @@ package org.geowebcache.azure;
 import static org.geowebcache.azure.AzureBlobStore.log;
 import static org.springframework.http.HttpStatus.NOT_FOUND;
 
+import com.google.common.base.Strings;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.microsoft.azure.storage.blob.ContainerURL;
 import com.microsoft.azure.storage.blob.ListBlobsOptions;
 import com.microsoft.azure.storage.blob.models.BlobFlatListSegment;
+import com.microsoft.azure.storage.blob.models.BlobHierarchyListSegment;
 import com.microsoft.azure.storage.blob.models.BlobItem;
+import com.microsoft.azure.storage.blob.models.BlobPrefix;
 import com.microsoft.azure.storage.blob.models.ContainerListBlobFlatSegmentResponse;
+import com.microsoft.azure.storage.blob.models.ContainerListBlobHierarchySegmentResponse;
 import com.microsoft.rest.v2.RestException;
 import java.io.Closeable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
 import org.geowebcache.GeoWebCacheException;
 import org.geowebcache.locks.LockProvider;
 import org.geowebcache.locks.LockProvider.Lock;
+import org.geowebcache.storage.ParallelBulkDelete;
 import org.geowebcache.storage.StorageException;
 import org.springframework.http.HttpStatus;
 
@@ -53,7 +57,8 @@ import org.springframework.http.HttpStatus;
  * either, so tiles have to be enumerated one by one and a delete issued on each one. This calls for
  * a parallel execution, and requires avoiding accumulation of references to all tiles that need
  * removing in memory, as they could be millions or more, hence code that tries to run over the
- * tiles in pages
+ * tiles in pages. Prefixes are walked one "/" separated level at a time by {@link
+ * ParallelBulkDelete}, so that several zoom levels and tile columns are listed at once.
  */
 class DeleteManager implements Closeable {
     /**
@@ -63,11 +68,20 @@ class DeleteManager implements Closeable {
      */
     static final int PAGE_SIZE = 1000;
 
+    /**
+     * Number of blobs deleted one after the other by a single delete task, small enough to spread
+     * the deletes of a page over all the delete threads
+     */
+    static final int DELETE_BATCH_SIZE = 10;
+
     private final TMSKeyBuilder keyBuilder;
     private final AzureClient client;
     private final LockProvider locks;
-    private final int concurrency;
+    /** Runs the individual list and delete requests, sized to the connection pool */
     private ExecutorService deleteExecutor;
+    /** Runs the bulk deletes, each one waiting for its requests to complete on deleteExecutor */
+    private ExecutorService bulkDeleteExecutor;
+    private ParallelBulkDelete bulkDelete;
     private Map<String, Long> pendingDeletesKeyTime = new ConcurrentHashMap<>();
 
     public DeleteManager(
@@ -75,9 +89,22 @@ class DeleteManager implements Closeable {
         this.keyBuilder = keyBuilder;
         this.client = client;
         this.locks = locks;
-        this.concurrency = maxConnections;
         this.deleteExecutor =
                 createDeleteExecutorService(client.getContainerName(), maxConnections);
+        this.bulkDeleteExecutor = createBulkDeleteExecutorService(client.getContainerName());
+        this.bulkDelete = new ParallelBulkDelete(deleteExecutor, maxConnections);
+    }
+
+    private static ExecutorService createBulkDeleteExecutorService(String containerName) {
+        ThreadFactory tf =
+                new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat(
+                                "GWC AzureBlobStore bulk delete task-%d. Container: "
+                                        + containerName)
+                        .setPriority(Thread.MIN_PRIORITY)
+                        .build();
+        return Executors.newCachedThreadPool(tf);
     }
 
     private static ExecutorService createDeleteExecutorService(
@@ -118,14 +145,16 @@ class DeleteManager implements Closeable {
     }
 
     /**
-     * Executes the removal of the specified keys in a parallel fashion, returning the number of
-     * removed keys
+     * Executes the removal of the specified batches of keys in a parallel fashion, returning the
+     * number of removed keys
      */
-    public Long deleteParallel(List<String> keys) throws StorageException {
+    public long deleteParallel(Iterator<List<String>> keys) throws StorageException {
         try {
-            return new KeysBulkDelete(keys).call();
-        } catch (Exception e) {
-            throw new StorageException("Failed to submit parallel keys execution", e);
+            return bulkDelete.deleteKeys(
+                    keys, this::deleteBlobs, "'" + client.getContainerName() + "' keys");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while deleting keys", e);
         }
     }
 
@@ -167,14 +196,22 @@ class DeleteManager implements Closeable {
 
         try {
             Properties deletes = client.getProperties(pendingDeletesKey);
-            for (Map.Entry<Object, Object> e : deletes.entrySet()) {
+            boolean cleared = false;
+            for (Map.Entry<Object, Object> e : new ArrayList<>(deletes.entrySet())) {
                 final String prefix = e.getKey().toString();
                 final long timestamp = Long.parseLong(e.getValue().toString());
                 log.info(
                         String.format(
                                 "Restarting pending bulk delete on '%s/%s':%d",
                                 client.getContainerName(), prefix, timestamp));
-                asyncDelete(prefix, timestamp);
+                if (!asyncDelete(prefix, timestamp)) {
+                    // finished before the marker could be cleared, don't retry it on every start
+                    deletes.remove(prefix);
+                    cleared = true;
+                }
+            }
+            if (cleared) {
+                client.putProperties(pendingDeletesKey, deletes);
             }
         } finally {
             try {
@@ -198,7 +235,7 @@ class DeleteManager implements Closeable {
         }
 
         PrefixTimeBulkDelete task = new PrefixTimeBulkDelete(prefix, timestamp);
-        deleteExecutor.submit(task);
+        bulkDeleteExecutor.submit(task);
         pendingDeletesKeyTime.put(prefix, timestamp);
 
         return true;
@@ -238,9 +275,78 @@ class DeleteManager implements Closeable {
 
     @Override
     public void close() {
+        bulkDeleteExecutor.shutdownNow();
         deleteExecutor.shutdownNow();
     }
 
+    /**
+     * Lists a level of the key hierarchy, or all the blobs under the prefix if {@code flat},
+     * skipping blobs newer than {@code timestamp}
+     */
+    private ParallelBulkDelete.Page listBlobs(
+            String prefix, String marker, boolean flat, long timestamp) {
+        ListBlobsOptions options =
+                new ListBlobsOptions().withPrefix(prefix).withMaxResults(PAGE_SIZE);
+        List<BlobItem> items;
+        List<String> prefixes = new ArrayList<>();
+        String nextMarker;
+        if (flat) {
+            ContainerListBlobFlatSegmentResponse response =
+                    client.getContainer().listBlobsFlatSegment(marker, options, null).blockingGet();
+            BlobFlatListSegment segment = response.body().segment();
+            items = segment == null ? Collections.emptyList() : segment.blobItems();
+            nextMarker = response.body().nextMarker();
+        } else {
+            ContainerListBlobHierarchySegmentResponse response =
+                    client.getContainer()
+                            .listBlobsHierarchySegment(marker, "/", options, null)
+                            .blockingGet();
+            BlobHierarchyListSegment segment = response.body().segment();
+            items = segment == null ? Collections.emptyList() : segment.blobItems();
+            if (segment != null) {
+                for (BlobPrefix blobPrefix : segment.blobPrefixes()) {
+                    prefixes.add(blobPrefix.name());
+                }
+            }
+            nextMarker = response.body().nextMarker();
+        }
+        List<String> keys = new ArrayList<>();
+        for (BlobItem item : items) {
+            long lastModified = item.properties().lastModified().toEpochSecond() * 1000;
+            if (timestamp >= lastModified) {
+                keys.add(item.name());
+            }
+        }
+        return new ParallelBulkDelete.Page(keys, prefixes, Strings.emptyToNull(nextMarker));
+    }
+
+    /** Deletes the blobs one by one, the Azure API has no bulk delete */
+    private void deleteBlobs(List<String> keys) {
+        ContainerURL container = client.getContainer();
+        for (String key : keys) {
+            deleteBlob(container, key);
+        }
+    }
+
+    private void deleteBlob(ContainerURL container, String key) {
+        try {
+            int status = container.createBlobURL(key).delete().blockingGet().statusCode();
+            if (status != NOT_FOUND.value() && !HttpStatus.valueOf(status).is2xxSuccessful()) {
+                throw new RuntimeException(
+                        "Deletion failed with status " + status + " on resource " + key);
+            }
+        } catch (RestException e) {
+            if (e.response().statusCode() != NOT_FOUND.value()) {
+                throw new RuntimeException(
+                        "Deletion failed with status "
+                                + e.response().statusCode()
+                                + " on resource "
+                                + key,
+                        e);
+            }
+        }
+    }
+
     public class PrefixTimeBulkDelete implements Callable<Long> {
         private final String prefix;
         private final long timestamp;
@@ -254,38 +360,18 @@ class DeleteManager implements Closeable {
         public Long call() throws Exception {
             long count = 0L;
             try {
-                checkInterrupted();
                 log.info(
                         String.format(
                                 "Running bulk delete on '%s/%s':%d",
                                 client.getContainerName(), prefix, timestamp));
 
-                ContainerURL container = client.getContainer();
-
-                int jobPageSize = Math.max(concurrency, PAGE_SIZE);
-                ListBlobsOptions options =
-                        new ListBlobsOptions().withPrefix(prefix).withMaxResults(jobPageSize);
-                ContainerListBlobFlatSegmentResponse response =
-                        container.listBlobsFlatSegment(null, options, null).blockingGet();
-
-                Predicate<BlobItem> filter =
-                        blobItem -> {
-                            long lastModified =
-                                    blobItem.properties().lastModified().toEpochSecond() * 1000;
-                            return timestamp >= lastModified;
-                        };
-
-                while (response.body().segment() != null) {
-                    checkInterrupted();
-                    deleteItems(container, response.body().segment(), filter);
-                    String marker = response.body().nextMarker();
-                    if (marker != null) {
-                        response =
-                                container.listBlobsFlatSegment(marker, options, null).blockingGet();
-                    } else {
-                        break;
-                    }
-                }
+                count =
+                        bulkDelete.deletePrefix(
+                                prefix,
+                                (p, marker, flat) -> listBlobs(p, marker, flat, timestamp),
+                                DeleteManager.this::deleteBlobs,
+                                DELETE_BATCH_SIZE,
+                                String.format("'%s/%s'", client.getContainerName(), prefix));
             } catch (InterruptedException | IllegalStateException e) {
                 log.info(
                         String.format(
@@ -309,135 +395,5 @@ class DeleteManager implements Closeable {
             clearPendingBulkDelete(prefix, timestamp);
             return count;
         }
-
-        private long deleteItems(
-                ContainerURL container, BlobFlatListSegment segment, Predicate<BlobItem> filter)
-                throws ExecutionException, InterruptedException {
-            List<Future<Object>> collect =
-                    segment.blobItems()
-                            .stream()
-                            .filter(item -> filter.test(item))
-                            .map(
-                                    item ->
-                                            deleteExecutor.submit(
-                                                    () -> {
-                                                        deleteItem(container, item);
-                                                        return null;
-                                                    }))
-                            .collect(Collectors.toList());
-
-            for (Future<Object> f : collect) {
-                f.get();
-            }
-            return collect.size();
-        }
-
-        private void deleteItem(ContainerURL container, BlobItem item) {
-            String key = item.name();
-            try {
-
-                int status = container.createBlobURL(key).delete().blockingGet().statusCode();
-                if (status != NOT_FOUND.value() && !HttpStatus.valueOf(status).is2xxSuccessful()) {
-                    throw new RuntimeException(
-                            "Deletion failed with status " + status + " on resource " + key);
-                }
-            } catch (RestException e) {
-                if (e.response().statusCode() != NOT_FOUND.value()) {
-                    throw new RuntimeException(
-                            "Deletion failed with status "
-                                    + e.response().statusCode()
-                                    + " on resource "
-                                    + key,
-                            e);
-                }
-            }
-        }
-    }
-
-    public class KeysBulkDelete implements Callable<Long> {
-
-        private final List<String> keys;
-
-        public KeysBulkDelete(List<String> keys) {
-            this.keys = keys;
-        }
-
-        @Override
-        public Long call() throws Exception {
-            long count = 0L;
-            try {
-                checkInterrupted();
-                if (log.isTraceEnabled()) {
-                    log.trace(
-                            String.format(
-                                    "Running delete delete on list of items on '%s':%s ... (only the first 100 items listed)",
-                                    client.getContainerName(),
-                                    keys.subList(0, Math.min(keys.size(), 100))));
-                }
-
-                ContainerURL container = client.getContainer();
-
-                for (int i = 0; i < keys.size(); i += PAGE_SIZE) {
-                    deleteItems(container, keys.subList(i, Math.min(i + PAGE_SIZE, keys.size())));
-                }
-            } catch (InterruptedException | IllegalStateException e) {
-                log.info("Azure bulk delete aborted", e);
-                throw e;
-            } catch (Exception e) {
-                log.warn("Unknown error performing bulk Azure delete", e);
-                throw e;
-            }
-
-            log.info(
-                    String.format(
-                            "Finished bulk delete on %s, %d objects deleted",
-                            client.getContainerName(), count));
-            return count;
-        }
-
-        private long deleteItems(ContainerURL container, List<String> itemNames)
-                throws ExecutionException, InterruptedException {
-            List<Future<Object>> collect =
-                    itemNames
-                            .stream()
-                            .map(
-                                    item ->
-                                            deleteExecutor.submit(
-                                                    () -> {
-                                                        return deleteItem(container, item);
-                                                    }))
-                            .collect(Collectors.toList());
-
-            for (Future<Object> f : collect) {
-                f.get();
-            }
-            return collect.size();
-        }
-
-        private Object deleteItem(ContainerURL container, String item) {
-            try {
-                int status = container.createBlobURL(item).delete().blockingGet().statusCode();
-                if (status != NOT_FOUND.value() && !HttpStatus.valueOf(status).is2xxSuccessful()) {
-                    throw new RuntimeException(
-                            "Deletion failed with status " + status + " on resource " + item);
-                }
-            } catch (RestException e) {
-                if (e.response().statusCode() != NOT_FOUND.value()) {
-                    throw new RuntimeException(
-                            "Deletion failed with status "
-                                    + e.response().statusCode()
-                                    + " on resource "
-                                    + item,
-                            e);
-                }
-            }
-            return null;
-        }
-    }
-
-    void checkInterrupted() throws InterruptedException {
-        if (Thread.interrupted()) {
-            throw new InterruptedException();
-        }
     }
 }
@@ -0,0 +1,111 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.config;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import org.geowebcache.layer.TileLayerDispatcher;
+import org.geowebcache.locks.LockProvider;
+import org.geowebcache.storage.BlobStore;
+import org.geowebcache.storage.StorageException;
+import org.geowebcache.storage.blobstore.bundle.BundleBlobStore;
+
+/**
+ * Configuration and factory for {@link BundleBlobStore}.
+ *
+ * @see BlobStoreInfo
+ */
+public class BundleBlobStoreInfo extends BlobStoreInfo {
+
+    private static final long serialVersionUID = 3167592045193418432L;
+
+    private String baseDirectory;
+
+    public BundleBlobStoreInfo() {
+        super();
+    }
+
+    public BundleBlobStoreInfo(String id) {
+        super(id);
+    }
+
+    /**
+     * Get the base directory for persisting tile bundles
+     *
+     * @return The file system path to the base directory
+     */
+    public String getBaseDirectory() {
+        return baseDirectory;
+    }
+
+    /**
+     * Set the base directory for persisting tile bundles
+     *
+     * @param baseDirectory The file system path to the base directory
+     */
+    public void setBaseDirectory(String baseDirectory) {
+        this.baseDirectory = baseDirectory;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder("BundleBlobStore[id:")
+                .append(getName())
+                .append(", enabled:")
+                .append(isEnabled())
+                .append(", baseDirectory:")
+                .append(baseDirectory)
+                .append(']')
+                .toString();
+    }
+
+    /** @see BlobStoreInfo#createInstance(TileLayerDispatcher, LockProvider) */
+    @Override
+    public BlobStore createInstance(TileLayerDispatcher layers, LockProvider lockProvider)
+            throws StorageException {
+        checkState(getName() != null, "id not set");
+        checkState(
+                isEnabled(),
+                "Can't call BundleBlobStoreInfo.createInstance() is blob store is not enabled");
+        checkState(baseDirectory != null, "baseDirectory not provided");
+        return new BundleBlobStore(baseDirectory);
+    }
+
+    /** @see BlobStoreInfo#getLocation() */
+    @Override
+    public String getLocation() {
+        return getBaseDirectory();
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = super.hashCode();
+        result = prime * result + ((baseDirectory == null) ? 0 : baseDirectory.hashCode());
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!super.equals(obj)) return false;
+        if (getClass() != obj.getClass()) return false;
+        BundleBlobStoreInfo other = (BundleBlobStoreInfo) obj;
+        if (baseDirectory == null) {
+            if (other.baseDirectory != null) return false;
+        } else if (!baseDirectory.equals(other.baseDirectory)) return false;
+        return true;
+    }
+}
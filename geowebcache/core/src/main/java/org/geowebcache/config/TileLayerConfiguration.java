@@ -121,4 +121,17 @@ public interface TileLayerConfiguration extends BaseConfiguration {
 
     /** Set the GridSetBroker */
     void setGridSetBroker(GridSetBroker broker);
+
+    /**
+     * Adds a listener to be notified whenever the layers of this configuration change.
+     *
+     * @return {@code true} if the configuration will notify the listener, {@code false} if it does
+     *     not support change notifications, in which case callers must not cache its layers.
+     */
+    default boolean addLayerConfigurationListener(TileLayerConfigurationListener listener) {
+        return false;
+    }
+
+    /** Removes a listener added with {@link #addLayerConfigurationListener}, if it is present. */
+    default void removeLayerConfigurationListener(TileLayerConfigurationListener listener) {}
 }
@@ -0,0 +1,31 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.config;
+
+/**
+ * Indicates a class should listen to {@link TileLayerConfiguration} layer change events.
+ * Implementations of this class are responsible for registering themselves via {@link
+ * TileLayerConfiguration#addLayerConfigurationListener(TileLayerConfigurationListener)}
+ */
+public interface TileLayerConfigurationListener {
+
+    /**
+     * Called after layers have been added to, removed from, modified or renamed in the
+     * configuration, or after the configuration has been reloaded.
+     *
+     * @param configuration the configuration whose layers changed
+     */
+    void handleLayersChanged(TileLayerConfiguration configuration);
+}
@@ -127,6 +127,9 @@ public class XMLConfiguration
     private ListenerCollection<BlobStoreConfigurationListener> blobStoreListeners =
             new ListenerCollection<>();
 
+    private ListenerCollection<TileLayerConfigurationListener> layerListeners =
+            new ListenerCollection<>();
+
     /**
      * Base Constructor with custom ConfiguratioNResourceProvider
      *
@@ -390,6 +393,7 @@ public class XMLConfiguration
 
         xs.alias("blobStores", new ArrayList<BlobStoreInfo>().getClass());
         xs.alias("FileBlobStore", FileBlobStoreInfo.class);
+        xs.alias("BundleBlobStore", BundleBlobStoreInfo.class);
         xs.aliasAttribute(BlobStoreInfo.class, "_default", "default");
         // Alias added to retain XML backwards-compatibility.
         // TODO: Would be nice to be able to use name for consistency
@@ -853,6 +857,27 @@ public class XMLConfiguration
             buff.put(layer.getName(), layer);
         }
         this.layers = buff;
+        notifyLayersChanged();
+    }
+
+    private void notifyLayersChanged() {
+        try {
+            layerListeners.safeForEach(listener -> listener.handleLayersChanged(this));
+        } catch (GeoWebCacheException | IOException e) {
+            // handleLayersChanged does not throw checked exceptions
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean addLayerConfigurationListener(TileLayerConfigurationListener listener) {
+        layerListeners.add(listener);
+        return true;
+    }
+
+    @Override
+    public void removeLayerConfigurationListener(TileLayerConfigurationListener listener) {
+        layerListeners.remove(listener);
     }
 
     private void loadGridSets() {
@@ -1497,5 +1522,6 @@ public class XMLConfiguration
         this.gridSets = null;
         this.layers = null;
         this.gwcConfig = null;
+        notifyLayersChanged();
     }
 }
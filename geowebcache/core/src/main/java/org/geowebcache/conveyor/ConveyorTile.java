@@ -16,6 +16,7 @@ package org.geowebcache.conveyor;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.logging.Log;
@@ -23,6 +24,7 @@ import org.apache.commons.logging.LogFactory;
 import org.geowebcache.GeoWebCacheException;
 import org.geowebcache.grid.GridSubset;
 import org.geowebcache.io.Resource;
+import org.geowebcache.layer.MetaTileSavePipeline;
 import org.geowebcache.layer.TileLayer;
 import org.geowebcache.layer.TileResponseReceiver;
 import org.geowebcache.mime.MimeType;
@@ -59,6 +61,10 @@ public class ConveyorTile extends Conveyor implements TileResponseReceiver {
 
     private boolean isMetaTileCacheOnly;
 
+    private MetaTileSavePipeline savePipeline;
+
+    private CompletableFuture<Void> siblingsSaved;
+
     public ConveyorTile(
             StorageBroker sb,
             String layerId,
@@ -275,4 +281,30 @@ public class ConveyorTile extends Conveyor implements TileResponseReceiver {
     public boolean isMetaTileCacheOnly() {
         return isMetaTileCacheOnly;
     }
+
+    /**
+     * Overrides the layer's save pipeline for this tile, used by seeding to encode on a pool of its
+     * own
+     */
+    public void setSavePipeline(MetaTileSavePipeline savePipeline) {
+        this.savePipeline = savePipeline;
+    }
+
+    /** @return the save pipeline for this tile, or {@code null} to use the layer's one */
+    public MetaTileSavePipeline getSavePipeline() {
+        return savePipeline;
+    }
+
+    /** Sets the pending save of the other tiles of the meta tile this tile was rendered with */
+    public void setSiblingsSaved(CompletableFuture<Void> siblingsSaved) {
+        this.siblingsSaved = siblingsSaved;
+    }
+
+    /**
+     * @return a future completed once the other tiles of the meta tile are saved, exceptionally if
+     *     any of them could not be, or {@code null} if they were saved along with this tile
+     */
+    public CompletableFuture<Void> getSiblingsSaved() {
+        return siblingsSaved;
+    }
 }
@@ -0,0 +1,110 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Read only {@link Resource} backed by a region of a {@link ByteBuffer}, usually a direct one. The
+ * contents are written to channels without being copied on the Java heap.
+ */
+public class ByteBufferResource implements Resource {
+
+    private final ByteBuffer buffer;
+
+    private final long lastModified;
+
+    /**
+     * @param buffer the contents, from its position to its limit. The buffer is duplicated, so its
+     *     position and limit can be changed afterwards, but its contents must not.
+     * @param lastModified the last modification time of the contents
+     */
+    public ByteBufferResource(ByteBuffer buffer, long lastModified) {
+        this.buffer = buffer.slice().asReadOnlyBuffer();
+        this.lastModified = lastModified;
+    }
+
+    /** @see org.geowebcache.io.Resource#getSize() */
+    public long getSize() {
+        return buffer.capacity();
+    }
+
+    /** @see org.geowebcache.io.Resource#transferTo(java.nio.channels.WritableByteChannel) */
+    public long transferTo(WritableByteChannel channel) throws IOException {
+        // each call gets its own position, so concurrent transfers don't interfere
+        ByteBuffer source = buffer.duplicate();
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+        return buffer.capacity();
+    }
+
+    /** Not supported, the resource is read only */
+    public long transferFrom(ReadableByteChannel channel) throws IOException {
+        throw new UnsupportedOperationException("ByteBufferResource is read only");
+    }
+
+    /** @see org.geowebcache.io.Resource#getInputStream() */
+    public InputStream getInputStream() throws IOException {
+        final ByteBuffer source = buffer.duplicate();
+        return new InputStream() {
+
+            @Override
+            public int read() throws IOException {
+                return source.hasRemaining() ? source.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!source.hasRemaining()) {
+                    return -1;
+                }
+                int read = Math.min(len, source.remaining());
+                source.get(b, off, read);
+                return read;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                int skipped = (int) Math.max(0, Math.min(n, source.remaining()));
+                source.position(source.position() + skipped);
+                return skipped;
+            }
+
+            @Override
+            public int available() throws IOException {
+                return source.remaining();
+            }
+        };
+    }
+
+    /** Not supported, the resource is read only */
+    public OutputStream getOutputStream() throws IOException {
+        throw new UnsupportedOperationException("ByteBufferResource is read only");
+    }
+
+    /** @see org.geowebcache.io.Resource#getLastModified() */
+    public long getLastModified() {
+        return lastModified;
+    }
+}
@@ -74,6 +74,9 @@ public class MetaTile implements TileResponseReceiver {
     // buffer for storing the metatile, if it is an image
     protected RenderedImage metaTileImage = null;
 
+    // the metatile decoded once into a single raster, tiles are sliced from it without copies
+    private BufferedImage metaTileRaster;
+
     protected int[] gutter = new int[4]; // L,B,R,T in pixels
 
     protected final Rectangle[] tiles;
@@ -265,8 +268,9 @@ public class MetaTile implements TileResponseReceiver {
         }
     }
 
-    public void setImage(RenderedImage metaTiledImage) {
+    public synchronized void setImage(RenderedImage metaTiledImage) {
         this.metaTileImage = metaTiledImage;
+        this.metaTileRaster = null;
     }
 
     /**
@@ -295,6 +299,9 @@ public class MetaTile implements TileResponseReceiver {
     /**
      * Extracts a single tile from the metatile.
      *
+     * <p>Unless native JAI can crop it on the fly, the meta tile is turned into a {@link
+     * BufferedImage} once, and the tiles are views of its raster sharing the same pixel buffer.
+     *
      * @param minX left pixel index to crop the meta tile at
      * @param minY top pixel index to crop the meta tile at
      * @param tileWidth width of the tile
@@ -304,31 +311,48 @@ public class MetaTile implements TileResponseReceiver {
     public RenderedImage createTile(
             final int minX, final int minY, final int tileWidth, final int tileHeight) {
 
-        // optimize if we get a bufferedimage
-        if (metaTileImage instanceof BufferedImage) {
-            BufferedImage subimage =
-                    ((BufferedImage) metaTileImage).getSubimage(minX, minY, tileWidth, tileHeight);
+        // optimize if we get a bufferedimage, or can build one for all the tiles
+        BufferedImage raster = getMetaTileRaster();
+        if (raster != null) {
+            BufferedImage subimage = raster.getSubimage(minX, minY, tileWidth, tileHeight);
             return new BufferedImageAdapter(subimage);
         }
 
-        // do a crop, and then turn it into a buffered image so that we can release
-        // the image chain
-        PlanarImage cropped =
-                CropDescriptor.create(
-                        metaTileImage,
-                        Float.valueOf(minX),
-                        Float.valueOf(minY),
-                        Float.valueOf(tileWidth),
-                        Float.valueOf(tileHeight),
-                        NO_CACHE);
-        if (nativeAccelAvailable()) {
-            log.trace("created cropped tile");
-            return cropped;
+        // do a crop, native accel will compute the tile straight from the source
+        log.trace("created cropped tile");
+        return CropDescriptor.create(
+                metaTileImage,
+                Float.valueOf(minX),
+                Float.valueOf(minY),
+                Float.valueOf(tileWidth),
+                Float.valueOf(tileHeight),
+                NO_CACHE);
+    }
+
+    /**
+     * Returns the meta tile as a {@link BufferedImage}, rendering it the first time if needed.
+     * Returns null if the meta tile is better cropped with native JAI.
+     */
+    private synchronized BufferedImage getMetaTileRaster() {
+        if (metaTileRaster == null) {
+            if (metaTileImage instanceof BufferedImage) {
+                metaTileRaster = (BufferedImage) metaTileImage;
+            } else if (metaTileImage != null && !nativeAccelAvailable()) {
+                log.trace("native accel not available, rendering the meta tile once");
+                PlanarImage planar = PlanarImage.wrapRenderedImage(metaTileImage);
+                metaTileRaster = planar.getAsBufferedImage();
+                if (planar != metaTileImage) {
+                    // only a wrapper around the meta tile, which is disposed later
+                    planar.dispose();
+                }
+            }
         }
-        log.trace("native accel not available, returning buffered image");
-        BufferedImage tile = cropped.getAsBufferedImage();
-        disposePlanarImageChain(cropped, new HashSet<PlanarImage>());
-        return tile;
+        return metaTileRaster;
+    }
+
+    /** Returns true if the tile shares the pixels of the meta tile, so needs no disposal */
+    private synchronized boolean sharesMetaTileRaster(RenderedImage tile) {
+        return metaTileRaster != null && tile instanceof BufferedImageAdapter;
     }
 
     protected boolean nativeAccelAvailable() {
@@ -354,7 +378,9 @@ public class MetaTile implements TileResponseReceiver {
         Rectangle tileRegion = tiles[tileIdx];
         RenderedImage tile =
                 createTile(tileRegion.x, tileRegion.y, tileRegion.width, tileRegion.height);
-        disposeLater(tile);
+        if (!sharesMetaTileRaster(tile)) {
+            disposeLater(tile);
+        }
 
         // TODO should we recycle the writers ?
         // GR: it'd be only a 2% perf gain according to profile
@@ -378,7 +404,7 @@ public class MetaTile implements TileResponseReceiver {
         return true;
     }
 
-    protected void disposeLater(RenderedImage tile) {
+    protected synchronized void disposeLater(RenderedImage tile) {
         if (disposableImages == null) {
             disposableImages = new ArrayList<RenderedImage>(tiles.length);
         }
@@ -470,12 +496,16 @@ public class MetaTile implements TileResponseReceiver {
      * Should be called as soon as the meta tile is no longer needed in order to dispose any held
      * resource
      */
-    public void dispose() {
+    public synchronized void dispose() {
         if (metaTileImage == null) {
             return;
         }
         RenderedImage image = metaTileImage;
         metaTileImage = null;
+        if (metaTileRaster != null && metaTileRaster != image) {
+            metaTileRaster.flush();
+        }
+        metaTileRaster = null;
 
         if (log.isTraceEnabled()) {
             log.trace("disposing metatile " + image);
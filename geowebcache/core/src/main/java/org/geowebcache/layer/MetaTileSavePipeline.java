@@ -0,0 +1,397 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.layer;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.GeoWebCacheExtensions;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Encodes and stores the sibling tiles of a meta tile on a bounded executor, so that the tile
+ * requested by the client can be returned as soon as it has been encoded.
+ *
+ * <p>The pipeline is disabled unless the {@link #THREADS_PROPERTY} property (system property,
+ * servlet context parameter or environment variable) is set to a positive number. When the work
+ * queue ({@link #QUEUE_SIZE_PROPERTY}) is full the submitting thread runs the task itself, which
+ * throttles producers down to the speed of the storage backend.
+ *
+ * <p>An {@link #isExclusive() exclusive} pipeline, such as the encoding pool of a seed request, is
+ * the only one encoding: the requested tile is handed over along with its siblings, and submitting
+ * blocks while the queue is full instead of running the tasks on the submitting thread.
+ *
+ * <p>Pending work is tracked by meta tile lock key: a thread acquiring the lock for a meta tile
+ * should call {@link #awaitPending(String)} before checking the cache, so that it does not request
+ * the same meta tile again while its siblings are still being stored. Only saves scheduled under
+ * the same key are waited for: a tile still pending as part of a meta tile with another key, for
+ * example one built before the layer meta tiling factors changed, is not, and is then fetched from
+ * the backend again. That costs a duplicate request, not a wrong tile.
+ *
+ * <p>The {@link #getDefault() shared pipeline} is created on first use, and shut down by {@link
+ * #disposeDefault()} when the application context is destroyed.
+ */
+public class MetaTileSavePipeline {
+
+    private static final Log log = LogFactory.getLog(MetaTileSavePipeline.class);
+
+    /** Number of threads encoding and storing sibling tiles, 0 or less disables the pipeline */
+    public static final String THREADS_PROPERTY = "GWC_METATILE_SAVE_THREADS";
+
+    /** Maximum number of tile tasks waiting for a pipeline thread */
+    public static final String QUEUE_SIZE_PROPERTY = "GWC_METATILE_SAVE_QUEUE_SIZE";
+
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    /** Lazily creates the shared pipeline, see {@link #getDefault()} */
+    private static class DefaultHolder {
+        static final MetaTileSavePipeline INSTANCE = createDefault();
+    }
+
+    private static volatile boolean defaultCreated;
+
+    private final ThreadPoolExecutor executor;
+
+    /** Free places in the work queue of an exclusive pipeline, null if not exclusive */
+    private final Semaphore slots;
+
+    private final ConcurrentHashMap<String, CountDownLatch> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong submitted = new AtomicLong();
+
+    private final AtomicLong completed = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicLong callerRuns = new AtomicLong();
+
+    private final AtomicInteger users = new AtomicInteger();
+
+    /**
+     * @param threads number of pipeline threads, if zero or negative all tasks are run by the
+     *     submitting thread
+     * @param queueSize maximum number of queued tasks before the submitting thread runs them
+     */
+    public MetaTileSavePipeline(int threads, int queueSize) {
+        this(threads, queueSize, false);
+    }
+
+    /**
+     * @param threads number of pipeline threads, if zero or negative all tasks are run by the
+     *     submitting thread
+     * @param queueSize maximum number of queued tasks before the submitting thread runs them, or
+     *     waits for a free place if the pipeline is exclusive
+     * @param exclusive whether the pipeline threads are the only ones encoding tiles
+     */
+    public MetaTileSavePipeline(int threads, int queueSize, boolean exclusive) {
+        if (threads > 0) {
+            CustomizableThreadFactory tf = new CustomizableThreadFactory("GWC MetaTile Saver-");
+            tf.setDaemon(true);
+            executor =
+                    new ThreadPoolExecutor(
+                            threads,
+                            threads,
+                            60L,
+                            TimeUnit.SECONDS,
+                            exclusive
+                                    ? new LinkedBlockingQueue<>()
+                                    : new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                            tf,
+                            new ThreadPoolExecutor.AbortPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            slots = exclusive ? new Semaphore(threads + Math.max(1, queueSize)) : null;
+        } else {
+            executor = null;
+            slots = null;
+        }
+    }
+
+    /** Returns the shared pipeline, configured from the {@link #THREADS_PROPERTY} property */
+    public static MetaTileSavePipeline getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    private static MetaTileSavePipeline createDefault() {
+        int threads = getIntProperty(THREADS_PROPERTY, 0);
+        int queueSize = getIntProperty(QUEUE_SIZE_PROPERTY, DEFAULT_QUEUE_SIZE);
+        MetaTileSavePipeline pipeline = new MetaTileSavePipeline(threads, queueSize);
+        if (pipeline.isEnabled()) {
+            log.info(
+                    "Meta tile save pipeline enabled with "
+                            + threads
+                            + " threads and a queue of "
+                            + queueSize
+                            + " tiles");
+        }
+        defaultCreated = true;
+        return pipeline;
+    }
+
+    /**
+     * Shuts down the shared pipeline, if it was ever used. Meant to be called as the application
+     * context is destroyed, tiles submitted afterwards are saved by the submitting thread.
+     */
+    public static void disposeDefault() {
+        if (defaultCreated) {
+            getDefault().dispose();
+        }
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+        String value = GeoWebCacheExtensions.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value for " + name + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /** @return true if tasks are run asynchronously, false if they run on the submitting thread */
+    public boolean isEnabled() {
+        return executor != null;
+    }
+
+    /**
+     * @return true if the pipeline threads encode all the tiles of a meta tile, the requested one
+     *     included, and submitting blocks while the queue is full
+     */
+    public boolean isExclusive() {
+        return slots != null;
+    }
+
+    /**
+     * Schedules the given tile tasks, the {@code onComplete} callback is run once all of them
+     * finished, successfully or not.
+     *
+     * @param key the meta tile lock key, used by {@link #awaitPending(String)}, may be null
+     * @param tasks the encode and store tasks for each sibling tile, a task fails by throwing an
+     *     unchecked exception, {@link CompletionException} wrapping the actual cause if need be
+     * @param onComplete callback releasing the resources shared by the tasks, may be null
+     * @return a future completed once all the tasks finished, exceptionally with the first failure
+     *     if any of them failed, the others being added as suppressed exceptions
+     */
+    public CompletableFuture<Void> submit(String key, List<Runnable> tasks, Runnable onComplete) {
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        if (tasks.isEmpty()) {
+            runQuietly(onComplete);
+            result.complete(null);
+            return result;
+        }
+        final CountDownLatch latch = new CountDownLatch(tasks.size());
+        if (key != null) {
+            pending.put(key, latch);
+        }
+        final AtomicInteger remaining = new AtomicInteger(tasks.size());
+        final List<Throwable> failures = new CopyOnWriteArrayList<>();
+        for (Runnable task : tasks) {
+            Runnable wrapped =
+                    () -> {
+                        try {
+                            task.run();
+                            completed.incrementAndGet();
+                        } catch (RuntimeException e) {
+                            failed.incrementAndGet();
+                            log.error("Failed to save meta tile sibling", e);
+                            failures.add(
+                                    e instanceof CompletionException && e.getCause() != null
+                                            ? e.getCause()
+                                            : e);
+                        } finally {
+                            if (remaining.decrementAndGet() == 0) {
+                                runQuietly(onComplete);
+                                if (key != null) {
+                                    pending.remove(key, latch);
+                                }
+                                complete(result, failures);
+                            }
+                            latch.countDown();
+                        }
+                    };
+            submitted.incrementAndGet();
+            if (executor == null) {
+                wrapped.run();
+            } else if (slots != null) {
+                handOff(wrapped);
+            } else {
+                try {
+                    executor.execute(wrapped);
+                } catch (RejectedExecutionException e) {
+                    // back pressure, the queue is full
+                    callerRuns.incrementAndGet();
+                    wrapped.run();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Queues a task of an exclusive pipeline, waiting for a free place if the queue is full. The
+     * task only runs on the submitting thread if the pipeline was shut down or the wait was
+     * interrupted, so that its meta tile still gets completed.
+     */
+    private void handOff(Runnable wrapped) {
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            callerRuns.incrementAndGet();
+            wrapped.run();
+            return;
+        }
+        try {
+            executor.execute(
+                    () -> {
+                        try {
+                            wrapped.run();
+                        } finally {
+                            slots.release();
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            callerRuns.incrementAndGet();
+            wrapped.run();
+        }
+    }
+
+    private static void complete(CompletableFuture<Void> result, List<Throwable> failures) {
+        if (failures.isEmpty()) {
+            result.complete(null);
+            return;
+        }
+        Throwable first = failures.get(0);
+        for (Throwable other : failures.subList(1, failures.size())) {
+            first.addSuppressed(other);
+        }
+        result.completeExceptionally(first);
+    }
+
+    private void runQuietly(Runnable runnable) {
+        if (runnable != null) {
+            try {
+                runnable.run();
+            } catch (RuntimeException e) {
+                log.warn("Meta tile completion callback failed", e);
+            }
+        }
+    }
+
+    /**
+     * Blocks until the tiles scheduled under the given meta tile key have all been saved. Callers
+     * are supposed to hold the meta tile lock, so that no new work for the key can be submitted
+     * meanwhile. Saves pending under other keys are not waited for, even if their meta tiles
+     * overlap this one.
+     */
+    public void awaitPending(String key) {
+        CountDownLatch latch = pending.get(key);
+        if (latch == null) {
+            return;
+        }
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Registers a user of the pipeline, such as a seed task, that will {@link #release() release}
+     * it once done
+     *
+     * @return this pipeline
+     */
+    public MetaTileSavePipeline retain() {
+        users.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Unregisters a user of the pipeline. Once the last one released it, the pipeline stops
+     * accepting new work and its threads terminate after completing the queued tasks.
+     */
+    public void release() {
+        if (users.decrementAndGet() == 0 && executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /** Stops accepting new work and waits for the queued tasks to complete */
+    public void dispose() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(60, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** @return the number of tile tasks submitted so far */
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    /** @return the number of tile tasks completed successfully */
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    /** @return the number of tile tasks that failed */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * @return the number of tile tasks run by the submitting thread because the queue was full, or
+     *     because an exclusive pipeline was shut down
+     */
+    public long getCallerRunsCount() {
+        return callerRuns.get();
+    }
+
+    /** @return the number of tile tasks waiting for a pipeline thread */
+    public int getQueueSize() {
+        return executor == null ? 0 : executor.getQueue().size();
+    }
+
+    /** @return the number of pipeline threads currently running a task */
+    public int getActiveCount() {
+        return executor == null ? 0 : executor.getActiveCount();
+    }
+
+    /** @return the number of meta tiles whose siblings are still being saved */
+    public int getPendingMetaTiles() {
+        return pending.size();
+    }
+}
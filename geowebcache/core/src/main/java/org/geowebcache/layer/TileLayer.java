@@ -23,6 +23,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.logging.Log;
@@ -72,6 +74,8 @@ public abstract class TileLayer implements Info {
     // cached default parameter filter values
     protected transient Map<String, String> defaultParameterFilterValues;
 
+    private transient volatile MetaTileSavePipeline savePipeline;
+
     /**
      * Registers a layer listener to be notified of layer events
      *
@@ -519,40 +523,131 @@ public abstract class TileLayer implements Info {
                     // edge tile outside coverage, do not store it
                     continue;
                 }
+                saveTile(metaTile, i, resource, tileProto, requestTime, store);
+            }
+        }
+    }
+
+    /**
+     * Encodes the requested tile on the calling thread, and hands over the other tiles of the meta
+     * tile to the {@link MetaTileSavePipeline}, so that the caller can return the requested tile
+     * while its siblings are being encoded and stored. An {@link MetaTileSavePipeline#isExclusive()
+     * exclusive} pipeline gets the requested tile as well, the caller only fetches. Falls back on
+     * {@link #saveTiles(MetaTile, ConveyorTile, long)} if the pipeline is not enabled.
+     *
+     * @param metaKey the meta tile lock key, used to track the pending sibling tiles
+     * @return a future completed once all siblings are saved, exceptionally if any of them failed,
+     *     if the pipeline took ownership of the meta tile, in which case it will be disposed once
+     *     all siblings are saved, {@code null} if the caller has to dispose it
+     */
+    protected CompletableFuture<Void> saveTilesAsync(
+            MetaTile metaTile, ConveyorTile tileProto, long requestTime, String metaKey)
+            throws GeoWebCacheException {
+        final MetaTileSavePipeline pipeline = getSavePipeline(tileProto);
+        final long[] gridLoc = tileProto.getTileIndex();
+        final boolean store = this.getExpireCache((int) gridLoc[2]) != GWCVars.CACHE_DISABLE_CACHE;
+        if (!pipeline.isEnabled() || !store) {
+            saveTiles(metaTile, tileProto, requestTime);
+            return null;
+        }
+
+        final long[][] gridPositions = metaTile.getTilesGridPositions();
+        final GridSubset gridSubset = getGridSubset(tileProto.getGridSetId());
+
+        List<Runnable> siblings = new ArrayList<>(gridPositions.length);
+        for (int i = 0; i < gridPositions.length; i++) {
+            final long[] gridPos = gridPositions[i];
+            if (!gridSubset.covers(gridPos)) {
+                // edge tile outside coverage, do not store it
+                continue;
+            }
+            if (Arrays.equals(gridLoc, gridPos) && !pipeline.isExclusive()) {
+                Resource resource = getImageBuffer(WMS_BUFFER2);
+                tileProto.setBlob(resource);
+                saveTile(metaTile, i, resource, tileProto, requestTime, true);
+            } else {
+                final int tileIdx = i;
+                siblings.add(
+                        () -> {
+                            // runs on the pipeline thread, uses its own buffer
+                            Resource resource = getImageBuffer(WMS_BUFFER);
+                            try {
+                                saveTile(metaTile, tileIdx, resource, tileProto, requestTime, true);
+                            } catch (GeoWebCacheException e) {
+                                throw new CompletionException(
+                                        new GeoWebCacheException(
+                                                "Unable to save tile " + Arrays.toString(gridPos),
+                                                e));
+                            }
+                        });
+            }
+        }
+        return pipeline.submit(metaKey, siblings, metaTile::dispose);
+    }
+
+    /** Encodes a single tile of the meta tile, and stores it if required */
+    private void saveTile(
+            MetaTile metaTile,
+            int tileIdx,
+            Resource resource,
+            ConveyorTile tileProto,
+            long requestTime,
+            boolean store)
+            throws GeoWebCacheException {
+        final long[] gridPos = metaTile.getTilesGridPositions()[tileIdx];
+        try {
+            boolean completed = metaTile.writeTileToStream(tileIdx, resource);
+            if (!completed) {
+                log.error("metaTile.writeTileToStream returned false, no tiles saved");
+            }
+            if (store) {
+                long[] idx = {gridPos[0], gridPos[1], gridPos[2]};
+
+                TileObject tile =
+                        TileObject.createCompleteTileObject(
+                                this.getName(),
+                                idx,
+                                tileProto.getGridSetId(),
+                                tileProto.getMimeType().getFormat(),
+                                tileProto.getParameters(),
+                                resource);
+                tile.setCreated(requestTime);
 
                 try {
-                    boolean completed = metaTile.writeTileToStream(i, resource);
-                    if (!completed) {
-                        log.error("metaTile.writeTileToStream returned false, no tiles saved");
+                    if (tileProto.isMetaTileCacheOnly()) {
+                        tileProto.getStorageBroker().putTransient(tile);
+                    } else {
+                        tileProto.getStorageBroker().put(tile);
                     }
-                    if (store) {
-                        long[] idx = {gridPos[0], gridPos[1], gridPos[2]};
-
-                        TileObject tile =
-                                TileObject.createCompleteTileObject(
-                                        this.getName(),
-                                        idx,
-                                        tileProto.getGridSetId(),
-                                        tileProto.getMimeType().getFormat(),
-                                        tileProto.getParameters(),
-                                        resource);
-                        tile.setCreated(requestTime);
-
-                        try {
-                            if (tileProto.isMetaTileCacheOnly()) {
-                                tileProto.getStorageBroker().putTransient(tile);
-                            } else {
-                                tileProto.getStorageBroker().put(tile);
-                            }
-                            tileProto.getStorageObject().setCreated(tile.getCreated());
-                        } catch (StorageException e) {
-                            throw new GeoWebCacheException(e);
-                        }
+                    if (Arrays.equals(tileProto.getTileIndex(), gridPos)) {
+                        tileProto.getStorageObject().setCreated(tile.getCreated());
                     }
-                } catch (IOException ioe) {
-                    log.error("Unable to write image tile to " + "ByteArrayOutputStream", ioe);
+                } catch (StorageException e) {
+                    throw new GeoWebCacheException(e);
                 }
             }
+        } catch (IOException ioe) {
+            log.error("Unable to write image tile to " + "ByteArrayOutputStream", ioe);
         }
     }
+
+    /** @return the pipeline used by {@link #saveTilesAsync} to save the sibling tiles */
+    protected MetaTileSavePipeline getSavePipeline() {
+        MetaTileSavePipeline pipeline = savePipeline;
+        return pipeline == null ? MetaTileSavePipeline.getDefault() : pipeline;
+    }
+
+    /**
+     * @return the pipeline set on the tile if any, such as the encoding pool of a seed request, the
+     *     layer's one otherwise
+     */
+    protected MetaTileSavePipeline getSavePipeline(ConveyorTile tile) {
+        MetaTileSavePipeline pipeline = tile.getSavePipeline();
+        return pipeline == null ? getSavePipeline() : pipeline;
+    }
+
+    /** Overrides the shared {@link MetaTileSavePipeline#getDefault() save pipeline} */
+    public void setSavePipeline(MetaTileSavePipeline savePipeline) {
+        this.savePipeline = savePipeline;
+    }
 }
@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +29,7 @@ import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 import org.geowebcache.GeoWebCacheException;
@@ -36,6 +38,7 @@ import org.geowebcache.config.BaseConfiguration;
 import org.geowebcache.config.ConfigurationAggregator;
 import org.geowebcache.config.ServerConfiguration;
 import org.geowebcache.config.TileLayerConfiguration;
+import org.geowebcache.config.TileLayerConfigurationListener;
 import org.geowebcache.config.meta.ServiceInformation;
 import org.geowebcache.grid.GridSet;
 import org.geowebcache.grid.GridSetBroker;
@@ -64,6 +67,26 @@ public class TileLayerDispatcher
 
     private ApplicationContext applicationContext;
 
+    /**
+     * Layers of all the configurations by name, in configuration priority order. {@code null} when
+     * it has to be rebuilt, ignored if {@link #indexed} is false.
+     */
+    private volatile Map<String, TileLayer> layerIndex;
+
+    /** Whether all configurations notify layer changes, so that {@link #layerIndex} can be used */
+    private volatile boolean indexed;
+
+    /** Incremented on each layer change, so that a concurrent rebuild does not cache stale data */
+    private final AtomicLong layerIndexVersion = new AtomicLong();
+
+    private final Object layerIndexLock = new Object();
+
+    private final TileLayerConfigurationListener layerIndexInvalidator =
+            configuration -> {
+                layerIndexVersion.incrementAndGet();
+                layerIndex = null;
+            };
+
     /**
      * Used for testing only, in production use {@link #TileLayerDispatcher(GridSetBroker)} instead,
      * configurations are loaded from the application context, the {@code config} parameter will be
@@ -72,6 +95,7 @@ public class TileLayerDispatcher
     public TileLayerDispatcher(GridSetBroker gridSetBroker, List<TileLayerConfiguration> configs) {
         this.gridSetBroker = gridSetBroker;
         this.configs = configs == null ? new ArrayList<TileLayerConfiguration>() : configs;
+        watchConfigurations();
     }
 
     public TileLayerDispatcher(GridSetBroker gridSetBroker) {
@@ -79,6 +103,10 @@ public class TileLayerDispatcher
     }
 
     public boolean layerExists(final String layerName) {
+        Map<String, TileLayer> index = getLayerIndex();
+        if (index != null) {
+            return index.containsKey(layerName);
+        }
         for (int i = 0; i < configs.size(); i++) {
             TileLayerConfiguration configuration = configs.get(i);
             Optional<TileLayer> layer = configuration.getLayer(layerName);
@@ -97,11 +125,19 @@ public class TileLayerDispatcher
     public TileLayer getTileLayer(final String layerName) throws GeoWebCacheException {
         Preconditions.checkNotNull(layerName, "layerName is null");
 
-        for (int i = 0; i < configs.size(); i++) {
-            TileLayerConfiguration configuration = configs.get(i);
-            Optional<TileLayer> layer = configuration.getLayer(layerName);
-            if (layer.isPresent()) {
-                return layer.get();
+        Map<String, TileLayer> index = getLayerIndex();
+        if (index != null) {
+            TileLayer layer = index.get(layerName);
+            if (layer != null) {
+                return layer;
+            }
+        } else {
+            for (int i = 0; i < configs.size(); i++) {
+                TileLayerConfiguration configuration = configs.get(i);
+                Optional<TileLayer> layer = configuration.getLayer(layerName);
+                if (layer.isPresent()) {
+                    return layer.get();
+                }
             }
         }
         throw new GeoWebCacheException(
@@ -123,6 +159,10 @@ public class TileLayerDispatcher
     }
 
     public Set<String> getLayerNames() {
+        Map<String, TileLayer> index = getLayerIndex();
+        if (index != null) {
+            return index.keySet();
+        }
         Set<String> names = new HashSet<String>();
         for (int i = 0; i < configs.size(); i++) {
             TileLayerConfiguration configuration = configs.get(i);
@@ -141,6 +181,10 @@ public class TileLayerDispatcher
      */
     @SuppressWarnings("unchecked")
     public Iterable<TileLayer> getLayerList() {
+        Map<String, TileLayer> index = getLayerIndex();
+        if (index != null) {
+            return index.values();
+        }
         List<Iterable<TileLayer>> perConfigLayers =
                 new ArrayList<Iterable<TileLayer>>(configs.size());
 
@@ -151,6 +195,59 @@ public class TileLayerDispatcher
         return new CompositeIterable<TileLayer>(perConfigLayers);
     }
 
+    /**
+     * Returns the name to layer index, rebuilding it if a configuration changed since it was last
+     * built, or {@code null} if some configuration does not notify changes, and lookups have to go
+     * through each configuration.
+     */
+    private Map<String, TileLayer> getLayerIndex() {
+        if (!indexed) {
+            return null;
+        }
+        Map<String, TileLayer> index = layerIndex;
+        if (index != null) {
+            return index;
+        }
+        synchronized (layerIndexLock) {
+            index = layerIndex;
+            if (index != null) {
+                return index;
+            }
+            final long version = layerIndexVersion.get();
+            Map<String, TileLayer> buff = new LinkedHashMap<>();
+            for (TileLayerConfiguration config : configs) {
+                for (TileLayer layer : config.getLayers()) {
+                    // configurations are sorted by priority, the first one wins
+                    buff.putIfAbsent(layer.getName(), layer);
+                }
+            }
+            index = Collections.unmodifiableMap(buff);
+            if (version == layerIndexVersion.get()) {
+                layerIndex = index;
+            }
+            return index;
+        }
+    }
+
+    /** Registers for layer changes on the configurations, enabling the index if all support it */
+    private void watchConfigurations() {
+        boolean allNotify = true;
+        for (TileLayerConfiguration config : configs) {
+            allNotify &= config.addLayerConfigurationListener(layerIndexInvalidator);
+        }
+        layerIndexInvalidator.handleLayersChanged(null);
+        indexed = allNotify;
+    }
+
+    private void unwatchConfigurations() {
+        indexed = false;
+        if (configs != null) {
+            for (TileLayerConfiguration config : configs) {
+                config.removeLayerConfigurationListener(layerIndexInvalidator);
+            }
+        }
+    }
+
     public ServiceInformation getServiceInformation() {
         return this.serviceInformation;
     }
@@ -162,7 +259,9 @@ public class TileLayerDispatcher
 
     /** @see org.springframework.beans.factory.DisposableBean#destroy() */
     public void destroy() throws Exception {
-        //
+        unwatchConfigurations();
+        // the layers are gone, and so are the meta tiles they could save
+        MetaTileSavePipeline.disposeDefault();
     }
 
     /**
@@ -308,9 +407,11 @@ public class TileLayerDispatcher
 
     @Override
     public void afterPropertiesSet() throws Exception {
+        unwatchConfigurations();
         this.configs =
                 GeoWebCacheExtensions.configurations(
                         TileLayerConfiguration.class, applicationContext);
+        watchConfigurations();
 
         Map<String, BaseConfiguration> config =
                 applicationContext.getBeansOfType(BaseConfiguration.class);
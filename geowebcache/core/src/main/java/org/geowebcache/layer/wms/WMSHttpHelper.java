@@ -21,6 +21,18 @@ import java.net.URL;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpMethodBase;
 import org.apache.commons.httpclient.NameValuePair;
@@ -30,6 +42,8 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.GeoWebCacheExtensions;
+import org.geowebcache.io.ByteArrayResource;
 import org.geowebcache.io.Resource;
 import org.geowebcache.layer.TileResponseReceiver;
 import org.geowebcache.mime.ErrorMime;
@@ -38,12 +52,37 @@ import org.geowebcache.service.ServiceException;
 import org.geowebcache.util.GWCVars;
 import org.geowebcache.util.HttpClientBuilder;
 import org.geowebcache.util.ServletUtils;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.util.Assert;
 
 /** This class is a wrapper for HTTP interaction with WMS backend */
 public class WMSHttpHelper extends WMSSourceHelper {
     private static Log log = LogFactory.getLog(org.geowebcache.layer.wms.WMSHttpHelper.class);
 
+    /**
+     * Milliseconds to wait for a backend before sending the same request to the next one, for
+     * layers having more than one WMS URL. Zero, the default, disables hedging.
+     */
+    public static final String HEDGE_DELAY_PROPERTY = "GWC_WMS_HEDGE_DELAY";
+
+    /** Set to false to disable the coalescing of identical in flight meta tile requests */
+    public static final String COALESCE_PROPERTY = "GWC_WMS_COALESCE_REQUESTS";
+
+    /** Maximum number of threads running hedged backend requests, shared by all layers */
+    public static final String HEDGE_THREADS_PROPERTY = "GWC_WMS_HEDGE_THREADS";
+
+    /** Meta tile requests in flight, shared by all helpers so that layers can share them */
+    private static final ConcurrentHashMap<String, CompletableFuture<BackendResponse>> IN_FLIGHT =
+            new ConcurrentHashMap<>();
+
+    private static final AtomicLong BACKEND_REQUESTS = new AtomicLong();
+
+    private static final AtomicLong COALESCED_REQUESTS = new AtomicLong();
+
+    private static final AtomicLong HEDGED_REQUESTS = new AtomicLong();
+
+    private static ThreadPoolExecutor hedgeExecutor;
+
     private final URL proxyUrl;
 
     private final String httpUsername;
@@ -54,6 +93,11 @@ public class WMSHttpHelper extends WMSSourceHelper {
 
     private boolean doAuthentication;
 
+    private long hedgeDelay = getLongProperty(HEDGE_DELAY_PROPERTY, 0);
+
+    private boolean coalesceRequests =
+            !"false".equalsIgnoreCase(GeoWebCacheExtensions.getProperty(COALESCE_PROPERTY));
+
     public WMSHttpHelper() {
         this(null, null, null);
     }
@@ -100,6 +144,74 @@ public class WMSHttpHelper extends WMSSourceHelper {
         Assert.notNull(target, "Target resource can't be null");
         Assert.isTrue(target.getSize() == 0, "Target resource is not empty");
 
+        final boolean hedge = hedgeDelay > 0 && layer.getWMSurl().length > 1;
+        if (coalesceRequests && tileRespRecv instanceof WMSMetaTile) {
+            // identical meta tile requests might come from other layers sharing the backend
+            String key = getCoalescingKey(layer, wmsParams, expectedMimeType);
+            CompletableFuture<BackendResponse> future = new CompletableFuture<>();
+            CompletableFuture<BackendResponse> inFlight = IN_FLIGHT.putIfAbsent(key, future);
+            BackendResponse response;
+            if (inFlight == null) {
+                try {
+                    response = new BackendResponse(tileRespRecv.getExpiresHeader());
+                    fetch(response, layer, wmsParams, expectedMimeType, hedge);
+                    future.complete(response);
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    IN_FLIGHT.remove(key, future);
+                }
+            } else {
+                COALESCED_REQUESTS.incrementAndGet();
+                try {
+                    response = inFlight.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new GeoWebCacheException(e);
+                } catch (ExecutionException e) {
+                    throw new GeoWebCacheException(e.getCause());
+                }
+            }
+            response.copyTo(tileRespRecv, target);
+        } else if (hedge) {
+            BackendResponse response = new BackendResponse(tileRespRecv.getExpiresHeader());
+            fetch(response, layer, wmsParams, expectedMimeType, true);
+            response.copyTo(tileRespRecv, target);
+        } else {
+            fetchSequential(tileRespRecv, layer, wmsParams, expectedMimeType, target);
+        }
+    }
+
+    /**
+     * Fetches the response into a private {@link BackendResponse}, so that it can be shared with
+     * coalesced requests or picked among hedged ones. Errors are recorded in the response.
+     */
+    private void fetch(
+            BackendResponse response,
+            WMSLayer layer,
+            Map<String, String> wmsParams,
+            MimeType expectedMimeType,
+            boolean hedge) {
+        try {
+            if (hedge) {
+                fetchHedged(response, layer, wmsParams, expectedMimeType);
+            } else {
+                fetchSequential(response, layer, wmsParams, expectedMimeType, response.data);
+            }
+        } catch (GeoWebCacheException e) {
+            response.failure = e;
+        }
+    }
+
+    /** Tries the backends one after the other, until one of them returns some content */
+    private void fetchSequential(
+            TileResponseReceiver tileRespRecv,
+            WMSLayer layer,
+            Map<String, String> wmsParams,
+            MimeType expectedMimeType,
+            Resource target)
+            throws GeoWebCacheException {
         URL wmsBackendUrl = null;
 
         final Integer backendTimeout = layer.getBackendTimeout();
@@ -115,6 +227,7 @@ public class WMSHttpHelper extends WMSSourceHelper {
                         "Malformed URL: " + requestUrl + " " + maue.getMessage());
             }
             try {
+                BACKEND_REQUESTS.incrementAndGet();
                 connectAndCheckHeaders(
                         tileRespRecv,
                         wmsBackendUrl,
@@ -131,24 +244,170 @@ public class WMSHttpHelper extends WMSSourceHelper {
         }
 
         if (target.getSize() == 0) {
-            String msg = "All backends (" + backendTries + ") failed.";
-            if (fetchException != null) {
-                msg += " Reason: " + fetchException.getMessage() + ". ";
+            failAllBackends(tileRespRecv, backendTries, fetchException, wmsBackendUrl);
+        }
+    }
+
+    /**
+     * Sends the request to the next backend, and if no answer arrived after {@link
+     * #getHedgeDelay()} milliseconds, sends it to the following one as well, and so on. The first
+     * backend returning some content wins, the other responses are discarded. A failing backend
+     * causes the request to be sent to the next one right away.
+     */
+    private void fetchHedged(
+            BackendResponse result,
+            WMSLayer layer,
+            Map<String, String> wmsParams,
+            MimeType expectedMimeType)
+            throws GeoWebCacheException {
+        final String[] urls = new String[layer.getWMSurl().length];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = layer.nextWmsURL();
+        }
+        final Integer backendTimeout = layer.getBackendTimeout();
+        final WMSLayer.HttpRequestMode mode = layer.getHttpRequestMode();
+        final long expiresHeader = result.getExpiresHeader();
+
+        BlockingQueue<BackendResponse> completed = new LinkedBlockingQueue<>();
+        BackendResponse last = null;
+        URL lastUrl = null;
+        int launched = 0;
+        int finished = 0;
+        try {
+            while (finished < urls.length) {
+                if (launched == finished) {
+                    // nothing in flight, send to the next backend
+                    lastUrl = toURL(urls[launched++]);
+                    launchAttempt(
+                            completed,
+                            expiresHeader,
+                            lastUrl,
+                            wmsParams,
+                            expectedMimeType,
+                            backendTimeout,
+                            mode);
+                    continue;
+                }
+                BackendResponse response;
+                if (launched < urls.length) {
+                    response = completed.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+                    if (response == null) {
+                        // slow backend, hedge on the next one
+                        HEDGED_REQUESTS.incrementAndGet();
+                        lastUrl = toURL(urls[launched++]);
+                        launchAttempt(
+                                completed,
+                                expiresHeader,
+                                lastUrl,
+                                wmsParams,
+                                expectedMimeType,
+                                backendTimeout,
+                                mode);
+                        continue;
+                    }
+                } else {
+                    response = completed.take();
+                }
+                finished++;
+                if (response.data.getSize() > 0) {
+                    // first backend returning content wins, late responses are just dropped
+                    result.copyFrom(response);
+                    return;
+                }
+                last = response;
             }
-            msg +=
-                    " Last request: '"
-                            + wmsBackendUrl.toString()
-                            + "'. "
-                            + (tileRespRecv.getErrorMessage() == null
-                                    ? ""
-                                    : tileRespRecv.getErrorMessage());
-
-            tileRespRecv.setError();
-            tileRespRecv.setErrorMessage(msg);
-            throw new GeoWebCacheException(msg);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GeoWebCacheException(e);
+        }
+
+        result.copyFrom(last);
+        failAllBackends(result, urls.length, last.failure, lastUrl);
+    }
+
+    private void launchAttempt(
+            BlockingQueue<BackendResponse> completed,
+            long expiresHeader,
+            URL url,
+            Map<String, String> wmsParams,
+            MimeType expectedMimeType,
+            Integer backendTimeout,
+            WMSLayer.HttpRequestMode mode) {
+        Runnable attempt =
+                () -> {
+                    BackendResponse response = new BackendResponse(expiresHeader);
+                    try {
+                        BACKEND_REQUESTS.incrementAndGet();
+                        connectAndCheckHeaders(
+                                response,
+                                url,
+                                wmsParams,
+                                expectedMimeType,
+                                backendTimeout,
+                                response.data,
+                                mode);
+                    } catch (GeoWebCacheException | RuntimeException e) {
+                        response.failure =
+                                e instanceof GeoWebCacheException
+                                        ? (GeoWebCacheException) e
+                                        : new GeoWebCacheException(e);
+                    }
+                    completed.add(response);
+                };
+        try {
+            getHedgeExecutor().execute(attempt);
+        } catch (RejectedExecutionException e) {
+            // hedging pool exhausted, run the attempt on the calling thread
+            attempt.run();
         }
     }
 
+    private URL toURL(String requestUrl) throws GeoWebCacheException {
+        try {
+            return new URL(requestUrl);
+        } catch (MalformedURLException maue) {
+            throw new GeoWebCacheException(
+                    "Malformed URL: " + requestUrl + " " + maue.getMessage());
+        }
+    }
+
+    private void failAllBackends(
+            TileResponseReceiver tileRespRecv,
+            int backendTries,
+            GeoWebCacheException fetchException,
+            URL wmsBackendUrl)
+            throws GeoWebCacheException {
+        String msg = "All backends (" + backendTries + ") failed.";
+        if (fetchException != null) {
+            msg += " Reason: " + fetchException.getMessage() + ". ";
+        }
+        msg +=
+                " Last request: '"
+                        + wmsBackendUrl.toString()
+                        + "'. "
+                        + (tileRespRecv.getErrorMessage() == null
+                                ? ""
+                                : tileRespRecv.getErrorMessage());
+
+        tileRespRecv.setError();
+        tileRespRecv.setErrorMessage(msg);
+        throw new GeoWebCacheException(msg);
+    }
+
+    private String getCoalescingKey(
+            WMSLayer layer, Map<String, String> wmsParams, MimeType expectedMimeType) {
+        // the layer name is left out on purpose, layers backed by the same WMS request share it
+        StringBuilder sb = new StringBuilder();
+        sb.append(layer.getHttpRequestMode()).append('|');
+        sb.append(String.join(",", layer.getWMSurl())).append('|');
+        // requests with different credentials must not share a response, and the key is long lived
+        // in a static map, so it holds a digest of the credentials rather than the password
+        sb.append(DigestUtils.sha256Hex(httpUsername + "\n" + httpPassword)).append('|');
+        sb.append(expectedMimeType.getFormat()).append('|');
+        sb.append(new TreeMap<>(wmsParams));
+        return sb.toString();
+    }
+
     /** Executes the actual HTTP request, checks the response headers (status and MIME) and */
     private void connectAndCheckHeaders(
             TileResponseReceiver tileRespRecv,
@@ -329,4 +588,165 @@ public class WMSHttpHelper extends WMSSourceHelper {
         httpClient.executeMethod(method);
         return method;
     }
+
+    /** Sets the milliseconds to wait for a backend before hedging on the next one, 0 disables */
+    public void setHedgeDelay(long hedgeDelay) {
+        this.hedgeDelay = hedgeDelay;
+    }
+
+    /** @return the milliseconds to wait for a backend before hedging on the next one */
+    public long getHedgeDelay() {
+        return hedgeDelay;
+    }
+
+    /** Enables or disables the coalescing of identical in flight meta tile requests */
+    public void setCoalesceRequests(boolean coalesceRequests) {
+        this.coalesceRequests = coalesceRequests;
+    }
+
+    /** @return whether identical in flight meta tile requests are coalesced */
+    public boolean isCoalesceRequests() {
+        return coalesceRequests;
+    }
+
+    /** @return the number of requests sent to WMS backends so far */
+    public static long getBackendRequestCount() {
+        return BACKEND_REQUESTS.get();
+    }
+
+    /** @return the number of meta tile requests served by an identical in flight one */
+    public static long getCoalescedRequestCount() {
+        return COALESCED_REQUESTS.get();
+    }
+
+    /** @return the number of requests sent to another backend because the first was too slow */
+    public static long getHedgedRequestCount() {
+        return HEDGED_REQUESTS.get();
+    }
+
+    private static synchronized ThreadPoolExecutor getHedgeExecutor() {
+        if (hedgeExecutor == null) {
+            int threads = (int) getLongProperty(HEDGE_THREADS_PROPERTY, 64);
+            CustomizableThreadFactory tf = new CustomizableThreadFactory("GWC WMS Hedging-");
+            tf.setDaemon(true);
+            hedgeExecutor =
+                    new ThreadPoolExecutor(
+                            0,
+                            Math.max(1, threads),
+                            60L,
+                            TimeUnit.SECONDS,
+                            new SynchronousQueue<>(),
+                            tf);
+        }
+        return hedgeExecutor;
+    }
+
+    private static long getLongProperty(String name, long defaultValue) {
+        String value = GeoWebCacheExtensions.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value for " + name + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * The outcome of a backend request, kept apart from the caller's receiver and target so that
+     * it can be shared among coalesced requests, or discarded when another hedged request wins.
+     */
+    static class BackendResponse implements TileResponseReceiver {
+
+        ByteArrayResource data = new ByteArrayResource(16 * 1024);
+
+        int status = -1;
+
+        long expiresHeader;
+
+        boolean error;
+
+        String errorMessage;
+
+        GeoWebCacheException failure;
+
+        BackendResponse(long expiresHeader) {
+            this.expiresHeader = expiresHeader;
+        }
+
+        void copyFrom(BackendResponse other) {
+            data = other.data;
+            status = other.status;
+            expiresHeader = other.expiresHeader;
+            error = other.error;
+            errorMessage = other.errorMessage;
+            failure = other.failure;
+        }
+
+        /** Copies the response state and content over, and throws the backend failure, if any */
+        void copyTo(TileResponseReceiver receiver, Resource target) throws GeoWebCacheException {
+            receiver.setStatus(status);
+            if (expiresHeader != receiver.getExpiresHeader()) {
+                receiver.setExpiresHeader(expiresHeader);
+            }
+            if (error) {
+                receiver.setError();
+            }
+            if (errorMessage != null) {
+                receiver.setErrorMessage(errorMessage);
+            }
+            if (data.getSize() > 0) {
+                try (ReadableByteChannel channel = Channels.newChannel(data.getInputStream())) {
+                    target.transferFrom(channel);
+                } catch (IOException e) {
+                    throw new GeoWebCacheException(e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        @Override
+        public void setStatus(int status) {
+            this.status = status;
+        }
+
+        @Override
+        public int getStatus() {
+            return status;
+        }
+
+        @Override
+        public void setExpiresHeader(long seconds) {
+            this.expiresHeader = seconds;
+        }
+
+        @Override
+        public long getExpiresHeader() {
+            return expiresHeader;
+        }
+
+        @Override
+        public void setError() {
+            this.error = true;
+        }
+
+        @Override
+        public boolean getError() {
+            return error;
+        }
+
+        @Override
+        public void setErrorMessage(String message) {
+            this.errorMessage = message;
+        }
+
+        @Override
+        public String getErrorMessage() {
+            return errorMessage;
+        }
+    }
 }
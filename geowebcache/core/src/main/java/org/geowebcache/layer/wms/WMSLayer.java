@@ -22,6 +22,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpMethodBase;
@@ -342,9 +343,13 @@ public class WMSLayer extends AbstractTileLayer implements ProxyLayer {
 
         String metaKey = buildLockKey(tile, metaTile);
         Lock lock = null;
+        boolean handedOff = false;
         try {
             /** ****************** Acquire lock ******************* */
             lock = lockProvider.getLock(metaKey);
+            // siblings of a previous request for this same meta tile might still be saving,
+            // overlapping meta tiles with other keys are not waited for (see MetaTileSavePipeline)
+            getSavePipeline(tile).awaitPending(metaKey);
             /** ****************** Check cache again ************** */
             if (tryCache && tryCacheFetch(tile)) {
                 // Someone got it already, return lock and we're done
@@ -378,14 +383,19 @@ public class WMSLayer extends AbstractTileLayer implements ProxyLayer {
 
             metaTile.setImageBytes(buffer);
 
-            saveTiles(metaTile, tile, requestTime);
+            CompletableFuture<Void> siblingsSaved =
+                    saveTilesAsync(metaTile, tile, requestTime, metaKey);
+            tile.setSiblingsSaved(siblingsSaved);
+            handedOff = siblingsSaved != null;
 
             /** ****************** Return lock and response ****** */
         } finally {
             if (lock != null) {
                 lock.release();
             }
-            metaTile.dispose();
+            if (!handedOff) {
+                metaTile.dispose();
+            }
         }
         return finalizeTile(tile);
     }
@@ -0,0 +1,146 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.seed;
+
+/**
+ * Adaptive concurrency limit shared by the seed tasks hitting the same backend, so that seeding
+ * runs at the highest rate the backend sustains without tuning the thread count per layer, however
+ * many seed requests target it at once.
+ *
+ * <p>Seed tasks {@link #join() join} the controller when they start using it and {@link #leave()
+ * leave} it once done, the maximum concurrency being the number of tasks sharing it.
+ *
+ * <p>Each task {@link #acquire() acquires} a permit before seeding a tile, and {@link
+ * #release(long, boolean) releases} it with the observed latency and outcome. The limit follows an
+ * additive increase, multiplicative decrease policy: it grows by one once a full limit worth of
+ * tiles came back within the target latency, and is halved when a tile fails or is slower than
+ * the target. Decreases happen at most once per target latency period, so that a burst of slow
+ * responses to requests issued at the old limit only counts once.
+ */
+public class SeedRateController {
+
+    private int maxLimit;
+
+    private long targetLatency;
+
+    private int members;
+
+    private int limit;
+
+    private int inFlight;
+
+    private int successes;
+
+    private long lastDecrease;
+
+    /**
+     * @param maxLimit the initial maximum concurrency, raised and lowered as tasks join and leave
+     * @param targetLatency the latency, in milliseconds, above which the backend is considered
+     *     overloaded
+     */
+    public SeedRateController(int maxLimit, long targetLatency) {
+        checkTargetLatency(targetLatency);
+        this.maxLimit = Math.max(0, maxLimit);
+        this.targetLatency = targetLatency;
+        this.limit = this.maxLimit;
+    }
+
+    private static void checkTargetLatency(long targetLatency) {
+        if (targetLatency <= 0) {
+            throw new IllegalArgumentException(
+                    "Target latency should be positive: " + targetLatency);
+        }
+    }
+
+    /**
+     * Adds a seed task to the ones sharing the limit, raising the maximum and current concurrency
+     * by one
+     *
+     * @return this controller
+     */
+    public synchronized SeedRateController join() {
+        members++;
+        maxLimit++;
+        limit = Math.min(limit + 1, maxLimit);
+        notifyAll();
+        return this;
+    }
+
+    /** Removes a task that {@link #join() joined} before, lowering the maximum concurrency by one */
+    public synchronized void leave() {
+        members--;
+        maxLimit = Math.max(0, maxLimit - 1);
+        limit = Math.max(1, Math.min(limit, maxLimit));
+        notifyAll();
+    }
+
+    /** @return whether no seed task is sharing the controller anymore */
+    public synchronized boolean isIdle() {
+        return members <= 0;
+    }
+
+    /** Blocks until the number of tiles being seeded is below the current limit */
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= limit) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    /**
+     * Releases a permit obtained with {@link #acquire()}, and adjusts the limit
+     *
+     * @param latency time spent seeding the tile, in milliseconds
+     * @param failed whether seeding the tile failed
+     */
+    public synchronized void release(long latency, boolean failed) {
+        inFlight--;
+        if (failed || latency > targetLatency) {
+            long now = System.currentTimeMillis();
+            if (now - lastDecrease >= targetLatency) {
+                limit = Math.max(1, limit / 2);
+                lastDecrease = now;
+            }
+            successes = 0;
+        } else if (++successes >= limit) {
+            successes = 0;
+            if (limit < maxLimit) {
+                limit++;
+            }
+        }
+        notifyAll();
+    }
+
+    /** @return the current concurrency limit */
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    /** @return the maximum concurrency limit */
+    public synchronized int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /** @return the target latency, in milliseconds */
+    public synchronized long getTargetLatency() {
+        return targetLatency;
+    }
+
+    /** Changes the target latency, for example to the one of the latest seed request */
+    public synchronized void setTargetLatency(long targetLatency) {
+        checkTargetLatency(targetLatency);
+        this.targetLatency = targetLatency;
+    }
+}
@@ -36,6 +36,12 @@ public class SeedRequest {
 
     private Integer threadCount = null;
 
+    private Integer fetchThreadCount = null;
+
+    private Integer encodeThreadCount = null;
+
+    private Long targetLatency = null;
+
     private Integer zoomStart = null;
 
     private Integer zoomStop = null;
@@ -172,6 +178,50 @@ public class SeedRequest {
         return threadCount;
     }
 
+    /**
+     * Number of concurrent backend requests. If set, the seed request runs this many fetching
+     * threads on the I/O seeding executor, and encodes the tiles on a separate pool of {@link
+     * #getEncodeThreadCount()} threads, instead of doing both on {@link #getThreadCount()} threads.
+     *
+     * @return the fetch concurrency, or {@code null} if not set
+     */
+    public Integer getFetchThreadCount() {
+        return fetchThreadCount;
+    }
+
+    public void setFetchThreadCount(Integer fetchThreadCount) {
+        this.fetchThreadCount = fetchThreadCount;
+    }
+
+    /**
+     * Number of threads slicing and encoding the fetched meta tiles, only used along with {@link
+     * #getFetchThreadCount()}.
+     *
+     * @return the encode concurrency, or {@code null} to use the number of available processors
+     */
+    public Integer getEncodeThreadCount() {
+        return encodeThreadCount;
+    }
+
+    public void setEncodeThreadCount(Integer encodeThreadCount) {
+        this.encodeThreadCount = encodeThreadCount;
+    }
+
+    /**
+     * Backend latency, in milliseconds, above which the seed threads reduce their concurrency. 0
+     * disables the adaptive rate control for this request.
+     *
+     * @return the target latency, or {@code null} to use the {@code GWC_SEED_TARGET_LATENCY}
+     *     default
+     */
+    public Long getTargetLatency() {
+        return targetLatency;
+    }
+
+    public void setTargetLatency(Long targetLatency) {
+        this.targetLatency = targetLatency;
+    }
+
     /**
      * Method returns the type of seed, namely one of
      *
@@ -16,28 +16,34 @@
 package org.geowebcache.seed;
 
 import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.GeoWebCacheException;
 import org.geowebcache.conveyor.ConveyorTile;
 import org.geowebcache.filter.request.RequestFilter;
+import org.geowebcache.layer.MetaTileSavePipeline;
 import org.geowebcache.layer.TileLayer;
 import org.geowebcache.layer.wms.WMSLayer;
+import org.geowebcache.storage.MetaGridLocationIterator;
 import org.geowebcache.storage.StorageBroker;
 import org.geowebcache.storage.TileRange;
-import org.geowebcache.storage.TileRangeIterator;
 import org.geowebcache.util.Sleeper;
 
 /** A GWCTask for seeding/reseeding the cache. */
 class SeedTask extends GWCTask {
     private static Log log = LogFactory.getLog(org.geowebcache.seed.SeedTask.class);
 
-    private final TileRangeIterator trIter;
+    private final MetaGridLocationIterator trIter;
 
     private final TileLayer tl;
 
@@ -55,12 +61,26 @@ class SeedTask extends GWCTask {
 
     private AtomicLong sharedFailureCounter;
 
+    private MetaTileSavePipeline encodePipeline;
+
+    /**
+     * Maximum number of meta tiles fetched by this task and still being saved by the encode
+     * pipeline, the task waits for one of them before fetching more
+     */
+    static final int MAX_PENDING_META_TILES = 2;
+
+    private final Semaphore pendingMetaTiles = new Semaphore(MAX_PENDING_META_TILES);
+
+    private final Queue<FailedSave> failedSaves = new ConcurrentLinkedQueue<>();
+
+    private SeedRateController rateController;
+
     @VisibleForTesting Sleeper sleeper = Thread::sleep;
 
     /** Constructs a SeedTask */
     public SeedTask(
             StorageBroker sb,
-            TileRangeIterator trIter,
+            MetaGridLocationIterator trIter,
             TileLayer tl,
             boolean reseed,
             boolean doFilterUpdate) {
@@ -131,57 +151,11 @@ class SeedTask extends GWCTask {
                             fullParameters,
                             null,
                             null);
+            tile.setSavePipeline(encodePipeline);
 
-            for (int fetchAttempt = 0;
-                    fetchAttempt <= tileFailureRetryCount || tileFailureRetryCount < 0;
-                    fetchAttempt++) {
-                try {
-                    checkInterrupted();
-                    tl.seedTile(tile, tryCache);
-                    break; // success, let it go
-                } catch (Exception e) {
-                    // if GWC_SEED_RETRY_COUNT was not set then none of the settings have effect, in
-                    // order to keep backwards compatibility with the old behaviour
-                    if (tileFailureRetryCount < 0) {
-                        if (e instanceof GeoWebCacheException) {
-                            throw (GeoWebCacheException) e;
-                        }
-                        throw new GeoWebCacheException(e);
-                    }
-
-                    long sharedFailureCount = sharedFailureCounter.incrementAndGet();
-                    if (sharedFailureCount >= totalFailuresBeforeAborting) {
-                        log.info(
-                                "Aborting seed thread "
-                                        + getThreadName()
-                                        + ". Error count reached configured maximum of "
-                                        + totalFailuresBeforeAborting);
-                        super.state = GWCTask.STATE.DEAD;
-                        return;
-                    }
-                    String logMsg =
-                            "Seed failed at "
-                                    + tile.toString()
-                                    + " after "
-                                    + (fetchAttempt + 1)
-                                    + " of "
-                                    + (tileFailureRetryCount + 1)
-                                    + " attempts.";
-                    if (fetchAttempt < tileFailureRetryCount) {
-                        log.debug(logMsg);
-                        if (tileFailureRetryWaitTime > 0) {
-                            log.trace(
-                                    "Waiting " + tileFailureRetryWaitTime + " before trying again");
-                            waitToRetry();
-                        }
-                    } else {
-                        log.warn(
-                                logMsg
-                                        + " Skipping and continuing with next tile. Total failure count across threads is at: "
-                                        + sharedFailureCount,
-                                e);
-                    }
-                }
+            if (!seedWithRetries(tile, tryCache, 0) || !retryFailedSaves()) {
+                // too many failures
+                return;
             }
 
             if (log.isTraceEnabled()) {
@@ -190,8 +164,9 @@ class SeedTask extends GWCTask {
 
             // final long totalTilesCompleted = trIter.getTilesProcessed();
             // note: computing the # of tiles processed by this thread instead of by the whole group
-            // also reduces thread contention as the trIter methods are synchronized and profiler
-            // shows 16 threads block on synchronization about 40% the time
+            // also reduces thread contention as the TileRangeIterator methods are synchronized and
+            // profiler shows 16 threads block on synchronization about 40% the time. Use
+            // GWC_SEED_WORK_STEALING to give each thread its own TileRangeChunks worker instead
             final long tilesCompletedByThisThread =
                     seedCalls * metaTilingFactorX * metaTilingFactorY;
 
@@ -202,6 +177,11 @@ class SeedTask extends GWCTask {
             gridLoc = trIter.nextMetaGridLocation(gridLoc);
         }
 
+        // the meta tiles fetched by this task might still be encoding
+        if (!awaitSaves()) {
+            return;
+        }
+
         if (this.terminate) {
             log.info(
                     "Job on "
@@ -229,6 +209,188 @@ class SeedTask extends GWCTask {
         super.state = GWCTask.STATE.DONE;
     }
 
+    /**
+     * Seeds a single tile, retrying on failure as configured by the failure policy
+     *
+     * @param firstAttempt the number of attempts already made
+     * @return false if the task has to abort, as too many failures occurred
+     */
+    private boolean seedWithRetries(ConveyorTile tile, boolean tryCache, int firstAttempt)
+            throws GeoWebCacheException, InterruptedException {
+        for (int fetchAttempt = firstAttempt;
+                fetchAttempt <= tileFailureRetryCount || tileFailureRetryCount < 0;
+                fetchAttempt++) {
+            try {
+                checkInterrupted();
+                seedTile(tile, tryCache, fetchAttempt);
+                break; // success, let it go
+            } catch (Exception e) {
+                if (!onFailure(tile, fetchAttempt, e)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts and logs a failed attempt to seed a tile, waiting before the next attempt if any
+     *
+     * @return false if the task has to abort, as too many failures occurred
+     */
+    private boolean onFailure(ConveyorTile tile, int fetchAttempt, Exception e)
+            throws GeoWebCacheException, InterruptedException {
+        // if GWC_SEED_RETRY_COUNT was not set then none of the settings have effect, in
+        // order to keep backwards compatibility with the old behaviour
+        if (tileFailureRetryCount < 0) {
+            if (e instanceof GeoWebCacheException) {
+                throw (GeoWebCacheException) e;
+            }
+            throw new GeoWebCacheException(e);
+        }
+
+        long sharedFailureCount = sharedFailureCounter.incrementAndGet();
+        if (sharedFailureCount >= totalFailuresBeforeAborting) {
+            log.info(
+                    "Aborting seed thread "
+                            + getThreadName()
+                            + ". Error count reached configured maximum of "
+                            + totalFailuresBeforeAborting);
+            super.state = GWCTask.STATE.DEAD;
+            return false;
+        }
+        String logMsg =
+                "Seed failed at "
+                        + tile.toString()
+                        + " after "
+                        + (fetchAttempt + 1)
+                        + " of "
+                        + (tileFailureRetryCount + 1)
+                        + " attempts.";
+        if (fetchAttempt < tileFailureRetryCount) {
+            log.debug(logMsg);
+            if (tileFailureRetryWaitTime > 0) {
+                log.trace("Waiting " + tileFailureRetryWaitTime + " before trying again");
+                waitToRetry();
+            }
+        } else {
+            log.warn(
+                    logMsg
+                            + " Skipping and continuing with next tile. Total failure count across threads is at: "
+                            + sharedFailureCount,
+                    e);
+        }
+        return true;
+    }
+
+    /**
+     * Seeds a single tile, within the limits of the rate controller if there is one. If the other
+     * tiles of its meta tile were handed over to the encode pipeline, returns without waiting for
+     * them to be saved, unless {@link #MAX_PENDING_META_TILES} meta tiles of this task are still
+     * being saved.
+     */
+    private void seedTile(ConveyorTile tile, boolean tryCache, int fetchAttempt)
+            throws GeoWebCacheException, IOException, InterruptedException {
+        tile.setSiblingsSaved(null);
+        pendingMetaTiles.acquire();
+        boolean handedOff = false;
+        try {
+            if (rateController == null) {
+                tl.seedTile(tile, tryCache);
+            } else {
+                rateController.acquire();
+                final long start = System.currentTimeMillis();
+                boolean failed = true;
+                try {
+                    tl.seedTile(tile, tryCache);
+                    failed = false;
+                } finally {
+                    rateController.release(System.currentTimeMillis() - start, failed);
+                }
+            }
+            CompletableFuture<Void> siblingsSaved = tile.getSiblingsSaved();
+            if (siblingsSaved != null) {
+                siblingsSaved.whenComplete(
+                        (result, failure) -> {
+                            if (failure != null) {
+                                failedSaves.add(new FailedSave(tile, fetchAttempt, failure));
+                            }
+                            pendingMetaTiles.release();
+                        });
+                handedOff = true;
+            }
+        } finally {
+            if (!handedOff) {
+                pendingMetaTiles.release();
+            }
+        }
+    }
+
+    /**
+     * Seeds again the meta tiles whose tiles could not all be saved by the encode pipeline
+     *
+     * @return false if the task has to abort, as too many failures occurred
+     */
+    private boolean retryFailedSaves() throws GeoWebCacheException, InterruptedException {
+        FailedSave failed;
+        while ((failed = failedSaves.poll()) != null) {
+            SiblingsNotSavedException e = new SiblingsNotSavedException(failed.tile, failed.cause);
+            if (!onFailure(failed.tile, failed.fetchAttempt, e)) {
+                return false;
+            }
+            // the requested tile might be stored, checking the cache would skip the retry
+            if (failed.fetchAttempt < tileFailureRetryCount
+                    && !seedWithRetries(failed.tile, false, failed.fetchAttempt + 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Waits for the meta tiles of this task to be saved, seeding again the failed ones
+     *
+     * @return false if the task has to abort, as too many failures occurred
+     */
+    private boolean awaitSaves() throws GeoWebCacheException, InterruptedException {
+        while (true) {
+            pendingMetaTiles.acquire(MAX_PENDING_META_TILES);
+            pendingMetaTiles.release(MAX_PENDING_META_TILES);
+            if (failedSaves.isEmpty()) {
+                return true;
+            }
+            if (!retryFailedSaves()) {
+                return false;
+            }
+        }
+    }
+
+    /** A meta tile whose tiles could not all be saved by the encode pipeline */
+    private static class FailedSave {
+
+        final ConveyorTile tile;
+
+        final int fetchAttempt;
+
+        final Throwable cause;
+
+        FailedSave(ConveyorTile tile, int fetchAttempt, Throwable cause) {
+            this.tile = tile;
+            this.fetchAttempt = fetchAttempt;
+            this.cause = cause;
+        }
+    }
+
+    /** Thrown when the requested tile was seeded, but not all the tiles of its meta tile */
+    static class SiblingsNotSavedException extends GeoWebCacheException {
+
+        private static final long serialVersionUID = 1L;
+
+        SiblingsNotSavedException(ConveyorTile tile, Throwable cause) {
+            super("Unable to save the meta tile of " + tile, cause);
+        }
+    }
+
     private void reprioritize() {
         Thread.currentThread()
                 .setPriority((java.lang.Thread.NORM_PRIORITY + java.lang.Thread.MIN_PRIORITY) / 2);
@@ -321,10 +483,50 @@ class SeedTask extends GWCTask {
         this.sharedFailureCounter = sharedFailureCounter;
     }
 
+    /**
+     * Sets the pool encoding and storing the tiles fetched by this task, shared by all the tasks of
+     * the group. If not set, tiles are encoded as configured on the layer. The task {@link
+     * MetaTileSavePipeline#retain() retains} the pipeline, and releases it once done.
+     */
+    public void setEncodePipeline(MetaTileSavePipeline encodePipeline) {
+        if (this.encodePipeline != null) {
+            this.encodePipeline.release();
+        }
+        this.encodePipeline = encodePipeline == null ? null : encodePipeline.retain();
+    }
+
+    MetaTileSavePipeline getEncodePipeline() {
+        return encodePipeline;
+    }
+
+    /**
+     * Sets the controller adapting the number of tiles seeded concurrently to the backend latency
+     * and error rate, shared by the tasks seeding from the same backend. If not set, all the
+     * threads of the group seed concurrently. The task {@link SeedRateController#join() joins} the
+     * controller, and leaves it once done.
+     */
+    public void setRateController(SeedRateController rateController) {
+        if (this.rateController != null) {
+            this.rateController.leave();
+        }
+        this.rateController = rateController == null ? null : rateController.join();
+    }
+
+    SeedRateController getRateController() {
+        return rateController;
+    }
+
     @Override
     protected void dispose() {
         if (tl instanceof WMSLayer) {
             ((WMSLayer) tl).cleanUpThreadLocals();
         }
+        if (encodePipeline != null) {
+            // the last task of the group shuts down the pipeline threads
+            encodePipeline.release();
+        }
+        if (rateController != null) {
+            rateController.leave();
+        }
     }
 }
@@ -0,0 +1,59 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.seed;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor for the fetching threads of seed requests setting a {@link
+ * SeedRequest#getFetchThreadCount() fetch concurrency}. These threads spend most of their time
+ * waiting on the backend while the tiles are encoded elsewhere, so the pool can be sized to a high
+ * maximum: idle threads time out, and threads are created with a small stack to keep hundreds of
+ * them cheap. Tasks beyond the maximum wait in the queue, like on the regular seeding executor.
+ */
+public class SeederFetchThreadPoolExecutor extends SeederThreadPoolExecutor {
+
+    /** Stack size of the fetching threads, they only run the HTTP client and the tile loop */
+    static final long STACK_SIZE = 256 * 1024;
+
+    /** @param maxPoolSize maximum number of concurrent fetching threads across seed requests */
+    public SeederFetchThreadPoolExecutor(int maxPoolSize) {
+        super(
+                maxPoolSize,
+                maxPoolSize,
+                new LinkedBlockingQueue<Runnable>(),
+                new FetchThreadFactory());
+        allowCoreThreadTimeOut(true);
+    }
+
+    private static final class FetchThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t =
+                    new Thread(
+                            null,
+                            r,
+                            "GWC Seeder Fetch Thread-" + count.incrementAndGet(),
+                            STACK_SIZE);
+            t.setDaemon(false);
+            return t;
+        }
+    }
+}
@@ -14,6 +14,7 @@
  */
 package org.geowebcache.seed;
 
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -30,13 +31,15 @@ public class SeederThreadPoolExecutor extends ThreadPoolExecutor implements Disp
     private static final ThreadFactory tf = new CustomizableThreadFactory("GWC Seeder Thread-");
 
     public SeederThreadPoolExecutor(int corePoolSize, int maxPoolSize) {
-        super(
-                corePoolSize,
-                maxPoolSize,
-                60,
-                TimeUnit.SECONDS,
-                new LinkedBlockingQueue<Runnable>(),
-                tf);
+        this(corePoolSize, maxPoolSize, new LinkedBlockingQueue<Runnable>(), tf);
+    }
+
+    protected SeederThreadPoolExecutor(
+            int corePoolSize,
+            int maxPoolSize,
+            BlockingQueue<Runnable> workQueue,
+            ThreadFactory threadFactory) {
+        super(corePoolSize, maxPoolSize, 60, TimeUnit.SECONDS, workQueue, threadFactory);
     }
 
     /**
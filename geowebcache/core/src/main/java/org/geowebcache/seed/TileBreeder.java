@@ -16,9 +16,12 @@
  */
 package org.geowebcache.seed;
 
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -38,14 +41,18 @@ import org.geowebcache.GeoWebCacheException;
 import org.geowebcache.grid.BoundingBox;
 import org.geowebcache.grid.GridSubset;
 import org.geowebcache.grid.SRS;
+import org.geowebcache.layer.MetaTileSavePipeline;
 import org.geowebcache.layer.TileLayer;
 import org.geowebcache.layer.TileLayerDispatcher;
+import org.geowebcache.layer.wms.WMSLayer;
 import org.geowebcache.mime.MimeException;
 import org.geowebcache.mime.MimeType;
 import org.geowebcache.seed.GWCTask.STATE;
 import org.geowebcache.seed.GWCTask.TYPE;
+import org.geowebcache.storage.MetaGridLocationIterator;
 import org.geowebcache.storage.StorageBroker;
 import org.geowebcache.storage.TileRange;
+import org.geowebcache.storage.TileRangeChunks;
 import org.geowebcache.storage.TileRangeIterator;
 import org.geowebcache.util.GWCVars;
 import org.springframework.beans.BeansException;
@@ -72,6 +79,16 @@ import org.springframework.context.ApplicationContextAware;
  *       10} and you launch a seed task with four threads, when {@code 10} failures are reached by
  *       all or any of those four threads the four threads will abort the seeding task. The default
  *       is {@code 1000}.
+ *   <li>{@code GWC_SEED_WORK_STEALING}: if {@code true}, the tile range of a seed task is split in
+ *       chunks up front and each thread of the group claims chunks from its own queue, stealing
+ *       from the other threads once it runs dry, instead of all of them sharing a single
+ *       synchronized {@link TileRangeIterator}. Defaults to {@code false}.
+ *   <li>{@code GWC_SEED_TARGET_LATENCY}: if set to a positive number of milliseconds, the threads
+ *       of all the seed tasks hitting the same backend (WMS host, or layer for other layer types)
+ *       share a {@link SeedRateController} that lowers the number of tiles seeded concurrently
+ *       when the backend gets slower than this latency or fails, and raises it again up to the
+ *       total thread count as long as the backend keeps up. A seed request can override it with
+ *       its own {@code targetLatency}. Disabled by default.
  * </ul>
  *
  * These environment variables can be established by any of the following ways, in order of
@@ -103,10 +120,16 @@ public class TileBreeder implements ApplicationContextAware {
 
     private static final String GWC_SEED_RETRY_COUNT = "GWC_SEED_RETRY_COUNT";
 
+    private static final String GWC_SEED_WORK_STEALING = "GWC_SEED_WORK_STEALING";
+
+    private static final String GWC_SEED_TARGET_LATENCY = "GWC_SEED_TARGET_LATENCY";
+
     private static Log log = LogFactory.getLog(TileBreeder.class);
 
     private ThreadPoolExecutor threadPool;
 
+    private ThreadPoolExecutor fetchThreadPool;
+
     private TileLayerDispatcher layerDispatcher;
 
     private StorageBroker storageBroker;
@@ -126,10 +149,23 @@ public class TileBreeder implements ApplicationContextAware {
      */
     public static long TOTAL_FAILURES_BEFORE_ABORTING_DEFAULT = 1000;
 
+    /** Whether seed threads claim chunks of the tile range instead of sharing one iterator */
+    public static boolean WORK_STEALING_DEFAULT = false;
+
+    /**
+     * Backend latency (in milliseconds) above which seed tasks reduce their concurrency, 0 disables
+     * the adaptive rate control
+     */
+    public static long TARGET_LATENCY_DEFAULT = 0;
+
     private Map<Long, SubmittedTask> currentPool = new TreeMap<Long, SubmittedTask>();
 
     private AtomicLong currentId = new AtomicLong();
 
+    /** Rate controllers by {@link #backendKey(TileLayer) backend}, shared by all the seed tasks */
+    private final Map<String, SeedRateController> rateControllers =
+            new HashMap<String, SeedRateController>();
+
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
     // Number of dispatches without drain() being called.
@@ -159,13 +195,18 @@ public class TileBreeder implements ApplicationContextAware {
         String retryCount = GWCVars.findEnvVar(applicationContext, GWC_SEED_RETRY_COUNT);
         String retryWait = GWCVars.findEnvVar(applicationContext, GWC_SEED_RETRY_WAIT);
         String abortLimit = GWCVars.findEnvVar(applicationContext, GWC_SEED_ABORT_LIMIT);
+        String workStealing = GWCVars.findEnvVar(applicationContext, GWC_SEED_WORK_STEALING);
+        String targetLatency = GWCVars.findEnvVar(applicationContext, GWC_SEED_TARGET_LATENCY);
 
         TILE_FAILURE_RETRY_COUNT_DEFAULT = (int) toLong(GWC_SEED_RETRY_COUNT, retryCount, -1);
         TILE_FAILURE_RETRY_WAIT_TIME_DEFAULT = toLong(GWC_SEED_RETRY_WAIT, retryWait, 100);
         TOTAL_FAILURES_BEFORE_ABORTING_DEFAULT = toLong(GWC_SEED_ABORT_LIMIT, abortLimit, 1000);
+        WORK_STEALING_DEFAULT = Boolean.parseBoolean(workStealing);
+        TARGET_LATENCY_DEFAULT = toLong(GWC_SEED_TARGET_LATENCY, targetLatency, 0);
 
         checkPositive(TILE_FAILURE_RETRY_WAIT_TIME_DEFAULT, GWC_SEED_RETRY_WAIT);
         checkPositive(TOTAL_FAILURES_BEFORE_ABORTING_DEFAULT, GWC_SEED_ABORT_LIMIT);
+        checkPositive(TARGET_LATENCY_DEFAULT, GWC_SEED_TARGET_LATENCY);
     }
 
     @SuppressWarnings("serial")
@@ -205,8 +246,24 @@ public class TileBreeder implements ApplicationContextAware {
 
         TileRange tr = createTileRange(sr, tl);
 
-        GWCTask[] tasks =
-                createTasks(tr, tl, sr.getType(), sr.getThreadCount(), sr.getFilterUpdate());
+        GWCTask[] tasks;
+        Integer fetchThreadCount = sr.getFetchThreadCount();
+        if (fetchThreadCount != null && fetchThreadCount > 0 && sr.getType() != TYPE.TRUNCATE) {
+            Integer encodeThreadCount = sr.getEncodeThreadCount();
+            tasks =
+                    createTasks(
+                            tr,
+                            tl,
+                            sr.getType(),
+                            fetchThreadCount,
+                            encodeThreadCount == null ? 0 : encodeThreadCount,
+                            sr.getFilterUpdate());
+        } else {
+            tasks = createTasks(tr, tl, sr.getType(), sr.getThreadCount(), sr.getFilterUpdate());
+        }
+        if (sr.getTargetLatency() != null) {
+            setRateControl(tasks, tl, sr.getTargetLatency());
+        }
 
         dispatchTasks(tasks);
     }
@@ -244,6 +301,44 @@ public class TileBreeder implements ApplicationContextAware {
                 TOTAL_FAILURES_BEFORE_ABORTING_DEFAULT);
     }
 
+    /**
+     * Create seed tasks that only fetch meta tiles from the backend, and hand them over to a pool of
+     * {@code encodeThreadCount} threads, shared by the tasks, for slicing, encoding and storing.
+     * Only the pool threads encode, a task waits for room in the pool queue when it is full, and
+     * moves on to the next meta tile while the previous ones are being encoded. The tasks are
+     * dispatched on the fetch thread pool, so the backend concurrency is not limited by the size of
+     * the regular seeding thread pool. The encoding threads are shut down once all the tasks
+     * completed.
+     *
+     * @param fetchThreadCount The number of concurrent backend requests
+     * @param encodeThreadCount The number of encoding threads, the number of available processors
+     *     if zero or less
+     * @return Array of tasks. Will have length fetchThreadCount.
+     */
+    public GWCTask[] createTasks(
+            TileRange tr,
+            TileLayer tl,
+            GWCTask.TYPE type,
+            int fetchThreadCount,
+            int encodeThreadCount,
+            boolean filterUpdate)
+            throws GeoWebCacheException {
+        if (type == TYPE.TRUNCATE) {
+            throw new IllegalArgumentException("Truncate tasks do not fetch tiles");
+        }
+        if (encodeThreadCount < 1) {
+            encodeThreadCount = Runtime.getRuntime().availableProcessors();
+        }
+        GWCTask[] tasks = createTasks(tr, tl, type, fetchThreadCount, filterUpdate);
+        MetaTileSavePipeline encodePipeline =
+                new MetaTileSavePipeline(
+                        encodeThreadCount, MetaTileSavePipeline.DEFAULT_QUEUE_SIZE, true);
+        for (GWCTask task : tasks) {
+            ((SeedTask) task).setEncodePipeline(encodePipeline);
+        }
+        return tasks;
+    }
+
     /**
      * Create tasks to manipulate the cache (Seed, truncate, etc). They will still need to be
      * dispatched.
@@ -276,6 +371,10 @@ public class TileBreeder implements ApplicationContextAware {
         }
 
         TileRangeIterator trIter = new TileRangeIterator(tr, tl.getMetaTilingFactors());
+        TileRangeChunks chunks = null;
+        if (WORK_STEALING_DEFAULT && type != TYPE.TRUNCATE) {
+            chunks = new TileRangeChunks(tr, tl.getMetaTilingFactors(), threadCount);
+        }
 
         GWCTask[] tasks = new GWCTask[threadCount];
 
@@ -285,7 +384,8 @@ public class TileBreeder implements ApplicationContextAware {
             if (type == TYPE.TRUNCATE) {
                 tasks[i] = createTruncateTask(trIter, tl, filterUpdate);
             } else {
-                SeedTask task = (SeedTask) createSeedTask(type, trIter, tl, filterUpdate);
+                MetaGridLocationIterator iter = chunks == null ? trIter : chunks.worker(i);
+                SeedTask task = (SeedTask) createSeedTask(type, iter, tl, filterUpdate);
                 task.setFailurePolicy(
                         tileFailureRetryCount,
                         tileFailureRetryWaitTime,
@@ -295,10 +395,60 @@ public class TileBreeder implements ApplicationContextAware {
             }
             tasks[i].setThreadInfo(sharedThreadCount, i);
         }
+        setRateControl(tasks, tl, TARGET_LATENCY_DEFAULT);
 
         return tasks;
     }
 
+    /**
+     * Makes the seed tasks of a group share the {@link SeedRateController} of the layer backend
+     * with the tasks of any other group seeding from it, replacing any previous one. Truncate tasks
+     * are left untouched.
+     *
+     * @param targetLatency the backend latency target in milliseconds, 0 or less removes the rate
+     *     control. The controller of a backend uses the target of the latest seed request.
+     */
+    private void setRateControl(GWCTask[] tasks, TileLayer tl, long targetLatency) {
+        // the tasks join under the lock, so that an idle controller is never handed out twice
+        synchronized (rateControllers) {
+            SeedRateController controller = null;
+            if (targetLatency > 0) {
+                String key = backendKey(tl);
+                controller = rateControllers.get(key);
+                if (controller == null || controller.isIdle()) {
+                    controller = new SeedRateController(0, targetLatency);
+                    rateControllers.put(key, controller);
+                } else {
+                    controller.setTargetLatency(targetLatency);
+                }
+            }
+            for (GWCTask task : tasks) {
+                if (task instanceof SeedTask) {
+                    ((SeedTask) task).setRateController(controller);
+                }
+            }
+        }
+    }
+
+    /**
+     * Identifies the server a layer seeds from: the host of the first WMS URL of a {@link
+     * WMSLayer}, the layer itself otherwise
+     */
+    static String backendKey(TileLayer tl) {
+        if (tl instanceof WMSLayer) {
+            String[] urls = ((WMSLayer) tl).getWMSurl();
+            if (urls != null && urls.length > 0 && urls[0] != null) {
+                try {
+                    URL url = new URL(urls[0]);
+                    return "wms:" + url.getHost() + ":" + url.getPort();
+                } catch (MalformedURLException e) {
+                    return "wms:" + urls[0];
+                }
+            }
+        }
+        return "layer:" + tl.getName();
+    }
+
     /** Dispatches tasks */
     public void dispatchTasks(GWCTask[] tasks) {
         lock.writeLock().lock();
@@ -307,7 +457,7 @@ public class TileBreeder implements ApplicationContextAware {
                 final Long taskId = this.currentId.incrementAndGet();
                 final GWCTask task = tasks[i];
                 task.setTaskId(taskId);
-                Future<GWCTask> future = threadPool.submit(new MTSeeder(task));
+                Future<GWCTask> future = executorFor(task).submit(new MTSeeder(task));
                 this.currentPool.put(taskId, new SubmittedTask(task, future));
             }
             dispatchesWithoutDrain++;
@@ -320,6 +470,16 @@ public class TileBreeder implements ApplicationContextAware {
         }
     }
 
+    /** Fetch only tasks go to the fetch thread pool, if configured, all others to the main one */
+    private ThreadPoolExecutor executorFor(GWCTask task) {
+        if (fetchThreadPool != null
+                && task instanceof SeedTask
+                && ((SeedTask) task).getEncodePipeline() != null) {
+            return fetchThreadPool;
+        }
+        return threadPool;
+    }
+
     /** Find the tile range for a Seed Request. */
     public static TileRange createTileRange(SeedRequest req, TileLayer tl)
             throws GeoWebCacheException {
@@ -391,7 +551,7 @@ public class TileBreeder implements ApplicationContextAware {
      * @param tl the layer
      */
     private GWCTask createSeedTask(
-            TYPE type, TileRangeIterator trIter, TileLayer tl, boolean doFilterUpdate)
+            TYPE type, MetaGridLocationIterator trIter, TileLayer tl, boolean doFilterUpdate)
             throws IllegalArgumentException {
 
         switch (type) {
@@ -482,6 +642,9 @@ public class TileBreeder implements ApplicationContextAware {
         try {
             dispatchesWithoutDrain = 0;
             threadPool.purge();
+            if (fetchThreadPool != null) {
+                fetchThreadPool.purge();
+            }
             for (Iterator<Entry<Long, SubmittedTask>> it = this.currentPool.entrySet().iterator();
                     it.hasNext(); ) {
                 if (it.next().getValue().future.isDone()) {
@@ -501,6 +664,14 @@ public class TileBreeder implements ApplicationContextAware {
         threadPool = stpe;
     }
 
+    /**
+     * Sets the executor for seed requests with a {@link SeedRequest#getFetchThreadCount() fetch
+     * concurrency}. If not set, they run on the regular seeding thread pool.
+     */
+    public void setFetchThreadPoolExecutor(SeederFetchThreadPoolExecutor executor) {
+        fetchThreadPool = executor;
+    }
+
     public void setStorageBroker(StorageBroker sb) {
         storageBroker = sb;
     }
@@ -179,6 +179,22 @@ public interface BlobStore {
      */
     Map<String, Optional<Map<String, String>>> getParametersMapping(String layerName);
 
+    /**
+     * Lists the tiles stored for a range, reporting their size to the visitor. Tiles outside the
+     * range bounds are not reported.
+     *
+     * <p>This is meant for bulk inventories, such as rebuilding the disk quota usage of a layer,
+     * and lets each store walk its own layout (directories, object listings, database tables)
+     * instead of probing tile by tile.
+     *
+     * @return {@code true} if the range was scanned, {@code false} if the store can't list its
+     *     tiles
+     */
+    public default boolean scan(TileRange range, TileScanVisitor visitor)
+            throws StorageException {
+        return false;
+    }
+
     /** If the given layer is cached, remove */
     public default boolean purgeOrphans(TileLayer layer) throws StorageException {
         // TODO maybe do purging based on gridset and format
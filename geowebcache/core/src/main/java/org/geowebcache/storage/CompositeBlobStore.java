@@ -172,6 +172,11 @@ public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationList
         return readFunctionUnsafe(() -> store(obj.getLayerName()).delete(obj));
     }
 
+    @Override
+    public boolean scan(TileRange range, TileScanVisitor visitor) throws StorageException {
+        return readFunctionUnsafe(() -> store(range.getLayerName()).scan(range, visitor));
+    }
+
     @Override
     public boolean get(TileObject obj) throws StorageException {
         return readFunctionUnsafe(() -> store(obj.getLayerName()).get(obj));
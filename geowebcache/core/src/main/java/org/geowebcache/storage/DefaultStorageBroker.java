@@ -77,6 +77,11 @@ public class DefaultStorageBroker implements StorageBroker {
         return blobStore.delete(trObj);
     }
 
+    @Override
+    public boolean scan(TileRange range, TileScanVisitor visitor) throws StorageException {
+        return blobStore.scan(range, visitor);
+    }
+
     public boolean get(TileObject tileObj) throws StorageException {
         return blobStore.get(tileObj);
     }
@@ -100,19 +105,14 @@ public class DefaultStorageBroker implements StorageBroker {
 
     public boolean getTransient(TileObject tile) {
         String key = TransientCache.computeTransientKey(tile);
-        Resource resource;
-        synchronized (transientCache) {
-            resource = transientCache.get(key);
-        }
+        Resource resource = transientCache.get(key);
         tile.setBlob(resource);
         return resource != null;
     }
 
     public void putTransient(TileObject tile) {
         String key = TransientCache.computeTransientKey(tile);
-        synchronized (transientCache) {
-            transientCache.put(key, tile.getBlob());
-        }
+        transientCache.put(key, tile.getBlob());
     }
 
     /**
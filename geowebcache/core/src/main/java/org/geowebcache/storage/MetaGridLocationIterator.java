@@ -0,0 +1,38 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.storage;
+
+/**
+ * Hands out the grid locations of the meta tiles in a {@link TileRange}, one per call, to a
+ * seeding thread.
+ *
+ * @see TileRangeIterator
+ * @see TileRangeChunks
+ */
+public interface MetaGridLocationIterator {
+
+    /** Returns the underlying tile range */
+    TileRange getTileRange();
+
+    /**
+     * Returns a grid location within the next meta tile to process.
+     *
+     * @param gridLoc as an optimization, re-use the previous gridLoc. It will be changed and used
+     *     as the return value. For the first call, use a new 3 element array.
+     * @return {@code null} if there're no more tiles to return, the next grid location otherwise.
+     *     The array has three elements: {x,y,z}
+     */
+    long[] nextMetaGridLocation(long[] gridLoc);
+}
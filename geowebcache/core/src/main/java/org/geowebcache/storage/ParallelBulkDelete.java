@@ -0,0 +1,300 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.storage;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Bulk delete engine for object stores with a flat, "/" separated key space, like S3 or Azure.
+ *
+ * <p>A prefix is deleted by walking the key hierarchy one level at a time (layer, gridset, format,
+ * parameters, zoom level and tile column for the TMS layout), listing each prefix on its own task,
+ * and issuing the deletes of each listed page as soon as it's available, so listing and deleting
+ * overlap and progress with several prefixes at once instead of enumerating the whole prefix first.
+ *
+ * <p>Walking down the hierarchy costs a listing per prefix, so levels with many small prefixes,
+ * like the tile columns of a zoom level, would take a listing each for a handful of tiles. When
+ * the first page of a prefix holds more than {@code flatListingThreshold} child prefixes the whole
+ * prefix is listed without a delimiter instead, which takes a listing per page of keys.
+ *
+ * <p>At most {@code parallelism} tasks per bulk delete are queued on the executor; when they're
+ * all busy the thread that produced more work runs it itself. That bounds memory use on
+ * million-tile deletes, and means tasks never wait on each other, so the executor can be shared
+ * and bounded without risking a deadlock.
+ */
+public class ParallelBulkDelete {
+
+    static final Log log = LogFactory.getLog(ParallelBulkDelete.class);
+
+    /** How often progress is logged while waiting for a bulk delete to finish */
+    static final long PROGRESS_INTERVAL_MILLIS = 30_000;
+
+    /** Default number of child prefixes above which a prefix is listed flat */
+    public static final int DEFAULT_FLAT_LISTING_THRESHOLD = 100;
+
+    /** Lists the contents of a prefix */
+    public interface Lister {
+        /**
+         * Lists a page of the contents of {@code prefix}.
+         *
+         * @param marker {@code null} for the first page, the previous page's marker otherwise
+         * @param flat {@code false} to list the direct children of the prefix, {@code true} to list
+         *     all the keys under it, at any depth, with no prefixes
+         */
+        Page list(String prefix, @Nullable String marker, boolean flat) throws Exception;
+    }
+
+    /** Deletes a batch of keys */
+    public interface Deleter {
+        void delete(List<String> keys) throws Exception;
+    }
+
+    /** A page of the direct children of a prefix */
+    public static class Page {
+
+        private final List<String> keys;
+
+        private final List<String> prefixes;
+
+        private final String nextMarker;
+
+        /**
+         * @param keys the keys of the objects to delete right under the prefix
+         * @param prefixes the prefixes one level down
+         * @param nextMarker the marker of the next page, {@code null} if this is the last one
+         */
+        public Page(List<String> keys, List<String> prefixes, @Nullable String nextMarker) {
+            this.keys = ImmutableList.copyOf(keys);
+            this.prefixes = ImmutableList.copyOf(prefixes);
+            this.nextMarker = nextMarker;
+        }
+    }
+
+    private final ExecutorService executor;
+
+    private final int parallelism;
+
+    private final int flatListingThreshold;
+
+    /**
+     * @param executor runs the listing and delete tasks, may be shared with other bulk deletes
+     * @param parallelism the maximum number of tasks each bulk delete queues on the executor
+     */
+    public ParallelBulkDelete(ExecutorService executor, int parallelism) {
+        this(executor, parallelism, DEFAULT_FLAT_LISTING_THRESHOLD);
+    }
+
+    /**
+     * @param executor runs the listing and delete tasks, may be shared with other bulk deletes
+     * @param parallelism the maximum number of tasks each bulk delete queues on the executor
+     * @param flatListingThreshold number of child prefixes in the first page of a prefix above
+     *     which it's listed flat
+     */
+    public ParallelBulkDelete(ExecutorService executor, int parallelism, int flatListingThreshold) {
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+        this.flatListingThreshold = flatListingThreshold;
+    }
+
+    /**
+     * Deletes everything the lister finds under {@code prefix}, blocking until done.
+     *
+     * @param batchSize the maximum number of keys handed to the deleter at once
+     * @param description what's being deleted, for progress logging
+     * @return the number of deleted objects
+     */
+    public long deletePrefix(
+            String prefix, Lister lister, Deleter deleter, int batchSize, String description)
+            throws StorageException, InterruptedException {
+        Run run = new Run(lister, deleter, batchSize, description);
+        run.submit(() -> run.list(prefix, false));
+        return run.await();
+    }
+
+    /**
+     * Deletes batches of keys, blocking until done. The batches are consumed as the deletes
+     * progress, so the iterator can be lazy over a large number of keys.
+     *
+     * @param description what's being deleted, for progress logging
+     * @return the number of deleted objects
+     */
+    public long deleteKeys(Iterator<List<String>> batches, Deleter deleter, String description)
+            throws StorageException, InterruptedException {
+        Run run = new Run(null, deleter, Integer.MAX_VALUE, description);
+        while (batches.hasNext() && !run.isStopped()) {
+            List<String> batch = batches.next();
+            run.submit(() -> run.delete(batch));
+        }
+        return run.await();
+    }
+
+    /** A single bulk delete */
+    private class Run {
+
+        private final Lister lister;
+
+        private final Deleter deleter;
+
+        private final int batchSize;
+
+        private final String description;
+
+        private final Semaphore queued = new Semaphore(parallelism);
+
+        private final AtomicLong deleted = new AtomicLong();
+
+        private final AtomicLong listed = new AtomicLong();
+
+        private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+        private volatile boolean cancelled;
+
+        /** Number of tasks queued or running on the executor, guarded by this */
+        private int pending;
+
+        Run(Lister lister, Deleter deleter, int batchSize, String description) {
+            this.lister = lister;
+            this.deleter = deleter;
+            this.batchSize = batchSize;
+            this.description = description;
+        }
+
+        boolean isStopped() {
+            return cancelled || failure.get() != null;
+        }
+
+        /** Queues the task, or runs it right away if there are enough tasks queued already */
+        void submit(Task task) {
+            if (!queued.tryAcquire()) {
+                run(task);
+                return;
+            }
+            synchronized (this) {
+                pending++;
+            }
+            try {
+                executor.submit(
+                        () -> {
+                            try {
+                                run(task);
+                            } finally {
+                                queued.release();
+                                taskDone();
+                            }
+                        });
+            } catch (RejectedExecutionException e) {
+                queued.release();
+                taskDone();
+                failure.compareAndSet(null, e);
+            }
+        }
+
+        private void run(Task task) {
+            if (isStopped()) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+
+        private synchronized void taskDone() {
+            if (--pending == 0) {
+                notifyAll();
+            }
+        }
+
+        void list(String prefix, boolean flat) throws Exception {
+            String marker = null;
+            do {
+                if (isStopped()) {
+                    return;
+                }
+                Page page = lister.list(prefix, marker, flat);
+                listed.incrementAndGet();
+                if (marker == null && page.prefixes.size() > flatListingThreshold) {
+                    // nothing was deleted yet, start over listing all the keys at once
+                    list(prefix, true);
+                    return;
+                }
+                for (List<String> batch : Lists.partition(page.keys, batchSize)) {
+                    submit(() -> delete(batch));
+                }
+                for (String child : page.prefixes) {
+                    submit(() -> list(child, false));
+                }
+                marker = page.nextMarker;
+            } while (marker != null);
+        }
+
+        void delete(List<String> keys) throws Exception {
+            if (!keys.isEmpty()) {
+                deleter.delete(keys);
+                deleted.addAndGet(keys.size());
+            }
+        }
+
+        long await() throws StorageException, InterruptedException {
+            try {
+                synchronized (this) {
+                    long lastReport = System.currentTimeMillis();
+                    while (pending > 0) {
+                        wait(PROGRESS_INTERVAL_MILLIS);
+                        long now = System.currentTimeMillis();
+                        if (pending > 0 && now - lastReport >= PROGRESS_INTERVAL_MILLIS) {
+                            lastReport = now;
+                            log.info(
+                                    String.format(
+                                            "Bulk delete of %s in progress: %d objects deleted, %d pages listed",
+                                            description, deleted.get(), listed.get()));
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                cancelled = true;
+                throw e;
+            }
+            Exception e = failure.get();
+            if (e != null) {
+                throw new StorageException(
+                        "Bulk delete of "
+                                + description
+                                + " failed after deleting "
+                                + deleted.get()
+                                + " objects",
+                        e);
+            }
+            return deleted.get();
+        }
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+}
@@ -46,6 +46,17 @@ public interface StorageBroker {
 
     boolean delete(TileRange trObj) throws StorageException;
 
+    /**
+     * Lists the tiles stored for a range
+     *
+     * @return {@code true} if the range was scanned, {@code false} if the blob store can't list
+     *     its tiles
+     * @see BlobStore#scan(TileRange, TileScanVisitor)
+     */
+    default boolean scan(TileRange range, TileScanVisitor visitor) throws StorageException {
+        return false;
+    }
+
     /**
      * Sets the Resource for the given TileObject from storage
      *
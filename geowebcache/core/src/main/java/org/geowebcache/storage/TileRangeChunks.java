@@ -0,0 +1,222 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Splits the meta tiles of a {@link TileRange} in chunks up front, and deals them out to a fixed
+ * number of workers. Each worker iterates over the chunks of its own queue, and once that is empty
+ * steals chunks from the tail of the other workers' queues. Unlike a shared {@link
+ * TileRangeIterator} there is no monitor on the hot path: a worker only touches a lock free queue
+ * once per chunk.
+ *
+ * <p>Chunks are runs of meta tiles of a single zoom level, in the same row by row order used by
+ * {@link TileRangeIterator}, sized so that each worker gets about {@link #CHUNKS_PER_WORKER} of
+ * them.
+ */
+public class TileRangeChunks {
+
+    /** Target number of chunks per worker, more chunks balance better but are claimed more often */
+    static final int CHUNKS_PER_WORKER = 16;
+
+    private final TileRange tr;
+
+    private final DiscontinuousTileRange dtr;
+
+    private final int metaX;
+
+    private final int metaY;
+
+    private final List<ConcurrentLinkedDeque<Chunk>> queues;
+
+    /**
+     * Note that the bounds of the tile range must already be expanded to the meta tile factors for
+     * this to work.
+     *
+     * @param workers the number of workers that will iterate over the chunks
+     */
+    public TileRangeChunks(TileRange tr, int[] metaTilingFactors, int workers) {
+        this.tr = tr;
+        this.metaX = metaTilingFactors[0];
+        this.metaY = metaTilingFactors[1];
+        this.dtr = tr instanceof DiscontinuousTileRange ? (DiscontinuousTileRange) tr : null;
+
+        final int nWorkers = Math.max(1, workers);
+        queues = new ArrayList<>(nWorkers);
+        for (int i = 0; i < nWorkers; i++) {
+            queues.add(new ConcurrentLinkedDeque<>());
+        }
+
+        long total = 0;
+        for (int z = tr.getZoomStart(); z <= tr.getZoomStop(); z++) {
+            total += metaTilesX(z) * metaTilesY(z);
+        }
+        final long chunkSize = Math.max(1, total / ((long) nWorkers * CHUNKS_PER_WORKER));
+
+        // deal the chunks round robin, so that every worker starts from the lower zoom levels
+        int next = 0;
+        for (int z = tr.getZoomStart(); z <= tr.getZoomStop(); z++) {
+            long levelCount = metaTilesX(z) * metaTilesY(z);
+            for (long start = 0; start < levelCount; start += chunkSize) {
+                long end = Math.min(levelCount, start + chunkSize);
+                queues.get(next).addLast(new Chunk(z, start, end));
+                next = (next + 1) % nWorkers;
+            }
+        }
+    }
+
+    private long metaTilesX(int z) {
+        long[] bounds = tr.rangeBounds(z);
+        return (bounds[2] - bounds[0] + metaX) / metaX;
+    }
+
+    private long metaTilesY(int z) {
+        long[] bounds = tr.rangeBounds(z);
+        return (bounds[3] - bounds[1] + metaY) / metaY;
+    }
+
+    /** Returns the underlying tile range */
+    public TileRange getTileRange() {
+        return tr;
+    }
+
+    /** @return the number of workers the chunks have been dealt to */
+    public int getWorkerCount() {
+        return queues.size();
+    }
+
+    /** @return the number of chunks not claimed yet by any worker */
+    public int getPendingChunks() {
+        int count = 0;
+        for (ConcurrentLinkedDeque<Chunk> queue : queues) {
+            count += queue.size();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the iterator for a worker. Each worker iterator must be used by a single thread at a
+     * time.
+     *
+     * @param index the worker index, between 0 and {@link #getWorkerCount()} excluded
+     */
+    public MetaGridLocationIterator worker(int index) {
+        return new Worker(index);
+    }
+
+    /** Claims the next chunk for the given worker, stealing it from the others if needed */
+    private Chunk claim(int index) {
+        Chunk chunk = queues.get(index).pollFirst();
+        if (chunk != null) {
+            return chunk;
+        }
+        // steal from the tail, the opposite end the owner works on
+        for (int i = 1; i < queues.size(); i++) {
+            chunk = queues.get((index + i) % queues.size()).pollLast();
+            if (chunk != null) {
+                return chunk;
+            }
+        }
+        return null;
+    }
+
+    /** A run of meta tiles in a zoom level, by row major meta tile index */
+    private static final class Chunk {
+        final int z;
+
+        final long start;
+
+        final long end;
+
+        Chunk(int z, long start, long end) {
+            this.z = z;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private final class Worker implements MetaGridLocationIterator {
+
+        private final int index;
+
+        private Chunk chunk;
+
+        private long[] levelBounds;
+
+        private long columns;
+
+        private long next;
+
+        Worker(int index) {
+            if (index < 0 || index >= queues.size()) {
+                throw new IllegalArgumentException(
+                        "Worker index " + index + " out of range, workers: " + queues.size());
+            }
+            this.index = index;
+        }
+
+        @Override
+        public TileRange getTileRange() {
+            return tr;
+        }
+
+        @Override
+        public long[] nextMetaGridLocation(long[] gridLoc) {
+            while (true) {
+                if (chunk == null || next >= chunk.end) {
+                    chunk = claim(index);
+                    if (chunk == null) {
+                        return null;
+                    }
+                    levelBounds = tr.rangeBounds(chunk.z);
+                    columns = metaTilesX(chunk.z);
+                    next = chunk.start;
+                }
+                long metaIndex = next++;
+                gridLoc[0] = levelBounds[0] + (metaIndex % columns) * metaX;
+                gridLoc[1] = levelBounds[1] + (metaIndex / columns) * metaY;
+                gridLoc[2] = chunk.z;
+                if (checkGridLocation(gridLoc)) {
+                    return gridLoc;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether this grid location, or any on the same meta tile, should be included according
+     * to the DiscontinuousTileRange
+     */
+    private boolean checkGridLocation(long[] gridLoc) {
+        if (dtr == null) {
+            return true;
+        }
+        long[] subIdx = new long[3];
+        subIdx[2] = gridLoc[2];
+        for (int i = 0; i < this.metaX; i++) {
+            for (int j = 0; j < this.metaY; j++) {
+                subIdx[0] = gridLoc[0] + i;
+                subIdx[1] = gridLoc[1] + j;
+                if (dtr.contains(subIdx)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
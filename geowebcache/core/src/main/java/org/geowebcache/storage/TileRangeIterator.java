@@ -16,7 +16,13 @@ package org.geowebcache.storage;
 
 import java.util.concurrent.atomic.AtomicLong;
 
-public class TileRangeIterator {
+/**
+ * Iterates over the meta tiles of a {@link TileRange}. A single instance can be shared by several
+ * threads, which then take turns on its monitor.
+ *
+ * @see TileRangeChunks for a variant without a shared monitor
+ */
+public class TileRangeIterator implements MetaGridLocationIterator {
 
     private final TileRange tr;
 
@@ -49,6 +55,7 @@ public class TileRangeIterator {
     }
 
     /** Returns the underlying tile range */
+    @Override
     public TileRange getTileRange() {
         return tr;
     }
@@ -66,6 +73,7 @@ public class TileRangeIterator {
      * @return {@code null} if there're no more tiles to return, the next grid location in the
      *     iterator otherwise. The array has three elements: {x,y,z}
      */
+    @Override
     public synchronized long[] nextMetaGridLocation(final long[] gridLoc) {
         long[] levelBounds;
         long x;
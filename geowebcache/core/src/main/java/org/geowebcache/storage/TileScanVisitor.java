@@ -0,0 +1,36 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.storage;
+
+/**
+ * Receives the tiles found by {@link BlobStore#scan(TileRange, TileScanVisitor)}.
+ *
+ * <p>Stores may call the visitor from the thread running the scan only, but make no promise about
+ * the order the tiles are visited in.
+ */
+@FunctionalInterface
+public interface TileScanVisitor {
+
+    /**
+     * Called for each stored tile of the scanned range
+     *
+     * @param x the tile column
+     * @param y the tile row
+     * @param z the zoom level
+     * @param size the size of the stored tile, in bytes
+     * @throws StorageException to abort the scan
+     */
+    void visit(long x, long y, int z, long size) throws StorageException;
+}
@@ -17,10 +17,13 @@ package org.geowebcache.storage;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Ticker;
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 import org.geowebcache.io.ByteArrayResource;
 import org.geowebcache.io.Resource;
 import org.geowebcache.mime.MimeType;
@@ -28,7 +31,14 @@ import org.geowebcache.storage.blobstore.file.DefaultFilePathGenerator;
 import org.geowebcache.storage.blobstore.file.FilePathGenerator;
 
 /**
- * Non-thread safe Resource cache. Currently in-memory only.
+ * Thread safe Resource cache. Currently in-memory only.
+ *
+ * <p>Resources are kept in a {@link ConcurrentHashMap}, so concurrent requests only contend when
+ * they hit the same hash bin, and a lock free queue records the insertion order. As all the
+ * resources share the same expiry delay the insertion order is also the expiry order, so both
+ * expired resources and the ones exceeding the size limits are removed from the head of the queue
+ * without scanning the whole cache. Only one thread at a time removes from the queue, the others
+ * just append to it and skip the removal pass.
  *
  * @author Ian Schneider <ischneider@opengeo.org>
  * @author Kevin Smith, Boundless
@@ -37,11 +47,17 @@ public class TransientCache {
 
     private final int maxTiles;
 
-    private final int maxStorage;
+    private final long maxStorage;
 
     private final long expireDelay;
 
-    private long currentStorage;
+    private final AtomicLong currentStorage = new AtomicLong();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
 
     private Ticker ticker = Ticker.systemTicker();
 
@@ -51,17 +67,17 @@ public class TransientCache {
      */
     private static FilePathGenerator keyGenerator = new DefaultFilePathGenerator("");
 
-    private Map<String, CachedResource> cache =
-            new LinkedHashMap<String, CachedResource>() {
+    private final ConcurrentHashMap<String, CachedResource> cache = new ConcurrentHashMap<>();
 
-                /** serialVersionUID */
-                private static final long serialVersionUID = -4106644240603796847L;
+    /**
+     * Cached resources in insertion order. It may also contain resources already removed from the
+     * cache, which are discarded once they reach the head of the queue.
+     */
+    private final ConcurrentLinkedQueue<CachedResource> insertionOrder =
+            new ConcurrentLinkedQueue<>();
 
-                @Override
-                protected boolean removeEldestEntry(Entry<String, CachedResource> eldest) {
-                    return removeEntries(eldest);
-                }
-            };
+    /** Held while removing from the head of {@link #insertionOrder} */
+    private final ReentrantLock removalLock = new ReentrantLock();
 
     /**
      * @param maxTiles Maximum number of tiles in cache
@@ -70,7 +86,7 @@ public class TransientCache {
      */
     public TransientCache(int maxTiles, int maxStorageKB, long expireDelay) {
         this.maxTiles = maxTiles;
-        this.maxStorage = maxStorageKB * 1024;
+        this.maxStorage = maxStorageKB * 1024L;
         this.expireDelay = expireDelay;
     }
 
@@ -81,25 +97,77 @@ public class TransientCache {
 
     /** The currently used storage. May include expired resources not yet cleared. */
     public long storageSize() {
-        return currentStorage;
+        return currentStorage.get();
+    }
+
+    /** Number of {@link #get(String)} calls that returned a resource */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /** Number of {@link #get(String)} calls that did not find a valid resource */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /** Number of resources removed because they expired or to stay within the size limits */
+    public long getEvictionCount() {
+        return evictionCount.sum();
     }
 
     /**
-     * Store a resource
+     * Store a resource. The contents are copied once, so the caller can reuse the resource right
+     * after the call.
      *
      * @param key key to store the resource under
      * @param r the resource to cache
      */
     public void put(String key, Resource r) {
-        byte[] buf = new byte[(int) r.getSize()];
+        byte[] buf = copy(r);
+        CachedResource blob = new CachedResource(key, new ByteArrayResource(buf));
+        CachedResource previous = cache.put(key, blob);
+        if (previous != null) {
+            currentStorage.addAndGet(-previous.size);
+            previous.content = null;
+        }
+        currentStorage.addAndGet(blob.size);
+        insertionOrder.add(blob);
+        removeEntries();
+    }
+
+    /** Copies the resource contents in an array of its exact size */
+    private static byte[] copy(Resource r) {
+        final ByteBuffer target = ByteBuffer.allocate((int) r.getSize());
         try {
-            r.getInputStream().read(buf);
+            r.transferTo(
+                    new WritableByteChannel() {
+
+                        @Override
+                        public int write(ByteBuffer src) throws IOException {
+                            if (src.remaining() > target.remaining()) {
+                                throw new IOException("Resource is bigger than its declared size");
+                            }
+                            int written = src.remaining();
+                            target.put(src);
+                            return written;
+                        }
+
+                        @Override
+                        public boolean isOpen() {
+                            return true;
+                        }
+
+                        @Override
+                        public void close() {}
+                    });
         } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
-        CachedResource blob = new CachedResource(new ByteArrayResource(buf));
-        currentStorage += r.getSize();
-        cache.put(key, blob);
+        if (target.hasRemaining()) {
+            throw new IllegalStateException(
+                    "Resource is smaller than its declared size " + r.getSize());
+        }
+        return target.array();
     }
 
     /**
@@ -108,17 +176,23 @@ public class TransientCache {
      * @return The resource cached under the given key, or null if no resource is cached.
      */
     public Resource get(String key) {
-        CachedResource cached = cache.get(key);
+        CachedResource cached = cache.remove(key);
         if (cached != null) {
-            cache.remove(key);
-            currentStorage -= cached.content.getSize();
+            currentStorage.addAndGet(-cached.size);
+            Resource content = cached.content;
+            // the queue may still reference the entry for a while, don't retain the contents
+            cached.content = null;
 
             if (cached.time + expireDelay < currentTime()) {
+                evictionCount.increment();
+                missCount.increment();
                 return null;
             } else {
-                return cached.content;
+                hitCount.increment();
+                return content;
             }
         }
+        missCount.increment();
         return null;
     }
 
@@ -127,20 +201,41 @@ public class TransientCache {
         return ticker.read() / 1000;
     }
 
-    // Gets called by overridden LinkedHashMap.removeEldestEntry
-    private boolean removeEntries(Entry<String, CachedResource> eldest) {
-        // iterator returns items in order added so oldest items are first
-        Iterator<CachedResource> items = cache.values().iterator();
-        while (items.hasNext() && (currentStorage > maxStorage || cache.size() > maxTiles)) {
-            CachedResource r = items.next();
-            currentStorage -= r.content.getSize();
-            items.remove();
+    /**
+     * Removes the oldest resources while they are expired or the cache exceeds its limits, and the
+     * already removed ones found at the head of the insertion order queue. Does nothing if another
+     * thread is already removing entries, so puts never wait on each other: the cache may then
+     * exceed its limits by the few resources added meanwhile, until the next put.
+     */
+    private void removeEntries() {
+        final long now = currentTime();
+        if (!removalLock.tryLock()) {
+            return;
         }
-        assert currentStorage <= maxStorage;
-        assert currentStorage >= 0;
-        assert cache.size() <= maxStorage;
-
-        return false;
+        try {
+            CachedResource eldest;
+            while ((eldest = insertionOrder.peek()) != null) {
+                boolean evict =
+                        eldest.time + expireDelay < now
+                                || currentStorage.get() > maxStorage
+                                || cache.size() > maxTiles;
+                if (evict) {
+                    if (cache.remove(eldest.key, eldest)) {
+                        currentStorage.addAndGet(-eldest.size);
+                        eldest.content = null;
+                        evictionCount.increment();
+                    }
+                } else if (cache.get(eldest.key) == eldest) {
+                    // the eldest resource is still valid, so are the younger ones
+                    break;
+                }
+                // other threads only append, so the head is still the eldest
+                insertionOrder.poll();
+            }
+        } finally {
+            removalLock.unlock();
+        }
+        assert currentStorage.get() >= 0;
     }
 
     public static String computeTransientKey(TileObject tile) {
@@ -153,17 +248,22 @@ public class TransientCache {
     }
 
     private class CachedResource {
-        Resource content;
-        long time;
+        final String key;
+        final long size;
+        final long time;
+        /** Cleared once the resource is removed from the cache */
+        volatile Resource content;
 
-        public CachedResource(Resource content, long time) {
+        public CachedResource(String key, Resource content, long time) {
             super();
+            this.key = key;
             this.content = content;
+            this.size = content.getSize();
             this.time = time;
         }
 
-        public CachedResource(Resource content) {
-            this(content, currentTime());
+        public CachedResource(String key, Resource content) {
+            this(key, content, currentTime());
         }
     }
 
@@ -0,0 +1,357 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.storage.blobstore.bundle;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.io.Resource;
+
+/**
+ * A bundle file packing up to {@link #DIMENSION}x{@link #DIMENSION} tiles of a zoom level.
+ *
+ * <p>The file starts with a {@link #HEADER_LENGTH} bytes header (magic number, format version,
+ * dimension and the number of bytes no longer referenced by the index), followed by the index, a
+ * matrix of {@link #ENTRY_LENGTH} bytes entries in row major order, each holding the offset of the
+ * tile data in the file, its size, and its creation time in seconds. An entry with a zero size
+ * means there is no tile. Tile data is only appended, overwritten and deleted tiles leave dead
+ * bytes behind that are reclaimed by {@link #compactIfNeeded() compaction}, which rewrites the
+ * bundle with the live tiles only.
+ *
+ * <p>The header and index, which have a fixed size, are read through a memory mapping of that
+ * region of the file, mapped once when the bundle is opened, while tile data is read with
+ * positional reads so the file never needs remapping as it grows. Callers are expected to hold the
+ * read {@link #lock} to read, and the write lock to modify the bundle. A bundle is meant to be
+ * modified by a single process, through a single instance.
+ */
+class Bundle implements Closeable {
+
+    private static Log log = LogFactory.getLog(Bundle.class);
+
+    static final int MAGIC = 0x47574342; // GWCB
+
+    static final int VERSION = 1;
+
+    /** Number of tile columns and rows in a bundle */
+    static final int DIMENSION = 128;
+
+    static final int HEADER_LENGTH = 64;
+
+    static final int ENTRY_LENGTH = 16;
+
+    static final long DATA_START = HEADER_LENGTH + (long) DIMENSION * DIMENSION * ENTRY_LENGTH;
+
+    private static final int DEAD_BYTES_OFFSET = 16;
+
+    /** Dead bytes tolerated regardless of the live data size before compacting */
+    static final long COMPACTION_MIN_DEAD_BYTES = 1024 * 1024;
+
+    /** A tile read from the bundle */
+    static class Tile {
+        final byte[] data;
+
+        final long created;
+
+        Tile(byte[] data, long created) {
+            this.data = data;
+            this.created = created;
+        }
+    }
+
+    final File file;
+
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private FileChannel channel;
+
+    /** Mapping of the header and index */
+    private MappedByteBuffer indexMap;
+
+    private long deadBytes;
+
+    private int liveCount;
+
+    private boolean closed;
+
+    private Bundle(File file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens the bundle file, creating it if it does not exist.
+     *
+     * @throws IOException if the file can't be opened or is not a bundle file
+     */
+    static Bundle open(File file) throws IOException {
+        FileChannel channel =
+                FileChannel.open(
+                        file.toPath(),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+        Bundle bundle = new Bundle(file, channel);
+        try {
+            if (channel.size() == 0) {
+                channel.write(header(0), 0);
+                channel.write(
+                        ByteBuffer.allocate((int) (DATA_START - HEADER_LENGTH)), HEADER_LENGTH);
+            }
+            bundle.load();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return bundle;
+    }
+
+    private static ByteBuffer header(long deadBytes) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).putInt(VERSION).putInt(DIMENSION).putInt(0).putLong(deadBytes);
+        header.rewind();
+        return header;
+    }
+
+    private void load() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        channel.read(header, 0);
+        header.flip();
+        if (channel.size() < DATA_START
+                || header.remaining() < HEADER_LENGTH
+                || header.getInt() != MAGIC
+                || header.getInt() > VERSION
+                || header.getInt() != DIMENSION) {
+            throw new IOException(file + " is not a bundle file");
+        }
+        deadBytes = header.getLong(DEAD_BYTES_OFFSET);
+        indexMap = channel.map(FileChannel.MapMode.READ_ONLY, 0, DATA_START);
+        liveCount = 0;
+        ByteBuffer index = readIndex();
+        for (int i = 0; i < DIMENSION * DIMENSION; i++) {
+            if (index.getInt(i * ENTRY_LENGTH + 8) > 0) {
+                liveCount++;
+            }
+        }
+    }
+
+    /** Index of the tile in the bundle, given its column and row in the gridset */
+    static int index(long x, long y) {
+        return (int) (y % DIMENSION) * DIMENSION + (int) (x % DIMENSION);
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    int getLiveCount() {
+        return liveCount;
+    }
+
+    long getDeadBytes() {
+        return deadBytes;
+    }
+
+    /** @return the tile at the given index, or {@code null} if the bundle has none */
+    Tile read(int index) throws IOException {
+        final int entry = HEADER_LENGTH + index * ENTRY_LENGTH;
+        final long offset = indexMap.getLong(entry);
+        final int size = indexMap.getInt(entry + 8);
+        final long created = (indexMap.getInt(entry + 12) & 0xFFFFFFFFL) * 1000;
+        if (size <= 0) {
+            return null;
+        }
+        byte[] bytes = new byte[size];
+        ByteBuffer buff = ByteBuffer.wrap(bytes);
+        while (buff.hasRemaining()) {
+            if (channel.read(buff, offset + buff.position()) < 0) {
+                throw new IOException("Unexpected end of " + file);
+            }
+        }
+        return new Tile(bytes, created);
+    }
+
+    /** @return the size of the tile at the given index, {@code -1} if there is none */
+    int size(int index) throws IOException {
+        int size = indexMap.getInt(HEADER_LENGTH + index * ENTRY_LENGTH + 8);
+        return size > 0 ? size : -1;
+    }
+
+    /**
+     * Appends the tile data and points the index entry to it.
+     *
+     * @return the size of the tile that was replaced, {@code -1} if there was none
+     */
+    int write(int index, Resource blob, long created) throws IOException {
+        final int previous = size(index);
+        final long offset = channel.size();
+        channel.position(offset);
+        blob.transferTo(channel);
+        final long size = channel.position() - offset;
+        if (size <= 0 || size > Integer.MAX_VALUE) {
+            channel.truncate(offset);
+            throw new IOException("Can't store a tile of " + size + " bytes in " + file);
+        }
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_LENGTH);
+        entry.putLong(offset).putInt((int) size).putInt((int) (created / 1000));
+        entry.rewind();
+        channel.write(entry, HEADER_LENGTH + (long) index * ENTRY_LENGTH);
+        if (previous > 0) {
+            addDeadBytes(previous);
+        } else {
+            liveCount++;
+        }
+        return previous;
+    }
+
+    /**
+     * Clears the index entry of a tile. The bundle file is deleted once it holds no tiles.
+     *
+     * @return the size of the deleted tile, {@code -1} if there was none
+     */
+    int delete(int index) throws IOException {
+        final int previous = size(index);
+        if (previous > 0) {
+            channel.write(
+                    ByteBuffer.allocate(ENTRY_LENGTH), HEADER_LENGTH + (long) index * ENTRY_LENGTH);
+            addDeadBytes(previous);
+            if (--liveCount == 0) {
+                close();
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        return previous;
+    }
+
+    private void addDeadBytes(long bytes) throws IOException {
+        deadBytes += bytes;
+        ByteBuffer buff = ByteBuffer.allocate(8);
+        buff.putLong(deadBytes);
+        buff.rewind();
+        channel.write(buff, DEAD_BYTES_OFFSET);
+    }
+
+    /**
+     * Rewrites the bundle with the live tiles only, if the dead bytes outweigh the live ones.
+     *
+     * @return {@code true} if the bundle was compacted
+     */
+    boolean compactIfNeeded() throws IOException {
+        if (closed || deadBytes < COMPACTION_MIN_DEAD_BYTES) {
+            return false;
+        }
+        final long liveBytes = channel.size() - DATA_START - deadBytes;
+        if (deadBytes < liveBytes) {
+            return false;
+        }
+        compact();
+        return true;
+    }
+
+    void compact() throws IOException {
+        final File compacted = new File(file.getParentFile(), file.getName() + ".compact");
+        try (FileChannel out =
+                FileChannel.open(
+                        compacted.toPath(),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE)) {
+            ByteBuffer index = readIndex();
+            ByteBuffer newIndex = ByteBuffer.allocate((int) (DATA_START - HEADER_LENGTH));
+            long position = DATA_START;
+            for (int i = 0; i < DIMENSION * DIMENSION; i++) {
+                final long offset = index.getLong(i * ENTRY_LENGTH);
+                final int size = index.getInt(i * ENTRY_LENGTH + 8);
+                if (size <= 0) {
+                    continue;
+                }
+                long transferred = 0;
+                out.position(position);
+                while (transferred < size) {
+                    transferred +=
+                            channel.transferTo(offset + transferred, size - transferred, out);
+                }
+                newIndex.putLong(i * ENTRY_LENGTH, position);
+                newIndex.putInt(i * ENTRY_LENGTH + 8, size);
+                newIndex.putInt(i * ENTRY_LENGTH + 12, index.getInt(i * ENTRY_LENGTH + 12));
+                position += size;
+            }
+            out.write(header(0), 0);
+            out.write(newIndex, HEADER_LENGTH);
+        }
+        try {
+            Files.move(
+                    compacted.toPath(),
+                    file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            // the bundle is left untouched and stays usable
+            compacted.delete();
+            throw e;
+        }
+        // the old channel now points to the replaced file, swap it for the compacted one
+        final FileChannel replaced = channel;
+        try {
+            channel =
+                    FileChannel.open(
+                            file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            load();
+        } catch (IOException | RuntimeException e) {
+            // leave it to be opened again rather than writing to the replaced file
+            closed = true;
+            indexMap = null;
+            if (channel != replaced) {
+                channel.close();
+            }
+            throw e;
+        } finally {
+            replaced.close();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Compacted " + file + " to " + channel.size() + " bytes");
+        }
+    }
+
+    private ByteBuffer readIndex() {
+        ByteBuffer index = indexMap.duplicate();
+        index.position(HEADER_LENGTH);
+        return index.slice();
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (!closed) {
+                closed = true;
+                indexMap = null;
+                channel.close();
+            }
+        } catch (IOException e) {
+            log.warn("Error closing bundle " + file, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,698 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.storage.blobstore.bundle;
+
+import static org.geowebcache.storage.blobstore.file.FilePathUtils.filteredGridSetId;
+import static org.geowebcache.storage.blobstore.file.FilePathUtils.filteredLayerName;
+import static org.geowebcache.util.FileUtils.listFilesNullSafe;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Collectors;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.filter.parameters.ParametersUtils;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.mime.MimeException;
+import org.geowebcache.mime.MimeType;
+import org.geowebcache.storage.BlobStore;
+import org.geowebcache.storage.BlobStoreListener;
+import org.geowebcache.storage.BlobStoreListenerList;
+import org.geowebcache.storage.CompositeBlobStore;
+import org.geowebcache.storage.StorageException;
+import org.geowebcache.storage.TileObject;
+import org.geowebcache.storage.TileRange;
+import org.geowebcache.storage.TileScanVisitor;
+import org.geowebcache.storage.blobstore.file.FileBlobStore;
+import org.geowebcache.storage.blobstore.file.LayerMetadataStore;
+import org.geowebcache.util.FileUtils;
+
+/**
+ * A local disk {@link BlobStore} packing tiles into {@link Bundle bundle files} instead of writing
+ * one file per tile like {@link FileBlobStore}, which keeps the number of files (and inodes) low on
+ * large caches and makes truncating whole layers, gridsets or parameter sets cheap.
+ *
+ * <p>Bundles are laid out as {@code
+ * <layer>/<gridset>/<format>/<parameters id|default>/<zoom>/<column>_<row>.bundle}, where column
+ * and row are the tile column and row divided by {@link Bundle#DIMENSION}. Layer metadata is
+ * stored the same way as {@link FileBlobStore} does.
+ *
+ * <p>Open bundles are kept in a bounded cache. A bundle evicted from the cache is not opened again
+ * until the evicted instance is closed, so there is never more than one instance writing to a
+ * bundle file. The store assumes it is the only process writing to its base directory.
+ */
+public class BundleBlobStore implements BlobStore {
+
+    private static Log log = LogFactory.getLog(BundleBlobStore.class);
+
+    static final String BUNDLE_EXTENSION = ".bundle";
+
+    /** Name of the parameters directory for tiles without parameters */
+    static final String DEFAULT_PARAMETERS_DIR = "default";
+
+    /** Maximum number of bundles kept open */
+    static final int OPEN_BUNDLES_MAX_SIZE = 256;
+
+    private final String path;
+
+    private final BlobStoreListenerList listeners = new BlobStoreListenerList();
+
+    private final LayerMetadataStore layerMetadata;
+
+    private final Cache<String, Bundle> openBundles;
+
+    /**
+     * Bundles opened and not yet closed by path, including those evicted from {@link #openBundles}
+     * while their removal listener is still closing them
+     */
+    private final ConcurrentMap<String, Bundle> liveBundles = new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    private static interface BundleOperation<T> {
+        T apply(Bundle bundle) throws IOException;
+    }
+
+    public BundleBlobStore(String rootPath) throws StorageException {
+        this.path = rootPath;
+
+        File fh = new File(path);
+        fh.mkdirs();
+        if (!fh.exists() || !fh.isDirectory() || !fh.canWrite()) {
+            throw new StorageException(path + " is not writable directory.");
+        }
+        final File metadataFile = new File(fh, "metadata.properties");
+        final boolean exists = metadataFile.exists();
+        boolean empty;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(fh.toPath())) {
+            empty = !ds.iterator().hasNext();
+        } catch (IOException e) {
+            throw new StorageException("Error while checking that " + rootPath + " is empty", e);
+        }
+        CompositeBlobStore.checkSuitability(rootPath, exists, empty);
+
+        File tmp = new File(path, "tmp");
+        try {
+            Files.createDirectories(tmp.toPath());
+            // a hint that this is a GWC blobstore, same as FileBlobStore
+            metadataFile.createNewFile();
+        } catch (IOException e) {
+            throw new StorageException(tmp.getPath() + " is not writable directory.", e);
+        }
+        layerMetadata = new LayerMetadataStore(path, tmp);
+
+        RemovalListener<String, Bundle> closer =
+                notification -> {
+                    Bundle bundle = notification.getValue();
+                    bundle.close();
+                    liveBundles.remove(notification.getKey(), bundle);
+                };
+        openBundles =
+                CacheBuilder.newBuilder()
+                        .maximumSize(OPEN_BUNDLES_MAX_SIZE)
+                        .removalListener(closer)
+                        .build();
+    }
+
+    private File getLayerPath(String layerName) {
+        return new File(path, filteredLayerName(layerName));
+    }
+
+    private File getParametersPath(
+            String layerName, String gridSetId, String format, String parametersId)
+            throws StorageException {
+        final MimeType mimeType;
+        try {
+            mimeType = MimeType.createFromFormat(format);
+        } catch (MimeException e) {
+            throw new StorageException("Unknown tile format " + format, e);
+        }
+        File formatPath =
+                new File(
+                        new File(getLayerPath(layerName), filteredGridSetId(gridSetId)),
+                        mimeType.getInternalName());
+        return new File(
+                formatPath, parametersId == null ? DEFAULT_PARAMETERS_DIR : parametersId);
+    }
+
+    private static File getBundleFile(File parametersPath, long x, long y, int z) {
+        String name = (x / Bundle.DIMENSION) + "_" + (y / Bundle.DIMENSION) + BUNDLE_EXTENSION;
+        return new File(new File(parametersPath, String.valueOf(z)), name);
+    }
+
+    private File getBundleFile(TileObject stObj) throws StorageException {
+        final long[] xyz = stObj.getXYZ();
+        File parametersPath =
+                getParametersPath(
+                        stObj.getLayerName(),
+                        stObj.getGridSetId(),
+                        stObj.getBlobFormat(),
+                        stObj.getParametersId());
+        return getBundleFile(parametersPath, xyz[0], xyz[1], (int) xyz[2]);
+    }
+
+    /**
+     * Looks up an open bundle, opening it if needed.
+     *
+     * @param create whether to create the bundle file if it does not exist
+     * @param onCreate called before the bundle file gets created, if it does
+     * @return the bundle, or {@code null} if it does not exist and {@code create} is false
+     */
+    private Bundle getBundle(final File file, final boolean create, Runnable onCreate)
+            throws IOException {
+        final String key = file.getPath();
+        Bundle bundle = openBundles.getIfPresent(key);
+        if (bundle != null) {
+            return bundle;
+        }
+        if (!create && !file.exists()) {
+            return null;
+        }
+        try {
+            return openBundles.get(
+                    key,
+                    () -> {
+                        // the cache no longer holds it, but an evicted instance may still be
+                        // closing, wait for it so the two don't write to the file concurrently
+                        Bundle evicted = liveBundles.get(key);
+                        if (evicted != null) {
+                            evicted.close();
+                        }
+                        if (!file.exists()) {
+                            if (!create) {
+                                throw new FileNotFoundException(file.getPath());
+                            }
+                            onCreate.run();
+                            Files.createDirectories(file.getParentFile().toPath());
+                        }
+                        Bundle opened = Bundle.open(file);
+                        liveBundles.put(key, opened);
+                        return opened;
+                    });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof FileNotFoundException || cause instanceof NoSuchFileException) {
+                return null;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Can't open bundle " + file, cause);
+        }
+    }
+
+    /**
+     * Runs an operation on a bundle while holding its read or write lock.
+     *
+     * @return the operation result, {@code null} if the bundle does not exist and is not to be
+     *     created
+     */
+    private <T> T withBundle(
+            File file, boolean write, boolean create, Runnable onCreate, BundleOperation<T> op)
+            throws StorageException {
+        try {
+            while (true) {
+                Bundle bundle = getBundle(file, create, onCreate);
+                if (bundle == null) {
+                    return null;
+                }
+                Lock lock = write ? bundle.lock.writeLock() : bundle.lock.readLock();
+                lock.lock();
+                try {
+                    if (!bundle.isClosed()) {
+                        return op.apply(bundle);
+                    }
+                } finally {
+                    lock.unlock();
+                    if (bundle.isClosed()) {
+                        // evicted, or deleted as it became empty, look it up again
+                        openBundles.asMap().remove(file.getPath(), bundle);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage() + " for " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /** Closes the open bundles stored under the given directory */
+    private void forgetBundles(File directory) {
+        final String prefix = directory.getPath() + File.separator;
+        List<String> keys =
+                openBundles
+                        .asMap()
+                        .keySet()
+                        .stream()
+                        .filter(k -> k.startsWith(prefix))
+                        .collect(Collectors.toList());
+        openBundles.invalidateAll(keys);
+    }
+
+    private void deleteDirectory(File directory) throws StorageException {
+        forgetBundles(directory);
+        try {
+            org.apache.commons.io.FileUtils.deleteDirectory(directory);
+        } catch (IOException e) {
+            throw new StorageException("Unable to delete " + directory.getAbsolutePath(), e);
+        }
+    }
+
+    @Override
+    public boolean get(TileObject stObj) throws StorageException {
+        final long[] xyz = stObj.getXYZ();
+        final int index = Bundle.index(xyz[0], xyz[1]);
+        Bundle.Tile tile = withBundle(getBundleFile(stObj), false, false, null, b -> b.read(index));
+        if (tile == null) {
+            return false;
+        }
+        stObj.setBlob(new ByteArrayResource(tile.data));
+        stObj.setCreated(tile.created);
+        stObj.setBlobSize(tile.data.length);
+        return true;
+    }
+
+    @Override
+    public void put(TileObject stObj) throws StorageException {
+        final long[] xyz = stObj.getXYZ();
+        final int index = Bundle.index(xyz[0], xyz[1]);
+        final File file = getBundleFile(stObj);
+        final long created =
+                stObj.getCreated() > 0 ? stObj.getCreated() : System.currentTimeMillis();
+        // a new parameters directory needs its ParameterMap persisted
+        final File parametersPath = file.getParentFile().getParentFile();
+        Runnable onCreate =
+                () -> {
+                    if (!parametersPath.exists()) {
+                        persistParameterMap(stObj);
+                    }
+                };
+        Integer oldSize =
+                withBundle(
+                        file,
+                        true,
+                        true,
+                        onCreate,
+                        b -> {
+                            int previous = b.write(index, stObj.getBlob(), created);
+                            b.compactIfNeeded();
+                            return previous;
+                        });
+        if (oldSize > 0) {
+            listeners.sendTileUpdated(stObj, oldSize);
+        } else {
+            listeners.sendTileStored(stObj);
+        }
+    }
+
+    protected void persistParameterMap(TileObject stObj) {
+        if (Objects.nonNull(stObj.getParametersId())) {
+            putLayerMetadata(
+                    stObj.getLayerName(),
+                    "parameters." + stObj.getParametersId(),
+                    ParametersUtils.getKvp(stObj.getParameters()));
+        }
+    }
+
+    @Override
+    public boolean delete(TileObject stObj) throws StorageException {
+        final long[] xyz = stObj.getXYZ();
+        final int index = Bundle.index(xyz[0], xyz[1]);
+        Integer size =
+                withBundle(
+                        getBundleFile(stObj),
+                        true,
+                        false,
+                        null,
+                        b -> {
+                            int deleted = b.delete(index);
+                            b.compactIfNeeded();
+                            return deleted;
+                        });
+        if (size == null || size <= 0) {
+            return false;
+        }
+        stObj.setBlobSize(size);
+        listeners.sendTileDeleted(stObj);
+        return true;
+    }
+
+    @Override
+    public boolean delete(TileRange trObj) throws StorageException {
+        final File layerPath = getLayerPath(trObj.getLayerName());
+        if (!layerPath.exists()) {
+            return true;
+        }
+        final String layerName = trObj.getLayerName();
+        final String gridSetId = trObj.getGridSetId();
+        final String blobFormat = trObj.getMimeType().getFormat();
+        final String parametersId = trObj.getParametersId();
+        final File parametersPath =
+                getParametersPath(layerName, gridSetId, blobFormat, parametersId);
+
+        long count = 0;
+        for (int z = trObj.getZoomStart(); z <= trObj.getZoomStop(); z++) {
+            final long[] bounds = trObj.rangeBounds(z);
+            final int zoom = z;
+            for (long bx = bounds[0] / Bundle.DIMENSION;
+                    bx <= bounds[2] / Bundle.DIMENSION;
+                    bx++) {
+                for (long by = bounds[1] / Bundle.DIMENSION;
+                        by <= bounds[3] / Bundle.DIMENSION;
+                        by++) {
+                    final long minX = Math.max(bounds[0], bx * Bundle.DIMENSION);
+                    final long maxX = Math.min(bounds[2], (bx + 1) * Bundle.DIMENSION - 1);
+                    final long minY = Math.max(bounds[1], by * Bundle.DIMENSION);
+                    final long maxY = Math.min(bounds[3], (by + 1) * Bundle.DIMENSION - 1);
+                    final File file =
+                            getBundleFile(
+                                    parametersPath,
+                                    bx * Bundle.DIMENSION,
+                                    by * Bundle.DIMENSION,
+                                    zoom);
+                    // x, y, size triplets of the deleted tiles
+                    List<long[]> deleted =
+                            withBundle(
+                                    file,
+                                    true,
+                                    false,
+                                    null,
+                                    b -> {
+                                        List<long[]> tiles = new ArrayList<>();
+                                        for (long x = minX; x <= maxX && !b.isClosed(); x++) {
+                                            for (long y = minY;
+                                                    y <= maxY && !b.isClosed();
+                                                    y++) {
+                                                if (!trObj.contains(x, y, zoom)) {
+                                                    continue;
+                                                }
+                                                int size = b.delete(Bundle.index(x, y));
+                                                if (size > 0) {
+                                                    tiles.add(new long[] {x, y, size});
+                                                }
+                                            }
+                                        }
+                                        b.compactIfNeeded();
+                                        return tiles;
+                                    });
+                    if (deleted == null) {
+                        continue;
+                    }
+                    for (long[] tile : deleted) {
+                        listeners.sendTileDeleted(
+                                layerName,
+                                gridSetId,
+                                blobFormat,
+                                parametersId,
+                                tile[0],
+                                tile[1],
+                                zoom,
+                                tile[2]);
+                    }
+                    count += deleted.size();
+                }
+            }
+        }
+        log.info("Truncated " + count + " tiles");
+        return true;
+    }
+
+    @Override
+    public boolean scan(TileRange range, TileScanVisitor visitor) throws StorageException {
+        final File parametersPath =
+                getParametersPath(
+                        range.getLayerName(),
+                        range.getGridSetId(),
+                        range.getMimeType().getFormat(),
+                        range.getParametersId());
+        for (int z = range.getZoomStart(); z <= range.getZoomStop(); z++) {
+            final long[] bounds = range.rangeBounds(z);
+            final int zoom = z;
+            File[] bundles =
+                    listFilesNullSafe(
+                            new File(parametersPath, String.valueOf(z)),
+                            f -> f.getName().endsWith(BUNDLE_EXTENSION));
+            for (File file : bundles) {
+                String name = file.getName();
+                String[] coords =
+                        name.substring(0, name.length() - BUNDLE_EXTENSION.length()).split("_");
+                final long minX = Long.parseLong(coords[0]) * Bundle.DIMENSION;
+                final long minY = Long.parseLong(coords[1]) * Bundle.DIMENSION;
+                if (minX > bounds[2]
+                        || minX + Bundle.DIMENSION <= bounds[0]
+                        || minY > bounds[3]
+                        || minY + Bundle.DIMENSION <= bounds[1]) {
+                    continue;
+                }
+                // x, y, size triplets of the stored tiles, visited once the bundle is released
+                List<long[]> tiles =
+                        withBundle(
+                                file,
+                                false,
+                                false,
+                                null,
+                                b -> {
+                                    List<long[]> found = new ArrayList<>();
+                                    for (int i = 0; i < Bundle.DIMENSION * Bundle.DIMENSION; i++) {
+                                        long x = minX + i % Bundle.DIMENSION;
+                                        long y = minY + i / Bundle.DIMENSION;
+                                        if (!range.contains(x, y, zoom)) {
+                                            continue;
+                                        }
+                                        int size = b.size(i);
+                                        if (size > 0) {
+                                            found.add(new long[] {x, y, size});
+                                        }
+                                    }
+                                    return found;
+                                });
+                if (tiles == null) {
+                    continue;
+                }
+                for (long[] tile : tiles) {
+                    visitor.visit(tile[0], tile[1], zoom, tile[2]);
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean delete(String layerName) throws StorageException {
+        final File layerPath = getLayerPath(layerName);
+        final boolean exists = layerPath.exists();
+        if (exists) {
+            deleteDirectory(layerPath);
+        }
+        listeners.sendLayerDeleted(layerName);
+        return exists;
+    }
+
+    @Override
+    public boolean deleteByGridsetId(final String layerName, final String gridSetId)
+            throws StorageException {
+        final File layerPath = getLayerPath(layerName);
+        if (!layerPath.exists() || !layerPath.canWrite()) {
+            log.info(layerPath + " does not exist or is not writable");
+            return false;
+        }
+        File gridSetPath = new File(layerPath, filteredGridSetId(gridSetId));
+        if (gridSetPath.exists()) {
+            deleteDirectory(gridSetPath);
+        }
+        listeners.sendGridSubsetDeleted(layerName, gridSetId);
+        return true;
+    }
+
+    @Override
+    public boolean deleteByParametersId(String layerName, String parametersId)
+            throws StorageException {
+        final File layerPath = getLayerPath(layerName);
+        if (!layerPath.exists() || !layerPath.canWrite()) {
+            log.info(layerPath + " does not exist or is not writable");
+            return false;
+        }
+        for (File parametersPath : listParametersPaths(layerPath)) {
+            if (parametersPath.getName().equals(parametersId)) {
+                deleteDirectory(parametersPath);
+            }
+        }
+        listeners.sendParametersDeleted(layerName, parametersId);
+        return true;
+    }
+
+    /** Lists the {@code <gridset>/<format>/<parameters id>} directories of a layer */
+    private static List<File> listParametersPaths(File layerPath) {
+        List<File> parametersPaths = new ArrayList<>();
+        for (File gridSetPath : listFilesNullSafe(layerPath, f -> f.isDirectory())) {
+            for (File formatPath : listFilesNullSafe(gridSetPath, f -> f.isDirectory())) {
+                for (File parametersPath : listFilesNullSafe(formatPath, f -> f.isDirectory())) {
+                    parametersPaths.add(parametersPath);
+                }
+            }
+        }
+        return parametersPaths;
+    }
+
+    /**
+     * Renames the layer directory for layer {@code oldLayerName} to {@code newLayerName}
+     *
+     * @throws StorageException if the target directory already exists
+     * @see BlobStore#rename
+     */
+    @Override
+    public boolean rename(final String oldLayerName, final String newLayerName)
+            throws StorageException {
+        final File oldLayerPath = getLayerPath(oldLayerName);
+        final File newLayerPath = getLayerPath(newLayerName);
+
+        if (newLayerPath.exists()) {
+            throw new StorageException(
+                    "Can't rename layer directory "
+                            + oldLayerPath
+                            + " to "
+                            + newLayerPath
+                            + ". Target directory already exists");
+        }
+        if (!oldLayerPath.exists()) {
+            this.listeners.sendLayerRenamed(oldLayerName, newLayerName);
+            return true;
+        }
+        if (!oldLayerPath.canWrite()) {
+            log.info(oldLayerPath + " is not writable");
+            return false;
+        }
+        forgetBundles(oldLayerPath);
+        boolean renamed = FileUtils.renameFile(oldLayerPath, newLayerPath);
+        if (renamed) {
+            this.listeners.sendLayerRenamed(oldLayerName, newLayerName);
+        } else {
+            throw new StorageException(
+                    "Couldn't rename layer directory " + oldLayerPath + " to " + newLayerPath);
+        }
+        return renamed;
+    }
+
+    @Override
+    public void clear() throws StorageException {
+        throw new StorageException("Not implemented yet!");
+    }
+
+    @Override
+    public void destroy() {
+        openBundles.invalidateAll();
+        openBundles.cleanUp();
+    }
+
+    @Override
+    public void addListener(BlobStoreListener listener) {
+        listeners.addListener(listener);
+    }
+
+    @Override
+    public boolean removeListener(BlobStoreListener listener) {
+        return listeners.removeListener(listener);
+    }
+
+    @Override
+    public String getLayerMetadata(final String layerName, final String key) {
+        try {
+            return layerMetadata.getEntry(layerName, key);
+        } catch (IOException e) {
+            log.debug("Optimistic read of metadata key failed");
+        }
+        return null;
+    }
+
+    @Override
+    public void putLayerMetadata(final String layerName, final String key, final String value) {
+        try {
+            layerMetadata.putEntry(layerName, key, value);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            log.debug("Optimistic read of metadata during writing process failed");
+        }
+    }
+
+    @Override
+    public boolean layerExists(String layerName) {
+        return getLayerPath(layerName).exists();
+    }
+
+    @Override
+    public Set<String> getParameterIds(String layerName) {
+        Set<String> ids = new HashSet<>();
+        for (File parametersPath : listParametersPaths(getLayerPath(layerName))) {
+            if (!DEFAULT_PARAMETERS_DIR.equals(parametersPath.getName())) {
+                ids.add(parametersPath.getName());
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public Map<String, Optional<Map<String, String>>> getParametersMapping(String layerName) {
+        Map<String, String> p;
+        try {
+            p = layerMetadata.getLayerMetadata(layerName);
+        } catch (IOException e) {
+            log.debug("Optimistic read of metadata mappings failed");
+            return null;
+        }
+        return getParameterIds(layerName)
+                .stream()
+                .collect(
+                        Collectors.toMap(
+                                (id) -> id,
+                                (id) -> {
+                                    String kvp = p.get("parameters." + id);
+                                    if (Objects.isNull(kvp)) {
+                                        return Optional.empty();
+                                    }
+                                    kvp = urlDecUtf8(kvp);
+                                    return Optional.of(ParametersUtils.getMap(kvp));
+                                }));
+    }
+
+    private static String urlDecUtf8(String value) {
+        try {
+            value = URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        return value;
+    }
+}
@@ -19,6 +19,8 @@ import static org.geowebcache.storage.blobstore.file.FilePathUtils.filteredLayer
 import static org.geowebcache.util.FileUtils.listFilesNullSafe;
 
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileOutputStream;
@@ -39,6 +41,7 @@ import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -60,6 +63,7 @@ import org.geowebcache.storage.StorageException;
 import org.geowebcache.storage.StorageObject.Status;
 import org.geowebcache.storage.TileObject;
 import org.geowebcache.storage.TileRange;
+import org.geowebcache.storage.TileScanVisitor;
 import org.geowebcache.util.FileUtils;
 import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
@@ -89,6 +93,26 @@ public class FileBlobStore implements BlobStore {
 
     private LayerMetadataStore layerMetadata;
 
+    /** Maximum number of tile directories remembered as existing */
+    static final int KNOWN_DIRECTORIES_MAX_SIZE = 10_000;
+
+    /** Maximum number of layer/parameters id pairs remembered as persisted in the metadata */
+    static final int KNOWN_PARAMETERS_MAX_SIZE = 1_000;
+
+    /**
+     * Tile directories known to exist, so that writing a tile in an existing directory does not
+     * require a trip to the file system. Invalidated by the delete and rename operations.
+     */
+    private final Cache<String, Boolean> knownDirectories =
+            CacheBuilder.newBuilder().maximumSize(KNOWN_DIRECTORIES_MAX_SIZE).build();
+
+    /**
+     * Layer name and parameters id pairs whose parameter map is known to be stored in the layer
+     * metadata, avoids rewriting the metadata file each time a tile directory gets created
+     */
+    private final Cache<String, Boolean> knownParameters =
+            CacheBuilder.newBuilder().maximumSize(KNOWN_PARAMETERS_MAX_SIZE).build();
+
     public FileBlobStore(DefaultStorageFinder defStoreFinder)
             throws StorageException, ConfigurationException {
         this(defStoreFinder.getDefaultPath());
@@ -240,6 +264,7 @@ public class FileBlobStore implements BlobStore {
         final String target = filteredLayerName(layerName);
 
         boolean ret = stageDelete(source, target);
+        forgetLayer(layerName);
 
         this.listeners.sendLayerDeleted(layerName);
         return ret;
@@ -307,6 +332,7 @@ public class FileBlobStore implements BlobStore {
             String target = filteredLayerName(layerName) + "_" + gridSubsetCache.getName();
             stageDelete(gridSubsetCache, target);
         }
+        forgetDirectories(layerPath);
 
         listeners.sendGridSubsetDeleted(layerName, gridSetId);
 
@@ -344,6 +370,8 @@ public class FileBlobStore implements BlobStore {
             return false;
         }
         boolean renamed = FileUtils.renameFile(oldLayerPath, newLayerPath);
+        forgetLayer(oldLayerName);
+        forgetLayer(newLayerName);
         if (renamed) {
             this.listeners.sendLayerRenamed(oldLayerName, newLayerName);
         } else {
@@ -384,7 +412,9 @@ public class FileBlobStore implements BlobStore {
         // Look at the parent directory to prune it if empty
         File parentDir = fh.getParentFile();
         // Try deleting the directory (will not do it if the directory contains files)
-        parentDir.delete();
+        if (parentDir.delete()) {
+            knownDirectories.invalidate(parentDir.getPath());
+        }
 
         return ret;
     }
@@ -438,7 +468,9 @@ public class FileBlobStore implements BlobStore {
                     @Override
                     public void postVisitDirectory(File dir) {
                         // will delete only if empty
-                        dir.delete();
+                        if (dir.delete()) {
+                            knownDirectories.invalidate(dir.getPath());
+                        }
                     }
                 });
 
@@ -447,6 +479,33 @@ public class FileBlobStore implements BlobStore {
         return true;
     }
 
+    /** Lists the tiles within a range. */
+    @Override
+    public boolean scan(TileRange range, TileScanVisitor visitor) throws StorageException {
+        final File layerPath = new File(path, filteredLayerName(range.getLayerName()));
+        if (!layerPath.exists()) {
+            return true;
+        }
+        try {
+            pathGenerator.visitRange(
+                    layerPath,
+                    range,
+                    (tile, x, y, z) -> {
+                        try {
+                            visitor.visit(x, y, z, padSize(tile.length()));
+                        } catch (StorageException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        } catch (UncheckedIOException e) {
+            if (e.getCause() instanceof StorageException) {
+                throw (StorageException) e.getCause();
+            }
+            throw e;
+        }
+        return true;
+    }
+
     /**
      * Set the blob property of a TileObject.
      *
@@ -471,10 +530,7 @@ public class FileBlobStore implements BlobStore {
     public void put(TileObject stObj) throws StorageException {
 
         // an update to ParameterMap file is required !!!
-        Runnable upm =
-                () -> {
-                    this.persistParameterMap(stObj);
-                };
+        BooleanSupplier upm = () -> this.persistParameterMapIfUnknown(stObj);
         final File fh = getFileHandleTile(stObj, upm);
         final long oldSize = fh.length();
         final boolean existed = oldSize > 0;
@@ -502,7 +558,7 @@ public class FileBlobStore implements BlobStore {
         }
     }
 
-    private File getFileHandleTile(TileObject stObj, Runnable onTileFolderCreation)
+    private File getFileHandleTile(TileObject stObj, BooleanSupplier onTileFolderCreation)
             throws StorageException {
         final MimeType mimeType;
         try {
@@ -521,10 +577,17 @@ public class FileBlobStore implements BlobStore {
 
         // check if it's required to create tile folder
         if (onTileFolderCreation != null) {
-            log.debug("Creating parent tile folder and updating ParameterMap");
             File parent = tilePath.getParentFile();
-            mkdirs(parent, stObj);
-            onTileFolderCreation.run();
+            String parentPath = parent.getPath();
+            if (knownDirectories.getIfPresent(parentPath) == null) {
+                log.debug("Creating parent tile folder and updating ParameterMap");
+                mkdirs(parent, stObj);
+                // remember the folder only once the parameters are on disk, so that a failed
+                // metadata write gets retried by the next tile
+                if (onTileFolderCreation.getAsBoolean()) {
+                    knownDirectories.put(parentPath, Boolean.TRUE);
+                }
+            }
         }
 
         return tilePath;
@@ -555,6 +618,13 @@ public class FileBlobStore implements BlobStore {
             // file, in such case we'll just eliminate this one
             if (FileUtils.renameFile(temp, target)) {
                 temp = null;
+            } else if (!existed && !target.getParentFile().exists()) {
+                // the tile directory was removed behind our back (e.g., by another process)
+                knownDirectories.invalidate(target.getParent());
+                mkdirs(target.getParentFile(), stObj);
+                if (FileUtils.renameFile(temp, target)) {
+                    temp = null;
+                }
             } else if (existed) {
                 // if we are trying to overwrite and old tile, on windows that might fail... delete
                 // and rename instead
@@ -575,6 +645,48 @@ public class FileBlobStore implements BlobStore {
         }
     }
 
+    /**
+     * Persists the parameter map of the tile, unless it's already known to be in the layer
+     * metadata
+     *
+     * @return {@code true} if the parameter map is known to be stored, or there is none
+     */
+    private boolean persistParameterMapIfUnknown(TileObject stObj) {
+        final String parametersId = stObj.getParametersId();
+        if (Objects.isNull(parametersId)) {
+            return true;
+        }
+        final String layerName = stObj.getLayerName();
+        final String key = parametersKey(layerName, parametersId);
+        if (knownParameters.getIfPresent(key) != null) {
+            return true;
+        }
+        persistParameterMap(stObj);
+        // the metadata write is optimistic, remember it only if it actually made it to disk
+        if (getLayerMetadata(layerName, "parameters." + parametersId) != null) {
+            knownParameters.put(key, Boolean.TRUE);
+            return true;
+        }
+        return false;
+    }
+
+    private static String parametersKey(String layerName, String parametersId) {
+        return layerName + "\n" + parametersId;
+    }
+
+    /** Drops all cached knowledge about the directories and parameters of a layer */
+    private void forgetLayer(String layerName) {
+        forgetDirectories(getLayerPath(layerName));
+        final String prefix = parametersKey(layerName, "");
+        knownParameters.asMap().keySet().removeIf(k -> k.startsWith(prefix));
+    }
+
+    /** Drops the cached tile directories contained in the given one */
+    private void forgetDirectories(File directory) {
+        final String prefix = directory.getPath() + File.separator;
+        knownDirectories.asMap().keySet().removeIf(k -> k.startsWith(prefix));
+    }
+
     protected void persistParameterMap(TileObject stObj) {
         if (Objects.nonNull(stObj.getParametersId())) {
             putLayerMetadata(
@@ -720,6 +832,8 @@ public class FileBlobStore implements BlobStore {
             String target = filteredLayerName(layerName) + "_" + parameterCache.getName();
             stageDelete(parameterCache, target);
         }
+        forgetDirectories(layerPath);
+        knownParameters.invalidate(parametersKey(layerName, parametersId));
 
         listeners.sendParametersDeleted(layerName, parametersId);
 
@@ -21,14 +21,18 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -39,6 +43,7 @@ import org.geowebcache.storage.BlobStoreListener;
 import org.geowebcache.storage.StorageException;
 import org.geowebcache.storage.TileObject;
 import org.geowebcache.storage.TileRange;
+import org.geowebcache.storage.TileScanVisitor;
 import org.geowebcache.storage.blobstore.memory.guava.GuavaCacheProvider;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
@@ -52,6 +57,14 @@ import org.springframework.context.ApplicationContextAware;
  * {@link BlobStore} is scheduled in a queue and will be done by an executor thread. Operations that
  * require a boolean value will have to wait until previous tasks are completed.
  *
+ * <p>Tile reads and writes do not take any global lock: the wrapped store and the cache provider
+ * are accessed through volatile references, and when no asynchronous task is pending the wrapped
+ * store is called directly by the requesting thread. A scheduled task waits for those direct calls
+ * to complete before running, so that the wrapped store sees operations in the order they were
+ * issued. Concurrent misses on the same tile are collapsed into a single load from the wrapped
+ * store, the other threads wait for its outcome. A load only caches its result if the tile was not
+ * invalidated by a put or delete since it started, so a deleted tile is never cached again.
+ *
  * @author Nicola Lagomarsini Geosolutions
  */
 public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
@@ -60,10 +73,10 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
     private static final Log LOG = LogFactory.getLog(MemoryBlobStore.class);
 
     /** {@link BlobStore} to use when no element is found */
-    private BlobStore store;
+    private volatile BlobStore store;
 
     /** {@link CacheProvider} object to use for caching */
-    private CacheProvider cacheProvider;
+    private volatile CacheProvider cacheProvider;
 
     /** Executor service used for scheduling cacheProvider store operations like put,delete,... */
     private final ExecutorService executorService;
@@ -78,27 +91,46 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
     private AtomicBoolean cacheAlreadySet;
 
     /**
-     * {@link ReentrantReadWriteLock} used for handling concurrency when accessing the
-     * cacheProvider.
+     * Number of tasks scheduled on the executor service and not completed yet. While it's positive
+     * reads and writes go through the executor too, so that they are ordered after the pending
+     * deletes.
+     */
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+
+    /**
+     * Read locked while deciding to run a task on the calling thread, write locked while scheduling
+     * one, so that no task runs directly after a task scheduled before it
      */
-    private final ReentrantReadWriteLock lock;
+    private final ReentrantReadWriteLock scheduleLock = new ReentrantReadWriteLock();
 
-    /** {@link WriteLock} used for scheduling the access to the {@link MemoryBlobStore} state */
-    private final WriteLock blobStoreStateLock;
+    /**
+     * Number of tasks running on their calling thread, the scheduled tasks wait for it to drop to
+     * zero before running. Also used as the monitor to wait on.
+     */
+    private final AtomicInteger directTasks = new AtomicInteger();
+
+    /** Number of stripes the tile keys are spread over to track their invalidations */
+    private static final int INVALIDATION_STRIPES = 64;
 
     /**
-     * {@link ReadLock} used for granting access to operations which does not change the {@link
-     * MemoryBlobStore} state, but can change the state of its components like {@link CacheProvider}
-     * and {@link BlobStore}
+     * Number of invalidations of each stripe of tile keys. A load from the wrapped store only
+     * caches its result if the count of its stripe did not change since it started.
      */
-    private final ReadLock componentsStateLock;
+    private final AtomicLongArray generations = new AtomicLongArray(INVALIDATION_STRIPES);
+
+    /** Makes a generation change or check atomic with the matching cache update, by stripe */
+    private final ReentrantLock[] stripeLocks = new ReentrantLock[INVALIDATION_STRIPES];
+
+    /** Loads from the wrapped store in progress, by tile key */
+    private final ConcurrentHashMap<String, CompletableFuture<TileObject>> pendingLoads =
+            new ConcurrentHashMap<>();
 
     public MemoryBlobStore() {
         // Initialization of the various elements
         this.executorService = Executors.newFixedThreadPool(1);
-        lock = new ReentrantReadWriteLock(true);
-        blobStoreStateLock = lock.writeLock();
-        componentsStateLock = lock.readLock();
+        for (int i = 0; i < INVALIDATION_STRIPES; i++) {
+            stripeLocks[i] = new ReentrantLock();
+        }
         cacheAlreadySet = new AtomicBoolean(false);
         // Initialization of the cacheProvider and store. Must be overridden, this uses default and
         // caches in memory
@@ -109,364 +141,323 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
 
     @Override
     public boolean layerExists(String layerName) {
-        componentsStateLock.lock();
-        try {
-            return store.layerExists(layerName);
-        } finally {
-            componentsStateLock.unlock();
-        }
+        return store.layerExists(layerName);
     }
 
     @Override
     public boolean delete(String layerName) throws StorageException {
-        componentsStateLock.lock();
-        try {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Removing layer: " + layerName + " from cache provider");
-            }
-            // Remove from cacheProvider
-            cacheProvider.removeLayer(layerName);
-            // Remove the layer. Wait other scheduled tasks
-            boolean executed = executeBlobStoreTask(BlobStoreAction.DELETE_LAYER, store, layerName);
-            if (LOG.isDebugEnabled()) {
-                if (executed) {
-                    LOG.debug("Delete Layer Task executed");
-                } else {
-                    LOG.debug("Delete LayerTask failed");
-                }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Removing layer: " + layerName + " from cache provider");
+        }
+        // Remove the layer. Wait other scheduled tasks
+        boolean executed = executeBlobStoreTask(BlobStoreAction.DELETE_LAYER, store, layerName);
+        // Remove from cacheProvider
+        invalidateAll(() -> cacheProvider.removeLayer(layerName));
+        if (LOG.isDebugEnabled()) {
+            if (executed) {
+                LOG.debug("Delete Layer Task executed");
+            } else {
+                LOG.debug("Delete LayerTask failed");
             }
-            // Returns the result
-            return executed;
-        } finally {
-            componentsStateLock.unlock();
         }
+        // Returns the result
+        return executed;
     }
 
     @Override
     public boolean deleteByGridsetId(String layerName, String gridSetId) throws StorageException {
-        componentsStateLock.lock();
-        try {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Removing Layer: " + layerName);
-            }
-            // Remove the layer from the cacheProvider
-            cacheProvider.removeLayer(layerName);
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Scheduling GridSet: " + gridSetId + " removal for Layer: " + layerName);
-            }
-            // Remove selected gridsets
-            executorService.submit(
-                    new BlobStoreTask(store, BlobStoreAction.DELETE_GRIDSET, layerName, gridSetId));
-            return true;
-        } finally {
-            componentsStateLock.unlock();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Removing Layer: " + layerName);
         }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Scheduling GridSet: " + gridSetId + " removal for Layer: " + layerName);
+        }
+        // Remove selected gridsets
+        submitBlobStoreTask(BlobStoreAction.DELETE_GRIDSET, store, layerName, gridSetId);
+        // Remove the layer from the cacheProvider
+        invalidateAll(() -> cacheProvider.removeLayer(layerName));
+        return true;
     }
 
     @Override
     public boolean delete(TileObject obj) throws StorageException {
-        componentsStateLock.lock();
-        try {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Removing TileObject: " + obj);
-            }
-            // Remove from cacheProvider
-            cacheProvider.removeTileObj(obj);
-            // Remove selected TileObject
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Scheduling removal of TileObject: " + obj);
-            }
-            executorService.submit(new BlobStoreTask(store, BlobStoreAction.DELETE_SINGLE, obj));
-            return true;
-        } finally {
-            componentsStateLock.unlock();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Removing TileObject: " + obj);
+        }
+        // Remove selected TileObject
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Scheduling removal of TileObject: " + obj);
         }
+        submitBlobStoreTask(BlobStoreAction.DELETE_SINGLE, store, obj);
+        // Remove from cacheProvider, the loads started before can't cache the tile anymore
+        String key = GuavaCacheProvider.generateTileKey(obj);
+        invalidate(key, () -> cacheProvider.removeTileObj(obj));
+        pendingLoads.remove(key);
+        return true;
     }
 
     @Override
     public boolean delete(TileRange obj) throws StorageException {
-        componentsStateLock.lock();
-        try {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(
+                    "Removing TileObjects for Layer: "
+                            + obj.getLayerName()
+                            + ", min/max levels: "
+                            + "["
+                            + obj.getZoomStart()
+                            + ", "
+                            + obj.getZoomStop()
+                            + "], Gridset: "
+                            + obj.getGridSetId());
+        }
+        // Remove selected TileObject
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(
+                    "Scheduling removal of TileObjects for Layer: "
+                            + obj.getLayerName()
+                            + ", min/max levels: "
+                            + "["
+                            + obj.getZoomStart()
+                            + ", "
+                            + obj.getZoomStop()
+                            + "], Gridset: "
+                            + obj.getGridSetId());
+        }
+        // Remove selected TileRange
+        submitBlobStoreTask(BlobStoreAction.DELETE_RANGE, store, obj);
+        // Remove layer for the cacheProvider
+        invalidateAll(() -> cacheProvider.removeLayer(obj.getLayerName()));
+        return true;
+    }
+
+    @Override
+    public boolean scan(TileRange range, TileScanVisitor visitor) throws StorageException {
+        // Tiles only held in memory are not accounted, list the persisted ones
+        return store.scan(range, visitor);
+    }
+
+    @Override
+    public boolean get(TileObject obj) throws StorageException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Checking if TileObject:" + obj + " is present");
+        }
+        TileObject cached = cacheProvider.getTileObj(obj);
+        if (cached == null) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug(
-                        "Removing TileObjects for Layer: "
-                                + obj.getLayerName()
-                                + ", min/max levels: "
-                                + "["
-                                + obj.getZoomStart()
-                                + ", "
-                                + obj.getZoomStop()
-                                + "], Gridset: "
-                                + obj.getGridSetId());
+                        "TileObject:"
+                                + obj
+                                + " not found. Try to get it from the wrapped blobstore");
             }
-            // Remove layer for the cacheProvider
-            cacheProvider.removeLayer(obj.getLayerName());
-            // Remove selected TileObject
+            cached = loadTile(obj);
+        }
+        // If found add its resource to the input TileObject
+        if (cached != null) {
             if (LOG.isDebugEnabled()) {
-                LOG.debug(
-                        "Scheduling removal of TileObjects for Layer: "
-                                + obj.getLayerName()
-                                + ", min/max levels: "
-                                + "["
-                                + obj.getZoomStart()
-                                + ", "
-                                + obj.getZoomStop()
-                                + "], Gridset: "
-                                + obj.getGridSetId());
+                LOG.debug("TileObject:" + obj + " found, update the input TileObject");
             }
-            // Remove selected TileRange
-            executorService.submit(new BlobStoreTask(store, BlobStoreAction.DELETE_RANGE, obj));
+            Resource resource = cached.getBlob();
+            obj.setBlob(resource);
+            obj.setCreated(resource.getLastModified());
+            obj.setBlobSize((int) resource.getSize());
             return true;
-        } finally {
-            componentsStateLock.unlock();
         }
+        return false;
     }
 
-    @Override
-    public boolean get(TileObject obj) throws StorageException {
-        componentsStateLock.lock();
-        try {
+    /**
+     * Loads a tile missing from the cache from the wrapped store, and puts it in the cache. If
+     * another thread is already loading the same tile, waits for its result instead of hitting the
+     * wrapped store again.
+     *
+     * @return the cached copy of the tile, or null if the wrapped store does not have it
+     */
+    private TileObject loadTile(TileObject obj) throws StorageException {
+        final String key = GuavaCacheProvider.generateTileKey(obj);
+        CompletableFuture<TileObject> loading = new CompletableFuture<>();
+        CompletableFuture<TileObject> inProgress = pendingLoads.putIfAbsent(key, loading);
+        if (inProgress != null) {
             if (LOG.isDebugEnabled()) {
-                LOG.debug("Checking if TileObject:" + obj + " is present");
+                LOG.debug("TileObject:" + obj + " is already being loaded, waiting for it");
             }
-            TileObject cached = cacheProvider.getTileObj(obj);
-            boolean found = false;
-            if (cached == null) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug(
-                            "TileObject:"
-                                    + obj
-                                    + " not found. Try to get it from the wrapped blobstore");
-                }
-                // Try if it can be found in the system. Wait other scheduled tasks
-                found = executeBlobStoreTask(BlobStoreAction.GET, store, obj);
-
-                // If the file has been found, it is inserted in cacheProvider
-                if (found) {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("TileObject:" + obj + " found. Put it in cache");
-                    }
-                    // Get the Cached TileObject
-                    cached = getByteResourceTile(obj);
-                    // Put the file in Cache
-                    cacheProvider.putTileObj(cached);
-                }
-            } else {
-                // Found in cacheProvider
-                found = true;
+            try {
+                return inProgress.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new StorageException("Interrupted while waiting for " + obj, e);
+            } catch (ExecutionException e) {
+                throw new StorageException(e.getCause().getMessage(), e.getCause());
             }
-            // If found add its resource to the input TileObject
+        }
+        try {
+            TileObject cached = null;
+            final int stripe = stripe(key);
+            // read before the wrapped store, a put or delete issued after this changes it
+            final long generation = generations.get(stripe);
+            // Try if it can be found in the system, waiting for scheduled tasks if any
+            boolean found = executeBlobStoreTask(BlobStoreAction.GET, store, obj);
             if (found) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("TileObject:" + obj + " found, update the input TileObject");
+                cached = getByteResourceTile(obj);
+                ReentrantLock lock = stripeLocks[stripe];
+                lock.lock();
+                try {
+                    // a concurrent put or delete invalidated the tile, don't cache stale data
+                    if (generations.get(stripe) == generation) {
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("TileObject:" + obj + " found. Put it in cache");
+                        }
+                        cacheProvider.putTileObj(cached);
+                    }
+                } finally {
+                    lock.unlock();
                 }
-                Resource resource = cached.getBlob();
-                obj.setBlob(resource);
-                obj.setCreated(resource.getLastModified());
-                obj.setBlobSize((int) resource.getSize());
             }
-
-            return found;
+            loading.complete(cached);
+            return cached;
+        } catch (StorageException | RuntimeException e) {
+            loading.completeExceptionally(e);
+            throw e;
         } finally {
-            componentsStateLock.unlock();
+            pendingLoads.remove(key, loading);
         }
     }
 
     @Override
     public void put(TileObject obj) throws StorageException {
-        componentsStateLock.lock();
-        try {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Convert Input resource into a Byte Array");
-            }
-            TileObject cached = getByteResourceTile(obj);
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Adding TileObject: " + obj + " to cache");
-            }
-            cacheProvider.putTileObj(cached);
-            // Add selected TileObject. Wait other scheduled tasks
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Adding TileObject: " + obj + " to the wrapped blobstore");
-            }
-            // Variable containing the execution result
-            executeBlobStoreTask(BlobStoreAction.PUT, store, obj);
-        } finally {
-            componentsStateLock.unlock();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Convert Input resource into a Byte Array");
+        }
+        TileObject cached = getByteResourceTile(obj);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Adding TileObject: " + obj + " to cache");
         }
+        String key = GuavaCacheProvider.generateTileKey(obj);
+        invalidate(key, () -> cacheProvider.putTileObj(cached));
+        pendingLoads.remove(key);
+        // Add selected TileObject. Wait other scheduled tasks
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Adding TileObject: " + obj + " to the wrapped blobstore");
+        }
+        executeBlobStoreTask(BlobStoreAction.PUT, store, obj);
     }
 
     @Override
     public void clear() throws StorageException {
-        componentsStateLock.lock();
-        try {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Flushing cache");
-            }
-            // flush the cacheProvider
-            cacheProvider.clear();
-            // Remove all the files
-            executorService.submit(new BlobStoreTask(store, BlobStoreAction.CLEAR, ""));
-        } finally {
-            componentsStateLock.unlock();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Flushing cache");
         }
+        // Remove all the files
+        submitBlobStoreTask(BlobStoreAction.CLEAR, store, "");
+        // flush the cacheProvider
+        invalidateAll(cacheProvider::clear);
     }
 
     @Override
     public void destroy() {
-        blobStoreStateLock.lock();
-        try {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Reset cache");
-            }
-            // flush the cacheProvider
-            cacheProvider.reset();
-            // Remove all the files
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Destroy wrapped store");
-            }
-            executeBlobStoreTask(BlobStoreAction.DESTROY, store, "");
-            // Stop the pending tasks
-            executorService.shutdown();
-        } finally {
-            blobStoreStateLock.unlock();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Reset cache");
         }
+        // flush the cacheProvider
+        cacheProvider.reset();
+        // Remove all the files
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Destroy wrapped store");
+        }
+        executeBlobStoreTask(BlobStoreAction.DESTROY, store, "");
+        // Stop the pending tasks
+        executorService.shutdown();
     }
 
     @Override
     public void addListener(BlobStoreListener listener) {
-        componentsStateLock.lock();
-        try {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Adding a new Listener");
-            }
-            // Add a new Listener
-            store.addListener(listener);
-        } finally {
-            componentsStateLock.unlock();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Adding a new Listener");
         }
+        // Add a new Listener
+        store.addListener(listener);
     }
 
     @Override
     public boolean removeListener(BlobStoreListener listener) {
-        componentsStateLock.lock();
-        try {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Removing listener");
-            }
-            // Remove a listener
-            return store.removeListener(listener);
-        } finally {
-            componentsStateLock.unlock();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Removing listener");
         }
+        // Remove a listener
+        return store.removeListener(listener);
     }
 
     @Override
     public boolean rename(String oldLayerName, String newLayerName) throws StorageException {
-        componentsStateLock.lock();
-        try {
-            // flush the cacheProvider
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Flushing cache");
-            }
-            cacheProvider.clear();
-            // Rename the layer. Wait other scheduled tasks
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Executing Layer rename task");
-            }
-            // Variable containing the execution result
-            boolean executed =
-                    executeBlobStoreTask(BlobStoreAction.RENAME, store, oldLayerName, newLayerName);
-            return executed;
-        } finally {
-            componentsStateLock.unlock();
+        // Rename the layer. Wait other scheduled tasks
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Executing Layer rename task");
+        }
+        // Variable containing the execution result
+        boolean executed =
+                executeBlobStoreTask(BlobStoreAction.RENAME, store, oldLayerName, newLayerName);
+        // flush the cacheProvider
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Flushing cache");
         }
+        invalidateAll(cacheProvider::clear);
+        return executed;
     }
 
     @Override
     public String getLayerMetadata(String layerName, String key) {
-        componentsStateLock.lock();
-        try {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Getting metadata for Layer: " + layerName);
-            }
-            // Get the Layer metadata
-            return store.getLayerMetadata(layerName, key);
-        } finally {
-            componentsStateLock.unlock();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Getting metadata for Layer: " + layerName);
         }
+        // Get the Layer metadata
+        return store.getLayerMetadata(layerName, key);
     }
 
     @Override
     public void putLayerMetadata(String layerName, String key, String value) {
-        componentsStateLock.lock();
-        try {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Adding metadata for Layer: " + layerName);
-            }
-            // Add a new Layer Metadata
-            store.putLayerMetadata(layerName, key, value);
-        } finally {
-            componentsStateLock.unlock();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Adding metadata for Layer: " + layerName);
         }
+        // Add a new Layer Metadata
+        store.putLayerMetadata(layerName, key, value);
     }
 
     /** @return a {@link CacheStatistics} object containing the {@link CacheProvider} statistics */
     public CacheStatistics getCacheStatistics() {
-        componentsStateLock.lock();
-        try {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Getting Cache Statistics");
-            }
-            return cacheProvider.getStatistics();
-        } finally {
-            componentsStateLock.unlock();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Getting Cache Statistics");
         }
+        return cacheProvider.getStatistics();
     }
 
     /** Setter for the store to wrap */
     public void setStore(BlobStore store) {
-        blobStoreStateLock.lock();
-        try {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Setting the wrapped store");
-            }
-            if (store == null) {
-                throw new NullPointerException("Input BlobStore cannot be null");
-            }
-            this.store = store;
-        } finally {
-            blobStoreStateLock.unlock();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Setting the wrapped store");
+        }
+        if (store == null) {
+            throw new NullPointerException("Input BlobStore cannot be null");
         }
+        this.store = store;
     }
 
     /** @return The wrapped {@link BlobStore} implementation */
     public BlobStore getStore() {
-        componentsStateLock.lock();
-        try {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Returning the wrapped store");
-            }
-            return store;
-        } finally {
-            componentsStateLock.unlock();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Returning the wrapped store");
         }
+        return store;
     }
 
     /** Setter for the cacheProvider to use */
     public void setCacheProvider(CacheProvider cache) {
-        blobStoreStateLock.lock();
-        try {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Setting cache provided");
-            }
-            if (cache == null) {
-                throw new IllegalArgumentException("Input BlobStore cannot be null");
-            }
-            this.cacheProvider = cache;
-            cacheAlreadySet.getAndSet(true);
-        } finally {
-            blobStoreStateLock.unlock();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Setting cache provided");
         }
+        if (cache == null) {
+            throw new IllegalArgumentException("Input BlobStore cannot be null");
+        }
+        this.cacheProvider = cache;
+        cacheAlreadySet.getAndSet(true);
     }
 
     /**
@@ -519,15 +510,10 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
      * setCacheProvider method in the application Context initialization
      */
     public void setCacheBeanName(String cacheBeanName) {
-        blobStoreStateLock.lock();
-        try {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Setting cache providee name");
-            }
-            this.cacheBeanName = cacheBeanName;
-        } finally {
-            blobStoreStateLock.unlock();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Setting cache providee name");
         }
+        this.cacheBeanName = cacheBeanName;
     }
 
     @Override
@@ -598,8 +584,39 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
         }
     }
 
+    /**
+     * Executes the task and returns its result. If other tasks are pending the task is scheduled
+     * after them and this method waits for its completion, otherwise it is run directly by the
+     * calling thread.
+     */
     private boolean executeBlobStoreTask(BlobStoreAction action, BlobStore store, Object... objs) {
-        Future<Boolean> future = executorService.submit(new BlobStoreTask(store, action, objs));
+        boolean direct = false;
+        scheduleLock.readLock().lock();
+        try {
+            if (pendingTasks.get() == 0) {
+                directTasks.incrementAndGet();
+                direct = true;
+            }
+        } finally {
+            scheduleLock.readLock().unlock();
+        }
+        if (direct) {
+            try {
+                return new BlobStoreTask(store, action, objs).call();
+            } catch (RuntimeException e) {
+                if (LOG.isErrorEnabled()) {
+                    LOG.error(e.getMessage(), e);
+                }
+                return false;
+            } finally {
+                if (directTasks.decrementAndGet() == 0) {
+                    synchronized (directTasks) {
+                        directTasks.notifyAll();
+                    }
+                }
+            }
+        }
+        Future<Boolean> future = submitBlobStoreTask(action, store, objs);
         // Variable containing the execution result
         boolean executed = false;
         if (LOG.isDebugEnabled()) {
@@ -616,6 +633,79 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
         return executed;
     }
 
+    /** Schedules the task on the executor service, after the ones already pending */
+    private Future<Boolean> submitBlobStoreTask(
+            BlobStoreAction action, BlobStore store, Object... objs) {
+        BlobStoreTask task = new BlobStoreTask(store, action, objs);
+        // no task starts running on its calling thread once this one is pending
+        scheduleLock.writeLock().lock();
+        try {
+            pendingTasks.incrementAndGet();
+            return executorService.submit(
+                    () -> {
+                        try {
+                            awaitDirectTasks();
+                            return task.call();
+                        } finally {
+                            pendingTasks.decrementAndGet();
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            pendingTasks.decrementAndGet();
+            throw e;
+        } finally {
+            scheduleLock.writeLock().unlock();
+        }
+    }
+
+    /** Waits for the tasks running on their calling thread, issued before the pending ones */
+    private void awaitDirectTasks() throws InterruptedException {
+        synchronized (directTasks) {
+            while (directTasks.get() > 0) {
+                directTasks.wait();
+            }
+        }
+    }
+
+    /** @return the invalidation stripe of the tile key */
+    private static int stripe(String key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % INVALIDATION_STRIPES;
+    }
+
+    /**
+     * Updates the cached copy of a tile after invalidating it, so that the loads from the wrapped
+     * store started before don't cache their result
+     */
+    private void invalidate(String key, Runnable cacheUpdate) {
+        final int stripe = stripe(key);
+        ReentrantLock lock = stripeLocks[stripe];
+        lock.lock();
+        try {
+            generations.incrementAndGet(stripe);
+            cacheUpdate.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Same as {@link #invalidate(String, Runnable)}, for updates touching any number of tiles */
+    private void invalidateAll(Runnable cacheUpdate) {
+        for (ReentrantLock lock : stripeLocks) {
+            lock.lock();
+        }
+        try {
+            for (int i = 0; i < INVALIDATION_STRIPES; i++) {
+                generations.incrementAndGet(i);
+            }
+            cacheUpdate.run();
+            pendingLoads.clear();
+        } finally {
+            for (int i = INVALIDATION_STRIPES - 1; i >= 0; i--) {
+                stripeLocks[i].unlock();
+            }
+        }
+    }
+
     /**
      * {@link Callable} implementation used for creating various tasks to submit to the {@link
      * MemoryBlobStore} executor service.
@@ -640,7 +730,7 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
         }
 
         @Override
-        public Boolean call() throws Exception {
+        public Boolean call() {
             boolean result = false;
             try {
                 // Execution of the requested operation
@@ -780,52 +870,35 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
     @Override
     public boolean deleteByParametersId(String layerName, String parametersId)
             throws StorageException {
-        componentsStateLock.lock();
-        try {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Removing Layer: " + layerName);
-            }
-            // Remove the layer from the cacheProvider
-            cacheProvider.removeLayer(layerName);
-            if (LOG.isDebugEnabled()) {
-                LOG.debug(
-                        "Scheduling Parameters: "
-                                + parametersId
-                                + " removal for Layer: "
-                                + layerName);
-            }
-            // Remove selected parameters
-            executorService.submit(
-                    new BlobStoreTask(
-                            store, BlobStoreAction.DELETE_PARAMS_ID, layerName, parametersId));
-            return true;
-        } finally {
-            componentsStateLock.unlock();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Removing Layer: " + layerName);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(
+                    "Scheduling Parameters: "
+                            + parametersId
+                            + " removal for Layer: "
+                            + layerName);
         }
+        // Remove selected parameters
+        submitBlobStoreTask(BlobStoreAction.DELETE_PARAMS_ID, store, layerName, parametersId);
+        // Remove the layer from the cacheProvider
+        invalidateAll(() -> cacheProvider.removeLayer(layerName));
+        return true;
     }
 
     @Override
     public Set<Map<String, String>> getParameters(String layerName) throws StorageException {
-        componentsStateLock.lock();
-        try {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Getting parameters for Layer: " + layerName);
-            }
-            return store.getParameters(layerName);
-        } finally {
-            componentsStateLock.unlock();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Getting parameters for Layer: " + layerName);
         }
+        return store.getParameters(layerName);
     }
 
     public Map<String, Optional<Map<String, String>>> getParametersMapping(String layerName) {
-        componentsStateLock.lock();
-        try {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Getting parameters for Layer: " + layerName);
-            }
-            return store.getParametersMapping(layerName);
-        } finally {
-            componentsStateLock.unlock();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Getting parameters for Layer: " + layerName);
         }
+        return store.getParametersMapping(layerName);
     }
 }
@@ -0,0 +1,733 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.storage.blobstore.memory.offheap;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.io.ByteBufferResource;
+import org.geowebcache.io.Resource;
+import org.geowebcache.storage.TileObject;
+import org.geowebcache.storage.blobstore.memory.CacheConfiguration;
+import org.geowebcache.storage.blobstore.memory.CacheConfiguration.EvictionPolicy;
+import org.geowebcache.storage.blobstore.memory.CacheProvider;
+import org.geowebcache.storage.blobstore.memory.CacheStatistics;
+import org.geowebcache.storage.blobstore.memory.guava.GuavaCacheProvider;
+
+/**
+ * {@link CacheProvider} keeping the tile contents out of the Java heap, in direct {@link
+ * ByteBuffer} slabs, so that a large cache does not add to the garbage collector work. Cache hits
+ * are returned as {@link ByteBufferResource}s, which are written to the response channel straight
+ * from native memory.
+ *
+ * <p>The cache is split in {@link CacheConfiguration#getConcurrencyLevel()} segments, each one
+ * owning an equal share of the {@link CacheConfiguration#getHardMemoryLimit()}. Tiles are appended
+ * to the current slab of their segment; when the segment is full its oldest slab is dropped. The
+ * tiles of the dropped slab that were read since they were stored get a second chance and are
+ * copied to the current slab, the others are evicted, which approximates a least recently used
+ * eviction the way the CLOCK algorithm does. Slabs are never reused, so a tile being written to a
+ * client stays valid even if it gets evicted meanwhile, the memory is released once the slab is no
+ * longer referenced. For that reason the hard memory limit is capped to {@link
+ * #DIRECT_MEMORY_SHARE} of the JVM maximum direct memory ({@code -XX:MaxDirectMemorySize}).
+ *
+ * <p>The expire after write and expire after access policies are supported, as in {@link
+ * GuavaCacheProvider}.
+ */
+public class OffHeapCacheProvider implements CacheProvider {
+
+    private static final Log LOGGER = LogFactory.getLog(OffHeapCacheProvider.class);
+
+    /** Constant for multiplying bytes to MB */
+    public static final long BYTES_TO_MB = 1048576;
+
+    /** Largest slab allocated for a segment, unless a single tile is bigger */
+    static final int MAX_SLAB_SIZE = 4 * 1024 * 1024;
+
+    /** Smallest slab allocated for a segment, unless the segment itself is smaller */
+    static final int MIN_SLAB_SIZE = 64 * 1024;
+
+    /** Number of slabs each segment is split into, bounding the amount of tiles evicted at once */
+    static final int SLABS_PER_SEGMENT = 8;
+
+    /**
+     * Share of the JVM maximum direct memory the cache may use, the rest is left to the slabs
+     * evicted while their tiles are still being written and to the other users of direct memory
+     */
+    static final double DIRECT_MEMORY_SHARE = 0.75;
+
+    private static final String MAX_DIRECT_MEMORY_ARGUMENT = "-XX:MaxDirectMemorySize=";
+
+    private static final String OFF_HEAP_NAME = "Off-Heap Cache";
+
+    /** Array containing the supported Policies */
+    public static final List<EvictionPolicy> POLICIES =
+            Collections.unmodifiableList(
+                    Arrays.asList(
+                            EvictionPolicy.NULL,
+                            EvictionPolicy.EXPIRE_AFTER_ACCESS,
+                            EvictionPolicy.EXPIRE_AFTER_WRITE));
+
+    /** Cache segments, null when the cache is not configured */
+    private volatile Segment[] segments;
+
+    private volatile EvictionPolicy policy;
+
+    /** Eviction time in milliseconds, 0 if tiles do not expire */
+    private volatile long evictionTime;
+
+    /** Cache total memory in bytes */
+    private volatile long maxMemory;
+
+    /** Internal concurrent Set used for saving the names of the Layers that must not be cached */
+    private final Set<String> layers =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    private ScheduledExecutorService scheduledPool;
+
+    public OffHeapCacheProvider(CacheConfiguration config) {
+        configure(config);
+    }
+
+    /** This method is used for creating the cache segments, from the defined configuration. */
+    private void initCache(CacheConfiguration configuration) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Building new off-heap cache");
+        }
+        int concurrency = Math.max(1, configuration.getConcurrencyLevel());
+        maxMemory = configuration.getHardMemoryLimit() * BYTES_TO_MB;
+        long available = (long) (maxDirectMemory() * DIRECT_MEMORY_SHARE);
+        if (maxMemory > available) {
+            LOGGER.warn(
+                    "Off-heap cache hard memory limit reduced to "
+                            + available / BYTES_TO_MB
+                            + " MB to fit the JVM maximum direct memory, "
+                            + "raise -XX:MaxDirectMemorySize to use more");
+            maxMemory = available;
+        }
+        policy = configuration.getPolicy();
+        long configuredTime = configuration.getEvictionTime();
+        boolean expiring =
+                configuredTime > 0
+                        && (policy == EvictionPolicy.EXPIRE_AFTER_ACCESS
+                                || policy == EvictionPolicy.EXPIRE_AFTER_WRITE);
+        evictionTime = expiring ? TimeUnit.SECONDS.toMillis(configuredTime) : 0;
+
+        hitCount.reset();
+        missCount.reset();
+        evictionCount.reset();
+
+        long budget = maxMemory / concurrency;
+        int slabSize =
+                (int)
+                        Math.min(
+                                budget,
+                                Math.max(
+                                        MIN_SLAB_SIZE,
+                                        Math.min(MAX_SLAB_SIZE, budget / SLABS_PER_SEGMENT)));
+        Segment[] newSegments = new Segment[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            newSegments[i] = new Segment(budget, slabSize);
+        }
+        segments = newSegments;
+
+        // Configure a new scheduling task if needed
+        if (expiring) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Configuring Scheduled Task for cache eviction");
+            }
+            scheduledPool = Executors.newScheduledThreadPool(1);
+            scheduledPool.scheduleAtFixedRate(
+                    this::cleanUp, 10, configuredTime + 1, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Returns the maximum amount of direct memory the JVM can allocate, as set by {@code
+     * -XX:MaxDirectMemorySize} or, by default, the maximum heap size.
+     */
+    static long maxDirectMemory() {
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (argument.startsWith(MAX_DIRECT_MEMORY_ARGUMENT)) {
+                try {
+                    return parseSize(argument.substring(MAX_DIRECT_MEMORY_ARGUMENT.length()));
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("Unable to parse JVM argument " + argument, e);
+                }
+            }
+        }
+        return Runtime.getRuntime().maxMemory();
+    }
+
+    /** Parses a JVM memory size, such as 512m or 2G */
+    static long parseSize(String size) {
+        long multiplier = 1;
+        switch (Character.toLowerCase(size.charAt(size.length() - 1))) {
+            case 't':
+                multiplier *= 1024;
+                // fall through
+            case 'g':
+                multiplier *= 1024;
+                // fall through
+            case 'm':
+                multiplier *= 1024;
+                // fall through
+            case 'k':
+                multiplier *= 1024;
+                size = size.substring(0, size.length() - 1);
+                break;
+            default:
+                break;
+        }
+        return Long.parseLong(size) * multiplier;
+    }
+
+    @Override
+    public boolean isImmutable() {
+        return false;
+    }
+
+    @Override
+    public synchronized void configure(CacheConfiguration configuration) {
+        // as for the Guava provider, the previous cache is always discarded
+        reset();
+        initCache(configuration);
+    }
+
+    private Segment segmentFor(Segment[] current, String key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return current[(hash & 0x7fffffff) % current.length];
+    }
+
+    @Override
+    public TileObject getTileObj(TileObject obj) {
+        Segment[] current = segments;
+        if (current == null || layers.contains(obj.getLayerName())) {
+            return null;
+        }
+        String id = GuavaCacheProvider.generateTileKey(obj);
+        Entry entry = segmentFor(current, id).get(id, System.currentTimeMillis());
+        if (entry == null) {
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return entry.tile;
+    }
+
+    @Override
+    public void putTileObj(TileObject obj) {
+        Segment[] current = segments;
+        if (current == null || layers.contains(obj.getLayerName())) {
+            return;
+        }
+        String id = GuavaCacheProvider.generateTileKey(obj);
+        try {
+            segmentFor(current, id).put(id, obj);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to cache TileObject " + obj + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void removeTileObj(TileObject obj) {
+        Segment[] current = segments;
+        if (current == null || layers.contains(obj.getLayerName())) {
+            return;
+        }
+        String id = GuavaCacheProvider.generateTileKey(obj);
+        segmentFor(current, id).remove(id);
+    }
+
+    @Override
+    public void removeLayer(String layername) {
+        Segment[] current = segments;
+        if (current == null || layers.contains(layername)) {
+            return;
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Removing Layer: " + layername + " from cache");
+        }
+        for (Segment segment : current) {
+            segment.removeLayer(layername);
+        }
+    }
+
+    @Override
+    public void clear() {
+        Segment[] current = segments;
+        if (current != null) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Flushing cache");
+            }
+            for (Segment segment : current) {
+                segment.clear();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        Segment[] current = segments;
+        if (current == null) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Cache is already reset");
+            }
+            return;
+        }
+        segments = null;
+        for (Segment segment : current) {
+            segment.clear();
+        }
+        layers.clear();
+        if (scheduledPool != null) {
+            scheduledPool.shutdown();
+            try {
+                scheduledPool.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                LOGGER.error(e.getMessage(), e);
+                Thread.currentThread().interrupt();
+            } finally {
+                scheduledPool = null;
+            }
+        }
+    }
+
+    /** Removes the expired tiles from all the segments */
+    void cleanUp() {
+        Segment[] current = segments;
+        if (current != null) {
+            long now = System.currentTimeMillis();
+            for (Segment segment : current) {
+                segment.removeExpired(now);
+            }
+        }
+    }
+
+    @Override
+    public CacheStatistics getStatistics() {
+        Segment[] current = segments;
+        CacheStatistics statistics = new CacheStatistics();
+        if (current == null) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Returning empty statistics");
+            }
+            return statistics;
+        }
+        long actualSize = 0;
+        for (Segment segment : current) {
+            actualSize += segment.liveBytes.get();
+        }
+        long hits = hitCount.sum();
+        long misses = missCount.sum();
+        long total = hits + misses;
+        statistics.setHitCount(hits);
+        statistics.setMissCount(misses);
+        statistics.setTotalCount(total);
+        statistics.setEvictionCount(evictionCount.sum());
+        // same convention as Guava, no requests means a 100% hit rate
+        statistics.setHitRate(total == 0 ? 100 : (int) (hits * 100 / total));
+        statistics.setMissRate(100 - statistics.getHitRate());
+        statistics.setCurrentMemoryOccupation(maxMemory > 0 ? 100d * actualSize / maxMemory : 0);
+        statistics.setActualSize(actualSize);
+        statistics.setTotalSize(maxMemory);
+        return statistics;
+    }
+
+    @Override
+    public String getName() {
+        return OFF_HEAP_NAME;
+    }
+
+    @Override
+    public void addUncachedLayer(String layername) {
+        if (segments != null) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Adding Layer:" + layername + " to avoid cache");
+            }
+            layers.add(layername);
+        }
+    }
+
+    @Override
+    public void removeUncachedLayer(String layername) {
+        if (segments != null) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Removing Layer:" + layername + " to avoid cache");
+            }
+            layers.remove(layername);
+        }
+    }
+
+    @Override
+    public boolean containsUncachedLayer(String layername) {
+        return segments != null && layers.contains(layername);
+    }
+
+    @Override
+    public List<EvictionPolicy> getSupportedPolicies() {
+        return POLICIES;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    /** A cached tile, living in a region of a slab */
+    static final class Entry {
+
+        final String key;
+
+        final TileObject tile;
+
+        final Slab slab;
+
+        final int length;
+
+        final long writeTime;
+
+        volatile long accessTime;
+
+        /** Whether the tile was read since it was stored, giving it a second chance on eviction */
+        volatile boolean referenced;
+
+        Entry(String key, TileObject tile, Slab slab, int length, long writeTime, long accessTime) {
+            this.key = key;
+            this.tile = tile;
+            this.slab = slab;
+            this.length = length;
+            this.writeTime = writeTime;
+            this.accessTime = accessTime;
+        }
+    }
+
+    /** A direct buffer tiles are appended to, and the tiles it holds that are still cached */
+    static final class Slab {
+
+        final ByteBuffer buffer;
+
+        final Set<Entry> entries = new HashSet<>();
+
+        Slab(int capacity) {
+            buffer = ByteBuffer.allocateDirect(capacity);
+        }
+    }
+
+    /**
+     * A share of the cache with its own lock. The index is a concurrent map so that lookups don't
+     * lock, all the changes happen under the segment lock.
+     */
+    final class Segment {
+
+        final ReentrantLock lock = new ReentrantLock();
+
+        final ConcurrentHashMap<String, Entry> index = new ConcurrentHashMap<>();
+
+        final ArrayDeque<Slab> slabs = new ArrayDeque<>();
+
+        final long budget;
+
+        final int slabSize;
+
+        /** Capacity of the slabs currently held */
+        long allocated;
+
+        /** Bytes used by the tiles in the index, read without locking for statistics */
+        final AtomicLong liveBytes = new AtomicLong();
+
+        Segment(long budget, int slabSize) {
+            this.budget = budget;
+            this.slabSize = slabSize;
+        }
+
+        Entry get(String key, long now) {
+            Entry entry = index.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (isExpired(entry, now)) {
+                lock.lock();
+                try {
+                    if (index.remove(key, entry)) {
+                        release(entry);
+                        evictionCount.increment();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                return null;
+            }
+            entry.accessTime = now;
+            if (!entry.referenced) {
+                entry.referenced = true;
+            }
+            return entry;
+        }
+
+        private boolean isExpired(Entry entry, long now) {
+            long time = evictionTime;
+            if (time <= 0) {
+                return false;
+            }
+            long reference =
+                    policy == EvictionPolicy.EXPIRE_AFTER_WRITE
+                            ? entry.writeTime
+                            : entry.accessTime;
+            return now - reference >= time;
+        }
+
+        void put(String key, TileObject obj) throws IOException {
+            Resource blob = obj.getBlob();
+            long size = blob == null ? 0 : blob.getSize();
+            lock.lock();
+            try {
+                Entry previous = index.remove(key);
+                if (previous != null) {
+                    release(previous);
+                }
+                if (size <= 0 || size > budget) {
+                    // nothing to store, or it would not fit even in an empty segment
+                    return;
+                }
+                int length = (int) size;
+                long now = System.currentTimeMillis();
+                Entry entry = store(allocate(length), key, obj, length, now, now);
+                liveBytes.addAndGet(length);
+                index.put(key, entry);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** Copies a tile at the end of a slab that has room for it */
+        private Entry store(
+                Slab slab, String key, TileObject obj, int length, long writeTime, long accessTime)
+                throws IOException {
+            Resource blob = obj.getBlob();
+            ByteBuffer region = slab.buffer.duplicate();
+            region.limit(region.position() + length);
+            int start = region.position();
+            blob.transferTo(new BufferChannel(region));
+            if (region.position() - start != length) {
+                throw new IOException(
+                        "Expected " + length + " bytes, got " + (region.position() - start));
+            }
+            slab.buffer.position(region.position());
+            region.position(start);
+
+            TileObject cached =
+                    TileObject.createCompleteTileObject(
+                            obj.getLayerName(),
+                            obj.getXYZ(),
+                            obj.getGridSetId(),
+                            obj.getBlobFormat(),
+                            obj.getParameters(),
+                            new ByteBufferResource(region, blob.getLastModified()));
+            cached.setParametersId(obj.getParametersId());
+            cached.setCreated(obj.getCreated());
+            Entry entry = new Entry(key, cached, slab, length, writeTime, accessTime);
+            slab.entries.add(entry);
+            return entry;
+        }
+
+        /**
+         * Returns a slab with room for the given amount of bytes, evicting old slabs if needed. The
+         * tiles of the evicted slabs that were read since they were stored are copied to the new
+         * slab, as long as they leave room for the new tile.
+         */
+        private Slab allocate(int length) {
+            Slab current = slabs.peekLast();
+            if (current != null && current.buffer.remaining() >= length) {
+                return current;
+            }
+            int capacity = Math.max(slabSize, length);
+            List<Entry> referenced = new ArrayList<>();
+            while (allocated + capacity > budget && !slabs.isEmpty()) {
+                evict(slabs.pollFirst(), referenced);
+            }
+            Slab slab = new Slab(capacity);
+            slabs.addLast(slab);
+            allocated += capacity;
+            for (Entry entry : referenced) {
+                if (slab.buffer.remaining() - entry.length >= length && move(entry, slab)) {
+                    continue;
+                }
+                drop(entry);
+            }
+            return slab;
+        }
+
+        /** Copies a tile of a dropped slab to the given one, returns false if that failed */
+        private boolean move(Entry entry, Slab slab) {
+            try {
+                Entry moved =
+                        store(
+                                slab,
+                                entry.key,
+                                entry.tile,
+                                entry.length,
+                                entry.writeTime,
+                                entry.accessTime);
+                return index.replace(entry.key, entry, moved);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to move cached TileObject " + entry.tile, e);
+                return false;
+            }
+        }
+
+        /**
+         * Drops a slab, evicting the tiles that were not read since they were stored and collecting
+         * the others, which are left in the index
+         */
+        private void evict(Slab slab, List<Entry> referenced) {
+            allocated -= slab.buffer.capacity();
+            for (Entry entry : slab.entries) {
+                if (entry.referenced) {
+                    referenced.add(entry);
+                } else {
+                    drop(entry);
+                }
+            }
+        }
+
+        /** Evicts a tile of a dropped slab */
+        private void drop(Entry entry) {
+            if (index.remove(entry.key, entry)) {
+                liveBytes.addAndGet(-entry.length);
+                evictionCount.increment();
+            }
+        }
+
+        /** Accounts for an entry removed from the index, dropping its slab if it got empty */
+        private void release(Entry entry) {
+            liveBytes.addAndGet(-entry.length);
+            Slab slab = entry.slab;
+            slab.entries.remove(entry);
+            if (slab.entries.isEmpty() && slab != slabs.peekLast() && slabs.remove(slab)) {
+                allocated -= slab.buffer.capacity();
+            }
+        }
+
+        void remove(String key) {
+            lock.lock();
+            try {
+                Entry entry = index.remove(key);
+                if (entry != null) {
+                    release(entry);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void removeLayer(String layerName) {
+            lock.lock();
+            try {
+                Iterator<Entry> it = index.values().iterator();
+                while (it.hasNext()) {
+                    Entry entry = it.next();
+                    if (layerName.equals(entry.tile.getLayerName())) {
+                        it.remove();
+                        release(entry);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void removeExpired(long now) {
+            lock.lock();
+            try {
+                Iterator<Entry> it = index.values().iterator();
+                while (it.hasNext()) {
+                    Entry entry = it.next();
+                    if (isExpired(entry, now)) {
+                        it.remove();
+                        release(entry);
+                        evictionCount.increment();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                index.clear();
+                slabs.clear();
+                allocated = 0;
+                liveBytes.set(0);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /** Channel copying the bytes it receives into a buffer */
+    static final class BufferChannel implements WritableByteChannel {
+
+        private final ByteBuffer target;
+
+        BufferChannel(ByteBuffer target) {
+            this.target = target;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (src.remaining() > target.remaining()) {
+                throw new IOException("Resource is bigger than its declared size");
+            }
+            int written = src.remaining();
+            target.put(src);
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -20,10 +20,19 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.Locale;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.httpclient.util.DateParseException;
@@ -41,6 +50,7 @@ import org.geowebcache.grid.BoundingBox;
 import org.geowebcache.grid.GridSubset;
 import org.geowebcache.grid.OutsideCoverageException;
 import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.io.FileResource;
 import org.geowebcache.io.Resource;
 import org.geowebcache.layer.TileLayer;
 import org.geowebcache.layer.TileLayerDispatcher;
@@ -59,6 +69,26 @@ public final class ResponseUtils {
 
     private static Log log = LogFactory.getLog(ResponseUtils.class);
 
+    /** Request attribute set by Tomcat when the connector can write files with sendfile */
+    static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * RFC-1123 date format, as used by commons-httpclient's DateUtil, but thread safe so it does
+     * not need to be rebuilt for each request
+     */
+    private static final DateTimeFormatter HTTP_DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+                    .withZone(ZoneOffset.UTC);
+
+    /** Last formatted HTTP date, tiles seeded together share the same one */
+    private static volatile HttpDate lastHttpDate = new HttpDate(Long.MIN_VALUE, null);
+
     private ResponseUtils() {}
 
     /**
@@ -135,9 +165,7 @@ public final class ResponseUtils {
         // (e.g. 'Sun, 06 Nov 1994 08:49:37 GMT'). See
         // http://www.w3.org/Protocols/rfc2616/rfc2616-sec3.html#sec3.3.1
 
-        final String lastModified =
-                org.apache.commons.httpclient.util.DateUtil.formatDate(new Date(tileTimeStamp));
-        servletResp.setHeader("Last-Modified", lastModified);
+        servletResp.setHeader("Last-Modified", formatHttpDate(tileTimeStamp));
 
         final Date ifModifiedSince;
         if (ifModSinceHeader != null && ifModSinceHeader.length() > 0) {
@@ -175,11 +203,114 @@ public final class ResponseUtils {
             servletResp.setHeader("ETag", hexTag);
         }
 
+        if (blob instanceof FileResource) {
+            writeFile(
+                    servletReq,
+                    servletResp,
+                    httpCode,
+                    mimeType,
+                    ((FileResource) blob).getFile(),
+                    cacheResult,
+                    runtimeStats);
+            return;
+        }
         int contentLength = (int) (blob == null ? -1 : blob.getSize());
         writeFixedResponse(
                 servletResp, httpCode, mimeType, blob, cacheResult, contentLength, runtimeStats);
     }
 
+    /**
+     * Writes a file tile. The file is opened before any header is set, and the content length is
+     * the one of the opened file, so that a tile replaced or deleted since it was looked up can't
+     * be sent with the length of another one.
+     *
+     * <p>When the container supports it, the file is handed over to its sendfile, which opens the
+     * file again by name. That only happens if the path still leads to the opened file, with the
+     * same length, otherwise the opened file is streamed.
+     */
+    private static void writeFile(
+            HttpServletRequest servletReq,
+            HttpServletResponse servletResp,
+            int httpCode,
+            String mimeType,
+            File file,
+            CacheResult cacheResult,
+            RuntimeStats runtimeStats)
+            throws IOException {
+        final Path path = file.toPath();
+        final Object fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = in.size();
+            servletResp.setStatus(httpCode);
+            servletResp.setContentType(mimeType);
+            servletResp.setContentLength((int) size);
+            if (size > 0
+                    && Boolean.TRUE.equals(servletReq.getAttribute(SENDFILE_SUPPORTED))
+                    && isOpenedFile(path, fileKey, size)) {
+                // let the container send the file straight from the page cache to the socket
+                servletReq.setAttribute(SENDFILE_FILENAME, file.getAbsolutePath());
+                servletReq.setAttribute(SENDFILE_START, Long.valueOf(0));
+                servletReq.setAttribute(SENDFILE_END, Long.valueOf(size));
+            } else {
+                try (OutputStream os = servletResp.getOutputStream();
+                        WritableByteChannel out = Channels.newChannel(os)) {
+                    long written = 0;
+                    while (written < size) {
+                        written += in.transferTo(written, size - written, out);
+                    }
+                } catch (IOException ioe) {
+                    log.debug("Caught IOException: " + ioe.getMessage() + "\n\n" + ioe.toString());
+                    return;
+                }
+            }
+            runtimeStats.log((int) size, cacheResult);
+        }
+    }
+
+    /**
+     * Whether the path leads to the file that was opened, only known on file systems providing
+     * file keys
+     *
+     * @param fileKey the key of the file the path led to before opening it
+     * @param size the size of the opened file
+     */
+    private static boolean isOpenedFile(Path path, Object fileKey, long size) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return fileKey != null
+                    && fileKey.equals(attributes.fileKey())
+                    && attributes.size() == size;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Formats a timestamp as per RFC-1123, which is one of the three formats allowed for
+     * Last-Modified and If-Modified-Since headers (e.g. 'Sun, 06 Nov 1994 08:49:37 GMT').
+     */
+    static String formatHttpDate(long timestamp) {
+        final long seconds = Math.floorDiv(timestamp, 1000);
+        HttpDate cached = lastHttpDate;
+        if (cached.seconds != seconds) {
+            cached =
+                    new HttpDate(seconds, HTTP_DATE_FORMAT.format(Instant.ofEpochSecond(seconds)));
+            lastHttpDate = cached;
+        }
+        return cached.value;
+    }
+
+    private static final class HttpDate {
+        final long seconds;
+
+        final String value;
+
+        HttpDate(long seconds, String value) {
+            this.seconds = seconds;
+            this.value = value;
+        }
+    }
+
     /**
      * Writes a transparent, 8 bit PNG to avoid having clients like OpenLayers showing lots of pink
      * tiles
@@ -265,6 +396,7 @@ public final class ResponseUtils {
         if (resource != null) {
             try (OutputStream os = response.getOutputStream();
                     WritableByteChannel channel = Channels.newChannel(os)) {
+                // FileResource uses FileChannel.transferTo, no need to buffer here
                 resource.transferTo(channel);
                 runtimeStats.log(contentLength, cacheRes);
 
@@ -0,0 +1,44 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.util;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Extension point carrying the thread bound context of a request, such as the current request
+ * attributes or the security context, over to the pool threads running tasks on its behalf.
+ *
+ * <p>Implementations are looked up in the application context, an application keeping more state
+ * in thread locals can register its own.
+ */
+public interface TaskContextPropagator {
+
+    /**
+     * Captures the context of the calling thread, returning a task that runs {@code task} with that
+     * context set on the thread running it, and restores the previous context of that thread once
+     * done.
+     */
+    <T> Callable<T> propagate(Callable<T> task);
+
+    /** Wraps the task with all the given propagators, capturing the context of the caller */
+    static <T> Callable<T> propagate(List<TaskContextPropagator> propagators, Callable<T> task) {
+        Callable<T> wrapped = task;
+        for (TaskContextPropagator propagator : propagators) {
+            wrapped = propagator.propagate(wrapped);
+        }
+        return wrapped;
+    }
+}
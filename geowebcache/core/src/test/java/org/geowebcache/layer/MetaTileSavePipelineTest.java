@@ -0,0 +1,220 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.layer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class MetaTileSavePipelineTest {
+
+    MetaTileSavePipeline pipeline;
+
+    @After
+    public void tearDown() {
+        if (pipeline != null) {
+            pipeline.dispose();
+        }
+    }
+
+    @Test
+    public void testDisabledRunsOnCaller() {
+        pipeline = new MetaTileSavePipeline(0, 10);
+        assertFalse(pipeline.isEnabled());
+
+        final Thread caller = Thread.currentThread();
+        List<Thread> runners = new ArrayList<>();
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            tasks.add(() -> runners.add(Thread.currentThread()));
+        }
+        AtomicInteger completions = new AtomicInteger();
+        pipeline.submit("key", tasks, completions::incrementAndGet);
+
+        assertEquals(3, runners.size());
+        for (Thread t : runners) {
+            assertSame(caller, t);
+        }
+        assertEquals(1, completions.get());
+        assertEquals(3, pipeline.getCompletedCount());
+        assertEquals(0, pipeline.getPendingMetaTiles());
+    }
+
+    @Test
+    public void testAwaitPending() throws Exception {
+        pipeline = new MetaTileSavePipeline(2, 10);
+        assertTrue(pipeline.isEnabled());
+
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger saved = new AtomicInteger();
+        AtomicInteger completions = new AtomicInteger();
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            tasks.add(
+                    () -> {
+                        try {
+                            release.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        saved.incrementAndGet();
+                    });
+        }
+        pipeline.submit("key", tasks, completions::incrementAndGet);
+        assertEquals(1, pipeline.getPendingMetaTiles());
+
+        release.countDown();
+        pipeline.awaitPending("key");
+        assertEquals(4, saved.get());
+        assertEquals(1, completions.get());
+        assertEquals(0, pipeline.getPendingMetaTiles());
+        assertEquals(4, pipeline.getSubmittedCount());
+    }
+
+    @Test
+    public void testFailuresAreCounted() throws Exception {
+        pipeline = new MetaTileSavePipeline(1, 10);
+        List<Runnable> tasks = new ArrayList<>();
+        tasks.add(
+                () -> {
+                    throw new IllegalStateException("expected");
+                });
+        tasks.add(() -> {});
+        AtomicInteger completions = new AtomicInteger();
+        CompletableFuture<Void> saved = pipeline.submit("key", tasks, completions::incrementAndGet);
+        pipeline.awaitPending("key");
+
+        assertEquals(1, completions.get());
+        assertEquals(1, pipeline.getFailedCount());
+        assertEquals(1, pipeline.getCompletedCount());
+        try {
+            saved.get(10, TimeUnit.SECONDS);
+            fail("Expected the failure to be reported");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testShutDownByLastUser() {
+        pipeline = new MetaTileSavePipeline(1, 10);
+        pipeline.retain();
+        pipeline.retain();
+
+        final Thread caller = Thread.currentThread();
+        List<Thread> runners = new CopyOnWriteArrayList<>();
+        List<Runnable> tasks = new ArrayList<>();
+        tasks.add(() -> runners.add(Thread.currentThread()));
+
+        pipeline.release();
+        pipeline.submit("key", tasks, null);
+        pipeline.awaitPending("key");
+        assertEquals(1, runners.size());
+        assertNotSame(caller, runners.get(0));
+
+        // no more users, the pipeline threads are gone
+        pipeline.release();
+        pipeline.submit("key", tasks, null);
+        assertEquals(2, runners.size());
+        assertSame(caller, runners.get(1));
+        assertEquals(1, pipeline.getCallerRunsCount());
+    }
+
+    @Test
+    public void testBackPressureRunsOnCaller() throws Exception {
+        pipeline = new MetaTileSavePipeline(1, 1);
+
+        CountDownLatch release = new CountDownLatch(1);
+        final Thread caller = Thread.currentThread();
+        AtomicInteger callerRuns = new AtomicInteger();
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            tasks.add(
+                    () -> {
+                        if (Thread.currentThread() == caller) {
+                            callerRuns.incrementAndGet();
+                        } else {
+                            try {
+                                release.await(10, TimeUnit.SECONDS);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    });
+        }
+        pipeline.submit("key", tasks, null);
+        release.countDown();
+        pipeline.awaitPending("key");
+
+        // one task running, at most one queued, the others run by the caller
+        assertTrue(callerRuns.get() >= 2);
+        assertEquals(callerRuns.get(), pipeline.getCallerRunsCount());
+        assertEquals(4, pipeline.getCompletedCount());
+    }
+
+    @Test
+    public void testExclusiveBlocksWhenFull() throws Exception {
+        pipeline = new MetaTileSavePipeline(1, 1, true);
+        assertTrue(pipeline.isExclusive());
+
+        CountDownLatch release = new CountDownLatch(1);
+        List<Thread> runners = new CopyOnWriteArrayList<>();
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            tasks.add(
+                    () -> {
+                        runners.add(Thread.currentThread());
+                        try {
+                            release.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+        }
+        Thread submitter = new Thread(() -> pipeline.submit("key", tasks, null));
+        submitter.start();
+        // one task running, one queued, the submitter waits for room in the queue
+        long timeout = System.currentTimeMillis() + 10000;
+        while (submitter.getState() != Thread.State.WAITING
+                && System.currentTimeMillis() < timeout) {
+            Thread.yield();
+        }
+        assertEquals(Thread.State.WAITING, submitter.getState());
+        release.countDown();
+        submitter.join(10000);
+        pipeline.awaitPending("key");
+
+        assertEquals(4, runners.size());
+        for (Thread t : runners) {
+            assertNotSame(submitter, t);
+        }
+        assertEquals(0, pipeline.getCallerRunsCount());
+        assertEquals(4, pipeline.getCompletedCount());
+    }
+}
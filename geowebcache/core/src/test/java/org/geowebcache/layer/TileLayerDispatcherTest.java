@@ -125,6 +125,25 @@ public class TileLayerDispatcherTest extends GWCConfigIntegrationTest {
         }
     }
 
+    @Test
+    public void testRemoveLayerFromConfiguration() throws GeoWebCacheException {
+        String layerToRemove = GWCConfigIntegrationTestData.LAYER_TOPP_STATES;
+        // looked up once so that the dispatcher index is built
+        assertNotNull(tileLayerDispatcher.getTileLayer(layerToRemove));
+
+        // bypass the dispatcher, the configuration notifies it
+        tileLayerDispatcher.getConfiguration(layerToRemove).removeLayer(layerToRemove);
+
+        assertFalse(tileLayerDispatcher.layerExists(layerToRemove));
+        assertFalse(tileLayerDispatcher.getLayerNames().contains(layerToRemove));
+        try {
+            tileLayerDispatcher.getTileLayer(layerToRemove);
+            fail("Expected exception when trying to get removed layer");
+        } catch (GeoWebCacheException e) {
+
+        }
+    }
+
     @Test
     public void testRemoveLayerException() {
         try {
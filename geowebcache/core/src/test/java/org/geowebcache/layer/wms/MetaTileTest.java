@@ -1,5 +1,6 @@
 package org.geowebcache.layer.wms;
 
+import it.geosolutions.jaiext.BufferedImageAdapter;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.geom.Rectangle2D;
@@ -12,6 +13,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import javax.imageio.ImageIO;
 import javax.media.jai.PlanarImage;
 import junit.framework.TestCase;
 import org.geowebcache.config.DefaultGridsets;
@@ -19,6 +21,7 @@ import org.geowebcache.grid.BoundingBox;
 import org.geowebcache.grid.GridSetBroker;
 import org.geowebcache.grid.GridSubset;
 import org.geowebcache.grid.GridSubsetFactory;
+import org.geowebcache.io.ByteArrayResource;
 import org.geowebcache.layer.MetaTile;
 import org.geowebcache.mime.ApplicationMime;
 import org.geowebcache.mime.ImageMime;
@@ -326,6 +329,53 @@ public class MetaTileTest extends TestCase {
         commonCreateTileFromMetaTileTest(colors, PlanarImage.wrapRenderedImage(image));
     }
 
+    // Testing that a planar meta tile is rendered once and the tiles share its pixels
+    public void testCreateTileFromMetaTilePlanarImageSharesRaster() throws Exception {
+        Color[][] colors = new Color[2][2];
+        BufferedImage image = createBufferImageMetaTile(2, 2, 256, 512, colors);
+        BoundingBox boundingBox = new BoundingBox(0, 0, 180, 90);
+        GridSubset grid =
+                GridSubsetFactory.createGridSubSet(
+                        gridSetBroker.getWorldEpsg4326(), boundingBox, 0, 21);
+        long[] gridPos = {0, 0, 0};
+        MetaTile metaTile = new MetaTile(grid, ImageMime.png, null, gridPos, 2, 2, null);
+        metaTile.setImage(PlanarImage.wrapRenderedImage(image));
+        int width = metaTile.getMetaTileWidth();
+        int height = metaTile.getMetaTileHeight();
+        RenderedImage first = metaTile.createTile(0, 0, width, height);
+        RenderedImage second = metaTile.createTile(width, height, width, height);
+        if (!(first instanceof BufferedImageAdapter)) {
+            // native JAI crops on the fly instead
+            return;
+        }
+        BufferedImage firstImage = ((PlanarImage) first).getAsBufferedImage();
+        BufferedImage secondImage = ((PlanarImage) second).getAsBufferedImage();
+        assertSame(firstImage.getRaster().getDataBuffer(), secondImage.getRaster().getDataBuffer());
+        checkImageBorderSameColor(first, colors[0][0]);
+        checkImageBorderSameColor(second, colors[1][1]);
+
+        // the encoded tiles are the same as the ones of a buffered image meta tile
+        MetaTile bufferedMetaTile = new MetaTile(grid, ImageMime.png, null, gridPos, 2, 2, null);
+        bufferedMetaTile.setImage(image);
+        for (int i = 0; i < 4; i++) {
+            ByteArrayResource resource = new ByteArrayResource();
+            assertTrue(metaTile.writeTileToStream(i, resource));
+            ByteArrayResource expectedResource = new ByteArrayResource();
+            assertTrue(bufferedMetaTile.writeTileToStream(i, expectedResource));
+            BufferedImage tile = ImageIO.read(resource.getInputStream());
+            BufferedImage expected = ImageIO.read(expectedResource.getInputStream());
+            assertEquals(expected.getWidth(), tile.getWidth());
+            assertEquals(expected.getHeight(), tile.getHeight());
+            for (int y = 0; y < tile.getHeight(); y++) {
+                for (int x = 0; x < tile.getWidth(); x++) {
+                    assertEquals(expected.getRGB(x, y), tile.getRGB(x, y));
+                }
+            }
+        }
+        metaTile.dispose();
+        bufferedMetaTile.dispose();
+    }
+
     // Helper class that given a meta tile image will extract the tiles and check that extracted
     // tiles are correct
     private void commonCreateTileFromMetaTileTest(Color[][] colors, RenderedImage metaTileImage)
@@ -0,0 +1,334 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.layer.wms;
+
+import static org.geowebcache.TestHelpers.createWMSLayer;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.IOUtils;
+import org.geowebcache.config.DefaultGridsets;
+import org.geowebcache.grid.GridSetBroker;
+import org.geowebcache.grid.GridSubset;
+import org.geowebcache.grid.GridSubsetFactory;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.mime.ImageMime;
+import org.junit.After;
+import org.junit.Test;
+
+/** Checks hedging and coalescing of backend requests against local stub WMS servers */
+public class WMSHttpHelperTest {
+
+    List<HttpServer> servers = new ArrayList<>();
+
+    @After
+    public void stopServers() {
+        for (HttpServer server : servers) {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Starts a stub WMS, counting down {@code reached} for each request and answering with the
+     * given body once {@code release} is counted down
+     */
+    private String startServer(
+            String body, CountDownLatch reached, CountDownLatch release, AtomicInteger hits)
+            throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext(
+                "/wms",
+                exchange -> {
+                    hits.incrementAndGet();
+                    reached.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().add("Content-Type", "image/png");
+                    exchange.sendResponseHeaders(200, bytes.length);
+                    try (OutputStream os = exchange.getResponseBody()) {
+                        os.write(bytes);
+                    }
+                });
+        server.start();
+        servers.add(server);
+        return "http://localhost:" + server.getAddress().getPort() + "/wms?";
+    }
+
+    /** Starts a stub WMS answering right away */
+    private String startServer(String body, AtomicInteger hits) throws IOException {
+        return startServer(body, new CountDownLatch(1), new CountDownLatch(0), hits);
+    }
+
+    private String contents(ByteArrayResource resource) throws IOException {
+        return IOUtils.toString(resource.getInputStream(), StandardCharsets.UTF_8);
+    }
+
+    private Map<String, String> params() {
+        Map<String, String> params = new HashMap<>();
+        params.put("REQUEST", "GetMap");
+        params.put("LAYERS", "test:layer");
+        return params;
+    }
+
+    @Test
+    public void testHedgeOnSlowBackend() throws Exception {
+        AtomicInteger slowHits = new AtomicInteger();
+        AtomicInteger fastHits = new AtomicInteger();
+        // the slow backend only answers once the test is over
+        CountDownLatch slowRelease = new CountDownLatch(1);
+        String slow = startServer("slow", new CountDownLatch(1), slowRelease, slowHits);
+        String fast = startServer("fast", fastHits);
+
+        WMSLayer layer = createWMSLayer("image/png");
+        // the layer starts from the second URL
+        layer.setWMSurl(new String[] {fast, slow});
+        WMSHttpHelper helper = new WMSHttpHelper();
+        helper.setBackendTimeout(10);
+        helper.setHedgeDelay(100);
+        layer.setSourceHelper(helper);
+
+        long hedged = WMSHttpHelper.getHedgedRequestCount();
+        WMSHttpHelper.BackendResponse receiver = new WMSHttpHelper.BackendResponse(-1);
+        ByteArrayResource target = new ByteArrayResource();
+        try {
+            helper.makeRequest(receiver, layer, params(), ImageMime.png, target);
+        } finally {
+            slowRelease.countDown();
+        }
+
+        assertEquals("fast", contents(target));
+        assertEquals(200, receiver.getStatus());
+        assertFalse(receiver.getError());
+        assertEquals(1, slowHits.get());
+        assertEquals(1, fastHits.get());
+        assertEquals(hedged + 1, WMSHttpHelper.getHedgedRequestCount());
+    }
+
+    @Test
+    public void testNoHedgeWhenDisabled() throws Exception {
+        AtomicInteger slowHits = new AtomicInteger();
+        AtomicInteger fastHits = new AtomicInteger();
+        CountDownLatch slowReached = new CountDownLatch(1);
+        CountDownLatch slowRelease = new CountDownLatch(1);
+        String slow = startServer("slow", slowReached, slowRelease, slowHits);
+        String fast = startServer("fast", fastHits);
+
+        WMSLayer layer = createWMSLayer("image/png");
+        layer.setWMSurl(new String[] {fast, slow});
+        WMSHttpHelper helper = new WMSHttpHelper();
+        helper.setBackendTimeout(10);
+        helper.setHedgeDelay(0);
+        layer.setSourceHelper(helper);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ByteArrayResource target = new ByteArrayResource();
+        try {
+            Future<?> request =
+                    executor.submit(
+                            () -> {
+                                helper.makeRequest(
+                                        new WMSHttpHelper.BackendResponse(-1),
+                                        layer,
+                                        params(),
+                                        ImageMime.png,
+                                        target);
+                                return null;
+                            });
+            // answer only once the slow backend got the request
+            assertTrue(slowReached.await(10, TimeUnit.SECONDS));
+            slowRelease.countDown();
+            request.get(10, TimeUnit.SECONDS);
+        } finally {
+            slowRelease.countDown();
+            executor.shutdown();
+        }
+
+        assertEquals("slow", contents(target));
+        assertEquals(1, slowHits.get());
+        assertEquals(0, fastHits.get());
+    }
+
+    @Test
+    public void testCoalesceIdenticalMetaTileRequests() throws Exception {
+        AtomicInteger hits = new AtomicInteger();
+        CountDownLatch reached = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        String url = startServer("metatile", reached, release, hits);
+
+        WMSLayer layer = createWMSLayer("image/png");
+        layer.setWMSurl(new String[] {url});
+        WMSHttpHelper helper = new WMSHttpHelper();
+        helper.setBackendTimeout(10);
+        layer.setSourceHelper(helper);
+        assertTrue(helper.isCoalesceRequests());
+
+        GridSetBroker gridSetBroker =
+                new GridSetBroker(Collections.singletonList(new DefaultGridsets(false, false)));
+        GridSubset grid = GridSubsetFactory.createGridSubSet(gridSetBroker.getWorldEpsg4326());
+        long coalesced = WMSHttpHelper.getCoalescedRequestCount();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executor.submit(() -> requestMetaTile(helper, layer, grid)));
+            // the first request is in flight, the second one joins it
+            assertTrue(reached.await(10, TimeUnit.SECONDS));
+            results.add(executor.submit(() -> requestMetaTile(helper, layer, grid)));
+            awaitCoalescedRequestCount(coalesced + 1);
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("metatile", result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        assertEquals(1, hits.get());
+        assertEquals(coalesced + 1, WMSHttpHelper.getCoalescedRequestCount());
+    }
+
+    @Test
+    public void testCoalesceAcrossLayersSharingTheBackend() throws Exception {
+        AtomicInteger hits = new AtomicInteger();
+        CountDownLatch reached = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        String url = startServer("metatile", reached, release, hits);
+
+        GridSetBroker gridSetBroker =
+                new GridSetBroker(Collections.singletonList(new DefaultGridsets(false, false)));
+        GridSubset grid = GridSubsetFactory.createGridSubSet(gridSetBroker.getWorldEpsg4326());
+
+        WMSLayer layer = createWMSLayer("image/png");
+        layer.setWMSurl(new String[] {url});
+        // a second layer publishing the same backend layer under another name
+        WMSLayer alias =
+                new WMSLayer(
+                        "test:alias",
+                        new String[] {url},
+                        "aStyle",
+                        "test:layer",
+                        Collections.singletonList("image/png"),
+                        Collections.singletonMap(grid.getName(), grid),
+                        new ArrayList<>(),
+                        new int[] {3, 3},
+                        "vendorparam=true",
+                        false,
+                        null);
+        alias.initialize(gridSetBroker);
+        WMSHttpHelper helper = new WMSHttpHelper();
+        helper.setBackendTimeout(10);
+        long coalesced = WMSHttpHelper.getCoalescedRequestCount();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executor.submit(() -> requestMetaTile(helper, layer, grid)));
+            assertTrue(reached.await(10, TimeUnit.SECONDS));
+            results.add(executor.submit(() -> requestMetaTile(helper, alias, grid)));
+            awaitCoalescedRequestCount(coalesced + 1);
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("metatile", result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        assertEquals(1, hits.get());
+    }
+
+    @Test
+    public void testNoCoalescingAcrossCredentials() throws Exception {
+        AtomicInteger hits = new AtomicInteger();
+        CountDownLatch reached = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        String url = startServer("metatile", reached, release, hits);
+
+        WMSLayer layer = createWMSLayer("image/png");
+        layer.setWMSurl(new String[] {url});
+        WMSHttpHelper helper1 = new WMSHttpHelper("user", "secret1", null);
+        helper1.setBackendTimeout(10);
+        WMSHttpHelper helper2 = new WMSHttpHelper("user", "secret2", null);
+        helper2.setBackendTimeout(10);
+
+        GridSetBroker gridSetBroker =
+                new GridSetBroker(Collections.singletonList(new DefaultGridsets(false, false)));
+        GridSubset grid = GridSubsetFactory.createGridSubSet(gridSetBroker.getWorldEpsg4326());
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> result1 = executor.submit(() -> requestMetaTile(helper1, layer, grid));
+            Future<String> result2 = executor.submit(() -> requestMetaTile(helper2, layer, grid));
+            // both requests reach the backend while the other is in flight
+            assertTrue(reached.await(10, TimeUnit.SECONDS));
+            release.countDown();
+            assertEquals("metatile", result1.get(10, TimeUnit.SECONDS));
+            assertEquals("metatile", result2.get(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        assertEquals(2, hits.get());
+    }
+
+    private String requestMetaTile(WMSHttpHelper helper, WMSLayer layer, GridSubset grid)
+            throws Exception {
+        WMSMetaTile metaTile =
+                new WMSMetaTile(
+                        layer,
+                        grid,
+                        ImageMime.png,
+                        null,
+                        new long[] {0, 0, 0},
+                        1,
+                        1,
+                        new HashMap<>());
+        ByteArrayResource target = new ByteArrayResource();
+        helper.makeRequest(metaTile, target);
+        assertEquals(200, metaTile.getStatus());
+        return contents(target);
+    }
+
+    /** Waits for a request to join the one in flight, it has no other observable effect */
+    private void awaitCoalescedRequestCount(long expected) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (WMSHttpHelper.getCoalescedRequestCount() < expected) {
+            assertTrue("Request was not coalesced", System.nanoTime() < deadline);
+            Thread.yield();
+        }
+    }
+}
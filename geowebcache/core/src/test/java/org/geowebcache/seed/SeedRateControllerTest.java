@@ -0,0 +1,121 @@
+package org.geowebcache.seed;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+public class SeedRateControllerTest extends TestCase {
+
+    public void testStartsAtMaximum() throws Exception {
+        SeedRateController controller = new SeedRateController(8, 100);
+        assertEquals(8, controller.getLimit());
+        for (int i = 0; i < 8; i++) {
+            controller.acquire();
+        }
+        for (int i = 0; i < 8; i++) {
+            controller.release(10, false);
+        }
+        assertEquals(8, controller.getLimit());
+    }
+
+    public void testDecreaseOnSlowOrFailed() throws Exception {
+        SeedRateController controller = new SeedRateController(8, 100);
+        controller.acquire();
+        controller.release(500, false);
+        assertEquals(4, controller.getLimit());
+
+        // a second slow response within the same period does not count twice
+        controller.acquire();
+        controller.release(500, false);
+        assertEquals(4, controller.getLimit());
+
+        Thread.sleep(150);
+        controller.acquire();
+        controller.release(10, true);
+        assertEquals(2, controller.getLimit());
+    }
+
+    public void testAdditiveIncrease() throws Exception {
+        SeedRateController controller = new SeedRateController(4, 100);
+        controller.acquire();
+        controller.release(500, false);
+        assertEquals(2, controller.getLimit());
+
+        // one increase per limit worth of fast responses
+        controller.acquire();
+        controller.release(10, false);
+        assertEquals(2, controller.getLimit());
+        controller.acquire();
+        controller.release(10, false);
+        assertEquals(3, controller.getLimit());
+        for (int i = 0; i < 3; i++) {
+            controller.acquire();
+            controller.release(10, false);
+        }
+        assertEquals(4, controller.getLimit());
+
+        // never above the maximum
+        for (int i = 0; i < 8; i++) {
+            controller.acquire();
+            controller.release(10, false);
+        }
+        assertEquals(4, controller.getLimit());
+    }
+
+    public void testAcquireBlocksAtLimit() throws Exception {
+        final SeedRateController controller = new SeedRateController(1, 100);
+        controller.acquire();
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread t =
+                new Thread(
+                        () -> {
+                            try {
+                                controller.acquire();
+                                acquired.countDown();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        });
+        t.start();
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+
+        controller.release(10, false);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        t.join();
+    }
+
+    public void testJoinAndLeave() throws Exception {
+        SeedRateController controller = new SeedRateController(0, 100);
+        assertTrue(controller.isIdle());
+
+        // two seed requests hitting the same backend share the limit
+        for (int i = 0; i < 6; i++) {
+            controller.join();
+        }
+        assertFalse(controller.isIdle());
+        assertEquals(6, controller.getMaxLimit());
+        assertEquals(6, controller.getLimit());
+        controller.acquire();
+        controller.release(500, false);
+        assertEquals(3, controller.getLimit());
+
+        for (int i = 0; i < 4; i++) {
+            controller.leave();
+        }
+        assertEquals(2, controller.getMaxLimit());
+        assertEquals(2, controller.getLimit());
+        controller.leave();
+        controller.leave();
+        assertTrue(controller.isIdle());
+    }
+
+    public void testInvalidTargetLatency() {
+        try {
+            new SeedRateController(4, 0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
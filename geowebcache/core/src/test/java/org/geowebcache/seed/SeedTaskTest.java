@@ -28,7 +28,9 @@ import static org.geowebcache.TestHelpers.createWMSLayer;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.channels.Channels;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -41,6 +43,7 @@ import org.easymock.EasyMock;
 import org.geowebcache.GeoWebCacheException;
 import org.geowebcache.grid.GridSubset;
 import org.geowebcache.io.Resource;
+import org.geowebcache.layer.MetaTileSavePipeline;
 import org.geowebcache.layer.TileResponseReceiver;
 import org.geowebcache.layer.wms.WMSLayer;
 import org.geowebcache.layer.wms.WMSMetaTile;
@@ -48,6 +51,7 @@ import org.geowebcache.layer.wms.WMSSourceHelper;
 import org.geowebcache.mime.MimeType;
 import org.geowebcache.seed.GWCTask.TYPE;
 import org.geowebcache.storage.StorageBroker;
+import org.geowebcache.storage.StorageException;
 import org.geowebcache.storage.TileObject;
 import org.geowebcache.storage.TileRange;
 import org.geowebcache.storage.TileRangeIterator;
@@ -350,6 +354,159 @@ public class SeedTaskTest extends TestCase {
         verify(sleeper);
     }
 
+    /**
+     * Make sure all the tiles are stored when encoding runs on a dedicated pipeline, and that the
+     * task waits for them before completing
+     */
+    @SuppressWarnings("serial")
+    public void testSeedStoredTilesWithEncodePipeline() throws Exception {
+        WMSLayer tl = createWMSLayer("image/png");
+        tl.setSourceHelper(new MockWMSSourceHelper());
+
+        final String gridSetId = tl.getGridSubsets().iterator().next();
+        final int zoomLevel = 2;
+        SeedRequest req = createRequest(tl, TYPE.SEED, zoomLevel, zoomLevel);
+
+        final StorageBroker mockStorageBroker = EasyMock.createMock(StorageBroker.class);
+        final List<TileObject> storedTiles = Collections.synchronizedList(new ArrayList<>());
+        Capture<TileObject> storedObjects =
+                new Capture<TileObject>() {
+                    /** Override because setValue with anyTimes() resets the list of values */
+                    @Override
+                    public void setValue(TileObject o) {
+                        storedTiles.add(o);
+                    }
+                };
+        expect(mockStorageBroker.put(capture(storedObjects))).andReturn(true).anyTimes();
+        expect(mockStorageBroker.get((TileObject) anyObject())).andReturn(false).anyTimes();
+        replay(mockStorageBroker);
+
+        TileRange tr = TileBreeder.createTileRange(req, tl);
+        TileRangeIterator trIter = new TileRangeIterator(tr, tl.getMetaTilingFactors());
+
+        MetaTileSavePipeline pipeline = new MetaTileSavePipeline(2, 4);
+        SeedTask task = new SeedTask(mockStorageBroker, trIter, tl, false, false);
+        task.setTaskId(1L);
+        task.setThreadInfo(new AtomicInteger(), 0);
+        task.setEncodePipeline(pipeline);
+        try {
+            task.doAction();
+        } finally {
+            pipeline.dispose();
+        }
+
+        final long[] coveredGridLevels = tl.getGridSubset(gridSetId).getCoverage(zoomLevel);
+        final long expectedSavedTileCount =
+                (coveredGridLevels[2] - coveredGridLevels[0] + 1)
+                        * (coveredGridLevels[3] - coveredGridLevels[1] + 1);
+        assertEquals(expectedSavedTileCount, storedTiles.size());
+        assertEquals(0, pipeline.getFailedCount());
+    }
+
+    /**
+     * Make sure an exclusive encode pipeline saves all the tiles, the requested ones included, and
+     * that the seeding thread only fetches
+     */
+    public void testSeedWithExclusiveEncodePipeline() throws Exception {
+        WMSLayer tl = createWMSLayer("image/png");
+        tl.setSourceHelper(new MockWMSSourceHelper());
+
+        final String gridSetId = tl.getGridSubsets().iterator().next();
+        final int zoomLevel = 2;
+        SeedRequest req = createRequest(tl, TYPE.SEED, zoomLevel, zoomLevel);
+
+        final StorageBroker mockStorageBroker = EasyMock.createMock(StorageBroker.class);
+        final List<Thread> storingThreads = Collections.synchronizedList(new ArrayList<>());
+        expect(mockStorageBroker.put(anyObject()))
+                .andAnswer(
+                        () -> {
+                            storingThreads.add(Thread.currentThread());
+                            return true;
+                        })
+                .anyTimes();
+        expect(mockStorageBroker.get((TileObject) anyObject())).andReturn(false).anyTimes();
+        replay(mockStorageBroker);
+
+        TileRange tr = TileBreeder.createTileRange(req, tl);
+        TileRangeIterator trIter = new TileRangeIterator(tr, tl.getMetaTilingFactors());
+
+        MetaTileSavePipeline pipeline = new MetaTileSavePipeline(2, 4, true);
+        SeedTask task = new SeedTask(mockStorageBroker, trIter, tl, false, false);
+        task.setTaskId(1L);
+        task.setThreadInfo(new AtomicInteger(), 0);
+        task.setEncodePipeline(pipeline);
+        try {
+            task.doAction();
+        } finally {
+            pipeline.dispose();
+        }
+
+        final long[] coveredGridLevels = tl.getGridSubset(gridSetId).getCoverage(zoomLevel);
+        final long expectedSavedTileCount =
+                (coveredGridLevels[2] - coveredGridLevels[0] + 1)
+                        * (coveredGridLevels[3] - coveredGridLevels[1] + 1);
+        assertEquals(expectedSavedTileCount, storingThreads.size());
+        assertFalse(storingThreads.contains(Thread.currentThread()));
+        assertEquals(0, pipeline.getCallerRunsCount());
+        assertEquals(0, pipeline.getFailedCount());
+    }
+
+    /**
+     * Make sure a tile failing to be stored on the encode pipeline counts as a seed failure, and
+     * that its meta tile is seeded again
+     */
+    public void testSiblingFailuresAreRetried() throws Exception {
+        WMSLayer tl = createWMSLayer("image/png");
+        tl.setSourceHelper(new MockWMSSourceHelper());
+
+        final String gridSetId = tl.getGridSubsets().iterator().next();
+        final int zoomLevel = 2;
+        SeedRequest req = createRequest(tl, TYPE.SEED, zoomLevel, zoomLevel);
+
+        final StorageBroker mockStorageBroker = EasyMock.createMock(StorageBroker.class);
+        final Set<Tuple<Long>> storedTiles = Collections.synchronizedSet(new TreeSet<>());
+        final AtomicInteger puts = new AtomicInteger();
+        expect(mockStorageBroker.put(anyObject()))
+                .andAnswer(
+                        () -> {
+                            // the first put is the requested tile, the second one a sibling
+                            if (puts.incrementAndGet() == 2) {
+                                throw new StorageException("expected");
+                            }
+                            long[] xyz = ((TileObject) EasyMock.getCurrentArguments()[0]).getXYZ();
+                            storedTiles.add(new Tuple<Long>(xyz[0], xyz[1], xyz[2]));
+                            return true;
+                        })
+                .anyTimes();
+        expect(mockStorageBroker.get((TileObject) anyObject())).andReturn(false).anyTimes();
+        replay(mockStorageBroker);
+
+        TileRange tr = TileBreeder.createTileRange(req, tl);
+        TileRangeIterator trIter = new TileRangeIterator(tr, tl.getMetaTilingFactors());
+
+        MetaTileSavePipeline pipeline = new MetaTileSavePipeline(2, 4);
+        SeedTask task = new SeedTask(mockStorageBroker, trIter, tl, false, false);
+        task.setTaskId(1L);
+        task.setThreadInfo(new AtomicInteger(), 0);
+        task.setEncodePipeline(pipeline);
+        task.sleeper = millis -> {};
+        AtomicLong sharedFailureCounter = new AtomicLong();
+        task.setFailurePolicy(1, 10, 100, sharedFailureCounter);
+        try {
+            task.doAction();
+        } finally {
+            pipeline.dispose();
+        }
+
+        final long[] coveredGridLevels = tl.getGridSubset(gridSetId).getCoverage(zoomLevel);
+        final long expectedSavedTileCount =
+                (coveredGridLevels[2] - coveredGridLevels[0] + 1)
+                        * (coveredGridLevels[3] - coveredGridLevels[1] + 1);
+        assertEquals(1, sharedFailureCounter.get());
+        assertEquals(1, pipeline.getFailedCount());
+        assertEquals(expectedSavedTileCount, storedTiles.size());
+    }
+
     private static class Tuple<T extends Comparable<T>> implements Comparable<Tuple<T>> {
 
         private T[] members;
@@ -25,16 +25,20 @@ import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.describedAs;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.hasProperty;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import org.easymock.Capture;
@@ -1271,6 +1275,49 @@ public abstract class AbstractBlobStoreTest<TestClass extends BlobStore> {
         assertTile(layerName, 1, 0, 0, gridsetId, format, null, content);
     }
 
+    @Test
+    public void testScanRange() throws StorageException {
+        final String layerName = "testLayer";
+        GridSet gridSet = new DefaultGridsets(true, false).worldEpsg4326();
+        final String format = ImageMime.png.getFormat();
+        String gridsetId = gridSet.getName();
+
+        // store full world coverage for zoom levels 0, 1, 2
+        setupFullCoverage(layerName, gridSet, format, "sample", gridsetId, 0, 2);
+        Map<String, String> params = Collections.singletonMap("a", "x");
+        cacheTile(layerName, 0, 0, 1, gridsetId, format, params, "other parameters");
+
+        TileRange range =
+                new TileRange(
+                        layerName,
+                        gridsetId,
+                        1,
+                        2,
+                        new long[][] {{0, 0, 2, 2, 1}, {0, 0, 2, 2, 2}},
+                        ImageMime.png,
+                        null);
+        List<String> visited = new ArrayList<>();
+        boolean scanned =
+                store.scan(
+                        range,
+                        (x, y, z, size) -> {
+                            assertThat(size, greaterThan(0L));
+                            visited.add(x + "_" + y + "_" + z);
+                        });
+        assumeTrue("store can't list its tiles", scanned);
+
+        List<String> expected = new ArrayList<>();
+        for (int z = 1; z <= 2; z++) {
+            Grid grid = gridSet.getGrid(z);
+            for (long x = 0; x <= Math.min(2, grid.getNumTilesWide() - 1); x++) {
+                for (long y = 0; y <= Math.min(2, grid.getNumTilesHigh() - 1); y++) {
+                    expected.add(x + "_" + y + "_" + z);
+                }
+            }
+        }
+        assertThat(visited, containsInAnyOrder(expected.toArray()));
+    }
+
     public void setupFullCoverage(
             String layerName,
             GridSet gridSet,
@@ -19,6 +19,7 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import junit.framework.TestCase;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -241,6 +242,89 @@ public class BlobStoreTest extends TestCase {
         }
     }
 
+    public void testPutAfterLayerDelete() throws Exception {
+        fbs = setup();
+
+        Resource bytes = new ByteArrayResource("1 2 3 4 5 6 test".getBytes());
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("a", "x");
+        final String layerName = "test:123123 112";
+        long[] xyz = {1L, 2L, 3L};
+
+        TileObject to =
+                TileObject.createCompleteTileObject(
+                        layerName, xyz, "EPSG:4326", "image/jpeg", parameters, bytes);
+        fbs.put(to);
+        final String parametersKey = "parameters." + to.getParametersId();
+        assertNotNull(fbs.getLayerMetadata(layerName, parametersKey));
+
+        // the tile directory and parameters are known now, deleting the layer must forget them
+        assertTrue(fbs.delete(layerName));
+        assertNull(fbs.getLayerMetadata(layerName, parametersKey));
+
+        to =
+                TileObject.createCompleteTileObject(
+                        layerName, xyz, "EPSG:4326", "image/jpeg", parameters, bytes);
+        fbs.put(to);
+        assertNotNull(fbs.getLayerMetadata(layerName, parametersKey));
+
+        TileObject to2 =
+                TileObject.createQueryTileObject(
+                        layerName, xyz, "EPSG:4326", "image/jpeg", parameters);
+        assertTrue(fbs.get(to2));
+        try (InputStream is = to2.getBlob().getInputStream();
+                InputStream is2 = bytes.getInputStream()) {
+            assertTrue(IOUtils.contentEquals(is, is2));
+        }
+    }
+
+    public void testPutRetriesFailedParameterMapWrite() throws Exception {
+        // creates the store directory
+        setup().destroy();
+        final AtomicInteger writes = new AtomicInteger();
+        fbs =
+                new FileBlobStore(
+                        StorageBrokerTest.findTempDir() + File.separator + TEST_BLOB_DIR_NAME) {
+                    @Override
+                    protected void persistParameterMap(TileObject stObj) {
+                        // the first write is lost, like a failed optimistic metadata update
+                        if (writes.incrementAndGet() > 1) {
+                            super.persistParameterMap(stObj);
+                        }
+                    }
+                };
+
+        Resource bytes = new ByteArrayResource("1 2 3 4 5 6 test".getBytes());
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("a", "x");
+        final String layerName = "test:123123 112";
+
+        TileObject to =
+                TileObject.createCompleteTileObject(
+                        layerName,
+                        new long[] {1L, 2L, 3L},
+                        "EPSG:4326",
+                        "image/jpeg",
+                        parameters,
+                        bytes);
+        fbs.put(to);
+        final String parametersKey = "parameters." + to.getParametersId();
+        assertNull(fbs.getLayerMetadata(layerName, parametersKey));
+
+        // a tile in the same directory writes the parameters again
+        to =
+                TileObject.createCompleteTileObject(
+                        layerName,
+                        new long[] {2L, 2L, 3L},
+                        "EPSG:4326",
+                        "image/jpeg",
+                        parameters,
+                        bytes);
+        fbs.put(to);
+        assertNotNull(fbs.getLayerMetadata(layerName, parametersKey));
+        assertEquals(2, writes.get());
+    }
+
     public BlobStore setup() throws Exception {
         File fh = new File(StorageBrokerTest.findTempDir() + File.separator + TEST_BLOB_DIR_NAME);
 
@@ -0,0 +1,170 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.Iterators;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelBulkDeleteTest {
+
+    /** Page size of the fake listing */
+    private static final int PAGE_SIZE = 7;
+
+    private NavigableSet<String> keys;
+
+    private AtomicInteger listings;
+
+    private ExecutorService executor;
+
+    private ParallelBulkDelete bulkDelete;
+
+    @Before
+    public void setUp() {
+        keys = new ConcurrentSkipListSet<>();
+        listings = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(4);
+        bulkDelete = new ParallelBulkDelete(executor, 4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /** Delimited or flat listing with marker based paging, like S3 */
+    private ParallelBulkDelete.Page list(String prefix, String marker, boolean flat) {
+        listings.incrementAndGet();
+        List<String> objects = new ArrayList<>();
+        TreeSet<String> prefixes = new TreeSet<>();
+        String last = null;
+        int count = 0;
+        for (String key : keys.tailSet(marker == null ? prefix : marker, false)) {
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            int slash = flat ? -1 : key.indexOf('/', prefix.length());
+            String entry = slash == -1 ? key : key.substring(0, slash + 1);
+            if (slash == -1) {
+                objects.add(key);
+            } else if (!prefixes.add(entry)) {
+                continue;
+            }
+            last = slash == -1 ? key : entry + Character.MAX_VALUE;
+            if (++count == PAGE_SIZE) {
+                return new ParallelBulkDelete.Page(objects, new ArrayList<>(prefixes), last);
+            }
+        }
+        return new ParallelBulkDelete.Page(objects, new ArrayList<>(prefixes), null);
+    }
+
+    private void delete(List<String> batch) {
+        keys.removeAll(batch);
+    }
+
+    private void addTiles(String prefix, int zoomLevels) {
+        for (int z = 0; z < zoomLevels; z++) {
+            for (int x = 0; x < (1 << z); x++) {
+                for (int y = 0; y < (1 << z); y++) {
+                    keys.add(prefix + z + "/" + x + "/" + y + ".png");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDeletePrefix() throws Exception {
+        addTiles("layer/grid/png/default/", 6);
+        addTiles("layer/grid/png/params/", 3);
+        addTiles("other/grid/png/default/", 3);
+        keys.add("layer/metadata.properties");
+        int others = 21;
+
+        long deleted = bulkDelete.deletePrefix("layer/", this::list, this::delete, 3, "test layer");
+
+        assertEquals(1365 + 21 + 1, deleted);
+        assertEquals(others, keys.size());
+        assertTrue(keys.stream().allMatch(k -> k.startsWith("other/")));
+        // one listing per level of the hierarchy at least
+        assertTrue(listings.get() > 1 + 2 + 2 * 6);
+    }
+
+    @Test
+    public void testFlatListing() throws Exception {
+        addTiles("layer/grid/png/default/", 6);
+        long deleted = bulkDelete.deletePrefix("layer/", this::list, this::delete, 3, "test layer");
+        assertEquals(1365, deleted);
+        int delimited = listings.getAndSet(0);
+
+        // the zoom levels with more than 4 columns are listed flat
+        bulkDelete = new ParallelBulkDelete(executor, 4, 4);
+        addTiles("layer/grid/png/default/", 6);
+        deleted = bulkDelete.deletePrefix("layer/", this::list, this::delete, 3, "test layer");
+        assertEquals(1365, deleted);
+        assertTrue(keys.isEmpty());
+        assertTrue(listings.get() < delimited);
+    }
+
+    @Test
+    public void testDeleteKeys() throws Exception {
+        addTiles("layer/grid/png/default/", 5);
+        List<String> all = new ArrayList<>(keys);
+
+        long deleted =
+                bulkDelete.deleteKeys(
+                        Iterators.partition(all.iterator(), 10), this::delete, "test keys");
+
+        assertEquals(all.size(), deleted);
+        assertTrue(keys.isEmpty());
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        addTiles("layer/grid/png/default/", 5);
+        AtomicInteger batches = new AtomicInteger();
+        try {
+            bulkDelete.deletePrefix(
+                    "layer/",
+                    this::list,
+                    batch -> {
+                        if (batches.incrementAndGet() == 5) {
+                            throw new IllegalStateException("failed");
+                        }
+                        delete(batch);
+                    },
+                    3,
+                    "test layer");
+            fail("Expected a StorageException");
+        } catch (StorageException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        // the rest can be deleted by running again, like a pending delete does on restart
+        bulkDelete.deletePrefix("layer/", this::list, this::delete, 3, "test layer");
+        assertTrue(keys.isEmpty());
+    }
+}
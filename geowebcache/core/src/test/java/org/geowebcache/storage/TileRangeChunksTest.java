@@ -0,0 +1,166 @@
+package org.geowebcache.storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.geowebcache.grid.BoundingBox;
+import org.geowebcache.grid.GridSet;
+import org.geowebcache.grid.GridSetFactory;
+import org.geowebcache.grid.GridSubset;
+import org.geowebcache.grid.GridSubsetFactory;
+import org.geowebcache.grid.SRS;
+import org.geowebcache.mime.MimeType;
+
+public class TileRangeChunksTest extends TestCase {
+
+    private MimeType mimeType;
+
+    private GridSubset gridSubSet;
+
+    private long[][] gridCoverages;
+
+    @Override
+    public void setUp() throws Exception {
+        mimeType = MimeType.createFromFormat("image/png");
+        GridSet gridSet =
+                GridSetFactory.createGridSet(
+                        "TestGridSet",
+                        SRS.getSRS(100000),
+                        new BoundingBox(0, 0, 100, 100),
+                        false,
+                        10,
+                        Double.valueOf(1),
+                        1,
+                        100,
+                        100,
+                        false);
+        gridSubSet = GridSubsetFactory.createGridSubSet(gridSet);
+        gridCoverages = gridSubSet.getCoverages();
+    }
+
+    public void testSingleWorkerMatchesIterator() throws Exception {
+        int[] metaTilingFactors = {3, 3};
+        TileRange tr = tileRange(gridSubSet.getZoomStart(), gridSubSet.getZoomStop());
+
+        List<String> expected = new ArrayList<String>();
+        TileRangeIterator tri = new TileRangeIterator(tr, metaTilingFactors);
+        long[] gridLoc = new long[3];
+        while (null != (gridLoc = tri.nextMetaGridLocation(gridLoc))) {
+            expected.add(key(gridLoc));
+        }
+
+        List<String> actual = new ArrayList<String>();
+        MetaGridLocationIterator worker = new TileRangeChunks(tr, metaTilingFactors, 1).worker(0);
+        gridLoc = new long[3];
+        while (null != (gridLoc = worker.nextMetaGridLocation(gridLoc))) {
+            actual.add(key(gridLoc));
+        }
+
+        assertEquals(expected, actual);
+    }
+
+    public void testWholeRangeMultiThreaded() throws Exception {
+        checkWholeRange(16, new int[] {1, 1});
+    }
+
+    public void testWholeRangeMultiThreadedMetaTiling() throws Exception {
+        checkWholeRange(16, new int[] {3, 3});
+    }
+
+    /** Only one worker consumes, it has to steal all the chunks dealt to the others */
+    public void testStealing() throws Exception {
+        int[] metaTilingFactors = {1, 1};
+        TileRange tr = tileRange(gridSubSet.getZoomStart(), gridSubSet.getZoomStop());
+        TileRangeChunks chunks = new TileRangeChunks(tr, metaTilingFactors, 8);
+        assertTrue(chunks.getPendingChunks() > chunks.getWorkerCount());
+
+        long count = 0;
+        MetaGridLocationIterator worker = chunks.worker(3);
+        long[] gridLoc = new long[3];
+        while (null != (gridLoc = worker.nextMetaGridLocation(gridLoc))) {
+            count++;
+        }
+
+        assertEquals(0, chunks.getPendingChunks());
+        assertEquals(
+                countMetaTiles(gridSubSet.getZoomStart(), gridSubSet.getZoomStop(), 1, 1), count);
+    }
+
+    public void testInvalidWorker() throws Exception {
+        TileRangeChunks chunks = new TileRangeChunks(tileRange(0, 1), new int[] {1, 1}, 2);
+        try {
+            chunks.worker(2);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private void checkWholeRange(final int nThreads, final int[] metaTilingFactors)
+            throws Exception {
+        final int zoomStart = gridSubSet.getZoomStart();
+        final int zoomStop = gridSubSet.getZoomStop();
+        final TileRangeChunks chunks =
+                new TileRangeChunks(tileRange(zoomStart, zoomStop), metaTilingFactors, nThreads);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(nThreads);
+        Collection<Callable<Set<String>>> tasks = new ArrayList<Callable<Set<String>>>();
+        for (int i = 0; i < nThreads; i++) {
+            final MetaGridLocationIterator worker = chunks.worker(i);
+            tasks.add(
+                    () -> {
+                        Set<String> seen = new HashSet<String>();
+                        long[] gridLoc = new long[3];
+                        while (null != (gridLoc = worker.nextMetaGridLocation(gridLoc))) {
+                            seen.add(key(gridLoc));
+                        }
+                        return seen;
+                    });
+        }
+        List<Future<Set<String>>> values = executorService.invokeAll(tasks);
+        executorService.shutdown();
+        executorService.awaitTermination(120, TimeUnit.SECONDS);
+
+        Set<String> all = new HashSet<String>();
+        long total = 0;
+        for (Future<Set<String>> value : values) {
+            total += value.get().size();
+            all.addAll(value.get());
+        }
+        long expected =
+                countMetaTiles(zoomStart, zoomStop, metaTilingFactors[0], metaTilingFactors[1]);
+        assertEquals(expected, total);
+        // no meta tile handed out twice
+        assertEquals(expected, all.size());
+    }
+
+    private TileRange tileRange(int zoomStart, int zoomStop) {
+        return new TileRange(
+                "layer", "gridset", zoomStart, zoomStop, gridCoverages, mimeType, null);
+    }
+
+    private static String key(long[] gridLoc) {
+        return gridLoc[0] + "," + gridLoc[1] + "," + gridLoc[2];
+    }
+
+    private long countMetaTiles(int startZoom, int stopZoom, int metaX, int metaY) {
+        long count = 0;
+        for (int i = startZoom; i <= stopZoom; i++) {
+            long[] gridBounds = gridCoverages[i];
+            long tilesX = 1 + gridBounds[2] - gridBounds[0];
+            long tilesY = 1 + gridBounds[3] - gridBounds[1];
+            count +=
+                    (long) Math.ceil(tilesX / (double) metaX)
+                            * (long) Math.ceil(tilesY / (double) metaY);
+        }
+        return count;
+    }
+}
@@ -16,10 +16,16 @@
 package org.geowebcache.storage;
 
 import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.Assert.*;
 
 import com.google.common.base.Ticker;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.geowebcache.io.ByteArrayResource;
 import org.geowebcache.io.Resource;
 import org.junit.Before;
@@ -153,6 +159,102 @@ public class TransientCacheTest {
         assertThat(result2, notNullValue()); // Should still be cached
     }
 
+    @Test
+    public void testCounters() throws Exception {
+        transCache.put("foo", new ByteArrayResource(new byte[] {1, 2, 3}));
+        transCache.put("bar", new ByteArrayResource(new byte[] {1, 2, 3}));
+
+        assertThat(transCache.get("foo"), notNullValue());
+        assertThat(transCache.get("foo"), nullValue());
+        ticker.advanceMilli(EXPIRE_TIME + 1);
+        assertThat(transCache.get("bar"), nullValue());
+
+        assertThat(transCache.getHitCount(), is(1L));
+        assertThat(transCache.getMissCount(), is(2L));
+        assertThat(transCache.getEvictionCount(), is(1L));
+        assertThat(transCache.size(), is(0));
+        assertThat(transCache.storageSize(), is(0L));
+    }
+
+    @Test
+    public void testExpiredRemovedOnPut() throws Exception {
+        transCache.put("foo", new ByteArrayResource(new byte[] {1, 2, 3}));
+        ticker.advanceMilli(EXPIRE_TIME + 1);
+        transCache.put("bar", new ByteArrayResource(new byte[] {1, 2}));
+
+        assertThat(transCache.size(), is(1));
+        assertThat(transCache.storageSize(), is(2L));
+        assertThat(transCache.getEvictionCount(), is(1L));
+    }
+
+    @Test
+    public void testContentsCopied() throws Exception {
+        // a reused buffer, larger than its contents
+        byte[] buffer = new byte[] {1, 2, 3, 4};
+        transCache.put("foo", new ByteArrayResource(buffer, 0, 3));
+        buffer[0] = 9;
+
+        Resource result = transCache.get("foo");
+        assertThat(result.getSize(), is(3L));
+        try (InputStream is = result.getInputStream(); ) {
+            assertThat(is.read(), equalTo(1));
+            assertThat(is.read(), equalTo(2));
+            assertThat(is.read(), equalTo(3));
+            assertThat(is.read(), equalTo(-1));
+        }
+    }
+
+    @Test
+    public void testReplace() throws Exception {
+        transCache.put("foo", new ByteArrayResource(new byte[] {1, 2, 3}));
+        transCache.put("foo", new ByteArrayResource(new byte[] {4}));
+
+        assertThat(transCache.size(), is(1));
+        assertThat(transCache.storageSize(), is(1L));
+        try (InputStream is = transCache.get("foo").getInputStream(); ) {
+            assertThat(is.read(), equalTo(4));
+        }
+        assertThat(transCache.storageSize(), is(0L));
+    }
+
+    @Test
+    public void testConcurrentAccounting() throws Exception {
+        final TransientCache cache = new TransientCache(1000, 1024, EXPIRE_TIME * 1000);
+        final int threads = 8;
+        final int keys = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(
+                        executor.submit(
+                                () -> {
+                                    for (int i = 0; i < 2000; i++) {
+                                        String key = "key" + (i % keys);
+                                        if (i % 3 == 0) {
+                                            cache.get(key);
+                                        } else {
+                                            cache.put(
+                                                    key, new ByteArrayResource(new byte[i % 50]));
+                                        }
+                                    }
+                                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(cache.size(), lessThanOrEqualTo(keys));
+        for (int i = 0; i < keys; i++) {
+            cache.get("key" + i);
+        }
+        // every byte added has been accounted back
+        assertThat(cache.size(), is(0));
+        assertThat(cache.storageSize(), is(0L));
+    }
+
     private static class TestTicker extends Ticker {
         long time;
 
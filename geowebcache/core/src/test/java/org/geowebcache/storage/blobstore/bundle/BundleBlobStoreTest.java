@@ -0,0 +1,133 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.storage.blobstore.bundle;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Arrays;
+import org.apache.commons.io.IOUtils;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.storage.AbstractBlobStoreTest;
+import org.geowebcache.storage.TileObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BundleBlobStoreTest extends AbstractBlobStoreTest<BundleBlobStore> {
+
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+    @Override
+    public void createTestUnit() throws Exception {
+        this.store = new BundleBlobStore(temp.getRoot().getAbsolutePath());
+    }
+
+    @Test
+    public void testTilesShareBundles() throws Exception {
+        for (long x = 0; x < Bundle.DIMENSION + 1; x++) {
+            store.put(tile(x, 3, 8, content(x)));
+        }
+        File zoomDir = new File(temp.getRoot(), "testLayer/testGridSet/png/default/8");
+        assertThat(zoomDir.list().length, equalTo(2));
+
+        for (long x = 0; x < Bundle.DIMENSION + 1; x++) {
+            TileObject fromCache = query(x, 3, 8);
+            assertThat(store.get(fromCache), is(true));
+            assertArrayEquals(content(x), bytes(fromCache));
+        }
+        assertThat(store.get(query(0, 4, 8)), is(false));
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        byte[] content = new byte[64 * 1024];
+        Arrays.fill(content, (byte) 7);
+        // overwrite the same tile until the dead bytes get reclaimed
+        for (int i = 0; i < 64; i++) {
+            content[0] = (byte) i;
+            store.put(tile(1, 1, 5, content));
+        }
+        File bundle = new File(temp.getRoot(), "testLayer/testGridSet/png/default/5/0_0.bundle");
+        assertThat(
+                bundle.length(),
+                lessThan(Bundle.DATA_START + Bundle.COMPACTION_MIN_DEAD_BYTES + 2 * content.length));
+
+        TileObject fromCache = query(1, 1, 5);
+        assertThat(store.get(fromCache), is(true));
+        assertArrayEquals(content, bytes(fromCache));
+    }
+
+    @Test
+    public void testEmptyBundleRemoved() throws Exception {
+        store.put(tile(1, 1, 5, content(1)));
+        File bundle = new File(temp.getRoot(), "testLayer/testGridSet/png/default/5/0_0.bundle");
+        assertThat(bundle.exists(), is(true));
+
+        assertThat(store.delete(query(1, 1, 5)), is(true));
+        assertThat(bundle.exists(), is(false));
+        assertThat(store.get(query(1, 1, 5)), is(false));
+
+        // and can be created again
+        store.put(tile(1, 1, 5, content(2)));
+        TileObject fromCache = query(1, 1, 5);
+        assertThat(store.get(fromCache), is(true));
+        assertArrayEquals(content(2), bytes(fromCache));
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        store.put(tile(1, 1, 5, content(1)));
+        store.put(tile(2, 1, 5, content(2)));
+        store.delete(query(1, 1, 5));
+        store.destroy();
+
+        store = new BundleBlobStore(temp.getRoot().getAbsolutePath());
+        assertThat(store.get(query(1, 1, 5)), is(false));
+        TileObject fromCache = query(2, 1, 5);
+        assertThat(store.get(fromCache), is(true));
+        assertArrayEquals(content(2), bytes(fromCache));
+    }
+
+    private static byte[] content(long seed) {
+        return ("tile " + seed).getBytes();
+    }
+
+    private static TileObject tile(long x, long y, int z, byte[] content) {
+        return TileObject.createCompleteTileObject(
+                "testLayer",
+                new long[] {x, y, z},
+                "testGridSet",
+                "image/png",
+                null,
+                new ByteArrayResource(content));
+    }
+
+    private static TileObject query(long x, long y, int z) {
+        return TileObject.createQueryTileObject(
+                "testLayer", new long[] {x, y, z}, "testGridSet", "image/png", null);
+    }
+
+    private static byte[] bytes(TileObject tile) throws Exception {
+        try (InputStream is = tile.getBlob().getInputStream()) {
+            return IOUtils.toByteArray(is);
+        }
+    }
+}
@@ -18,8 +18,19 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
@@ -27,6 +38,7 @@ import org.apache.commons.logging.LogFactory;
 import org.geowebcache.io.ByteArrayResource;
 import org.geowebcache.io.Resource;
 import org.geowebcache.storage.BlobStore;
+import org.geowebcache.storage.StorageException;
 import org.geowebcache.storage.StorageBrokerTest;
 import org.geowebcache.storage.TileObject;
 import org.geowebcache.storage.blobstore.file.FileBlobStore;
@@ -260,6 +272,216 @@ public class MemoryBlobStoreTest {
         assertEquals(to2.getCreated(), to3.getCreated());
     }
 
+    @Test
+    public void testConcurrentMissesLoadOnce() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loadStarted = new CountDownLatch(1);
+        final CountDownLatch releaseLoad = new CountDownLatch(1);
+        // a slow wrapped store, counting the reads it gets
+        nbs =
+                new NullBlobStore() {
+                    @Override
+                    public boolean get(TileObject obj) throws StorageException {
+                        loads.incrementAndGet();
+                        loadStarted.countDown();
+                        try {
+                            releaseLoad.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        obj.setBlob(new ByteArrayResource("slow tile".getBytes()));
+                        return true;
+                    }
+                };
+        cache.clear();
+
+        mbs = new MemoryBlobStore();
+        mbs.setStore(nbs);
+        mbs.setCacheProvider(cache);
+
+        final long[] xyz = {1L, 2L, 3L};
+        final int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(
+                        executor.submit(
+                                () ->
+                                        mbs.get(
+                                                TileObject.createQueryTileObject(
+                                                        "test:slow",
+                                                        xyz,
+                                                        "EPSG:4326",
+                                                        "image/png",
+                                                        null))));
+            }
+            assertTrue(loadStarted.await(10, TimeUnit.SECONDS));
+            // give the other threads time to pile up on the same miss
+            Thread.sleep(200);
+            releaseLoad.countDown();
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, loads.get());
+
+        // now it's a cache hit, the store is not called again
+        TileObject hit =
+                TileObject.createQueryTileObject("test:slow", xyz, "EPSG:4326", "image/png", null);
+        assertTrue(mbs.get(hit));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testDeleteScheduledAfterRunningPut() throws Exception {
+        final List<String> operations = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch putStarted = new CountDownLatch(1);
+        final CountDownLatch releasePut = new CountDownLatch(1);
+        // a slow wrapped store, recording the order of the writes it gets
+        nbs =
+                new NullBlobStore() {
+                    @Override
+                    public void put(TileObject obj) throws StorageException {
+                        putStarted.countDown();
+                        try {
+                            releasePut.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        operations.add("put");
+                    }
+
+                    @Override
+                    public boolean delete(TileObject obj) throws StorageException {
+                        operations.add("delete");
+                        return true;
+                    }
+                };
+        mbs = new MemoryBlobStore();
+        mbs.setStore(nbs);
+        mbs.setCacheProvider(cache);
+
+        final long[] xyz = {1L, 2L, 3L};
+        Resource bytes = new ByteArrayResource("1 2 3 4 5 6 test".getBytes());
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            // no task pending, the put runs on the calling thread
+            Future<?> put =
+                    executor.submit(
+                            () -> {
+                                mbs.put(
+                                        TileObject.createCompleteTileObject(
+                                                "test:123123 112",
+                                                xyz,
+                                                "EPSG:4326",
+                                                "image/jpeg",
+                                                null,
+                                                bytes));
+                                return null;
+                            });
+            assertTrue(putStarted.await(10, TimeUnit.SECONDS));
+
+            // the delete is issued after the put, it must not reach the store before it
+            Thread deleter =
+                    new Thread(
+                            () -> {
+                                try {
+                                    mbs.delete(
+                                            TileObject.createQueryTileObject(
+                                                    "test:123123 112",
+                                                    xyz,
+                                                    "EPSG:4326",
+                                                    "image/jpeg",
+                                                    null));
+                                } catch (StorageException e) {
+                                    LOG.error(e.getMessage(), e);
+                                }
+                            });
+            deleter.start();
+            // wait for the delete to either block or run
+            long timeout = System.currentTimeMillis() + 10000;
+            while (deleter.getState() != Thread.State.WAITING
+                    && deleter.isAlive()
+                    && System.currentTimeMillis() < timeout) {
+                Thread.yield();
+            }
+            releasePut.countDown();
+            put.get(10, TimeUnit.SECONDS);
+            deleter.join(10000);
+        } finally {
+            executor.shutdown();
+        }
+        // waits for the scheduled tasks
+        mbs.delete("test:123123 112");
+        assertEquals(Arrays.asList("put", "delete"), operations);
+    }
+
+    @Test
+    public void testDeleteDuringLoadIsNotCached() throws Exception {
+        final AtomicBoolean present = new AtomicBoolean(true);
+        final CountDownLatch loadStarted = new CountDownLatch(1);
+        final CountDownLatch releaseLoad = new CountDownLatch(1);
+        // a slow wrapped store holding a single tile
+        nbs =
+                new NullBlobStore() {
+                    @Override
+                    public boolean get(TileObject obj) throws StorageException {
+                        boolean found = present.get();
+                        loadStarted.countDown();
+                        try {
+                            releaseLoad.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        obj.setBlob(new ByteArrayResource("old tile".getBytes()));
+                        return found;
+                    }
+
+                    @Override
+                    public boolean delete(TileObject obj) throws StorageException {
+                        present.set(false);
+                        return true;
+                    }
+                };
+        mbs = new MemoryBlobStore();
+        mbs.setStore(nbs);
+        mbs.setCacheProvider(cache);
+
+        final long[] xyz = {1L, 2L, 3L};
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            Future<Boolean> load =
+                    executor.submit(
+                            () ->
+                                    mbs.get(
+                                            TileObject.createQueryTileObject(
+                                                    "test:slow",
+                                                    xyz,
+                                                    "EPSG:4326",
+                                                    "image/png",
+                                                    null)));
+            assertTrue(loadStarted.await(10, TimeUnit.SECONDS));
+            // the delete does not wait for the load in progress
+            mbs.delete(
+                    TileObject.createQueryTileObject(
+                            "test:slow", xyz, "EPSG:4326", "image/png", null));
+            releaseLoad.countDown();
+            // the load read the tile before the delete
+            assertTrue(load.get(10, TimeUnit.SECONDS));
+        } finally {
+            releaseLoad.countDown();
+            executor.shutdown();
+        }
+        // but did not cache it
+        assertFalse(
+                mbs.get(
+                        TileObject.createQueryTileObject(
+                                "test:slow", xyz, "EPSG:4326", "image/png", null)));
+    }
+
     /**
      * * Private method for creating a {@link FileBlobStore}
      *
@@ -0,0 +1,241 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.storage.blobstore.memory.offheap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.HashMap;
+import org.apache.commons.io.IOUtils;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.io.ByteBufferResource;
+import org.geowebcache.io.Resource;
+import org.geowebcache.storage.TileObject;
+import org.geowebcache.storage.blobstore.memory.CacheConfiguration;
+import org.geowebcache.storage.blobstore.memory.CacheConfiguration.EvictionPolicy;
+import org.geowebcache.storage.blobstore.memory.CacheStatistics;
+import org.geowebcache.storage.blobstore.memory.MemoryBlobStore;
+import org.geowebcache.storage.blobstore.memory.NullBlobStore;
+import org.junit.After;
+import org.junit.Test;
+
+public class OffHeapCacheProviderTest {
+
+    OffHeapCacheProvider cache;
+
+    @After
+    public void tearDown() {
+        if (cache != null) {
+            cache.reset();
+        }
+    }
+
+    private TileObject tile(String layer, long x, byte[] contents) {
+        return TileObject.createCompleteTileObject(
+                layer,
+                new long[] {x, 0, 0},
+                "EPSG:4326",
+                "image/png",
+                new HashMap<>(),
+                new ByteArrayResource(contents));
+    }
+
+    private TileObject query(String layer, long x) {
+        return TileObject.createQueryTileObject(
+                layer, new long[] {x, 0, 0}, "EPSG:4326", "image/png", new HashMap<>());
+    }
+
+    private byte[] bytes(int size, int seed) {
+        byte[] result = new byte[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = (byte) (i + seed);
+        }
+        return result;
+    }
+
+    private byte[] read(Resource resource) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        resource.transferTo(Channels.newChannel(out));
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testPutGetRemove() throws Exception {
+        cache = new OffHeapCacheProvider(new CacheConfiguration());
+        byte[] contents = bytes(1000, 3);
+        cache.putTileObj(tile("layer", 1, contents));
+
+        TileObject cached = cache.getTileObj(query("layer", 1));
+        assertNotNull(cached);
+        assertTrue(cached.getBlob() instanceof ByteBufferResource);
+        assertEquals(1000, cached.getBlobSize());
+        assertArrayEquals(contents, read(cached.getBlob()));
+        // the resource can be read more than once, also as a stream
+        assertArrayEquals(contents, IOUtils.toByteArray(cached.getBlob().getInputStream()));
+        assertNull(cache.getTileObj(query("layer", 2)));
+
+        CacheStatistics stats = cache.getStatistics();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(1000, stats.getActualSize());
+
+        cache.removeTileObj(query("layer", 1));
+        assertNull(cache.getTileObj(query("layer", 1)));
+        assertEquals(0, cache.getStatistics().getActualSize());
+    }
+
+    @Test
+    public void testOverwrite() throws Exception {
+        cache = new OffHeapCacheProvider(new CacheConfiguration());
+        cache.putTileObj(tile("layer", 1, bytes(100, 0)));
+        cache.putTileObj(tile("layer", 1, bytes(50, 7)));
+
+        assertArrayEquals(bytes(50, 7), read(cache.getTileObj(query("layer", 1)).getBlob()));
+        assertEquals(50, cache.getStatistics().getActualSize());
+    }
+
+    @Test
+    public void testRemoveLayerAndUncachedLayers() throws Exception {
+        cache = new OffHeapCacheProvider(new CacheConfiguration());
+        for (int i = 0; i < 10; i++) {
+            cache.putTileObj(tile("a", i, bytes(10, i)));
+            cache.putTileObj(tile("b", i, bytes(10, i)));
+        }
+        cache.removeLayer("a");
+        for (int i = 0; i < 10; i++) {
+            assertNull(cache.getTileObj(query("a", i)));
+            assertNotNull(cache.getTileObj(query("b", i)));
+        }
+
+        cache.addUncachedLayer("c");
+        assertTrue(cache.containsUncachedLayer("c"));
+        cache.putTileObj(tile("c", 0, bytes(10, 0)));
+        assertNull(cache.getTileObj(query("c", 0)));
+    }
+
+    @Test
+    public void testSizeEviction() throws Exception {
+        CacheConfiguration configuration = new CacheConfiguration();
+        configuration.setHardMemoryLimit(1);
+        configuration.setConcurrencyLevel(1);
+        configuration.setPolicy(EvictionPolicy.NULL);
+        cache = new OffHeapCacheProvider(configuration);
+
+        byte[] first = bytes(100 * 1024, 1);
+        cache.putTileObj(tile("layer", 0, first));
+        TileObject evicted = cache.getTileObj(query("layer", 0));
+        for (int i = 1; i < 30; i++) {
+            cache.putTileObj(tile("layer", i, bytes(100 * 1024, i)));
+        }
+
+        CacheStatistics stats = cache.getStatistics();
+        assertTrue(stats.getEvictionCount() > 0);
+        assertTrue(stats.getActualSize() <= 1024 * 1024);
+        assertNull(cache.getTileObj(query("layer", 0)));
+        TileObject latest = cache.getTileObj(query("layer", 29));
+        assertArrayEquals(bytes(100 * 1024, 29), read(latest.getBlob()));
+        // a tile handed out before the eviction is still readable
+        assertArrayEquals(first, read(evicted.getBlob()));
+
+        // a tile bigger than the whole cache is not stored
+        cache.putTileObj(tile("layer", 100, bytes(2 * 1024 * 1024, 0)));
+        assertNull(cache.getTileObj(query("layer", 100)));
+    }
+
+    @Test
+    public void testReadTilesSurviveEviction() throws Exception {
+        CacheConfiguration configuration = new CacheConfiguration();
+        configuration.setHardMemoryLimit(1);
+        configuration.setConcurrencyLevel(1);
+        configuration.setPolicy(EvictionPolicy.NULL);
+        cache = new OffHeapCacheProvider(configuration);
+
+        byte[] hot = bytes(10 * 1024, 1);
+        cache.putTileObj(tile("layer", 0, hot));
+        // twice the cache size, reading the first tile in between
+        for (int i = 1; i < 200; i++) {
+            cache.putTileObj(tile("layer", i, bytes(10 * 1024, i)));
+            assertNotNull(cache.getTileObj(query("layer", 0)));
+        }
+
+        CacheStatistics stats = cache.getStatistics();
+        assertTrue(stats.getEvictionCount() > 0);
+        assertTrue(stats.getActualSize() <= 1024 * 1024);
+        assertArrayEquals(hot, read(cache.getTileObj(query("layer", 0)).getBlob()));
+        assertNull(cache.getTileObj(query("layer", 1)));
+        TileObject latest = cache.getTileObj(query("layer", 199));
+        assertArrayEquals(bytes(10 * 1024, 199), read(latest.getBlob()));
+    }
+
+    @Test
+    public void testParseSize() throws Exception {
+        assertEquals(1000, OffHeapCacheProvider.parseSize("1000"));
+        assertEquals(64 * 1024, OffHeapCacheProvider.parseSize("64k"));
+        assertEquals(512L * 1024 * 1024, OffHeapCacheProvider.parseSize("512m"));
+        assertEquals(2L * 1024 * 1024 * 1024, OffHeapCacheProvider.parseSize("2G"));
+        assertTrue(OffHeapCacheProvider.maxDirectMemory() > 0);
+    }
+
+    @Test
+    public void testExpireAfterWrite() throws Exception {
+        CacheConfiguration configuration = new CacheConfiguration();
+        configuration.setPolicy(EvictionPolicy.EXPIRE_AFTER_WRITE);
+        configuration.setEvictionTime(1);
+        cache = new OffHeapCacheProvider(configuration);
+
+        cache.putTileObj(tile("layer", 0, bytes(10, 0)));
+        assertNotNull(cache.getTileObj(query("layer", 0)));
+        Thread.sleep(1100);
+        assertNull(cache.getTileObj(query("layer", 0)));
+        assertEquals(1, cache.getStatistics().getEvictionCount());
+    }
+
+    @Test
+    public void testResetAndReconfigure() throws Exception {
+        cache = new OffHeapCacheProvider(new CacheConfiguration());
+        cache.putTileObj(tile("layer", 0, bytes(10, 0)));
+        cache.reset();
+        assertNull(cache.getTileObj(query("layer", 0)));
+        assertEquals(0, cache.getStatistics().getTotalSize());
+
+        cache.configure(new CacheConfiguration());
+        cache.putTileObj(tile("layer", 0, bytes(10, 0)));
+        assertNotNull(cache.getTileObj(query("layer", 0)));
+    }
+
+    @Test
+    public void testWithMemoryBlobStore() throws Exception {
+        cache = new OffHeapCacheProvider(new CacheConfiguration());
+        MemoryBlobStore mbs = new MemoryBlobStore();
+        try {
+            mbs.setStore(new NullBlobStore());
+            mbs.setCacheProvider(cache);
+            byte[] contents = bytes(500, 5);
+            mbs.put(tile("layer", 0, contents));
+
+            TileObject query = query("layer", 0);
+            assertTrue(mbs.get(query));
+            assertTrue(Arrays.equals(contents, read(query.getBlob())));
+        } finally {
+            mbs.destroy();
+        }
+    }
+}
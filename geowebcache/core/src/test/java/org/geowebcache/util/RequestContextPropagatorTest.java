@@ -0,0 +1,59 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.util;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+public class RequestContextPropagatorTest {
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void testPropagate() throws Exception {
+        RequestAttributes attributes = new ServletRequestAttributes(new MockHttpServletRequest());
+        RequestContextHolder.setRequestAttributes(attributes);
+        Callable<RequestAttributes> getAttributes = RequestContextHolder::getRequestAttributes;
+        Callable<RequestAttributes> task = new RequestContextPropagator().propagate(getAttributes);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertSame(attributes, executor.submit(task).get());
+            // the pool thread does not keep the context
+            assertNull(executor.submit(getAttributes).get());
+        } finally {
+            executor.shutdown();
+        }
+        // nor does the calling thread lose it running the task itself
+        RequestContextHolder.resetRequestAttributes();
+        RequestAttributes other = new ServletRequestAttributes(new MockHttpServletRequest());
+        RequestContextHolder.setRequestAttributes(other);
+        assertSame(attributes, task.call());
+        assertSame(other, RequestContextHolder.getRequestAttributes());
+    }
+}
@@ -0,0 +1,193 @@
+package org.geowebcache.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import org.apache.commons.httpclient.util.DateUtil;
+import org.easymock.EasyMock;
+import org.easymock.IMocksControl;
+import org.easymock.MockType;
+import org.geowebcache.conveyor.ConveyorTile;
+import org.geowebcache.filter.security.SecurityDispatcher;
+import org.geowebcache.grid.BoundingBox;
+import org.geowebcache.grid.GridSubset;
+import org.geowebcache.grid.SRS;
+import org.geowebcache.io.FileResource;
+import org.geowebcache.layer.TileLayer;
+import org.geowebcache.layer.TileLayerDispatcher;
+import org.geowebcache.mime.ImageMime;
+import org.geowebcache.stats.RuntimeStats;
+import org.geowebcache.storage.DefaultStorageFinder;
+import org.geowebcache.storage.StorageBroker;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class ResponseUtilsTest {
+
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+    private File tileFile;
+
+    private byte[] tileContents;
+
+    private TileLayerDispatcher tld;
+
+    private SecurityDispatcher secDisp;
+
+    private DefaultStorageFinder dfs;
+
+    private RuntimeStats rts;
+
+    private StorageBroker sb;
+
+    private TileLayer layer;
+
+    @Before
+    public void setUp() throws Exception {
+        tileContents = new byte[16 * 1024];
+        for (int i = 0; i < tileContents.length; i++) {
+            tileContents[i] = (byte) i;
+        }
+        tileFile = temp.newFile("tile.png");
+        Files.write(tileFile.toPath(), tileContents);
+
+        IMocksControl stubs = EasyMock.createControl(MockType.NICE);
+        tld = stubs.createMock("tld", TileLayerDispatcher.class);
+        secDisp = stubs.createMock("secDisp", SecurityDispatcher.class);
+        dfs = stubs.createMock("dfs", DefaultStorageFinder.class);
+        rts = stubs.createMock("rts", RuntimeStats.class);
+        sb = stubs.createMock("sb", StorageBroker.class);
+        layer = stubs.createMock("layer", TileLayer.class);
+        GridSubset subset = stubs.createMock("subset", GridSubset.class);
+
+        EasyMock.expect(tld.getTileLayer("testLayer")).andStubReturn(layer);
+        EasyMock.expect(layer.getTile(EasyMock.anyObject(ConveyorTile.class)))
+                .andStubAnswer(() -> (ConveyorTile) EasyMock.getCurrentArguments()[0]);
+        EasyMock.expect(layer.getGridSubset("testGrid")).andStubReturn(subset);
+        EasyMock.expect(subset.boundsFromIndex(EasyMock.aryEq(new long[] {1, 2, 3})))
+                .andStubReturn(new BoundingBox(10, 20, 30, 40));
+        EasyMock.expect(subset.getName()).andStubReturn("testGrid");
+        EasyMock.expect(subset.getSRS()).andStubReturn(SRS.getEPSG3857());
+        stubs.replay();
+    }
+
+    @Test
+    public void testStreamFileTile() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = writeFileTile(request);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(tileContents.length, response.getContentLength());
+        assertArrayEquals(tileContents, response.getContentAsByteArray());
+        assertNull(request.getAttribute(ResponseUtils.SENDFILE_FILENAME));
+    }
+
+    @Test
+    public void testSendFileTile() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(ResponseUtils.SENDFILE_SUPPORTED, Boolean.TRUE);
+        MockHttpServletResponse response = writeFileTile(request);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("image/png", response.getContentType());
+        assertEquals(tileContents.length, response.getContentLength());
+        assertEquals(0, response.getContentAsByteArray().length);
+        assertEquals(
+                tileFile.getAbsolutePath(), request.getAttribute(ResponseUtils.SENDFILE_FILENAME));
+        assertEquals(0L, request.getAttribute(ResponseUtils.SENDFILE_START));
+        assertEquals(
+                (long) tileContents.length, request.getAttribute(ResponseUtils.SENDFILE_END));
+        assertEquals("10.0,20.0,30.0,40.0", response.getHeader("geowebcache-tile-bounds"));
+    }
+
+    @Test
+    public void testFormatHttpDate() throws Exception {
+        long[] timestamps = {0L, 784111777000L, 784111777999L, 1602979200123L, 4102444800000L};
+        for (long timestamp : timestamps) {
+            assertEquals(
+                    DateUtil.formatDate(new Date(timestamp)),
+                    ResponseUtils.formatHttpDate(timestamp));
+            // and from the cache
+            assertEquals(
+                    DateUtil.formatDate(new Date(timestamp)),
+                    ResponseUtils.formatHttpDate(timestamp));
+        }
+    }
+
+    @Test
+    public void testStreamReplacedFileTile() throws Exception {
+        // the tile is replaced by a smaller one after being looked up
+        FileResource blob = new FileResource(tileFile);
+        byte[] replacement = Arrays.copyOf(tileContents, 100);
+        replaceTile(replacement);
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = writeFileTile(request, blob);
+
+        assertEquals(replacement.length, response.getContentLength());
+        assertArrayEquals(replacement, response.getContentAsByteArray());
+    }
+
+    @Test
+    public void testSendReplacedFileTile() throws Exception {
+        FileResource blob = new FileResource(tileFile);
+        byte[] replacement = Arrays.copyOf(tileContents, 100);
+        replaceTile(replacement);
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(ResponseUtils.SENDFILE_SUPPORTED, Boolean.TRUE);
+        MockHttpServletResponse response = writeFileTile(request, blob);
+
+        assertEquals(replacement.length, response.getContentLength());
+        if (request.getAttribute(ResponseUtils.SENDFILE_FILENAME) == null) {
+            // no file keys on this file system, streamed instead
+            assertArrayEquals(replacement, response.getContentAsByteArray());
+        } else {
+            assertEquals(
+                    (long) replacement.length, request.getAttribute(ResponseUtils.SENDFILE_END));
+            assertEquals(0, response.getContentAsByteArray().length);
+        }
+    }
+
+    /** Replaces the tile file the way the file blob store does, with a rename */
+    private void replaceTile(byte[] contents) throws Exception {
+        File replacement = temp.newFile();
+        Files.write(replacement.toPath(), contents);
+        Files.move(replacement.toPath(), tileFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private MockHttpServletResponse writeFileTile(MockHttpServletRequest request)
+            throws Exception {
+        return writeFileTile(request, new FileResource(tileFile));
+    }
+
+    private MockHttpServletResponse writeFileTile(
+            MockHttpServletRequest request, FileResource blob) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ConveyorTile conv =
+                new ConveyorTile(
+                        sb,
+                        "testLayer",
+                        "testGrid",
+                        new long[] {1, 2, 3},
+                        ImageMime.png,
+                        Collections.emptyMap(),
+                        request,
+                        response);
+        conv.setTileLayer(layer);
+        conv.setBlob(blob);
+        ResponseUtils.writeTile(secDisp, conv, "testLayer", tld, dfs, rts);
+        return response;
+    }
+}
@@ -818,37 +818,59 @@ public class BDBQuotaStore implements QuotaStore {
     /** @see org.geowebcache.diskquota.QuotaStore#getLeastFrequentlyUsedPage(java.util.Set) */
     public TilePage getLeastFrequentlyUsedPage(final Set<String> layerNames)
             throws InterruptedException {
+        List<TilePage> pages = getLeastFrequentlyUsedPages(layerNames, 1);
+        return pages.isEmpty() ? null : pages.get(0);
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#getLeastRecentlyUsedPage(java.util.Set) */
+    public TilePage getLeastRecentlyUsedPage(final Set<String> layerNames)
+            throws InterruptedException {
+        List<TilePage> pages = getLeastRecentlyUsedPages(layerNames, 1);
+        return pages.isEmpty() ? null : pages.get(0);
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#getLeastFrequentlyUsedPages(Set, int) */
+    @Override
+    public List<TilePage> getLeastFrequentlyUsedPages(
+            final Set<String> layerNames, final int maxPages) throws InterruptedException {
 
         SecondaryIndex<Float, Long, PageStats> expirationPolicyIndex = pageStatsByLFU;
-        TilePage nextToExpire =
-                issueSync(new FindPageToExpireByLayer(expirationPolicyIndex, layerNames));
+        List<TilePage> nextToExpire =
+                issueSync(
+                        new FindPagesToExpireByLayer(expirationPolicyIndex, layerNames, maxPages));
 
         return nextToExpire;
     }
 
-    /** @see org.geowebcache.diskquota.QuotaStore#getLeastRecentlyUsedPage(java.util.Set) */
-    public TilePage getLeastRecentlyUsedPage(final Set<String> layerNames)
-            throws InterruptedException {
+    /** @see org.geowebcache.diskquota.QuotaStore#getLeastRecentlyUsedPages(Set, int) */
+    @Override
+    public List<TilePage> getLeastRecentlyUsedPages(
+            final Set<String> layerNames, final int maxPages) throws InterruptedException {
         SecondaryIndex<Float, Long, PageStats> expirationPolicyIndex = pageStatsByLRU;
-        TilePage nextToExpire =
-                issueSync(new FindPageToExpireByLayer(expirationPolicyIndex, layerNames));
+        List<TilePage> nextToExpire =
+                issueSync(
+                        new FindPagesToExpireByLayer(expirationPolicyIndex, layerNames, maxPages));
 
         return nextToExpire;
     }
 
-    private class FindPageToExpireByLayer implements Callable<TilePage> {
+    private class FindPagesToExpireByLayer implements Callable<List<TilePage>> {
         private final SecondaryIndex<Float, Long, PageStats> expirationPolicyIndex;
 
         private final Set<String> layerNames;
 
-        public FindPageToExpireByLayer(
+        private final int maxPages;
+
+        public FindPagesToExpireByLayer(
                 SecondaryIndex<Float, Long, PageStats> expirationPolicyIndex,
-                Set<String> layerNames) {
+                Set<String> layerNames,
+                int maxPages) {
             this.expirationPolicyIndex = expirationPolicyIndex;
             this.layerNames = layerNames;
+            this.maxPages = maxPages;
         }
 
-        public TilePage call() throws Exception {
+        public List<TilePage> call() throws Exception {
 
             // find out the tilesets for the requested layers
             final Set<String> tileSetIds = new HashSet<String>();
@@ -865,22 +887,22 @@ public class BDBQuotaStore implements QuotaStore {
                 }
             }
 
-            TilePage nextToExpire = null;
-            // find out the LRU page that matches a requested tileset
+            List<TilePage> nextToExpire = new ArrayList<TilePage>();
+            // find out the LRU pages that match a requested tileset
             final EntityCursor<PageStats> pageStatsCursor = expirationPolicyIndex.entities();
 
             try {
                 String tileSetId;
                 long pageId;
                 PageStats pageStats;
-                while ((pageStats = pageStatsCursor.next()) != null) {
+                while (nextToExpire.size() < maxPages
+                        && (pageStats = pageStatsCursor.next()) != null) {
                     if (pageStats.getFillFactor() > 0) {
                         pageId = pageStats.getPageId();
                         TilePage tilePage = pageById.get(pageId);
                         tileSetId = tilePage.getTileSetId();
                         if (tileSetIds.contains(tileSetId)) {
-                            nextToExpire = tilePage;
-                            break;
+                            nextToExpire.add(tilePage);
                         }
                     }
                 }
@@ -923,4 +945,56 @@ public class BDBQuotaStore implements QuotaStore {
             }
         }
     }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#resetUsage(TileSet) */
+    @Override
+    public void resetUsage(final TileSet tileSet) throws InterruptedException {
+        issueSync(new ResetUsage(tileSet));
+    }
+
+    private class ResetUsage implements Callable<Void> {
+        private final TileSet tileSet;
+
+        public ResetUsage(TileSet tileSet) {
+            this.tileSet = tileSet;
+        }
+
+        public Void call() throws Exception {
+            final Transaction tx = entityStore.getEnvironment().beginTransaction(null, null);
+            try {
+                TileSet storedTileset = getOrCreateTileSet(tx, tileSet);
+                Quota usedQuota =
+                        usedQuotaByTileSetId.get(tx, storedTileset.getId(), LockMode.DEFAULT);
+                Quota globalQuota =
+                        usedQuotaByTileSetId.get(tx, GLOBAL_QUOTA_NAME, LockMode.DEFAULT);
+                globalQuota.subtract(usedQuota.getBytes());
+                usedQuota.setBytes(BigInteger.ZERO);
+                usedQuotaById.putNoReturn(tx, usedQuota);
+                usedQuotaById.putNoReturn(tx, globalQuota);
+
+                // the fill factors go, the usage statistics stay
+                EntityCursor<TilePage> pages =
+                        pagesByTileSetId.entities(
+                                tx, storedTileset.getId(), true, storedTileset.getId(), true, null);
+                try {
+                    TilePage page;
+                    while (null != (page = pages.next())) {
+                        PageStats pageStats =
+                                pageStatsByPageId.get(tx, page.getId(), LockMode.DEFAULT);
+                        if (pageStats != null && pageStats.getFillFactor() != 0f) {
+                            pageStats.setFillFactor(0f);
+                            pageStatsById.putNoReturn(tx, pageStats);
+                        }
+                    }
+                } finally {
+                    pages.close();
+                }
+                tx.commit();
+                return null;
+            } catch (RuntimeException e) {
+                tx.abort();
+                throw e;
+            }
+        }
+    }
 }
@@ -2,6 +2,7 @@ package org.geowebcache.diskquota;
 
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.hasProperty;
@@ -515,6 +516,41 @@ public class BDBQuotaStoreTest {
         assertThat(store.getLeastRecentlyUsedPage(layerNames), equalTo(page2));
     }
 
+    @Test
+    public void testGetLeastRecentlyUsedPages() throws Exception {
+        MockSystemUtils mockSystemUtils = new MockSystemUtils();
+        mockSystemUtils.setCurrentTimeMinutes(1000);
+        mockSystemUtils.setCurrentTimeMillis(mockSystemUtils.currentTimeMinutes() * 60 * 1000);
+        SystemUtils.set(mockSystemUtils);
+
+        final String layerName = testTileSet.getLayerName();
+        Set<String> layerNames = Collections.singleton(layerName);
+
+        assertThat(store.getLeastRecentlyUsedPages(layerNames, 10), empty());
+
+        TilePage page1 = new TilePage(testTileSet.getId(), 0, 1, 2);
+        TilePage page2 = new TilePage(testTileSet.getId(), 1, 1, 2);
+        TilePage page3 = new TilePage(testTileSet.getId(), 2, 1, 2);
+
+        PageStatsPayload payload1 = new PageStatsPayload(page1);
+        PageStatsPayload payload2 = new PageStatsPayload(page2);
+        PageStatsPayload payload3 = new PageStatsPayload(page3);
+
+        payload1.setLastAccessTime(mockSystemUtils.currentTimeMillis() + 3 * 60 * 1000);
+        payload2.setLastAccessTime(mockSystemUtils.currentTimeMillis() + 1 * 60 * 1000);
+        payload3.setLastAccessTime(mockSystemUtils.currentTimeMillis() + 2 * 60 * 1000);
+
+        Collection<PageStatsPayload> statsUpdates = Arrays.asList(payload1, payload2, payload3);
+        store.addHitsAndSetAccesTime(statsUpdates).get();
+
+        assertThat(store.getLeastRecentlyUsedPages(layerNames, 2), contains(page2, page3));
+        assertThat(store.getLeastRecentlyUsedPages(layerNames, 10), contains(page2, page3, page1));
+
+        // truncated pages are skipped
+        store.setTruncated(page2);
+        assertThat(store.getLeastRecentlyUsedPages(layerNames, 10), contains(page3, page1));
+    }
+
     @Test
     public void testGetTileSetById() throws Exception {
         assertThat(store.getTileSetById(testTileSet.getId()), equalTo(testTileSet));
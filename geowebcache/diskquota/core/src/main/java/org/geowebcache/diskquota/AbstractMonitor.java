@@ -32,7 +32,17 @@ public abstract class AbstractMonitor {
     private ExecutorService executorService;
 
     public void startUp() {
-        executorService = Executors.newSingleThreadExecutor(getThreadFactory());
+        int threads = getThreadCount();
+        if (threads > 1) {
+            executorService = Executors.newFixedThreadPool(threads, getThreadFactory());
+        } else {
+            executorService = Executors.newSingleThreadExecutor(getThreadFactory());
+        }
+    }
+
+    /** Number of threads of the {@link #getExecutorService() executor service}, 1 by default */
+    protected int getThreadCount() {
+        return 1;
     }
 
     protected abstract CustomizableThreadFactory getThreadFactory();
@@ -14,8 +14,17 @@
  */
 package org.geowebcache.diskquota;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.GeoWebCacheException;
@@ -40,7 +49,13 @@ public class CacheCleaner implements DisposableBean {
 
     private final TileBreeder tileBreeder;
 
-    private boolean shutDown;
+    private volatile boolean shutDown;
+
+    private int evictionBatchSize = 1;
+
+    private int evictionThreads = 1;
+
+    private ExecutorService evictionExecutor;
 
     public static interface QuotaResolver {
         ExpirationPolicy getExpirationPolicy();
@@ -110,9 +125,61 @@ public class CacheCleaner implements DisposableBean {
         this.tileBreeder = tileBreeder;
     }
 
+    /**
+     * Sets the maximum number of pages looked up and expired at once. The used quota is checked
+     * again after each batch, so up to {@code evictionBatchSize - 1} pages more than needed may be
+     * expired. Defaults to 1, expiring one page at a time.
+     */
+    public void setEvictionBatchSize(int evictionBatchSize) {
+        if (evictionBatchSize <= 0) {
+            throw new IllegalArgumentException(
+                    "evictionBatchSize shall be a positive integer: " + evictionBatchSize);
+        }
+        this.evictionBatchSize = evictionBatchSize;
+    }
+
+    public int getEvictionBatchSize() {
+        return evictionBatchSize;
+    }
+
+    /**
+     * Sets the number of threads truncating the pages of a batch. Defaults to 1, truncating them
+     * in the thread enforcing the quota.
+     */
+    public synchronized void setEvictionThreads(int evictionThreads) {
+        if (evictionThreads <= 0) {
+            throw new IllegalArgumentException(
+                    "evictionThreads shall be a positive integer: " + evictionThreads);
+        }
+        this.evictionThreads = evictionThreads;
+        if (evictionExecutor != null) {
+            evictionExecutor.shutdown();
+            evictionExecutor = null;
+        }
+        if (evictionThreads > 1) {
+            evictionExecutor =
+                    Executors.newFixedThreadPool(
+                            evictionThreads,
+                            new ThreadFactoryBuilder()
+                                    .setDaemon(true)
+                                    .setNameFormat("GWC Disk Quota page eviction-%d")
+                                    .build());
+        }
+    }
+
+    public int getEvictionThreads() {
+        return evictionThreads;
+    }
+
     /** @see org.springframework.beans.factory.DisposableBean#destroy() */
     public void destroy() throws Exception {
         this.shutDown = true;
+        synchronized (this) {
+            if (evictionExecutor != null) {
+                evictionExecutor.shutdownNow();
+                evictionExecutor = null;
+            }
+        }
     }
 
     /**
@@ -161,17 +228,17 @@ public class CacheCleaner implements DisposableBean {
                 return;
             }
 
-            TilePage tilePage = null;
+            List<TilePage> tilePages;
             if (ExpirationPolicy.LFU.equals(expirationPolicy)) {
-                tilePage = pageStore.getLeastFrequentlyUsedPage(layerNames);
+                tilePages = pageStore.getLeastFrequentlyUsedPages(layerNames, evictionBatchSize);
             } else if (ExpirationPolicy.LRU.equals(expirationPolicy)) {
-                tilePage = pageStore.getLeastRecentlyUsedPage(layerNames);
+                tilePages = pageStore.getLeastRecentlyUsedPages(layerNames, evictionBatchSize);
             } else {
                 throw new IllegalStateException(
                         "Unrecognized expiration policy: " + expirationPolicy);
             }
 
-            if (tilePage == null) {
+            if (tilePages.isEmpty()) {
                 limit = quotaResolver.getLimit();
                 Quota usedQuota = quotaResolver.getUsed();
                 if (excess.getBytes().compareTo(BigInteger.ZERO) > 0) {
@@ -186,8 +253,8 @@ public class CacheCleaner implements DisposableBean {
             }
             if (log.isDebugEnabled()) {
                 log.debug(
-                        "Expiring tile page "
-                                + tilePage
+                        "Expiring tile pages "
+                                + tilePages
                                 + " based on the global "
                                 + expirationPolicy
                                 + " expiration policy");
@@ -196,19 +263,80 @@ public class CacheCleaner implements DisposableBean {
                 throw new InterruptedException();
             }
 
-            expirePage(pageStore, tilePage);
+            expirePages(pageStore, tilePages);
         }
     }
 
-    private void expirePage(QuotaStore pageStore, TilePage tilePage) throws InterruptedException {
-        final String tileSetId = tilePage.getTileSetId();
-        final TileSet tileSet = pageStore.getTileSetById(tileSetId);
+    /**
+     * Truncates a batch of pages, in parallel if there are several pages and eviction threads. The
+     * tile sets are looked up once for all the pages sharing them.
+     */
+    private void expirePages(QuotaStore pageStore, List<TilePage> tilePages)
+            throws InterruptedException {
+        Map<String, TileSet> tileSets = new HashMap<>();
+        List<GWCTask> truncateTasks = new ArrayList<>(tilePages.size());
+        for (TilePage tilePage : tilePages) {
+            TileSet tileSet = tileSets.get(tilePage.getTileSetId());
+            if (tileSet == null) {
+                tileSet = pageStore.getTileSetById(tilePage.getTileSetId());
+                tileSets.put(tilePage.getTileSetId(), tileSet);
+            }
+            truncateTasks.add(createTruncateTaskForPage(pageStore, tileSet, tilePage));
+        }
+
+        ExecutorService executor;
+        synchronized (this) {
+            executor = evictionExecutor;
+        }
+        if (executor == null || tilePages.size() == 1) {
+            for (int i = 0; i < tilePages.size(); i++) {
+                truncatePage(pageStore, tilePages.get(i), truncateTasks.get(i));
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+            }
+            return;
+        }
+
+        List<Future<?>> truncates = new ArrayList<>(tilePages.size());
+        try {
+            for (int i = 0; i < tilePages.size(); i++) {
+                final TilePage tilePage = tilePages.get(i);
+                final GWCTask truncateTask = truncateTasks.get(i);
+                truncates.add(
+                        executor.submit(
+                                () -> {
+                                    truncatePage(pageStore, tilePage, truncateTask);
+                                    return null;
+                                }));
+            }
+            for (Future<?> truncate : truncates) {
+                try {
+                    truncate.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new RuntimeException(cause);
+                }
+            }
+        } finally {
+            for (Future<?> truncate : truncates) {
+                truncate.cancel(true);
+            }
+        }
+    }
+
+    private GWCTask createTruncateTaskForPage(
+            QuotaStore pageStore, TileSet tileSet, TilePage tilePage) {
         final String layerName = tileSet.getLayerName();
         final String gridSetId = tileSet.getGridsetId();
         final String blobFormat = tileSet.getBlobFormat();
         final String parametersId = tileSet.getParametersId();
         final int zoomLevel = tilePage.getZoomLevel();
-        final long[][] pageGridCoverage = pageStore.getTilesForPage(tilePage);
+        final long[][] pageGridCoverage =
+                pageStore.getTilePageCalculator().toGridCoverage(tileSet, tilePage);
 
         MimeType mimeType;
         try {
@@ -229,10 +357,12 @@ public class CacheCleaner implements DisposableBean {
                 log.trace("Expiring page " + tilePage + "/" + mimeType.getFormat());
             }
         }
-        GWCTask truncateTask =
-                createTruncateTaskForPage(
-                        layerName, gridSetId, zoomLevel, pageGridCoverage, mimeType, parametersId);
+        return createTruncateTaskForPage(
+                layerName, gridSetId, zoomLevel, pageGridCoverage, mimeType, parametersId);
+    }
 
+    private void truncatePage(QuotaStore pageStore, TilePage tilePage, GWCTask truncateTask)
+            throws InterruptedException {
         // truncate synchronously. We're already inside the interested thread
         try {
             truncateTask.doAction();
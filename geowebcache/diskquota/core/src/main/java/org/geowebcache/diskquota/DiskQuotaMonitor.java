@@ -19,12 +19,14 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.GeoWebCacheExtensions;
 import org.geowebcache.config.ConfigurationException;
 import org.geowebcache.diskquota.CacheCleaner.GlobalQuotaResolver;
 import org.geowebcache.diskquota.CacheCleaner.LayerQuotaResolver;
@@ -62,6 +64,9 @@ public class DiskQuotaMonitor implements InitializingBean, DisposableBean {
      */
     public static final String GWC_DISKQUOTA_DISABLED = "GWC_DISKQUOTA_DISABLED";
 
+    /** Property setting the number of threads traversing the cache to compute its disk usage */
+    static final String SCAN_THREADS_PROPERTY = "GEOWEBCACHE_QUOTA_SCAN_THREADS";
+
     private final TileLayerDispatcher tileLayerDispatcher;
 
     private final StorageBroker storageBroker;
@@ -350,7 +355,8 @@ public class DiskQuotaMonitor implements InitializingBean, DisposableBean {
 
     /**
      * Launches a background task to traverse the cache and compute the disk usage of each layer
-     * that has no {@link LayerQuota#getUsedQuota() used quota} already loaded.
+     * that has no {@link LayerQuota#getUsedQuota() used quota} already loaded, or whose previous
+     * traversal was interrupted.
      */
     private LayerCacheInfoBuilder launchCacheInfoGatheringThreads() throws InterruptedException {
 
@@ -362,22 +368,29 @@ public class DiskQuotaMonitor implements InitializingBean, DisposableBean {
             throw new RuntimeException(e);
         }
         cacheInfoBuilder =
-                new LayerCacheInfoBuilder(cacheRoot, cleanUpExecutorService, quotaUsageMonitor);
+                new LayerCacheInfoBuilder(
+                        cacheRoot, createCacheScanExecutor(), storageBroker, quotaStore);
 
         for (String layerName : tileLayerDispatcher.getLayerNames()) {
 
             Quota usedQuota = quotaStore.getUsedQuotaByLayerName(layerName);
-            if (usedQuota.getBytes().compareTo(BigInteger.ZERO) > 0) {
+            boolean hasUsedQuota = usedQuota.getBytes().compareTo(BigInteger.ZERO) > 0;
+            if (hasUsedQuota && !cacheInfoBuilder.hasCheckpoint(layerName)) {
                 log.debug(
                         "Using saved quota information for layer "
                                 + layerName
                                 + ": "
                                 + usedQuota.toNiceString());
             } else {
-                log.debug(
-                        layerName
-                                + " has no saved used quota information,"
-                                + "traversing layer cache to compute its disk usage.");
+                if (cacheInfoBuilder.hasCheckpoint(layerName)) {
+                    // the usage is rebuilt from the checkpoint, whatever the quota store saved
+                    log.debug(layerName + " cache traversal was interrupted, resuming it");
+                } else {
+                    log.debug(
+                            layerName
+                                    + " has no saved used quota information,"
+                                    + "traversing layer cache to compute its disk usage.");
+                }
                 TileLayer tileLayer;
                 try {
                     tileLayer = tileLayerDispatcher.getTileLayer(layerName);
@@ -391,6 +404,23 @@ public class DiskQuotaMonitor implements InitializingBean, DisposableBean {
         return cacheInfoBuilder;
     }
 
+    /**
+     * The cache traversal threads, as many as the {@code GEOWEBCACHE_QUOTA_SCAN_THREADS} property
+     * says, or as the max concurrent clean ups otherwise
+     */
+    private ExecutorService createCacheScanExecutor() {
+        int numScanThreads = quotaConfig.getMaxConcurrentCleanUps();
+        String value = GeoWebCacheExtensions.getProperty(SCAN_THREADS_PROPERTY);
+        if (value != null) {
+            numScanThreads = Integer.parseInt(value);
+        }
+        CustomizableThreadFactory tf =
+                new CustomizableThreadFactory("GWC DiskQuota cache scan thread-");
+        tf.setDaemon(true);
+        tf.setThreadPriority(Thread.MIN_PRIORITY);
+        return Executors.newFixedThreadPool(numScanThreads, tf);
+    }
+
     private ScheduledExecutorService createCleanUpExecutor() {
 
         final int numCleaningThreads = quotaConfig.getMaxConcurrentCleanUps();
@@ -15,194 +15,329 @@
 package org.geowebcache.diskquota;
 
 import java.io.File;
-import java.io.FileFilter;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import org.apache.commons.io.FilenameUtils;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.diskquota.storage.LayerQuota;
+import org.geowebcache.diskquota.storage.PagePyramid;
+import org.geowebcache.diskquota.storage.PageStatsPayload;
 import org.geowebcache.diskquota.storage.Quota;
 import org.geowebcache.diskquota.storage.TilePage;
+import org.geowebcache.diskquota.storage.TilePageCalculator;
 import org.geowebcache.diskquota.storage.TileSet;
 import org.geowebcache.grid.GridSubset;
 import org.geowebcache.layer.TileLayer;
 import org.geowebcache.mime.MimeException;
 import org.geowebcache.mime.MimeType;
+import org.geowebcache.storage.BlobStore;
+import org.geowebcache.storage.StorageBroker;
+import org.geowebcache.storage.StorageException;
+import org.geowebcache.storage.TileRange;
 import org.geowebcache.storage.blobstore.file.FilePathUtils;
-import org.geowebcache.util.FileUtils;
 
 /**
  * Gathers information about the cache of a layer, such as its size and available {@link TilePage}s.
  *
+ * <p>The cache is listed through {@link StorageBroker#scan}, so any {@link BlobStore} able to list
+ * its tiles can be inventoried. The work is split in units, one per tile set zoom level, run in
+ * parallel on the provided thread pool. When a unit completes, the usage it found is recorded in a
+ * per layer checkpoint file, and then added to the quota store. A scan interrupted by a shut down
+ * or a crash resumes with the pending units only: since the quota store may or may not hold the
+ * usage of the recorded units, depending on when the scan stopped and on the store durability, the
+ * used quota and page fill factors of the scanned tile sets are reset, keeping the page usage
+ * statistics, and the recorded units are applied again before scanning the others, so that no unit
+ * is counted twice. The quota store tracks bytes per tile set, not per zoom level, so the reset
+ * also drops the usage recorded live in the completed units after they were scanned: tiles stored
+ * there while the scan was interrupted are only accounted for again by the next full scan.
+ *
  * @author groldan
  */
 final class LayerCacheInfoBuilder {
 
     private static final Log log = LogFactory.getLog(LayerCacheInfoBuilder.class);
 
-    private final File rootCacheDir;
+    /** Directory, relative to the cache root, holding the checkpoints of unfinished scans */
+    static final String CHECKPOINT_DIRECTORY = "diskquota_scan";
+
+    static final String CHECKPOINT_EXTENSION = ".checkpoint";
+
+    private final File checkpointDir;
 
     private final ExecutorService threadPool;
 
-    private final Map<String, List<Future<ZoomLevelVisitor.Stats>>> perLayerRunningTasks;
+    private final Map<String, List<Future<ZoomLevelScan.Stats>>> perLayerRunningTasks;
 
-    private final QuotaUpdatesMonitor quotaUsageMonitor;
+    private final StorageBroker storageBroker;
 
-    private boolean closed = false;
+    private final QuotaStore quotaStore;
+
+    private volatile boolean closed = false;
 
     public LayerCacheInfoBuilder(
             final File rootCacheDir,
             final ExecutorService threadPool,
-            QuotaUpdatesMonitor quotaUsageMonitor) {
-        this.rootCacheDir = rootCacheDir;
+            final StorageBroker storageBroker,
+            final QuotaStore quotaStore) {
+        this.checkpointDir = new File(rootCacheDir, CHECKPOINT_DIRECTORY);
         this.threadPool = threadPool;
-        this.quotaUsageMonitor = quotaUsageMonitor;
-        this.perLayerRunningTasks = new HashMap<String, List<Future<ZoomLevelVisitor.Stats>>>();
+        this.storageBroker = storageBroker;
+        this.quotaStore = quotaStore;
+        this.perLayerRunningTasks =
+                new ConcurrentHashMap<String, List<Future<ZoomLevelScan.Stats>>>();
     }
 
     /**
-     * Asynchronously collects cache usage information for the given {@code tileLayer} into the
-     * given {@code layerQuota} by using the provided {@link ExecutorService} at construction time.
-     *
-     * <p>This method discards any {@link LayerQuota#getUsedQuota() used quota} information
-     * available for {@code layerQuota} and updates it by collecting the usage information for the
-     * layer.
+     * Asynchronously collects cache usage information for the given {@code tileLayer} by using the
+     * provided {@link ExecutorService} at construction time.
      *
-     * <p>In addition to collecting the cache usage information for the layer, the {@code
-     * layerQuota}'s {@link ExpirationPolicy expiration policy} will be given the opportunity to
-     * gather any additional information by calling the {@link
-     * ExpirationPolicy#createInfoFor(LayerQuota, String, long[], File) createInforFor(layerQuota,
-     * gridSetId, tileXYZ, file)} method for each available tile on the layer's cache.
+     * <p>If a previous scan of the layer was interrupted, the usage of its tile sets is reset to
+     * the one recorded by the units it completed, and only the tile set zoom levels it did not
+     * complete are scanned. Otherwise the whole layer is, and the found usage is added to the quota
+     * store. Callers are expected to reset the layer {@link LayerQuota#getUsedQuota() used quota}
+     * and {@link #clearCheckpoint(String) clear its checkpoint} if they want a full rescan.
      *
      * <p>Note the cache information gathering is performed asynchronously and hence this method
      * returns immediately. To check whether the information collect for a given layer has finished
      * use the {@link #isRunning(String) isRunning(layerName)} method.
      */
-    public void buildCacheInfo(final TileLayer tileLayer) {
+    public void buildCacheInfo(final TileLayer tileLayer) throws InterruptedException {
 
         final String layerName = tileLayer.getName();
-        final String layerDirName = FilePathUtils.filteredLayerName(layerName);
+        final LayerScan layerScan = new LayerScan(layerName);
+        final boolean resumed = layerScan.checkpoint.exists();
+        final Map<String, String> completedUnits = layerScan.readCheckpoint();
+        final TilePageCalculator tilePageCalculator = quotaStore.getTilePageCalculator();
+
+        List<ZoomLevelScan> scans = new ArrayList<ZoomLevelScan>();
+        List<ZoomLevelScan> completedScans = new ArrayList<ZoomLevelScan>();
+        Set<TileSet> tileSets = new LinkedHashSet<TileSet>();
+        for (TileSet tileSet : tilePageCalculator.getTileSetsFor(layerName)) {
+            final GridSubset gridSubset = tileLayer.getGridSubset(tileSet.getGridsetId());
+            if (gridSubset == null) {
+                continue;
+            }
+            final MimeType mimeType;
+            try {
+                mimeType = MimeType.createFromFormat(tileSet.getBlobFormat());
+            } catch (MimeException e) {
+                log.debug(e);
+                continue;
+            }
+            tileSets.add(tileSet);
+            final int zoomStart = gridSubset.getZoomStart();
+            final int zoomStop = gridSubset.getZoomStop();
+            for (int zoomLevel = zoomStart; zoomLevel <= zoomStop; zoomLevel++) {
+                ZoomLevelScan scan =
+                        new ZoomLevelScan(
+                                layerScan,
+                                tileSet,
+                                mimeType,
+                                gridSubset.getCoverage(zoomLevel),
+                                tilePageCalculator);
+                if (completedUnits.containsKey(scan.unitId)) {
+                    completedScans.add(scan);
+                } else {
+                    scans.add(scan);
+                }
+            }
+        }
 
-        final File layerDir = new File(rootCacheDir, layerDirName);
+        if (resumed) {
+            // the quota store may hold any part of the recorded usage, start over from it alone
+            resetUsage(layerName, tileSets);
+            for (ZoomLevelScan scan : completedScans) {
+                scan.apply(completedUnits.get(scan.unitId));
+            }
+        }
 
-        if (!layerDir.exists()) {
+        if (scans.isEmpty()) {
+            layerScan.deleteCheckpoint();
             return;
         }
 
-        perLayerRunningTasks.put(layerName, new ArrayList<Future<ZoomLevelVisitor.Stats>>());
+        layerScan.createCheckpoint();
+        layerScan.pendingUnits.set(scans.size());
+        List<Future<ZoomLevelScan.Stats>> tasks = new ArrayList<Future<ZoomLevelScan.Stats>>();
+        for (ZoomLevelScan scan : scans) {
+            tasks.add(threadPool.submit(scan));
+        }
+        perLayerRunningTasks.put(layerName, tasks);
+        log.debug(
+                "Submitted "
+                        + scans.size()
+                        + " background tasks to gather cache info for '"
+                        + layerName
+                        + "'"
+                        + (completedUnits.isEmpty()
+                                ? ""
+                                : ", resuming after " + completedUnits.size() + " completed ones"));
+    }
 
-        final Set<TileSet> onDiskTileSets = findOnDiskTileSets(tileLayer, layerDir);
+    /** Resets the used quota and fill factors of the tile sets, keeping the page statistics */
+    private void resetUsage(String layerName, Set<TileSet> tileSets) throws InterruptedException {
+        try {
+            for (TileSet tileSet : tileSets) {
+                quotaStore.resetUsage(tileSet);
+            }
+        } catch (UnsupportedOperationException e) {
+            log.debug("Quota store can't reset tile sets, recreating layer " + layerName);
+            quotaStore.deleteLayer(layerName);
+            quotaStore.createLayer(layerName);
+        }
+    }
 
-        for (TileSet tileSet : onDiskTileSets) {
-            final String gridSetId = tileSet.getGridsetId();
-            // final String blobFormat = tileSet.getBlobFormat();
-            final String parametersId = tileSet.getParametersId();
-            final GridSubset gs = tileLayer.getGridSubset(gridSetId);
-            final int zoomStart = gs.getZoomStart();
-            final int zoomStop = gs.getZoomStop();
+    /** @return whether a scan of the layer was interrupted and can be resumed */
+    public boolean hasCheckpoint(String layerName) {
+        return new LayerScan(layerName).checkpoint.exists();
+    }
 
-            for (int zoomLevel = zoomStart; zoomLevel <= zoomStop && !closed; zoomLevel++) {
-                String gridsetZLevelParamsDirName;
-                gridsetZLevelParamsDirName =
-                        FilePathUtils.gridsetZoomLevelDir(gridSetId, zoomLevel);
-                if (parametersId != null) {
-                    gridsetZLevelParamsDirName += "_" + parametersId;
-                }
-                final File gridsetZLevelDir = new File(layerDir, gridsetZLevelParamsDirName);
-
-                if (gridsetZLevelDir.exists()) {
-                    ZoomLevelVisitor cacheInfoBuilder;
-                    cacheInfoBuilder =
-                            new ZoomLevelVisitor(
-                                    layerName,
-                                    gridsetZLevelDir,
-                                    gridSetId,
-                                    zoomLevel,
-                                    parametersId,
-                                    quotaUsageMonitor);
-
-                    Future<ZoomLevelVisitor.Stats> cacheTask;
-                    cacheTask = threadPool.submit(cacheInfoBuilder);
-
-                    perLayerRunningTasks.get(layerName).add(cacheTask);
-                    log.debug(
-                            "Submitted background task to gather cache info for '"
-                                    + layerName
-                                    + "'/"
-                                    + gridSetId
-                                    + "/"
-                                    + zoomLevel);
+    /** Forgets about the progress of an interrupted scan of the layer */
+    public void clearCheckpoint(String layerName) {
+        new LayerScan(layerName).deleteCheckpoint();
+    }
+
+    /** State of the scan of a layer, shared by the tasks scanning its zoom levels */
+    private final class LayerScan {
+
+        private final String layerName;
+
+        private final File checkpoint;
+
+        private final AtomicInteger pendingUnits = new AtomicInteger();
+
+        private volatile boolean unsupported;
+
+        private volatile boolean failed;
+
+        LayerScan(String layerName) {
+            this.layerName = layerName;
+            this.checkpoint =
+                    new File(
+                            checkpointDir,
+                            FilePathUtils.filteredLayerName(layerName) + CHECKPOINT_EXTENSION);
+        }
+
+        /** @return the usage recorded by each completed unit, keyed by unit id */
+        Map<String, String> readCheckpoint() {
+            if (!checkpoint.exists()) {
+                return Collections.emptyMap();
+            }
+            Map<String, String> units = new HashMap<String, String>();
+            try {
+                for (String line :
+                        Files.readAllLines(checkpoint.toPath(), StandardCharsets.UTF_8)) {
+                    // a line cut short by a crash is ignored, and its unit scanned again
+                    int separator = line.indexOf('\t');
+                    if (separator > 0 && isComplete(line.substring(separator + 1))) {
+                        units.put(line.substring(0, separator), line.substring(separator + 1));
+                    }
                 }
+            } catch (IOException e) {
+                log.warn("Can't read " + checkpoint + ", scanning layer " + layerName, e);
+                units.clear();
             }
+            return units;
         }
-    }
 
-    private Set<TileSet> findOnDiskTileSets(final TileLayer tileLayer, final File layerDir) {
+        private boolean isComplete(String usage) {
+            String[] fields = usage.split(";");
+            try {
+                return usage.endsWith(";")
+                        && fields.length >= 2
+                        && fields.length == Integer.parseInt(fields[1]) + 2;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
 
-        final String layerName = tileLayer.getName();
-        final Set<String> griSetNames = tileLayer.getGridSubsets();
-        Set<TileSet> foundTileSets = new HashSet<TileSet>();
-        for (String gridSetName : griSetNames) {
-            final String gridSetDirPrefix = FilePathUtils.filteredGridSetId(gridSetName);
-            FileFilter prefixFilter =
-                    new FileFilter() {
-                        public boolean accept(File pathname) {
-                            if (!pathname.isDirectory()) {
-                                return false;
-                            }
-                            return pathname.getName().startsWith(gridSetDirPrefix + "_");
-                        }
-                    };
-            File[] thisGridSetDirs = FileUtils.listFilesNullSafe(layerDir, prefixFilter);
-            for (File directory : thisGridSetDirs) {
-                // <Filtered gridset id><_zoom level>[_<parametersId>]
-                final String dirName = directory.getName();
-                final String zlevelAndParamId = dirName.substring(1 + gridSetDirPrefix.length());
-                final String[] parts = zlevelAndParamId.split("_");
-
-                final String gridsetId = gridSetName;
-                // we don't care here.. format should be part of the top level directory name
-                final String blobFormat = null;
-                String parametersId = null;
-                if (parts.length == 2) {
-                    parametersId = parts[1];
+        /** Records a completed unit along with the usage it found */
+        synchronized void checkpoint(String unitId, String usage) throws IOException {
+            Files.createDirectories(checkpointDir.toPath());
+            Files.write(
+                    checkpoint.toPath(),
+                    (unitId + "\t" + usage + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        }
+
+        /**
+         * Creates the checkpoint before any usage is added, so that a scan interrupted before its
+         * first unit completes is resumed rather than its partial usage trusted
+         */
+        synchronized void createCheckpoint() {
+            try {
+                Files.createDirectories(checkpointDir.toPath());
+                checkpoint.createNewFile();
+            } catch (IOException e) {
+                log.warn("Can't record the progress of the scan of layer " + layerName, e);
+            }
+        }
+
+        synchronized void deleteCheckpoint() {
+            if (checkpoint.exists() && !checkpoint.delete()) {
+                log.warn("Can't delete " + checkpoint);
+            }
+        }
+
+        void unsupported() {
+            if (!unsupported) {
+                unsupported = true;
+                log.info(
+                        "The blob store of layer "
+                                + layerName
+                                + " can't list its tiles, its disk usage will only account for"
+                                + " the tiles stored from now on");
+            }
+        }
+
+        void unitDone() {
+            if (pendingUnits.decrementAndGet() == 0 && !failed && !closed) {
+                // keep the checkpoint of failed scans so that they get resumed on restart
+                deleteCheckpoint();
+                if (!unsupported) {
+                    log.info("Finished gathering cache information for layer " + layerName);
                 }
-                TileSet tileSet = new TileSet(layerName, gridsetId, blobFormat, parametersId);
-                foundTileSets.add(tileSet);
             }
         }
-        return foundTileSets;
     }
 
     /**
-     * Builds the cache information for a single layer/gridsetId/parametersId/zoomLevel combo
+     * Builds the cache information for a single layer/gridsetId/format/parametersId/zoomLevel
+     * combo
      *
      * @author groldan
      */
-    private final class ZoomLevelVisitor implements FileFilter, Callable<ZoomLevelVisitor.Stats> {
-
-        private final String gridSetId;
+    private final class ZoomLevelScan implements Callable<ZoomLevelScan.Stats> {
 
-        private int tileZ;
+        private final LayerScan layerScan;
 
-        private final File zoomLevelPath;
+        private final TileSet tileSet;
 
-        private Stats stats;
+        private final TileRange range;
 
-        private final QuotaUpdatesMonitor quotaUsageMonitor;
+        private final TilePageCalculator tilePageCalculator;
 
-        private final String layerName;
+        private final String unitId;
 
-        private final String parametersId;
+        private final int tileZ;
 
         private class Stats {
             long runTimeMillis;
@@ -212,102 +347,159 @@ final class LayerCacheInfoBuilder {
             Quota collectedQuota = new Quota();
         }
 
-        public ZoomLevelVisitor(
-                final String layerName,
-                final File zoomLevelPath,
-                final String gridsetId,
-                final int zoomLevel,
-                String parametersId,
-                final QuotaUpdatesMonitor quotaUsageMonitor) {
-            this.layerName = layerName;
-            this.zoomLevelPath = zoomLevelPath;
-            this.gridSetId = gridsetId;
-            this.parametersId = parametersId;
-            this.quotaUsageMonitor = quotaUsageMonitor;
-            this.tileZ = zoomLevel;
-            this.stats = new Stats();
+        public ZoomLevelScan(
+                final LayerScan layerScan,
+                final TileSet tileSet,
+                final MimeType mimeType,
+                final long[] coverage,
+                final TilePageCalculator tilePageCalculator) {
+            this.layerScan = layerScan;
+            this.tileSet = tileSet;
+            this.tilePageCalculator = tilePageCalculator;
+            this.tileZ = (int) coverage[4];
+            this.unitId = tileSet.getId() + "@" + tileZ;
+            this.range =
+                    new TileRange(
+                            tileSet.getLayerName(),
+                            tileSet.getGridsetId(),
+                            tileZ,
+                            tileZ,
+                            new long[][] {coverage},
+                            mimeType,
+                            null,
+                            tileSet.getParametersId());
         }
 
         /** @see java.util.concurrent.Callable#call() */
         public Stats call() throws Exception {
-            final String zLevelKey =
-                    layerName
-                            + "'/"
-                            + gridSetId
-                            + "/paramId:"
-                            + (parametersId == null ? "default" : parametersId)
-                            + "/zlevel:"
-                            + tileZ;
             try {
-                log.debug("Gathering cache information for '" + zLevelKey);
-                stats.numTiles = 0L;
-                stats.runTimeMillis = 0L;
+                if (closed || layerScan.unsupported) {
+                    return null;
+                }
+                log.debug("Gathering cache information for " + unitId);
+                final Stats stats = new Stats();
                 long runTime = System.currentTimeMillis();
-                FileUtils.traverseDepth(zoomLevelPath, this);
+                final Collection<PageStatsPayload> pages = scan(stats);
+                if (pages == null) {
+                    layerScan.unsupported();
+                    return null;
+                }
+                if (closed) {
+                    throw new ScanCanceledException();
+                }
+                // recorded first, on resume it is applied again over a reset layer usage, and
+                // a unit that can't be recorded fails without touching the quota store
+                layerScan.checkpoint(unitId, encode(stats.collectedQuota, pages));
+                if (!pages.isEmpty()) {
+                    quotaStore.addToQuotaAndTileCounts(tileSet, stats.collectedQuota, pages);
+                }
                 runTime = System.currentTimeMillis() - runTime;
                 stats.runTimeMillis = runTime;
-            } catch (TraversalCanceledException cancel) {
-                log.debug("Gathering cache information for " + zLevelKey + " was canceled.");
+                log.debug(
+                        "Cache information for "
+                                + unitId
+                                + " collected in "
+                                + stats.runTimeMillis / 1000D
+                                + "s. Counted "
+                                + stats.numTiles
+                                + " tiles for a storage space of "
+                                + stats.collectedQuota.toNiceString());
+                return stats;
+            } catch (ScanCanceledException cancel) {
+                log.debug("Gathering cache information for " + unitId + " was canceled.");
                 return null;
             } catch (Exception e) {
+                layerScan.failed = true;
+                log.warn("Failed to gather cache information for " + unitId, e);
                 throw e;
+            } finally {
+                layerScan.unitDone();
             }
-            log.debug(
-                    "Cache information for "
-                            + zLevelKey
-                            + " collected in "
-                            + stats.runTimeMillis / 1000D
-                            + "s. Counted "
-                            + stats.numTiles
-                            + " tiles for a storage space of "
-                            + stats.collectedQuota.toNiceString());
-            return stats;
         }
 
-        /** @see java.io.FileFilter#accept(java.io.File) */
-        public boolean accept(final File file) {
-            if (closed) {
-                throw new TraversalCanceledException();
+        /**
+         * Adds the usage recorded for this unit by an interrupted scan to the quota store
+         *
+         * @param usage the usage as {@link #encode(Quota, Collection) encoded} in the checkpoint
+         */
+        void apply(String usage) throws InterruptedException {
+            // bytes;numPages;pageX,pageY,numTiles;...;
+            String[] fields = usage.split(";");
+            Quota quota = new Quota(new BigInteger(fields[0]));
+            List<PageStatsPayload> pages = new ArrayList<PageStatsPayload>(fields.length - 2);
+            for (int i = 2; i < fields.length; i++) {
+                String[] page = fields[i].split(",");
+                PageStatsPayload payload =
+                        new PageStatsPayload(
+                                new TilePage(
+                                        tileSet.getId(),
+                                        Integer.parseInt(page[0]),
+                                        Integer.parseInt(page[1]),
+                                        tileZ));
+                payload.setNumTiles(Integer.parseInt(page[2]));
+                pages.add(payload);
             }
-            if (file.isDirectory()) {
-                log.trace("Processing files in " + file.getAbsolutePath());
-                return true;
+            if (!pages.isEmpty()) {
+                quotaStore.addToQuotaAndTileCounts(tileSet, quota, pages);
             }
+        }
 
-            final long length = file.length();
-
-            // we know path is a direct child of processingDir and represents a tile file...
-            final String path = file.getPath();
-
-            final int fileNameIdx = 1 + path.lastIndexOf(File.separatorChar);
-            final int coordSepIdx = path.lastIndexOf('_');
-            final int dotIdx = path.lastIndexOf('.');
-            final String extension = FilenameUtils.getExtension(file.getName());
-            String blobFormat;
-            try {
-                blobFormat = MimeType.createFromExtension(extension).getFormat();
-            } catch (MimeException e) {
-                throw new RuntimeException(e);
+        private String encode(Quota quota, Collection<PageStatsPayload> pages) {
+            StringBuilder usage = new StringBuilder();
+            usage.append(quota.getBytes()).append(';');
+            usage.append(pages.size()).append(';');
+            for (PageStatsPayload payload : pages) {
+                TilePage page = payload.getPage();
+                usage.append(page.getPageX()).append(',');
+                usage.append(page.getPageY()).append(',');
+                usage.append(payload.getNumTiles()).append(';');
             }
-            final long x = Long.valueOf(path.substring(fileNameIdx, coordSepIdx));
-            final long y = Long.valueOf(path.substring(1 + coordSepIdx, dotIdx));
-
-            this.quotaUsageMonitor.tileStored(
-                    layerName, gridSetId, blobFormat, parametersId, x, y, (int) tileZ, length);
-            stats.numTiles++;
-            stats.collectedQuota.addBytes(length);
-            return true;
+            return usage.toString();
         }
 
         /**
-         * Used to brute-force cancel a cache inspection (as InterruptedException is checked and
-         * hence can't use it in accept(File) above
+         * Sums up the tiles stored on each page of the zoom level
          *
-         * @author groldan
+         * @return the tile count of each page, {@code null} if the tiles can't be listed
          */
-        private class TraversalCanceledException extends RuntimeException {
-            private static final long serialVersionUID = 1L;
-            // doesn't need a body
+        private Collection<PageStatsPayload> scan(final Stats stats) throws StorageException {
+            final String tileSetId = tileSet.getId();
+            final PagePyramid pagePyramid = tilePageCalculator.getPagePyramid(tileSet);
+            final Map<String, PageStatsPayload> pages = new HashMap<String, PageStatsPayload>();
+            final int[] pageIndexTarget = new int[3];
+            final StringBuilder pageIdTarget = new StringBuilder(128);
+            boolean scanned =
+                    storageBroker.scan(
+                            range,
+                            (x, y, z, size) -> {
+                                if (closed) {
+                                    throw new ScanCanceledException();
+                                }
+                                pagePyramid.pageIndexForTile(x, y, z, pageIndexTarget);
+                                final int pageX = pageIndexTarget[0];
+                                final int pageY = pageIndexTarget[1];
+                                pageIdTarget.setLength(0);
+                                TilePage.computeId(tileSetId, pageX, pageY, z, pageIdTarget);
+                                PageStatsPayload payload = pages.get(pageIdTarget.toString());
+                                if (payload == null) {
+                                    TilePage page = new TilePage(tileSetId, pageX, pageY, z);
+                                    payload = new PageStatsPayload(page);
+                                    pages.put(pageIdTarget.toString(), payload);
+                                }
+                                payload.setNumTiles(payload.getNumTiles() + 1);
+                                stats.numTiles++;
+                                stats.collectedQuota.addBytes(size);
+                            });
+            return scanned ? pages.values() : null;
+        }
+    }
+
+    /** Used to cancel a scan from within the visitor it is feeding */
+    private static class ScanCanceledException extends StorageException {
+        private static final long serialVersionUID = 1L;
+
+        ScanCanceledException() {
+            super("Scan canceled");
         }
     }
 
@@ -319,20 +511,22 @@ final class LayerCacheInfoBuilder {
      */
     public boolean isRunning(String layerName) {
         try {
-            List<Future<ZoomLevelVisitor.Stats>> layerTasks = perLayerRunningTasks.get(layerName);
+            List<Future<ZoomLevelScan.Stats>> layerTasks = perLayerRunningTasks.get(layerName);
             if (layerTasks == null) {
                 return false;
             }
 
             int numRunning = 0;
-            Future<ZoomLevelVisitor.Stats> future;
-            for (Iterator<Future<ZoomLevelVisitor.Stats>> it = layerTasks.iterator();
-                    it.hasNext(); ) {
-                future = it.next();
-                if (future.isDone()) {
-                    it.remove();
-                } else {
-                    numRunning++;
+            Future<ZoomLevelScan.Stats> future;
+            synchronized (layerTasks) {
+                for (Iterator<Future<ZoomLevelScan.Stats>> it = layerTasks.iterator();
+                        it.hasNext(); ) {
+                    future = it.next();
+                    if (future.isDone()) {
+                        it.remove();
+                    } else {
+                        numRunning++;
+                    }
                 }
             }
             return numRunning > 0;
@@ -62,7 +62,7 @@ public class QueuedQuotaUpdatesConsumer implements Callable<Long> {
      */
     private Map<TileSet, TimedQuotaUpdate> aggregatedDelayedUpdates;
 
-    boolean terminate = false;
+    volatile boolean terminate = false;
 
     /**
      * Tracks accumulated quota difference for a single TileSet and accumulated number of tiles
@@ -14,11 +14,14 @@
  */
 package org.geowebcache.diskquota;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.GeoWebCacheExtensions;
+import org.geowebcache.diskquota.storage.TileSet;
 import org.geowebcache.storage.BlobStoreListener;
 import org.geowebcache.storage.DefaultStorageBroker;
 import org.springframework.util.Assert;
@@ -30,6 +33,9 @@ import org.springframework.util.Assert;
  * QuotaUpdate}s to the provided {@link BlockingQueue}. Another thread is responsible of taking the
  * {@link QuotaUpdate} off the queue and updating the quota store as appropriate.
  *
+ * <p>When given several queues, the updates are sharded by {@link TileSet}, so that all the updates
+ * of a tile set are taken off the same queue, in order, by the same consumer.
+ *
  * @author groldan
  * @see DiskQuotaMonitor
  * @see QueuedQuotaUpdatesConsumer
@@ -38,7 +44,7 @@ class QueuedQuotaUpdatesProducer implements BlobStoreListener {
 
     private static final Log log = LogFactory.getLog(QueuedQuotaUpdatesProducer.class);
 
-    private final BlockingQueue<QuotaUpdate> queuedUpdates;
+    private final List<BlockingQueue<QuotaUpdate>> queuedUpdates;
 
     private boolean cancelled;
 
@@ -52,7 +58,17 @@ class QueuedQuotaUpdatesProducer implements BlobStoreListener {
      */
     public QueuedQuotaUpdatesProducer(
             final BlockingQueue<QuotaUpdate> queuedUpdates, QuotaStore quotaStore) {
-        Assert.notNull(queuedUpdates, "queuedUpdates can't be null");
+        this(Collections.singletonList(queuedUpdates), quotaStore);
+    }
+
+    /**
+     * @param queuedUpdates queues that this monitor will fill with updates at each tile event, one
+     *     per consumer thread
+     */
+    public QueuedQuotaUpdatesProducer(
+            final List<BlockingQueue<QuotaUpdate>> queuedUpdates, QuotaStore quotaStore) {
+        Assert.notEmpty(queuedUpdates, "queuedUpdates can't be empty");
+        Assert.noNullElements(queuedUpdates.toArray(), "queuedUpdates can't contain null queues");
 
         this.queuedUpdates = queuedUpdates;
         this.quotaStore = quotaStore;
@@ -176,11 +192,12 @@ class QueuedQuotaUpdatesProducer implements BlobStoreListener {
         }
         QuotaUpdate payload =
                 new QuotaUpdate(layerName, gridSetId, blobFormat, parametersId, amount, tileIndex);
+        BlockingQueue<QuotaUpdate> queue = queueFor(payload.getTileSet());
         try {
             if (updateOfferTimeoutSeconds <= 0) {
-                this.queuedUpdates.put(payload);
+                queue.put(payload);
             } else {
-                if (!this.queuedUpdates.offer(
+                if (!queue.offer(
                         payload, updateOfferTimeoutSeconds, TimeUnit.SECONDS)) {
                     throw new RuntimeException(
                             "Failed to offer the quota diff to the updates queue "
@@ -203,6 +220,14 @@ class QueuedQuotaUpdatesProducer implements BlobStoreListener {
         }
     }
 
+    private BlockingQueue<QuotaUpdate> queueFor(TileSet tileSet) {
+        int shards = queuedUpdates.size();
+        if (shards == 1) {
+            return queuedUpdates.get(0);
+        }
+        return queuedUpdates.get(Math.floorMod(tileSet.hashCode(), shards));
+    }
+
     private boolean cancelled(String layerName) {
         if (cancelled) {
             log.debug(
@@ -17,10 +17,9 @@ package org.geowebcache.diskquota;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.TimeUnit;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.diskquota.storage.PageStatsPayload;
@@ -29,7 +28,12 @@ import org.geowebcache.diskquota.storage.TilePageCalculator;
 import org.geowebcache.diskquota.storage.TileSet;
 import org.springframework.util.Assert;
 
-/** @author groldan */
+/**
+ * Periodically drains the {@link UsageStatsBuffer}, aggregates the tile hits per {@link TilePage}
+ * and saves them to the {@link QuotaStore}.
+ *
+ * @author groldan
+ */
 public class QueuedUsageStatsConsumer implements Callable<Long> {
 
     private static final Log log = LogFactory.getLog(QueuedUsageStatsConsumer.class);
@@ -41,15 +45,9 @@ public class QueuedUsageStatsConsumer implements Callable<Long> {
      */
     private static final long DEFAULT_SYNC_TIMEOUT = 100;
 
-    /**
-     * Default number of per TileSet aggregated quota updates before ensuring they're synchronized
-     * back to the store, regardless of whether the timeout expired for the TileSet
-     */
-    private static final int MAX_AGGREGATES_BEFORE_COMMIT = 3000;
-
     private final QuotaStore quotaStore;
 
-    private final BlockingQueue<UsageStats> usageStatsQueue;
+    private final UsageStatsBuffer usageStatsBuffer;
 
     private final TilePageCalculator tilePageCalculator;
 
@@ -60,31 +58,30 @@ public class QueuedUsageStatsConsumer implements Callable<Long> {
         /** Tracks aggregated usage stats per {@link TilePage#getId() pageId} until committed */
         private final Map<String, PageStatsPayload> pages;
 
-        /** tracks the last time the aggregated updates for a given tile set were committed */
-        private long lastCommitTime;
-
         /** tracks how many requests for the same tile page this aggregated stats is made of */
         private int numAggregations;
 
         public TimedUsageUpdate() {
             this.pages = new HashMap<String, PageStatsPayload>();
-            this.lastCommitTime = System.currentTimeMillis();
             numAggregations = 0;
         }
     }
 
+    /** Number of dropped hits last reported */
+    private long reportedDropped;
+
     /** */
     public QueuedUsageStatsConsumer(
             final QuotaStore quotaStore,
-            final BlockingQueue<UsageStats> queue,
+            final UsageStatsBuffer buffer,
             final TilePageCalculator tilePageCalculator) {
 
         Assert.notNull(quotaStore, "quotaStore can't be null");
-        Assert.notNull(queue, "queue can't be null");
+        Assert.notNull(buffer, "buffer can't be null");
         Assert.notNull(tilePageCalculator, "tilePageCalculator can't be null");
 
         this.quotaStore = quotaStore;
-        this.usageStatsQueue = queue;
+        this.usageStatsBuffer = buffer;
         this.tilePageCalculator = tilePageCalculator;
         aggregatedPendingUpdates = new TimedUsageUpdate();
     }
@@ -106,26 +103,8 @@ public class QueuedUsageStatsConsumer implements Callable<Long> {
             }
 
             try {
-                /*
-                 * do not wait for more than 5 seconds for data to become available on the queue
-                 */
-                UsageStats requestedTile;
-                requestedTile = usageStatsQueue.poll(DEFAULT_SYNC_TIMEOUT, TimeUnit.MILLISECONDS);
-                if (requestedTile == null) {
-                    /*
-                     * poll timed out, nothing new, check there are no pending aggregated updates
-                     * for too long if we're idle
-                     */
-                    if (aggregatedPendingUpdates.pages.size() > 0) {
-                        commit();
-                    }
-
-                } else {
-                    /*
-                     * perform an aggregated update in case we're really busy
-                     */
-                    performAggregatedUpdate(requestedTile);
-                }
+                Thread.sleep(DEFAULT_SYNC_TIMEOUT);
+                drain();
             } catch (InterruptedException e) {
                 log.info("Shutting down quota update background task due to interrupted exception");
                 Thread.currentThread().interrupt();
@@ -142,18 +121,59 @@ public class QueuedUsageStatsConsumer implements Callable<Long> {
         return null;
     }
 
+    /**
+     * Saves the tile hits recorded since the last drain to the store, aggregated per tile page.
+     */
+    void drain() {
+        List<UsageStats> requestedTiles = usageStatsBuffer.drain();
+        for (UsageStats requestedTile : requestedTiles) {
+            try {
+                performAggregatedUpdate(requestedTile);
+            } catch (RuntimeException e) {
+                // e.g. the layer was removed in the meantime, go on with the other tiles
+                log.debug("Unable to aggregate usage stats for " + requestedTile, e);
+            }
+        }
+        if (aggregatedPendingUpdates.pages.size() > 0) {
+            if (log.isTraceEnabled()) {
+                log.trace(
+                        "Committing "
+                                + aggregatedPendingUpdates.numAggregations
+                                + " aggregated usage stats to quota store");
+            }
+            commit();
+        }
+        reportDropped();
+    }
+
+    private void reportDropped() {
+        long dropped = usageStatsBuffer.getDropped();
+        if (dropped > reportedDropped) {
+            log.warn(
+                    "Usage stats buffer full, dropped "
+                            + (dropped - reportedDropped)
+                            + " tile hits (total: recorded "
+                            + usageStatsBuffer.getRecorded()
+                            + ", merged "
+                            + usageStatsBuffer.getMerged()
+                            + ", dropped "
+                            + dropped
+                            + ")");
+            reportedDropped = dropped;
+        }
+    }
+
     private final int[] pageIndexTarget = new int[3];
 
     private final StringBuilder pageIdTarget = new StringBuilder(128);
 
-    private boolean terminate = false;
+    private volatile boolean terminate = false;
 
     /**
-     * @param requestedTile represents a single tile that was requested and for which its tile page
-     *     needs to be looked up and updated
+     * @param requestedTile represents a tile that was requested and for which its tile page needs
+     *     to be looked up and updated
      */
-    private void performAggregatedUpdate(final UsageStats requestedTile)
-            throws InterruptedException {
+    private void performAggregatedUpdate(final UsageStats requestedTile) {
 
         final TileSet tileSet = requestedTile.getTileSet();
         final String tileSetId = tileSet.getId();
@@ -177,53 +197,17 @@ public class QueuedUsageStatsConsumer implements Callable<Long> {
             timedUpdate.setTileSet(tileSet);
 
             aggregatedPendingUpdates.pages.put(pageKeyForTile, timedUpdate);
-        } else {
-            timedUpdate.setNumHits(timedUpdate.getNumHits() + 1);
-        }
-        timedUpdate.setNumHits(timedUpdate.getNumHits() + 1);
-        timedUpdate.setLastAccessTime(System.currentTimeMillis());
-        aggregatedPendingUpdates.numAggregations++;
-
-        /*
-         * now make sure we're not waiting for too long before committing
-         */
-        checkAggregatedTimeout();
-    }
-
-    /**
-     * Makes sure the given cached updates are held for too long before synchronizing with the
-     * store, either because it's been held for too long, or because too many updates have happened
-     * on it since the last time it was saved to the store.
-     */
-    private void checkAggregatedTimeout() {
-
-        final long currTime = System.currentTimeMillis();
-        final long creationTime = aggregatedPendingUpdates.lastCommitTime;
-
-        boolean timeout = currTime - creationTime >= DEFAULT_SYNC_TIMEOUT;
-
-        final int numAggregations = aggregatedPendingUpdates.numAggregations;
-        boolean tooManyPendingCommits = numAggregations >= MAX_AGGREGATES_BEFORE_COMMIT;
-
-        if (timeout || tooManyPendingCommits) {
-            if (log.isTraceEnabled()) {
-                log.trace(
-                        "Committing "
-                                + numAggregations
-                                + " aggregated usage stats to quota store due to "
-                                + (tooManyPendingCommits
-                                        ? "too many pending commits"
-                                        : "max wait time reached"));
-            }
-            commit();
         }
+        timedUpdate.setNumHits(timedUpdate.getNumHits() + requestedTile.getNumHits());
+        timedUpdate.setLastAccessTime(
+                Math.max(timedUpdate.getLastAccessTime(), requestedTile.getLastAccessTime()));
+        aggregatedPendingUpdates.numAggregations += requestedTile.getNumHits();
     }
 
     private void commit() {
         Collection<PageStatsPayload> pendingCommits;
         pendingCommits = new ArrayList<PageStatsPayload>(aggregatedPendingUpdates.pages.values());
         quotaStore.addHitsAndSetAccesTime(pendingCommits);
-        aggregatedPendingUpdates.lastCommitTime = System.currentTimeMillis();
         aggregatedPendingUpdates.numAggregations = 0;
         aggregatedPendingUpdates.pages.clear();
     }
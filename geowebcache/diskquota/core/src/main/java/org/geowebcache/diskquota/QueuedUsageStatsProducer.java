@@ -14,7 +14,6 @@
  */
 package org.geowebcache.diskquota;
 
-import java.util.concurrent.BlockingQueue;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.conveyor.ConveyorTile;
@@ -25,7 +24,8 @@ import org.springframework.util.Assert;
 
 /**
  * This {@link TileLayerListener} is thread safe and can be called by any thread requesting a tile
- * from a {@link TileLayer}
+ * from a {@link TileLayer}. Requests are recorded in a {@link UsageStatsBuffer}, which never
+ * blocks, so serving tiles does not depend on how fast usage stats are saved to the quota store.
  *
  * @author groldan
  */
@@ -33,13 +33,13 @@ public class QueuedUsageStatsProducer implements TileLayerListener {
 
     private static final Log log = LogFactory.getLog(QueuedQuotaUpdatesProducer.class);
 
-    private final BlockingQueue<UsageStats> usageStatsQueue;
+    private final UsageStatsBuffer usageStatsBuffer;
 
     private volatile boolean cancelled;
 
-    public QueuedUsageStatsProducer(BlockingQueue<UsageStats> usageStatsQueue) {
-        Assert.notNull(usageStatsQueue, "usageStatsQueue can't be null");
-        this.usageStatsQueue = usageStatsQueue;
+    public QueuedUsageStatsProducer(UsageStatsBuffer usageStatsBuffer) {
+        Assert.notNull(usageStatsBuffer, "usageStatsBuffer can't be null");
+        this.usageStatsBuffer = usageStatsBuffer;
     }
 
     /** @see org.geowebcache.layer.TileLayerListener#tileRequested */
@@ -52,20 +52,9 @@ public class QueuedUsageStatsProducer implements TileLayerListener {
         String blobFormat = tile.getMimeType().getFormat();
         String parametersId = tile.getParametersId();
         TileSet tileSet = new TileSet(layerName, gridsetId, blobFormat, parametersId);
-        long[] tileIndex = tile.getTileIndex().clone();
-        UsageStats usageLog = new UsageStats(tileSet, tileIndex);
-        try {
-            usageStatsQueue.put(usageLog);
-        } catch (InterruptedException e) {
-            if (cancelled(layerName)) {
-                return;
-            }
-            log.info(
-                    "Quota usage stats gathering for "
-                            + layerName
-                            + " abruptly interrupted on thread "
-                            + Thread.currentThread().getName());
-            Thread.currentThread().interrupt();
+        long[] tileIndex = tile.getTileIndex();
+        if (!usageStatsBuffer.add(tileSet, tileIndex) && log.isTraceEnabled()) {
+            log.trace("Usage stats buffer full, dropped hit for layer " + layerName);
         }
     }
 
@@ -15,6 +15,7 @@
 package org.geowebcache.diskquota;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Future;
@@ -95,8 +96,41 @@ public interface QuotaStore {
     public abstract TilePage getLeastRecentlyUsedPage(final Set<String> layerNames)
             throws InterruptedException;
 
+    /**
+     * Returns up to {@code maxPages} pages to expire, least frequently used first. The default
+     * implementation returns the {@link #getLeastFrequentlyUsedPage(Set) single page}, stores able
+     * to look up several pages at once should override it.
+     */
+    public default List<TilePage> getLeastFrequentlyUsedPages(
+            final Set<String> layerNames, final int maxPages) throws InterruptedException {
+        TilePage page = getLeastFrequentlyUsedPage(layerNames);
+        return page == null ? Collections.emptyList() : Collections.singletonList(page);
+    }
+
+    /**
+     * Returns up to {@code maxPages} pages to expire, least recently used first. The default
+     * implementation returns the {@link #getLeastRecentlyUsedPage(Set) single page}, stores able to
+     * look up several pages at once should override it.
+     */
+    public default List<TilePage> getLeastRecentlyUsedPages(
+            final Set<String> layerNames, final int maxPages) throws InterruptedException {
+        TilePage page = getLeastRecentlyUsedPage(layerNames);
+        return page == null ? Collections.emptyList() : Collections.singletonList(page);
+    }
+
     public abstract PageStats setTruncated(final TilePage tilePage) throws InterruptedException;
 
+    /**
+     * Sets the used quota of the tile set and the fill factor of its pages back to zero, keeping
+     * the page usage statistics (hits, frequency of use and last access time). The default
+     * implementation is not supported, callers should fall back on recreating the layer.
+     *
+     * @throws UnsupportedOperationException if the store can't reset the usage of a tile set alone
+     */
+    public default void resetUsage(final TileSet tileSet) throws InterruptedException {
+        throw new UnsupportedOperationException();
+    }
+
     public abstract void deleteGridSubset(String layerName, String gridSetId);
 
     public abstract void deleteParameters(String layerName, String parametersId);
@@ -14,6 +14,8 @@
  */
 package org.geowebcache.diskquota;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import org.apache.commons.logging.Log;
@@ -33,11 +35,14 @@ public class QuotaUpdatesMonitor extends AbstractMonitor {
 
     private final QuotaStore quotaStore;
 
-    private BlockingQueue<QuotaUpdate> sharedQueue;
+    /** Queues shared by the producer and the consumers, one per consumer */
+    private List<BlockingQueue<QuotaUpdate>> sharedQueues;
 
     private QueuedQuotaUpdatesProducer quotaDiffsProducer;
 
-    private QueuedQuotaUpdatesConsumer quotaUsageUpdatesConsumer;
+    private List<QueuedQuotaUpdatesConsumer> quotaUsageUpdatesConsumers;
+
+    private final int consumerThreads;
 
     public QuotaUpdatesMonitor(final StorageBroker storageBroker, final QuotaStore quotaStore) {
         Assert.notNull(storageBroker, "storageBroker is null");
@@ -51,10 +56,21 @@ public class QuotaUpdatesMonitor extends AbstractMonitor {
         if (sizeStr != null) {
             quotaQueueSize = Integer.parseInt(sizeStr);
         }
-        if (quotaQueueSize > 0) {
-            this.sharedQueue = new LinkedBlockingQueue<>(quotaQueueSize);
-        } else {
-            this.sharedQueue = new LinkedBlockingQueue<>();
+        String threadsStr = GeoWebCacheExtensions.getProperty("GEOWEBCACHE_QUOTA_UPDATE_THREADS");
+        int threads = 1;
+        if (threadsStr != null) {
+            threads = Math.max(1, Integer.parseInt(threadsStr));
+        }
+        this.consumerThreads = threads;
+        // updates are sharded by tile set among the consumers, the queue size is the overall limit
+        this.sharedQueues = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            if (quotaQueueSize > 0) {
+                int shardSize = quotaQueueSize / threads + (i < quotaQueueSize % threads ? 1 : 0);
+                sharedQueues.add(new LinkedBlockingQueue<>(Math.max(1, shardSize)));
+            } else {
+                sharedQueues.add(new LinkedBlockingQueue<>());
+            }
         }
     }
 
@@ -62,15 +78,21 @@ public class QuotaUpdatesMonitor extends AbstractMonitor {
     public void startUp() {
         super.startUp();
 
-        quotaDiffsProducer = new QueuedQuotaUpdatesProducer(sharedQueue, quotaStore);
+        quotaDiffsProducer = new QueuedQuotaUpdatesProducer(sharedQueues, quotaStore);
 
-        // the task that takes quota updates from the queue and saves them to the store
-        quotaUsageUpdatesConsumer = new QueuedQuotaUpdatesConsumer(quotaStore, sharedQueue);
+        // the tasks that take quota updates from the queues and save them to the store, each
+        // aggregating the updates of its own tile sets
+        quotaUsageUpdatesConsumers = new ArrayList<>(sharedQueues.size());
+        for (BlockingQueue<QuotaUpdate> queue : sharedQueues) {
+            quotaUsageUpdatesConsumers.add(new QueuedQuotaUpdatesConsumer(quotaStore, queue));
+        }
 
-        // the listener that puts quota updates on the queue
+        // the listener that puts quota updates on the queues
         storageBroker.addBlobStoreListener(quotaDiffsProducer);
 
-        getExecutorService().submit(quotaUsageUpdatesConsumer);
+        for (QueuedQuotaUpdatesConsumer consumer : quotaUsageUpdatesConsumers) {
+            getExecutorService().submit(consumer);
+        }
     }
 
     @Override
@@ -92,12 +114,14 @@ public class QuotaUpdatesMonitor extends AbstractMonitor {
         } else {
             getExecutorService().shutdown();
         }
-        sharedQueue = null;
+        sharedQueues = null;
     }
 
     @Override
     public void shutDown() {
-        quotaUsageUpdatesConsumer.shutdown();
+        for (QueuedQuotaUpdatesConsumer consumer : quotaUsageUpdatesConsumers) {
+            consumer.shutdown();
+        }
         super.shutDown();
     }
 
@@ -114,6 +138,11 @@ public class QuotaUpdatesMonitor extends AbstractMonitor {
                 layerName, gridSetId, blobFormat, parametersId, x, y, z, blobSize);
     }
 
+    @Override
+    protected int getThreadCount() {
+        return consumerThreads;
+    }
+
     @Override
     protected CustomizableThreadFactory getThreadFactory() {
         return tf;
@@ -23,9 +23,23 @@ public class UsageStats {
 
     private final long[] tileIndex;
 
+    private final int numHits;
+
+    private final long lastAccessTime;
+
     public UsageStats(TileSet tileset, long[] tileIndex) {
+        this(tileset, tileIndex, 1, System.currentTimeMillis());
+    }
+
+    /**
+     * @param numHits number of requests for the tile these stats aggregate
+     * @param lastAccessTime time of the last of these requests, in milliseconds
+     */
+    public UsageStats(TileSet tileset, long[] tileIndex, int numHits, long lastAccessTime) {
         this.tileSet = tileset;
         this.tileIndex = tileIndex;
+        this.numHits = numHits;
+        this.lastAccessTime = lastAccessTime;
     }
 
     public TileSet getTileSet() {
@@ -36,13 +50,23 @@ public class UsageStats {
         return tileIndex;
     }
 
+    public int getNumHits() {
+        return numHits;
+    }
+
+    public long getLastAccessTime() {
+        return lastAccessTime;
+    }
+
     @Override
     public String toString() {
         return new StringBuilder("[")
                 .append(tileSet.toString())
                 .append(", ")
                 .append(Arrays.toString(tileIndex))
-                .append("]")
+                .append(", ")
+                .append(numHits)
+                .append(" hits]")
                 .toString();
     }
 }
@@ -0,0 +1,183 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.diskquota;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import org.geowebcache.diskquota.storage.TileSet;
+
+/**
+ * Bounded, lossy buffer of tile usage statistics, filled by the threads serving tiles and drained
+ * by the {@link QueuedUsageStatsConsumer}.
+ *
+ * <p>Requests for the same tile are merged into a single hit counter. Counters are striped by
+ * thread, so adding a hit only locks the calling thread's stripe for a map lookup, and draining
+ * swaps the stripe's map out, leaving any slow quota store work to the consumer. When a stripe is
+ * full hits for new tiles are dropped instead of waiting for the consumer to catch up. Recorded,
+ * merged and dropped hits are counted.
+ */
+public class UsageStatsBuffer {
+
+    public static final int DEFAULT_MAX_TILES = 10000;
+
+    private static final class TileKey {
+
+        private final TileSet tileSet;
+
+        private final long x;
+
+        private final long y;
+
+        private final long z;
+
+        private TileKey(TileSet tileSet, long x, long y, long z) {
+            this.tileSet = tileSet;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TileKey)) {
+                return false;
+            }
+            TileKey k = (TileKey) o;
+            return x == k.x && y == k.y && z == k.z && tileSet.equals(k.tileSet);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = tileSet.hashCode();
+            hash = 31 * hash + Long.hashCode(x);
+            hash = 31 * hash + Long.hashCode(y);
+            return 31 * hash + Long.hashCode(z);
+        }
+    }
+
+    private static final class Hits {
+
+        private int numHits;
+
+        private long lastAccessTime;
+    }
+
+    private static final class Stripe {
+
+        private Map<TileKey, Hits> tiles = new HashMap<>();
+    }
+
+    private final Stripe[] stripes;
+
+    private final int maxTilesPerStripe;
+
+    private final LongAdder recorded = new LongAdder();
+
+    private final LongAdder merged = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    public UsageStatsBuffer() {
+        this(DEFAULT_MAX_TILES, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * @param maxTiles maximum number of distinct tiles held between two drains
+     * @param numStripes number of independently locked stripes
+     */
+    public UsageStatsBuffer(int maxTiles, int numStripes) {
+        // a power of two, to pick the stripe with a mask
+        int size = numStripes <= 1 ? 1 : Integer.highestOneBit(numStripes - 1) << 1;
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.maxTilesPerStripe = Math.max(1, maxTiles / size);
+    }
+
+    /**
+     * Records a request for a tile, never blocking on the consumer.
+     *
+     * @return false if the hit was dropped because the buffer is full
+     */
+    public boolean add(TileSet tileSet, long[] tileIndex) {
+        final long now = System.currentTimeMillis();
+        final TileKey key = new TileKey(tileSet, tileIndex[0], tileIndex[1], tileIndex[2]);
+        final Stripe stripe =
+                stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+        synchronized (stripe) {
+            Hits hits = stripe.tiles.get(key);
+            if (hits != null) {
+                hits.numHits++;
+                hits.lastAccessTime = Math.max(hits.lastAccessTime, now);
+                merged.increment();
+            } else if (stripe.tiles.size() < maxTilesPerStripe) {
+                hits = new Hits();
+                hits.numHits = 1;
+                hits.lastAccessTime = now;
+                stripe.tiles.put(key, hits);
+                recorded.increment();
+            } else {
+                dropped.increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Removes and returns the hits recorded so far, aggregated per tile */
+    public List<UsageStats> drain() {
+        List<UsageStats> stats = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            Map<TileKey, Hits> tiles;
+            synchronized (stripe) {
+                if (stripe.tiles.isEmpty()) {
+                    continue;
+                }
+                tiles = stripe.tiles;
+                stripe.tiles = new HashMap<>();
+            }
+            for (Map.Entry<TileKey, Hits> entry : tiles.entrySet()) {
+                TileKey key = entry.getKey();
+                Hits hits = entry.getValue();
+                stats.add(
+                        new UsageStats(
+                                key.tileSet,
+                                new long[] {key.x, key.y, key.z},
+                                hits.numHits,
+                                hits.lastAccessTime));
+            }
+        }
+        return stats;
+    }
+
+    /** Number of hits for tiles not yet in the buffer */
+    public long getRecorded() {
+        return recorded.sum();
+    }
+
+    /** Number of hits merged into the counter of a tile already in the buffer */
+    public long getMerged() {
+        return merged.sum();
+    }
+
+    /** Number of hits dropped because the buffer was full */
+    public long getDropped() {
+        return dropped.sum();
+    }
+}
@@ -14,8 +14,6 @@
  */
 package org.geowebcache.diskquota;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.diskquota.storage.TilePageCalculator;
@@ -38,18 +36,18 @@ public class UsageStatsMonitor extends AbstractMonitor {
 
     private final TilePageCalculator tilePageCalculator;
 
-    /** Queue shared by the stats producer and the consumer */
-    private BlockingQueue<UsageStats> sharedQueue;
+    /** Buffer shared by the stats producer and the consumer */
+    private volatile UsageStatsBuffer sharedBuffer;
 
     /**
      * Listens to all {@link TileLayer layers} {@link TileLayerListener#tileRequested(TileLayer,
      * org.geowebcache.conveyor.ConveyorTile) tileRequested} events and puts usage statistics on the
-     * {@link #sharedQueue} for the consumer to save them to the {@link #quotaStore}
+     * {@link #sharedBuffer} for the consumer to save them to the {@link #quotaStore}
      */
     private QueuedUsageStatsProducer usageStatsProducer;
 
     /**
-     * Task that constantly polls the {@link #sharedQueue} for usage statistics payload objects and
+     * Task that constantly polls the {@link #sharedBuffer} for usage statistics payload objects and
      * aggregates them to be saved to the {@link #quotaStore} for the LRU and LFU {@link
      * ExpirationPolicy expiration policies}
      */
@@ -70,13 +68,13 @@ public class UsageStatsMonitor extends AbstractMonitor {
     public void startUp() {
         super.startUp();
 
-        sharedQueue = new LinkedBlockingQueue<>(1000);
+        sharedBuffer = new UsageStatsBuffer();
 
         usageStatsConsumer =
-                new QueuedUsageStatsConsumer(quotaStore, sharedQueue, tilePageCalculator);
+                new QueuedUsageStatsConsumer(quotaStore, sharedBuffer, tilePageCalculator);
         getExecutorService().submit(usageStatsConsumer);
 
-        usageStatsProducer = new QueuedUsageStatsProducer(sharedQueue);
+        usageStatsProducer = new QueuedUsageStatsProducer(sharedBuffer);
         Iterable<TileLayer> allLayers = tileLayerDispatcher.getLayerList();
         for (TileLayer layer : allLayers) {
             layer.addLayerListener(usageStatsProducer);
@@ -107,7 +105,15 @@ public class UsageStatsMonitor extends AbstractMonitor {
         } else {
             getExecutorService().shutdown();
         }
-        sharedQueue = null;
+        sharedBuffer = null;
+    }
+
+    /**
+     * Returns the buffer of usage stats waiting to be saved, which counts the recorded, merged and
+     * dropped tile hits, or null if the monitor is not running
+     */
+    public UsageStatsBuffer getUsageStatsBuffer() {
+        return sharedBuffer;
     }
 
     @Override
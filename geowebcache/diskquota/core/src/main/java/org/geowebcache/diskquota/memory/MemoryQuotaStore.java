@@ -0,0 +1,919 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.diskquota.memory;
+
+import static org.geowebcache.diskquota.DiskQuotaMonitor.GWC_DISKQUOTA_DISABLED;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.config.ConfigurationException;
+import org.geowebcache.diskquota.QuotaStore;
+import org.geowebcache.diskquota.storage.PageStats;
+import org.geowebcache.diskquota.storage.PageStatsPayload;
+import org.geowebcache.diskquota.storage.Quota;
+import org.geowebcache.diskquota.storage.TilePage;
+import org.geowebcache.diskquota.storage.TilePageCalculator;
+import org.geowebcache.diskquota.storage.TileSet;
+import org.geowebcache.diskquota.storage.TileSetVisitor;
+import org.geowebcache.storage.DefaultStorageFinder;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link QuotaStore} keeping the tile set quotas and the page statistics in memory.
+ *
+ * <p>Pages holding tiles are kept in two sorted indexes per layer, by frequency of use and by last
+ * access time, so finding the next pages to expire only visits the pages of the requested layers
+ * that are returned. Updates are applied in place under a write lock, while reads only take a read
+ * lock.
+ *
+ * <p>The contents are written to a compact snapshot file periodically and when the store is closed,
+ * and read back on start up. A clean shut down is recorded by a marker file next to the snapshot.
+ * When it is missing the process died, and the updates made after the last snapshot are lost: the
+ * page usage statistics of the snapshot are still restored, but the used quotas and page fill
+ * factors are not, so that the disk quota monitor recomputes them from the cache contents. A
+ * missing or unreadable snapshot results in an empty store, and the monitor then recomputes the
+ * used quota of all the layers as well.
+ */
+public class MemoryQuotaStore implements QuotaStore {
+
+    private static final Log log = LogFactory.getLog(MemoryQuotaStore.class);
+
+    static final String STORE_DIRECTORY = "diskquota_memory_store";
+
+    static final String SNAPSHOT_FILE = "quota.snapshot";
+
+    /** Present only while the store is closed, if it was closed cleanly */
+    static final String CLEAN_SHUTDOWN_FILE = "quota.clean";
+
+    private static final int SNAPSHOT_MAGIC = 0x47574351; // "GWCQ"
+
+    private static final int SNAPSHOT_VERSION = 1;
+
+    /** A page with its statistics, identified by a store assigned id */
+    private static final class PageEntry {
+
+        final long id;
+
+        final TilePage page;
+
+        final String layerName;
+
+        final PageStats stats;
+
+        PageEntry(long id, TilePage page, String layerName, PageStats stats) {
+            this.id = id;
+            this.page = page;
+            this.layerName = layerName;
+            this.stats = stats;
+        }
+    }
+
+    /** Position in the expiration index of a layer, the indexes are never empty */
+    private static final class LayerCursor {
+
+        final Iterator<PageEntry> entries;
+
+        PageEntry head;
+
+        LayerCursor(Iterator<PageEntry> entries) {
+            this.entries = entries;
+            this.head = entries.next();
+        }
+
+        /** @return whether there is a next page, which then becomes the head */
+        boolean advance() {
+            if (!entries.hasNext()) {
+                return false;
+            }
+            head = entries.next();
+            return true;
+        }
+    }
+
+    private static final Comparator<PageEntry> LFU =
+            Comparator.<PageEntry>comparingDouble(e -> e.stats.getFrequencyOfUsePerMinute())
+                    .thenComparingLong(e -> e.id);
+
+    private static final Comparator<PageEntry> LRU =
+            Comparator.<PageEntry>comparingInt(e -> e.stats.getLastAccessTimeMinutes())
+                    .thenComparingLong(e -> e.id);
+
+    private final String cacheRootDir;
+
+    private final TilePageCalculator tilePageCalculator;
+
+    private final long snapshotIntervalSeconds;
+
+    private final boolean diskQuotaEnabled;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, TileSet> tileSetsById = new HashMap<>();
+
+    private final Map<String, Quota> usedQuotasByTileSetId = new HashMap<>();
+
+    private final Quota globalQuota = new Quota();
+
+    private final Map<String, PageEntry> pagesByKey = new HashMap<>();
+
+    private final Map<String, Set<PageEntry>> pagesByTileSetId = new HashMap<>();
+
+    /** Pages with tiles by layer name, least frequently used first */
+    private final Map<String, NavigableSet<PageEntry>> pagesByLFU = new HashMap<>();
+
+    /** Pages with tiles by layer name, least recently used first */
+    private final Map<String, NavigableSet<PageEntry>> pagesByLRU = new HashMap<>();
+
+    private long nextPageId;
+
+    /** Whether there are changes not written to the snapshot yet, guarded by the lock */
+    private boolean dirty;
+
+    private File snapshotFile;
+
+    private File cleanShutdownFile;
+
+    private ScheduledExecutorService snapshotWriter;
+
+    private volatile boolean open;
+
+    /**
+     * @param snapshotIntervalSeconds how often the contents are written to the snapshot file, zero
+     *     or less to write it only when the store is closed
+     */
+    public MemoryQuotaStore(
+            final DefaultStorageFinder cacheDirFinder,
+            TilePageCalculator tilePageCalculator,
+            long snapshotIntervalSeconds)
+            throws ConfigurationException {
+
+        Assert.notNull(cacheDirFinder, "cacheDirFinder can't be null");
+        Assert.notNull(tilePageCalculator, "tilePageCalculator can't be null");
+
+        this.tilePageCalculator = tilePageCalculator;
+        this.cacheRootDir = cacheDirFinder.getDefaultPath();
+        this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+
+        boolean disabled =
+                Boolean.valueOf(cacheDirFinder.findEnvVar(GWC_DISKQUOTA_DISABLED)).booleanValue();
+        if (disabled) {
+            log.warn(
+                    " -- Found environment variable "
+                            + GWC_DISKQUOTA_DISABLED
+                            + " set to true. DiskQuotaMonitor is disabled.");
+        }
+        this.diskQuotaEnabled = !disabled;
+    }
+
+    /** @see {@link #close()} */
+    public void startUp() throws IOException {
+        if (!diskQuotaEnabled) {
+            log.info(
+                    getClass().getName()
+                            + " won't start, got env variable "
+                            + GWC_DISKQUOTA_DISABLED
+                            + "=true");
+            return;
+        }
+        File storeDirectory = new File(cacheRootDir, STORE_DIRECTORY);
+        storeDirectory.mkdirs();
+        snapshotFile = new File(storeDirectory, SNAPSHOT_FILE);
+        cleanShutdownFile = new File(storeDirectory, CLEAN_SHUTDOWN_FILE);
+
+        lock.writeLock().lock();
+        try {
+            boolean cleanShutdown = cleanShutdownFile.exists();
+            // from now on the snapshot can get stale, until the store is closed again
+            Files.deleteIfExists(cleanShutdownFile.toPath());
+            if (snapshotFile.exists()) {
+                if (!cleanShutdown) {
+                    log.warn(
+                            "The disk quota store was not shut down cleanly, the used quotas"
+                                    + " will be recomputed from the cache contents");
+                }
+                try {
+                    readSnapshot(snapshotFile, cleanShutdown);
+                } catch (IOException | RuntimeException e) {
+                    log.warn(
+                            "Could not read the disk quota snapshot at "
+                                    + snapshotFile.getAbsolutePath()
+                                    + ", starting with no quota information",
+                            e);
+                    clear();
+                }
+            }
+            deleteStaleLayersAndCreateMissingTileSets();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        open = true;
+        if (snapshotIntervalSeconds > 0) {
+            CustomizableThreadFactory tf =
+                    new CustomizableThreadFactory("GWC DiskQuota Memory Store Snapshot-");
+            tf.setDaemon(true);
+            snapshotWriter = Executors.newSingleThreadScheduledExecutor(tf);
+            snapshotWriter.scheduleWithFixedDelay(
+                    this::snapshotQuietly,
+                    snapshotIntervalSeconds,
+                    snapshotIntervalSeconds,
+                    TimeUnit.SECONDS);
+        }
+        log.info(
+                "In memory disk quota store configured at "
+                        + storeDirectory.getAbsolutePath()
+                        + ". Global quota: "
+                        + getGloballyUsedQuota().toNiceString());
+    }
+
+    public void close() throws Exception {
+        if (!diskQuotaEnabled || !open) {
+            return;
+        }
+        open = false;
+        log.info("Requesting to close quota store...");
+        if (snapshotWriter != null) {
+            snapshotWriter.shutdown();
+            try {
+                snapshotWriter.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException ie) {
+                log.error("Time out waiting for the quota store snapshot to complete", ie);
+                Thread.currentThread().interrupt();
+            }
+        }
+        snapshot();
+        if (!cleanShutdownFile.createNewFile()) {
+            log.warn("Clean shut down marker already present at " + cleanShutdownFile);
+        }
+        log.info("Quota store closed.");
+    }
+
+    /** Writes the store contents to the snapshot file, if they changed since the last snapshot */
+    public synchronized void snapshot() throws IOException {
+        // only copy the contents under the lock, compressing and writing them is much slower
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        lock.readLock().lock();
+        try {
+            if (!dirty || snapshotFile == null) {
+                return;
+            }
+            writeSnapshot(new DataOutputStream(contents));
+            // the read lock keeps writers out, the contents are current
+            dirty = false;
+        } finally {
+            lock.readLock().unlock();
+        }
+        boolean written = false;
+        try {
+            File tmp = new File(snapshotFile.getParentFile(), SNAPSHOT_FILE + ".tmp");
+            try (OutputStream out =
+                    new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmp)))) {
+                contents.writeTo(out);
+            }
+            Files.move(
+                    tmp.toPath(),
+                    snapshotFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            written = true;
+        } finally {
+            if (!written) {
+                // try again next time
+                lock.writeLock().lock();
+                try {
+                    dirty = true;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Wrote disk quota snapshot to " + snapshotFile.getAbsolutePath());
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (Exception e) {
+            log.error("Error writing the disk quota snapshot", e);
+        }
+    }
+
+    private void writeSnapshot(DataOutputStream out) throws IOException {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+        writeBigInteger(out, globalQuota.getBytes());
+
+        // tile sets are written once, pages refer to them by position
+        Map<String, Integer> tileSetIndexes = new HashMap<>();
+        out.writeInt(tileSetsById.size());
+        for (TileSet tileSet : tileSetsById.values()) {
+            tileSetIndexes.put(tileSet.getId(), tileSetIndexes.size());
+            out.writeUTF(tileSet.getLayerName());
+            out.writeUTF(tileSet.getGridsetId());
+            out.writeUTF(tileSet.getBlobFormat());
+            out.writeBoolean(tileSet.getParametersId() != null);
+            if (tileSet.getParametersId() != null) {
+                out.writeUTF(tileSet.getParametersId());
+            }
+            writeBigInteger(out, usedQuotasByTileSetId.get(tileSet.getId()).getBytes());
+        }
+
+        out.writeInt(pagesByKey.size());
+        for (PageEntry entry : pagesByKey.values()) {
+            TilePage page = entry.page;
+            PageStats stats = entry.stats;
+            out.writeInt(tileSetIndexes.get(page.getTileSetId()));
+            out.writeInt(page.getPageX());
+            out.writeInt(page.getPageY());
+            out.writeByte(page.getZoomLevel());
+            out.writeInt(page.getCreationTimeMinutes());
+            out.writeFloat(stats.getFillFactor());
+            out.writeFloat(stats.getFrequencyOfUsePerMinute());
+            out.writeInt(stats.getLastAccessTimeMinutes());
+            writeBigInteger(out, stats.getNumHits());
+        }
+    }
+
+    /**
+     * Reads the store contents from a snapshot
+     *
+     * @param current whether the snapshot holds the latest contents, otherwise only the page usage
+     *     statistics are read back, the quotas and fill factors being out of date
+     */
+    private void readSnapshot(File file, boolean current) throws IOException {
+        try (DataInputStream in =
+                new DataInputStream(
+                        new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a disk quota snapshot");
+            }
+            int version = in.readInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported disk quota snapshot version " + version);
+            }
+            BigInteger globalBytes = readBigInteger(in);
+            if (current) {
+                globalQuota.setBytes(globalBytes);
+            }
+
+            int numTileSets = in.readInt();
+            List<TileSet> tileSets = new ArrayList<>(numTileSets);
+            for (int i = 0; i < numTileSets; i++) {
+                String layerName = in.readUTF();
+                String gridsetId = in.readUTF();
+                String blobFormat = in.readUTF();
+                String parametersId = in.readBoolean() ? in.readUTF() : null;
+                TileSet tileSet = new TileSet(layerName, gridsetId, blobFormat, parametersId);
+                BigInteger bytes = readBigInteger(in);
+                if (current) {
+                    getOrCreateTileSet(tileSet).setBytes(bytes);
+                } else {
+                    getOrCreateTileSet(tileSet);
+                }
+                tileSets.add(tileSet);
+            }
+
+            int numPages = in.readInt();
+            for (int i = 0; i < numPages; i++) {
+                TileSet tileSet = tileSets.get(in.readInt());
+                int pageX = in.readInt();
+                int pageY = in.readInt();
+                byte zoomLevel = in.readByte();
+                int creationTimeMinutes = in.readInt();
+                TilePage page =
+                        new TilePage(
+                                tileSet.getId(), pageX, pageY, zoomLevel, creationTimeMinutes);
+                PageEntry entry = getOrCreatePage(tileSet, page);
+                float fillFactor = in.readFloat();
+                entry.stats.setFillFactor(current ? fillFactor : 0f);
+                entry.stats.setFrequencyOfUsePerMinute(in.readFloat());
+                entry.stats.setLastAccessMinutes(in.readInt());
+                entry.stats.setNumHits(readBigInteger(in));
+                index(entry);
+            }
+        }
+        log.info("Read " + pagesByKey.size() + " disk quota pages from " + file.getAbsolutePath());
+    }
+
+    private static void writeBigInteger(DataOutputStream out, BigInteger value) throws IOException {
+        byte[] bytes = value.toByteArray();
+        out.writeByte(bytes.length);
+        out.write(bytes);
+    }
+
+    private static BigInteger readBigInteger(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedByte()];
+        in.readFully(bytes);
+        return new BigInteger(bytes);
+    }
+
+    private void clear() {
+        tileSetsById.clear();
+        usedQuotasByTileSetId.clear();
+        globalQuota.setBytes(BigInteger.ZERO);
+        pagesByKey.clear();
+        pagesByTileSetId.clear();
+        pagesByLFU.clear();
+        pagesByLRU.clear();
+    }
+
+    private void deleteStaleLayersAndCreateMissingTileSets() {
+        final Set<String> layerNames = tilePageCalculator.getLayerNames();
+        final Set<String> layersToDelete = new HashSet<>();
+        for (TileSet tileSet : tileSetsById.values()) {
+            if (!layerNames.contains(tileSet.getLayerName())) {
+                layersToDelete.add(tileSet.getLayerName());
+            }
+        }
+        for (String layerName : layersToDelete) {
+            log.info(
+                    "Deleting disk quota information for layer '"
+                            + layerName
+                            + "' as it does not exist anymore...");
+            delete(layerName, ts -> true);
+        }
+
+        // add any missing tileset
+        for (String layerName : layerNames) {
+            createLayerInternal(layerName);
+        }
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#createLayer(java.lang.String) */
+    public void createLayer(final String layerName) {
+        lock.writeLock().lock();
+        try {
+            createLayerInternal(layerName);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void createLayerInternal(String layerName) {
+        for (TileSet tset : tilePageCalculator.getTileSetsFor(layerName)) {
+            getOrCreateTileSet(tset);
+        }
+    }
+
+    /** Returns the used quota of the tile set, creating both if needed. Requires the write lock. */
+    private Quota getOrCreateTileSet(TileSet tset) {
+        Quota usedQuota = usedQuotasByTileSetId.get(tset.getId());
+        if (usedQuota == null) {
+            log.debug("Creating TileSet for quota tracking: " + tset);
+            tileSetsById.put(tset.getId(), tset);
+            usedQuota = new Quota();
+            usedQuota.setTileSetId(tset.getId());
+            usedQuotasByTileSetId.put(tset.getId(), usedQuota);
+            dirty = true;
+        }
+        return usedQuota;
+    }
+
+    /** Returns the page with its statistics, creating them if needed. Requires the write lock. */
+    private PageEntry getOrCreatePage(TileSet tileSet, TilePage page) {
+        PageEntry entry = pagesByKey.get(page.getKey());
+        if (entry == null) {
+            long id = nextPageId++;
+            entry = new PageEntry(id, page, tileSet.getLayerName(), new PageStats(id));
+            pagesByKey.put(page.getKey(), entry);
+            pagesByTileSetId.computeIfAbsent(tileSet.getId(), k -> new HashSet<>()).add(entry);
+        }
+        return entry;
+    }
+
+    /** Adds the page to the expiration indexes if it holds tiles. Requires the write lock. */
+    private void index(PageEntry entry) {
+        if (entry.stats.getFillFactor() > 0) {
+            pagesByLFU.computeIfAbsent(entry.layerName, k -> new TreeSet<>(LFU)).add(entry);
+            pagesByLRU.computeIfAbsent(entry.layerName, k -> new TreeSet<>(LRU)).add(entry);
+        }
+    }
+
+    /**
+     * Removes the page from the expiration indexes, must be called before changing the statistics
+     * they are sorted by. Requires the write lock.
+     */
+    private void unindex(PageEntry entry) {
+        unindex(pagesByLFU, entry);
+        unindex(pagesByLRU, entry);
+    }
+
+    private static void unindex(Map<String, NavigableSet<PageEntry>> index, PageEntry entry) {
+        NavigableSet<PageEntry> layerPages = index.get(entry.layerName);
+        if (layerPages != null && layerPages.remove(entry) && layerPages.isEmpty()) {
+            index.remove(entry.layerName);
+        }
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#getGloballyUsedQuota() */
+    public Quota getGloballyUsedQuota() {
+        lock.readLock().lock();
+        try {
+            return new Quota(globalQuota);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#getUsedQuotaByTileSetId(java.lang.String) */
+    public Quota getUsedQuotaByTileSetId(final String tileSetId) {
+        lock.readLock().lock();
+        try {
+            Quota usedQuota = usedQuotasByTileSetId.get(tileSetId);
+            return usedQuota == null ? new Quota() : new Quota(usedQuota);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#deleteLayer(java.lang.String) */
+    public void deleteLayer(final String layerName) {
+        Assert.notNull(layerName, "LayerName must be non null");
+        deleteTileSets(layerName, ts -> true);
+    }
+
+    public void deleteGridSubset(String layerName, String gridSetId) {
+        deleteTileSets(layerName, ts -> gridSetId.equals(ts.getGridsetId()));
+    }
+
+    public void deleteParameters(String layerName, String parametersId) {
+        deleteTileSets(layerName, ts -> Objects.equals(ts.getParametersId(), parametersId));
+    }
+
+    private void deleteTileSets(String layerName, Predicate<TileSet> shouldDelete) {
+        lock.writeLock().lock();
+        try {
+            delete(layerName, shouldDelete);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Deletes the matching tile sets of the layer and their pages. Requires the write lock. */
+    private void delete(String layerName, Predicate<TileSet> shouldDelete) {
+        Iterator<TileSet> tileSets = tileSetsById.values().iterator();
+        while (tileSets.hasNext()) {
+            TileSet tileSet = tileSets.next();
+            if (layerName.equals(tileSet.getLayerName()) && shouldDelete.test(tileSet)) {
+                tileSets.remove();
+                Quota freed = usedQuotasByTileSetId.remove(tileSet.getId());
+                globalQuota.subtract(freed.getBytes());
+                Set<PageEntry> pages = pagesByTileSetId.remove(tileSet.getId());
+                if (pages != null) {
+                    for (PageEntry entry : pages) {
+                        pagesByKey.remove(entry.page.getKey());
+                        unindex(entry);
+                    }
+                }
+                dirty = true;
+            }
+        }
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#renameLayer(java.lang.String, java.lang.String) */
+    public void renameLayer(String oldLayerName, String newLayerName) {
+        Assert.notNull(oldLayerName, "Old layer name must be non null");
+        Assert.notNull(newLayerName, "New layer name must be non null");
+        lock.writeLock().lock();
+        try {
+            List<TileSet> oldTileSets = new ArrayList<>();
+            for (TileSet tileSet : tileSetsById.values()) {
+                if (oldLayerName.equals(tileSet.getLayerName())) {
+                    oldTileSets.add(tileSet);
+                }
+            }
+            for (TileSet oldTileSet : oldTileSets) {
+                TileSet newTileSet =
+                        new TileSet(
+                                newLayerName,
+                                oldTileSet.getGridsetId(),
+                                oldTileSet.getBlobFormat(),
+                                oldTileSet.getParametersId());
+                Quota oldQuota = usedQuotasByTileSetId.get(oldTileSet.getId());
+                Quota newQuota = getOrCreateTileSet(newTileSet);
+                newQuota.setBytes(oldQuota.getBytes());
+                // the old tile set quota is subtracted again when deleting it
+                globalQuota.add(oldQuota);
+
+                Set<PageEntry> oldPages =
+                        pagesByTileSetId.getOrDefault(oldTileSet.getId(), new HashSet<>());
+                for (PageEntry oldEntry : oldPages) {
+                    TilePage oldPage = oldEntry.page;
+                    TilePage newPage =
+                            new TilePage(
+                                    newTileSet.getId(),
+                                    oldPage.getPageX(),
+                                    oldPage.getPageY(),
+                                    oldPage.getZoomLevel(),
+                                    oldPage.getCreationTimeMinutes());
+                    PageEntry newEntry = getOrCreatePage(newTileSet, newPage);
+                    unindex(newEntry);
+                    PageStats stats = oldEntry.stats;
+                    newEntry.stats.setFillFactor(stats.getFillFactor());
+                    newEntry.stats.setFrequencyOfUsePerMinute(stats.getFrequencyOfUsePerMinute());
+                    newEntry.stats.setLastAccessMinutes(stats.getLastAccessTimeMinutes());
+                    newEntry.stats.setNumHits(stats.getNumHits());
+                    index(newEntry);
+                }
+            }
+            delete(oldLayerName, ts -> true);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#getUsedQuotaByLayerName(java.lang.String) */
+    public Quota getUsedQuotaByLayerName(final String layerName) {
+        lock.readLock().lock();
+        try {
+            Quota aggregated = new Quota();
+            for (TileSet tileSet : tileSetsById.values()) {
+                if (layerName.equals(tileSet.getLayerName())) {
+                    aggregated.add(usedQuotasByTileSetId.get(tileSet.getId()));
+                }
+            }
+            return aggregated;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @see
+     *     org.geowebcache.diskquota.QuotaStore#getTilesForPage(org.geowebcache.diskquota.storage.TilePage)
+     */
+    public long[][] getTilesForPage(TilePage page) {
+        TileSet tileSet = getTileSetById(page.getTileSetId());
+        return tilePageCalculator.toGridCoverage(tileSet, page);
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#getTileSets() */
+    public Set<TileSet> getTileSets() {
+        lock.readLock().lock();
+        try {
+            return new HashSet<>(tileSetsById.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#getTileSetById(java.lang.String) */
+    public TileSet getTileSetById(final String tileSetId) {
+        lock.readLock().lock();
+        try {
+            TileSet tileSet = tileSetsById.get(tileSetId);
+            if (tileSet == null) {
+                throw new IllegalArgumentException("TileSet does not exist: " + tileSetId);
+            }
+            return tileSet;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @see
+     *     org.geowebcache.diskquota.QuotaStore#accept(org.geowebcache.diskquota.storage.TileSetVisitor)
+     */
+    public void accept(TileSetVisitor visitor) {
+        // visit a copy, the visitor may call back into the store
+        for (TileSet tileSet : getTileSets()) {
+            visitor.visit(tileSet, this);
+        }
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#getTilePageCalculator() */
+    public TilePageCalculator getTilePageCalculator() {
+        return tilePageCalculator;
+    }
+
+    /**
+     * @see
+     *     org.geowebcache.diskquota.QuotaStore#addToQuotaAndTileCounts(org.geowebcache.diskquota.storage.TileSet,
+     *     org.geowebcache.diskquota.storage.Quota, java.util.Collection)
+     */
+    public void addToQuotaAndTileCounts(
+            final TileSet tileSet,
+            final Quota quotaDiff,
+            final Collection<PageStatsPayload> tileCountDiffs) {
+        lock.writeLock().lock();
+        try {
+            Quota usedQuota = getOrCreateTileSet(tileSet);
+            usedQuota.add(quotaDiff);
+            globalQuota.add(quotaDiff);
+
+            for (PageStatsPayload payload : tileCountDiffs) {
+                TilePage page = payload.getPage();
+                PageEntry entry = getOrCreatePage(tileSet, page);
+                BigInteger tilesPerPage =
+                        tilePageCalculator.getTilesPerPage(tileSet, page.getZoomLevel());
+                unindex(entry);
+                entry.stats.addTiles(payload.getNumTiles(), tilesPerPage);
+                index(entry);
+            }
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Updates the page statistics right away, the returned future is already completed.
+     *
+     * @see org.geowebcache.diskquota.QuotaStore#addHitsAndSetAccesTime(java.util.Collection)
+     */
+    public Future<List<PageStats>> addHitsAndSetAccesTime(
+            final Collection<PageStatsPayload> statsUpdates) {
+        Assert.notNull(statsUpdates, "Stats update must be non null");
+
+        List<PageStats> allStats = new ArrayList<>(statsUpdates.size());
+        lock.writeLock().lock();
+        try {
+            for (PageStatsPayload payload : statsUpdates) {
+                TilePage page = payload.getPage();
+                TileSet tileSet = tileSetsById.get(page.getTileSetId());
+                if (tileSet == null) {
+                    log.info(
+                            "Can't add usage stats. TileSet does not exist. Was it deleted? "
+                                    + page.getTileSetId());
+                    continue;
+                }
+                PageEntry entry = getOrCreatePage(tileSet, page);
+                final int lastAccessTimeMinutes = (int) (payload.getLastAccessTime() / 1000 / 60);
+                unindex(entry);
+                entry.stats.addHitsAndAccessTime(
+                        payload.getNumHits(),
+                        lastAccessTimeMinutes,
+                        entry.page.getCreationTimeMinutes());
+                index(entry);
+                allStats.add(copy(entry.stats));
+            }
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return CompletableFuture.completedFuture(allStats);
+    }
+
+    /** Copies page statistics, the ones in the store may only be accessed under the lock */
+    private static PageStats copy(PageStats stats) {
+        PageStats copy = new PageStats(stats.getPageId());
+        copy.setFillFactor(stats.getFillFactor());
+        copy.setFrequencyOfUsePerMinute(stats.getFrequencyOfUsePerMinute());
+        copy.setLastAccessMinutes(stats.getLastAccessTimeMinutes());
+        copy.setNumHits(stats.getNumHits());
+        return copy;
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#getLeastFrequentlyUsedPage(java.util.Set) */
+    public TilePage getLeastFrequentlyUsedPage(final Set<String> layerNames) {
+        List<TilePage> pages = getLeastFrequentlyUsedPages(layerNames, 1);
+        return pages.isEmpty() ? null : pages.get(0);
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#getLeastRecentlyUsedPage(java.util.Set) */
+    public TilePage getLeastRecentlyUsedPage(final Set<String> layerNames) {
+        List<TilePage> pages = getLeastRecentlyUsedPages(layerNames, 1);
+        return pages.isEmpty() ? null : pages.get(0);
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#getLeastFrequentlyUsedPages(Set, int) */
+    @Override
+    public List<TilePage> getLeastFrequentlyUsedPages(
+            final Set<String> layerNames, final int maxPages) {
+        return findPagesToExpire(pagesByLFU, LFU, layerNames, maxPages);
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#getLeastRecentlyUsedPages(Set, int) */
+    @Override
+    public List<TilePage> getLeastRecentlyUsedPages(
+            final Set<String> layerNames, final int maxPages) {
+        return findPagesToExpire(pagesByLRU, LRU, layerNames, maxPages);
+    }
+
+    /**
+     * Merges the indexes of the given layers, only visiting the pages returned rather than all the
+     * pages of the store
+     */
+    private List<TilePage> findPagesToExpire(
+            Map<String, NavigableSet<PageEntry>> index,
+            Comparator<PageEntry> order,
+            Set<String> layerNames,
+            int maxPages) {
+        List<TilePage> nextToExpire = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            PriorityQueue<LayerCursor> cursors =
+                    new PriorityQueue<>(
+                            Math.max(1, layerNames.size()),
+                            (c1, c2) -> order.compare(c1.head, c2.head));
+            for (String layerName : layerNames) {
+                NavigableSet<PageEntry> layerPages = index.get(layerName);
+                if (layerPages != null) {
+                    cursors.add(new LayerCursor(layerPages.iterator()));
+                }
+            }
+            while (nextToExpire.size() < maxPages && !cursors.isEmpty()) {
+                LayerCursor cursor = cursors.poll();
+                nextToExpire.add(cursor.head.page);
+                if (cursor.advance()) {
+                    cursors.add(cursor);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return nextToExpire;
+    }
+
+    /**
+     * @see
+     *     org.geowebcache.diskquota.QuotaStore#setTruncated(org.geowebcache.diskquota.storage.TilePage)
+     */
+    public PageStats setTruncated(final TilePage tilePage) {
+        lock.writeLock().lock();
+        try {
+            PageEntry entry = pagesByKey.get(tilePage.getKey());
+            if (entry == null) {
+                return null;
+            }
+            unindex(entry);
+            entry.stats.setFillFactor(0f);
+            dirty = true;
+            return copy(entry.stats);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#resetUsage(TileSet) */
+    @Override
+    public void resetUsage(final TileSet tileSet) {
+        lock.writeLock().lock();
+        try {
+            Quota usedQuota = getOrCreateTileSet(tileSet);
+            globalQuota.subtract(usedQuota.getBytes());
+            usedQuota.setBytes(BigInteger.ZERO);
+            for (PageEntry entry :
+                    pagesByTileSetId.getOrDefault(tileSet.getId(), Collections.emptySet())) {
+                unindex(entry);
+                entry.stats.setFillFactor(0f);
+            }
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.diskquota.memory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.geowebcache.GeoWebCacheExtensions;
+import org.geowebcache.config.ConfigurationException;
+import org.geowebcache.diskquota.QuotaStore;
+import org.geowebcache.diskquota.QuotaStoreFactory;
+import org.geowebcache.diskquota.storage.TilePageCalculator;
+import org.geowebcache.storage.DefaultStorageFinder;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Builds the {@link MemoryQuotaStore}. The snapshot interval, in seconds, can be set with the
+ * {@code GEOWEBCACHE_MEMORY_QUOTA_SNAPSHOT_INTERVAL} property.
+ */
+public class MemoryQuotaStoreFactory implements QuotaStoreFactory {
+
+    public static final String STORE_NAME = "MEMORY";
+
+    static final String SNAPSHOT_INTERVAL_PROPERTY = "GEOWEBCACHE_MEMORY_QUOTA_SNAPSHOT_INTERVAL";
+
+    static final long DEFAULT_SNAPSHOT_INTERVAL = 60;
+
+    public List<String> getSupportedStoreNames() {
+        return Arrays.asList(STORE_NAME);
+    }
+
+    public QuotaStore getQuotaStore(ApplicationContext ctx, String quotaStoreName)
+            throws IOException, ConfigurationException {
+        if (!STORE_NAME.equals(quotaStoreName)) {
+            return null;
+        }
+
+        DefaultStorageFinder cacheDirFinder =
+                (DefaultStorageFinder) ctx.getBean("gwcDefaultStorageFinder");
+        TilePageCalculator tilePageCalculator =
+                (TilePageCalculator) ctx.getBean("gwcTilePageCalculator");
+        MemoryQuotaStore store =
+                new MemoryQuotaStore(cacheDirFinder, tilePageCalculator, getSnapshotInterval());
+        store.startUp();
+
+        return store;
+    }
+
+    private long getSnapshotInterval() {
+        String value = GeoWebCacheExtensions.getProperty(SNAPSHOT_INTERVAL_PROPERTY);
+        if (value != null) {
+            return Long.parseLong(value);
+        }
+        return DEFAULT_SNAPSHOT_INTERVAL;
+    }
+}
@@ -26,11 +26,12 @@ import org.springframework.util.Assert;
 /**
  * Pyramid of tile pages for a given {@link GridSubset}
  *
- * <p>This is a support class for {@link TilePageCalculator}, hence package visible.
+ * <p>This is a support class for {@link TilePageCalculator}, exposed through {@link
+ * TilePageCalculator#getPagePyramid(TileSet)} for callers computing the pages of many tiles.
  *
  * @author groldan
  */
-class PagePyramid {
+public class PagePyramid {
 
     /** {@code [level][numTilesPerPageX, numTilesPerPageY, numPagesX, numPagesY]} */
     private Map<Integer, PageLevelInfo> pageInfo;
@@ -75,7 +75,11 @@ public class TilePageCalculator {
         return pageIndexTarget;
     }
 
-    private PagePyramid getPagePyramid(TileSet tileSet) {
+    /**
+     * Builds the page pyramid of a tile set, for callers computing the pages of many tiles. The
+     * pyramid computes its levels lazily and is not thread safe.
+     */
+    public PagePyramid getPagePyramid(TileSet tileSet) {
         PagePyramid pagePyramid = newPagePyramid(tileSet);
         return pagePyramid;
     }
@@ -17,17 +17,34 @@ package org.geowebcache.diskquota;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
 import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.diskquota.storage.PagePyramid;
+import org.geowebcache.diskquota.storage.PageStatsPayload;
+import org.geowebcache.diskquota.storage.Quota;
+import org.geowebcache.diskquota.storage.TilePageCalculator;
+import org.geowebcache.diskquota.storage.TileSet;
 import org.geowebcache.filter.parameters.ParametersUtils;
 import org.geowebcache.grid.GridSubset;
 import org.geowebcache.layer.TileLayer;
 import org.geowebcache.mime.MimeType;
+import org.geowebcache.storage.StorageBroker;
 import org.geowebcache.storage.TileObject;
+import org.geowebcache.storage.TileRange;
+import org.geowebcache.storage.TileScanVisitor;
 import org.geowebcache.storage.blobstore.file.DefaultFilePathGenerator;
 import org.geowebcache.storage.blobstore.file.FilePathGenerator;
 
@@ -53,6 +70,103 @@ public class LayerCacheInfoBuilderTest extends TestCase {
 
     public void testFake() {}
 
+    public void testResumeFromCheckpoint() throws Exception {
+        rootCacheDir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+        threadPool = Executors.newFixedThreadPool(2);
+        try {
+            final String layerName = "MockLayer";
+            final TileSet tileSet = new TileSet(layerName, "EPSG:4326", "image/png", null);
+            final long[][] coverages = {{0, 0, 1, 0, 0}, {0, 0, 3, 1, 1}};
+
+            GridSubset gridSubset = EasyMock.createMock(GridSubset.class);
+            EasyMock.expect(gridSubset.getZoomStart()).andReturn(0).anyTimes();
+            EasyMock.expect(gridSubset.getZoomStop()).andReturn(1).anyTimes();
+            EasyMock.expect(gridSubset.getCoverage(0)).andReturn(coverages[0]).anyTimes();
+            EasyMock.expect(gridSubset.getCoverage(1)).andReturn(coverages[1]).anyTimes();
+            TileLayer layer = EasyMock.createMock(TileLayer.class);
+            EasyMock.expect(layer.getName()).andReturn(layerName).anyTimes();
+            EasyMock.expect(layer.getGridSubset("EPSG:4326")).andReturn(gridSubset).anyTimes();
+            TilePageCalculator calculator = EasyMock.createMock(TilePageCalculator.class);
+            EasyMock.expect(calculator.getTileSetsFor(layerName))
+                    .andReturn(Collections.singleton(tileSet))
+                    .anyTimes();
+            EasyMock.expect(calculator.getPagePyramid(tileSet))
+                    .andReturn(new PagePyramid(coverages, 0, 1))
+                    .anyTimes();
+
+            // zoom level 0 was scanned before the interruption, only level 1 is left
+            StorageBroker storageBroker = EasyMock.createMock(StorageBroker.class);
+            EasyMock.expect(
+                            storageBroker.scan(
+                                    EasyMock.anyObject(TileRange.class),
+                                    EasyMock.anyObject(TileScanVisitor.class)))
+                    .andAnswer(
+                            () -> {
+                                TileRange range = (TileRange) EasyMock.getCurrentArguments()[0];
+                                assertEquals(1, range.getZoomStart());
+                                assertEquals(1, range.getZoomStop());
+                                TileScanVisitor visitor =
+                                        (TileScanVisitor) EasyMock.getCurrentArguments()[1];
+                                visitor.visit(0, 0, 1, 100);
+                                visitor.visit(3, 1, 1, 200);
+                                return true;
+                            })
+                    .once();
+            // the tile set usage is reset, then zoom level 0 is applied again from the checkpoint
+            Capture<Quota> quota = new Capture<>(CaptureType.ALL);
+            Capture<Collection<PageStatsPayload>> pages = new Capture<>(CaptureType.ALL);
+            QuotaStore quotaStore = EasyMock.createMock(QuotaStore.class);
+            EasyMock.expect(quotaStore.getTilePageCalculator()).andReturn(calculator).anyTimes();
+            quotaStore.resetUsage(tileSet);
+            EasyMock.expectLastCall().once();
+            quotaStore.addToQuotaAndTileCounts(
+                    EasyMock.eq(tileSet), EasyMock.capture(quota), EasyMock.capture(pages));
+            EasyMock.expectLastCall().times(2);
+            EasyMock.replay(gridSubset, layer, calculator, storageBroker, quotaStore);
+
+            infoBuilder =
+                    new LayerCacheInfoBuilder(rootCacheDir, threadPool, storageBroker, quotaStore);
+            File checkpoint =
+                    new File(
+                            new File(rootCacheDir, LayerCacheInfoBuilder.CHECKPOINT_DIRECTORY),
+                            layerName + LayerCacheInfoBuilder.CHECKPOINT_EXTENSION);
+            checkpoint.getParentFile().mkdirs();
+            // 50 bytes in one tile of page 0,0, then a record cut short by a crash
+            Files.write(
+                    checkpoint.toPath(),
+                    (tileSet.getId() + "@0\t50;1;0,0,1;\n" + tileSet.getId() + "@1\t300;2;0,")
+                            .getBytes(StandardCharsets.UTF_8));
+            assertTrue(infoBuilder.hasCheckpoint(layerName));
+
+            infoBuilder.buildCacheInfo(layer);
+
+            long startTime = System.currentTimeMillis();
+            while (infoBuilder.isRunning(layerName)) {
+                Thread.sleep(50);
+                if (System.currentTimeMillis() - startTime > 30000) {
+                    fail("buildCacheInfo was running for too long, aborting test!");
+                }
+            }
+            EasyMock.verify(storageBroker, quotaStore);
+            assertEquals(50, quota.getValues().get(0).getBytes().longValue());
+            PageStatsPayload restored = pages.getValues().get(0).iterator().next();
+            assertEquals(0, restored.getPage().getZoomLevel());
+            assertEquals(1, restored.getNumTiles());
+            assertEquals(300, quota.getValues().get(1).getBytes().longValue());
+            int numTiles = 0;
+            for (PageStatsPayload payload : pages.getValues().get(1)) {
+                assertEquals(1, payload.getPage().getZoomLevel());
+                numTiles += payload.getNumTiles();
+            }
+            assertEquals(2, numTiles);
+            // the scan completed, there is nothing left to resume
+            assertFalse(infoBuilder.hasCheckpoint(layerName));
+        } finally {
+            threadPool.shutdownNow();
+            FileUtils.deleteQuietly(rootCacheDir);
+        }
+    }
+
     /*
      * TODO fix tests /*
      *
@@ -0,0 +1,64 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.diskquota;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.geowebcache.diskquota.storage.TileSet;
+import org.junit.Test;
+
+public class QueuedQuotaUpdatesProducerTest {
+
+    @Test
+    public void testShardByTileSet() {
+        List<BlockingQueue<QuotaUpdate>> queues = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            queues.add(new LinkedBlockingQueue<>());
+        }
+        QueuedQuotaUpdatesProducer producer = new QueuedQuotaUpdatesProducer(queues, null);
+
+        for (int layer = 0; layer < 20; layer++) {
+            for (int x = 0; x < 10; x++) {
+                producer.tileStored("layer" + layer, "EPSG:4326", "image/png", null, x, 0, 5, 100);
+            }
+        }
+
+        int total = 0;
+        Set<TileSet> seen = new HashSet<>();
+        int usedQueues = 0;
+        for (BlockingQueue<QuotaUpdate> queue : queues) {
+            Set<TileSet> tileSets = new HashSet<>();
+            for (QuotaUpdate update : queue) {
+                tileSets.add(update.getTileSet());
+            }
+            // all the updates of a tile set are on the same queue
+            for (TileSet tileSet : tileSets) {
+                assertTrue(seen.add(tileSet));
+            }
+            total += queue.size();
+            usedQueues += queue.isEmpty() ? 0 : 1;
+        }
+        assertEquals(200, total);
+        assertEquals(20, seen.size());
+        assertTrue(usedQueues > 1);
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.diskquota;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.geowebcache.diskquota.storage.TileSet;
+import org.junit.Test;
+
+public class UsageStatsBufferTest {
+
+    private final TileSet tileSet = new TileSet("layer", "EPSG:4326", "image/png", null);
+
+    @Test
+    public void testMergeHits() {
+        UsageStatsBuffer buffer = new UsageStatsBuffer(100, 1);
+        assertTrue(buffer.add(tileSet, new long[] {1, 2, 3}));
+        TileSet sameTileSet = new TileSet("layer", "EPSG:4326", "image/png", null);
+        assertTrue(buffer.add(sameTileSet, new long[] {1, 2, 3}));
+        assertTrue(buffer.add(tileSet, new long[] {2, 2, 3}));
+
+        List<UsageStats> stats = buffer.drain();
+        assertEquals(2, stats.size());
+        int hits = 0;
+        for (UsageStats stat : stats) {
+            if (stat.getTileIndex()[0] == 1) {
+                assertArrayEquals(new long[] {1, 2, 3}, stat.getTileIndex());
+                assertEquals(2, stat.getNumHits());
+            } else {
+                assertEquals(1, stat.getNumHits());
+            }
+            hits += stat.getNumHits();
+        }
+        assertEquals(3, hits);
+        assertEquals(2, buffer.getRecorded());
+        assertEquals(1, buffer.getMerged());
+        assertEquals(0, buffer.getDropped());
+
+        // drained
+        assertTrue(buffer.drain().isEmpty());
+    }
+
+    @Test
+    public void testDropWhenFull() {
+        UsageStatsBuffer buffer = new UsageStatsBuffer(2, 1);
+        assertTrue(buffer.add(tileSet, new long[] {0, 0, 1}));
+        assertTrue(buffer.add(tileSet, new long[] {1, 0, 1}));
+        assertFalse(buffer.add(tileSet, new long[] {2, 0, 1}));
+        // known tiles are still counted
+        assertTrue(buffer.add(tileSet, new long[] {1, 0, 1}));
+        assertEquals(1, buffer.getDropped());
+
+        assertEquals(2, buffer.drain().size());
+        // room again once drained
+        assertTrue(buffer.add(tileSet, new long[] {2, 0, 1}));
+    }
+
+    @Test
+    public void testConcurrentHits() throws Exception {
+        UsageStatsBuffer buffer = new UsageStatsBuffer(1000, 4);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            executor.submit(
+                    () -> {
+                        for (int i = 0; i < 1000; i++) {
+                            buffer.add(tileSet, new long[] {i % 10, 0, 5});
+                        }
+                    });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        long hits = 0;
+        for (UsageStats stat : buffer.drain()) {
+            hits += stat.getNumHits();
+        }
+        assertEquals(8000, hits);
+        assertEquals(8000, buffer.getRecorded() + buffer.getMerged());
+    }
+}
@@ -0,0 +1,282 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.diskquota.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.easymock.EasyMock;
+import org.geowebcache.diskquota.DiskQuotaMonitor;
+import org.geowebcache.diskquota.storage.PageStats;
+import org.geowebcache.diskquota.storage.PageStatsPayload;
+import org.geowebcache.diskquota.storage.Quota;
+import org.geowebcache.diskquota.storage.TilePage;
+import org.geowebcache.diskquota.storage.TilePageCalculator;
+import org.geowebcache.diskquota.storage.TileSet;
+import org.geowebcache.storage.DefaultStorageFinder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MemoryQuotaStoreTest {
+
+    @Rule public TemporaryFolder targetDir = new TemporaryFolder();
+
+    private DefaultStorageFinder cacheDirFinder;
+
+    private TilePageCalculator tilePageCalculator;
+
+    private TileSet tileSet1;
+
+    private TileSet tileSet2;
+
+    private MemoryQuotaStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDirFinder = EasyMock.createMock(DefaultStorageFinder.class);
+        EasyMock.expect(cacheDirFinder.getDefaultPath())
+                .andReturn(targetDir.getRoot().getAbsolutePath())
+                .anyTimes();
+        EasyMock.expect(
+                        cacheDirFinder.findEnvVar(
+                                EasyMock.eq(DiskQuotaMonitor.GWC_DISKQUOTA_DISABLED)))
+                .andReturn(null)
+                .anyTimes();
+        EasyMock.replay(cacheDirFinder);
+
+        tileSet1 = new TileSet("layer1", "EPSG:4326", "image/png", null);
+        tileSet2 = new TileSet("layer2", "EPSG:4326", "image/png", null);
+        tilePageCalculator = EasyMock.createMock(TilePageCalculator.class);
+        EasyMock.expect(tilePageCalculator.getLayerNames())
+                .andReturn(new HashSet<>(Arrays.asList("layer1", "layer2")))
+                .anyTimes();
+        EasyMock.expect(tilePageCalculator.getTileSetsFor("layer1"))
+                .andReturn(Collections.singleton(tileSet1))
+                .anyTimes();
+        EasyMock.expect(tilePageCalculator.getTileSetsFor("layer2"))
+                .andReturn(Collections.singleton(tileSet2))
+                .anyTimes();
+        EasyMock.expect(
+                        tilePageCalculator.getTilesPerPage(
+                                EasyMock.anyObject(TileSet.class), EasyMock.anyInt()))
+                .andReturn(BigInteger.valueOf(10))
+                .anyTimes();
+        EasyMock.replay(tilePageCalculator);
+
+        store = newStore();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.close();
+    }
+
+    private MemoryQuotaStore newStore() throws Exception {
+        MemoryQuotaStore store = new MemoryQuotaStore(cacheDirFinder, tilePageCalculator, 0);
+        store.startUp();
+        return store;
+    }
+
+    private void addTiles(TileSet tileSet, TilePage page, long bytes, int numTiles)
+            throws Exception {
+        PageStatsPayload payload = new PageStatsPayload(page);
+        payload.setNumTiles(numTiles);
+        Quota quotaDiff = new Quota(BigInteger.valueOf(bytes));
+        store.addToQuotaAndTileCounts(tileSet, quotaDiff, Collections.singleton(payload));
+    }
+
+    private void addHits(TilePage page, int hits, long accessTime) throws Exception {
+        PageStatsPayload payload = new PageStatsPayload(page);
+        payload.setNumHits(hits);
+        payload.setLastAccessTime(accessTime);
+        store.addHitsAndSetAccesTime(Collections.singleton(payload)).get();
+    }
+
+    @Test
+    public void testInitialization() throws Exception {
+        assertEquals(new HashSet<>(Arrays.asList(tileSet1, tileSet2)), store.getTileSets());
+        assertEquals(BigInteger.ZERO, store.getGloballyUsedQuota().getBytes());
+    }
+
+    @Test
+    public void testQuotas() throws Exception {
+        addTiles(tileSet1, new TilePage(tileSet1.getId(), 0, 0, 2), 1000, 2);
+        addTiles(tileSet2, new TilePage(tileSet2.getId(), 0, 0, 2), 500, 1);
+
+        assertEquals(1000, store.getUsedQuotaByTileSetId(tileSet1.getId()).getBytes().longValue());
+        assertEquals(500, store.getUsedQuotaByLayerName("layer2").getBytes().longValue());
+        assertEquals(1500, store.getGloballyUsedQuota().getBytes().longValue());
+
+        store.deleteLayer("layer1");
+
+        assertEquals(Collections.singleton(tileSet2), store.getTileSets());
+        assertEquals(500, store.getGloballyUsedQuota().getBytes().longValue());
+        assertNull(store.getLeastRecentlyUsedPage(Collections.singleton("layer1")));
+    }
+
+    @Test
+    public void testExpirationOrder() throws Exception {
+        TilePage page1 = new TilePage(tileSet1.getId(), 0, 0, 2, 0);
+        TilePage page2 = new TilePage(tileSet1.getId(), 1, 0, 2, 0);
+        TilePage page3 = new TilePage(tileSet1.getId(), 2, 0, 2, 0);
+        addTiles(tileSet1, page1, 100, 5);
+        addTiles(tileSet1, page2, 100, 5);
+        addTiles(tileSet1, page3, 100, 5);
+        addHits(page1, 100, 3 * 60000);
+        addHits(page2, 1, 2 * 60000);
+        addHits(page3, 10, 1 * 60000);
+
+        Set<String> layers = Collections.singleton("layer1");
+        assertEquals(page2, store.getLeastFrequentlyUsedPage(layers));
+        assertEquals(page3, store.getLeastRecentlyUsedPage(layers));
+        assertEquals(
+                Arrays.asList(page2, page3, page1), store.getLeastFrequentlyUsedPages(layers, 5));
+        assertEquals(Arrays.asList(page3, page2), store.getLeastRecentlyUsedPages(layers, 2));
+
+        // hits move a page in the indexes
+        addHits(page2, 1000, 4 * 60000);
+        assertEquals(page3, store.getLeastFrequentlyUsedPage(layers));
+        assertEquals(
+                Arrays.asList(page3, page1, page2), store.getLeastRecentlyUsedPages(layers, 5));
+
+        // truncated pages are not expired again
+        store.setTruncated(page3);
+        assertEquals(Arrays.asList(page1, page2), store.getLeastRecentlyUsedPages(layers, 5));
+        assertNull(store.getLeastFrequentlyUsedPage(Collections.singleton("layer2")));
+    }
+
+    @Test
+    public void testExpirationAcrossLayers() throws Exception {
+        TilePage page1 = new TilePage(tileSet1.getId(), 0, 0, 2, 0);
+        TilePage page2 = new TilePage(tileSet2.getId(), 0, 0, 2, 0);
+        TilePage page3 = new TilePage(tileSet1.getId(), 1, 0, 2, 0);
+        addTiles(tileSet1, page1, 100, 5);
+        addTiles(tileSet2, page2, 100, 5);
+        addTiles(tileSet1, page3, 100, 5);
+        addHits(page1, 1, 1 * 60000);
+        addHits(page2, 1, 2 * 60000);
+        addHits(page3, 1, 3 * 60000);
+
+        // the per layer indexes are merged in expiration order
+        Set<String> layers = new HashSet<>(Arrays.asList("layer1", "layer2", "missing"));
+        assertEquals(
+                Arrays.asList(page1, page2, page3), store.getLeastRecentlyUsedPages(layers, 5));
+        assertEquals(Arrays.asList(page1, page2), store.getLeastRecentlyUsedPages(layers, 2));
+        assertEquals(
+                Collections.singletonList(page2),
+                store.getLeastRecentlyUsedPages(Collections.singleton("layer2"), 5));
+    }
+
+    @Test
+    public void testRenameLayer() throws Exception {
+        TilePage page = new TilePage(tileSet1.getId(), 0, 0, 2);
+        addTiles(tileSet1, page, 1000, 2);
+
+        store.renameLayer("layer1", "renamed");
+
+        TileSet renamed = new TileSet("renamed", "EPSG:4326", "image/png", null);
+        assertEquals(new HashSet<>(Arrays.asList(renamed, tileSet2)), store.getTileSets());
+        assertEquals(1000, store.getUsedQuotaByLayerName("renamed").getBytes().longValue());
+        assertEquals(1000, store.getGloballyUsedQuota().getBytes().longValue());
+        TilePage expired = store.getLeastRecentlyUsedPage(Collections.singleton("renamed"));
+        assertEquals(renamed.getId(), expired.getTileSetId());
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        TilePage page1 = new TilePage(tileSet1.getId(), 0, 0, 2, 0);
+        TilePage page2 = new TilePage(tileSet2.getId(), 3, 1, 4, 0);
+        addTiles(tileSet1, page1, 1000, 5);
+        addTiles(tileSet2, page2, 2000, 10);
+        addHits(page1, 100, 60000);
+        addHits(page2, 1, 2 * 60000);
+        store.close();
+
+        store = newStore();
+
+        assertEquals(3000, store.getGloballyUsedQuota().getBytes().longValue());
+        assertEquals(2000, store.getUsedQuotaByTileSetId(tileSet2.getId()).getBytes().longValue());
+        Set<String> layers = new HashSet<>(Arrays.asList("layer1", "layer2"));
+        List<TilePage> lfu = store.getLeastFrequentlyUsedPages(layers, 5);
+        assertEquals(Arrays.asList(page2, page1), lfu);
+        assertEquals(0, lfu.get(1).getCreationTimeMinutes());
+        assertEquals(BigInteger.valueOf(100), store.setTruncated(page1).getNumHits());
+        assertEquals(Arrays.asList(page2), store.getLeastRecentlyUsedPages(layers, 5));
+    }
+
+    @Test
+    public void testSnapshotAfterCrash() throws Exception {
+        TilePage page = new TilePage(tileSet1.getId(), 0, 0, 2, 0);
+        addTiles(tileSet1, page, 1000, 5);
+        addHits(page, 100, 60000);
+        store.snapshot();
+        addTiles(tileSet1, page, 1000, 5);
+
+        // not closed, the updates after the snapshot are lost
+        store = newStore();
+
+        // the used quotas are left to be recomputed, the usage statistics are kept
+        assertEquals(BigInteger.ZERO, store.getGloballyUsedQuota().getBytes());
+        assertEquals(BigInteger.ZERO, store.getUsedQuotaByLayerName("layer1").getBytes());
+        assertNull(store.getLeastRecentlyUsedPage(Collections.singleton("layer1")));
+        assertEquals(BigInteger.valueOf(100), store.setTruncated(page).getNumHits());
+    }
+
+    @Test
+    public void testResetUsage() throws Exception {
+        TilePage page = new TilePage(tileSet1.getId(), 0, 0, 2, 0);
+        addTiles(tileSet1, page, 1000, 5);
+        addTiles(tileSet2, new TilePage(tileSet2.getId(), 0, 0, 2, 0), 500, 1);
+        addHits(page, 100, 60000);
+
+        store.resetUsage(tileSet1);
+
+        // the quota and fill factors are gone, the usage statistics are kept
+        assertEquals(BigInteger.ZERO, store.getUsedQuotaByTileSetId(tileSet1.getId()).getBytes());
+        assertEquals(500, store.getGloballyUsedQuota().getBytes().longValue());
+        assertNull(store.getLeastRecentlyUsedPage(Collections.singleton("layer1")));
+        addTiles(tileSet1, page, 800, 4);
+        assertEquals(page, store.getLeastRecentlyUsedPage(Collections.singleton("layer1")));
+        PageStats stats = store.setTruncated(page);
+        assertEquals(BigInteger.valueOf(100), stats.getNumHits());
+        assertEquals(1, stats.getLastAccessTimeMinutes());
+    }
+
+    @Test
+    public void testReturnedStatsAreCopies() throws Exception {
+        TilePage page = new TilePage(tileSet1.getId(), 0, 0, 2, 0);
+        addTiles(tileSet1, page, 1000, 5);
+        PageStatsPayload payload = new PageStatsPayload(page);
+        payload.setNumHits(10);
+        payload.setLastAccessTime(60000);
+        PageStats stats =
+                store.addHitsAndSetAccesTime(Collections.singleton(payload)).get().get(0);
+
+        stats.setFillFactor(0f);
+        stats.setNumHits(BigInteger.ZERO);
+
+        assertEquals(page, store.getLeastRecentlyUsedPage(Collections.singleton("layer1")));
+        assertEquals(BigInteger.valueOf(10), store.setTruncated(page).getNumHits());
+    }
+}
@@ -857,16 +857,21 @@ public class JDBCQuotaStore implements QuotaStore {
         return getSinglePage(layerNames, false);
     }
 
+    @Override
+    public List<TilePage> getLeastFrequentlyUsedPages(Set<String> layerNames, int maxPages)
+            throws InterruptedException {
+        return getPages(layerNames, true, maxPages);
+    }
+
+    @Override
+    public List<TilePage> getLeastRecentlyUsedPages(Set<String> layerNames, int maxPages)
+            throws InterruptedException {
+        return getPages(layerNames, false, maxPages);
+    }
+
     private TilePage getSinglePage(Set<String> layerNames, boolean leastFrequentlyUsed) {
         Map<String, Object> params = new HashMap<String, Object>();
-        List<String> layerParamNames = new ArrayList<String>();
-        int i = 0;
-        for (String layer : layerNames) {
-            i++;
-            String param = "Layer" + i;
-            params.put(param, layer);
-            layerParamNames.add(param);
-        }
+        List<String> layerParamNames = getLayerParams(layerNames, params);
         String select;
         if (leastFrequentlyUsed) {
             select = dialect.getLeastFrequentlyUsedPage(schema, layerParamNames);
@@ -877,6 +882,33 @@ public class JDBCQuotaStore implements QuotaStore {
         return jt.queryForOptionalObject(select, mapper, params);
     }
 
+    private List<TilePage> getPages(
+            Set<String> layerNames, boolean leastFrequentlyUsed, int maxPages) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        List<String> layerParamNames = getLayerParams(layerNames, params);
+        String select;
+        if (leastFrequentlyUsed) {
+            select = dialect.getLeastFrequentlyUsedPages(schema, layerParamNames, maxPages);
+        } else {
+            select = dialect.getLeastRecentlyUsedPages(schema, layerParamNames, maxPages);
+        }
+        TilePageRowMapper mapper = new TilePageRowMapper();
+        return jt.query(select, params, mapper);
+    }
+
+    /** Adds a parameter for each layer name, returning the parameter names */
+    private List<String> getLayerParams(Set<String> layerNames, Map<String, Object> params) {
+        List<String> layerParamNames = new ArrayList<String>();
+        int i = 0;
+        for (String layer : layerNames) {
+            i++;
+            String param = "Layer" + i;
+            params.put(param, layer);
+            layerParamNames.add(param);
+        }
+        return layerParamNames;
+    }
+
     public PageStats setTruncated(final TilePage page) throws InterruptedException {
         return (PageStats)
                 tt.execute(
@@ -905,6 +937,32 @@ public class JDBCQuotaStore implements QuotaStore {
                         });
     }
 
+    @Override
+    public void resetUsage(final TileSet tileSet) throws InterruptedException {
+        tt.execute(
+                new TransactionCallbackWithoutResult() {
+
+                    @Override
+                    protected void doInTransactionWithoutResult(TransactionStatus status) {
+                        getOrCreateTileSet(tileSet);
+                        // subtract the current tile set quota from it and the global one
+                        Quota quota = getUsedQuotaByTileSetId(tileSet.getId());
+                        String updateQuota =
+                                dialect.getUpdateQuotaStatement(schema, "tileSetId", "bytes");
+                        Map<String, Object> params = new HashMap<String, Object>();
+                        params.put("tileSetId", tileSet.getId());
+                        params.put("bytes", new BigDecimal(quota.getBytes().negate()));
+                        jt.update(updateQuota, params);
+                        params.put("tileSetId", GLOBAL_QUOTA_NAME);
+                        jt.update(updateQuota, params);
+
+                        // empty the pages, their usage statistics stay
+                        String update = dialect.resetTileSetFillFactors(schema, "tileSetId");
+                        jt.update(update, Collections.singletonMap("tileSetId", tileSet.getId()));
+                    }
+                });
+    }
+
     public void close() throws Exception {
         log.info("Closing up the JDBC quota store ");
 
@@ -433,6 +433,19 @@ public class SQLDialect {
         return sb.toString();
     }
 
+    /** Empties all the pages of a tile set, leaving their usage statistics alone */
+    public String resetTileSetFillFactors(String schema, String tileSetIdParam) {
+        StringBuilder sb = new StringBuilder("UPDATE ");
+        if (schema != null) {
+            sb.append(schema).append(".");
+        }
+        sb.append("TILEPAGE SET FILL_FACTOR = 0");
+        sb.append(" WHERE TILESET_ID = :").append(tileSetIdParam);
+        sb.append(" AND FILL_FACTOR > 0");
+
+        return sb.toString();
+    }
+
     /**
      * Updates the fill factor in a page provided the old fill factor is still the one we read from
      * the db, otherwise updates nothing
@@ -463,35 +476,37 @@ public class SQLDialect {
     }
 
     public String getLeastFrequentlyUsedPage(String schema, List<String> layerParamNames) {
+        return getLeastFrequentlyUsedPages(schema, layerParamNames, 1);
+    }
+
+    public String getLeastRecentlyUsedPage(String schema, List<String> layerParamNames) {
+        return getLeastRecentlyUsedPages(schema, layerParamNames, 1);
+    }
+
+    public String getLeastFrequentlyUsedPages(
+            String schema, List<String> layerParamNames, int maxPages) {
+        return getPagesToExpire(schema, layerParamNames, "FREQUENCY_OF_USE", maxPages);
+    }
+
+    public String getLeastRecentlyUsedPages(
+            String schema, List<String> layerParamNames, int maxPages) {
+        return getPagesToExpire(schema, layerParamNames, "LAST_ACCESS_TIME_MINUTES", maxPages);
+    }
+
+    protected String getPagesToExpire(
+            String schema, List<String> layerParamNames, String orderColumn, int maxPages) {
         StringBuilder sb =
                 new StringBuilder(
                         "SELECT TILESET_ID, PAGE_X, PAGE_Y, PAGE_Z, CREATION_TIME_MINUTES FROM ");
-        if (schema != null) {
-            sb.append(schema).append(".");
-        }
-        sb.append("TILEPAGE WHERE FILL_FACTOR > 0 ");
-        sb.append("AND TILESET_ID IN (");
-        sb.append("SELECT KEY FROM ");
-        if (schema != null) {
-            sb.append(schema).append(".");
-        }
-        sb.append("TILESET WHERE LAYER_NAME IN (");
-        for (int i = 0; i < layerParamNames.size(); i++) {
-            sb.append(":" + layerParamNames.get(i));
-            if (i < layerParamNames.size() - 1) {
-                sb.append(", ");
-            }
-        }
-        sb.append(")) ");
-        sb.append("ORDER BY FREQUENCY_OF_USE ASC LIMIT 1");
+        appendPagesToExpireFilter(sb, schema, layerParamNames);
+        sb.append("ORDER BY ").append(orderColumn).append(" ASC LIMIT ").append(maxPages);
 
         return sb.toString();
     }
 
-    public String getLeastRecentlyUsedPage(String schema, List<String> layerParamNames) {
-        StringBuilder sb =
-                new StringBuilder(
-                        "SELECT TILESET_ID, PAGE_X, PAGE_Y, PAGE_Z, CREATION_TIME_MINUTES FROM ");
+    /** Appends the TILEPAGE table and the filter on the pages that can be expired */
+    protected void appendPagesToExpireFilter(
+            StringBuilder sb, String schema, List<String> layerParamNames) {
         if (schema != null) {
             sb.append(schema).append(".");
         }
@@ -509,8 +524,5 @@ public class SQLDialect {
             }
         }
         sb.append(")) ");
-        sb.append("ORDER BY LAST_ACCESS_TIME_MINUTES ASC LIMIT 1");
-
-        return sb.toString();
     }
 }
@@ -859,6 +859,44 @@ public abstract class JDBCQuotaStoreTest {
         assertEquals(page2, leastRecentlyUsedPage);
     }
 
+    @Test
+    public void testGetLeastRecentlyUsedPages() throws Exception {
+        MockSystemUtils mockSystemUtils = new MockSystemUtils();
+        mockSystemUtils.setCurrentTimeMinutes(1000);
+        mockSystemUtils.setCurrentTimeMillis(mockSystemUtils.currentTimeMinutes() * 60 * 1000);
+        SystemUtils.set(mockSystemUtils);
+
+        final String layerName = testTileSet.getLayerName();
+        Set<String> layerNames = Collections.singleton(layerName);
+
+        assertTrue(store.getLeastRecentlyUsedPages(layerNames, 10).isEmpty());
+
+        TilePage page1 = new TilePage(testTileSet.getId(), 0, 1, 2);
+        TilePage page2 = new TilePage(testTileSet.getId(), 1, 1, 2);
+        TilePage page3 = new TilePage(testTileSet.getId(), 2, 1, 2);
+
+        PageStatsPayload payload1 = new PageStatsPayload(page1, testTileSet);
+        PageStatsPayload payload2 = new PageStatsPayload(page2, testTileSet);
+        PageStatsPayload payload3 = new PageStatsPayload(page3, testTileSet);
+
+        payload1.setLastAccessTime(mockSystemUtils.currentTimeMillis() + 3 * 60 * 1000);
+        payload2.setLastAccessTime(mockSystemUtils.currentTimeMillis() + 1 * 60 * 1000);
+        payload3.setLastAccessTime(mockSystemUtils.currentTimeMillis() + 2 * 60 * 1000);
+
+        Collection<PageStatsPayload> statsUpdates = Arrays.asList(payload1, payload2, payload3);
+        store.addHitsAndSetAccesTime(statsUpdates).get();
+
+        assertEquals(Arrays.asList(page2, page3), store.getLeastRecentlyUsedPages(layerNames, 2));
+        assertEquals(
+                Arrays.asList(page2, page3, page1),
+                store.getLeastRecentlyUsedPages(layerNames, 10));
+
+        // truncated pages are skipped
+        store.setTruncated(page2);
+        assertEquals(Arrays.asList(page3, page1), store.getLeastRecentlyUsedPages(layerNames, 10));
+        assertEquals(2, store.getLeastFrequentlyUsedPages(layerNames, 10).size());
+    }
+
     @Test
     public void testGetLeastRecentlyUsedPageSkipEmpty() throws Exception {
         MockSystemUtils mockSystemUtils = new MockSystemUtils();
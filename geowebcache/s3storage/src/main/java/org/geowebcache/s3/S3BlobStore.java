@@ -18,12 +18,11 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static java.util.Objects.isNull;
 
 import com.amazonaws.AmazonServiceException;
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.model.AccessControlList;
 import com.amazonaws.services.s3.model.BucketPolicy;
 import com.amazonaws.services.s3.model.CannedAccessControlList;
-import com.amazonaws.services.s3.model.DeleteObjectsRequest;
-import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
 import com.amazonaws.services.s3.model.Grant;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
@@ -35,11 +34,9 @@ import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.io.ByteStreams;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.nio.channels.Channels;
-import java.nio.channels.WritableByteChannel;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -56,6 +53,7 @@ import org.apache.commons.logging.LogFactory;
 import org.geowebcache.GeoWebCacheException;
 import org.geowebcache.filter.parameters.ParametersUtils;
 import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.io.FileResource;
 import org.geowebcache.io.Resource;
 import org.geowebcache.layer.TileLayerDispatcher;
 import org.geowebcache.locks.LockProvider;
@@ -69,11 +67,18 @@ import org.geowebcache.storage.StorageException;
 import org.geowebcache.storage.TileObject;
 import org.geowebcache.storage.TileRange;
 import org.geowebcache.storage.TileRangeIterator;
+import org.geowebcache.storage.TileScanVisitor;
 
 public class S3BlobStore implements BlobStore {
 
     static Log log = LogFactory.getLog(S3BlobStore.class);
 
+    /**
+     * Tiles up to this size are read in memory with a single request, larger ones are streamed from
+     * a second request when the tile contents are actually used
+     */
+    static final int STREAMING_THRESHOLD = 256 * 1024;
+
     private final BlobStoreListenerList listeners = new BlobStoreListenerList();
 
     private AmazonS3Client conn;
@@ -88,6 +93,9 @@ public class S3BlobStore implements BlobStore {
 
     private CannedAccessControlList acl;
 
+    /** Avoids the HEAD request per put when listeners are registered, if enabled */
+    @Nullable private final S3TileExistenceTracker existenceTracker;
+
     public S3BlobStore(
             S3BlobStoreInfo config, TileLayerDispatcher layers, LockProvider lockProvider)
             throws StorageException {
@@ -100,7 +108,22 @@ public class S3BlobStore implements BlobStore {
         conn = validateClient(config.buildClient(), bucketName);
         acl = config.getAccessControlList();
 
-        this.s3Ops = new S3Ops(conn, bucketName, keyBuilder, lockProvider);
+        // leave half of the connections to tile requests while bulk deletes run
+        int maxConnections =
+                Optional.ofNullable(config.getMaxConnections())
+                        .filter(n -> n > 0)
+                        .orElse(ClientConfiguration.DEFAULT_MAX_CONNECTIONS);
+        this.s3Ops =
+                new S3Ops(
+                        conn,
+                        bucketName,
+                        keyBuilder,
+                        lockProvider,
+                        Math.max(1, maxConnections / 2));
+        existenceTracker =
+                Boolean.TRUE.equals(config.isExistenceTracking())
+                        ? new S3TileExistenceTracker(s3Ops::prefixExists)
+                        : null;
 
         boolean empty = !s3Ops.prefixExists(prefix);
         boolean existing = Objects.nonNull(s3Ops.getObjectMetadata(keyBuilder.storeMetadata()));
@@ -221,17 +244,34 @@ public class S3BlobStore implements BlobStore {
         if (listeners.isEmpty()) {
             existed = false;
             oldObj = null;
+        } else if (existenceTracker != null && existenceTracker.isKnownNew(key)) {
+            existed = false;
+            oldObj = null;
         } else {
             oldObj = s3Ops.getObjectMetadata(key);
             existed = oldObj != null;
         }
-
-        final ByteArrayInputStream input = toByteArray(blob);
-        PutObjectRequest putObjectRequest =
-                new PutObjectRequest(bucketName, key, input, objectMetadata).withCannedAcl(acl);
+        if (existenceTracker != null) {
+            existenceTracker.stored(key);
+        }
 
         log.trace(log.isTraceEnabled() ? ("Storing " + key) : "");
-        s3Ops.putObject(putObjectRequest);
+        if (blob instanceof FileResource) {
+            // lets the client re-read the file if the request has to be retried
+            File file = ((FileResource) blob).getFile();
+            s3Ops.putObject(
+                    new PutObjectRequest(bucketName, key, file)
+                            .withMetadata(objectMetadata)
+                            .withCannedAcl(acl));
+        } else {
+            try (InputStream input = blob.getInputStream()) {
+                s3Ops.putObject(
+                        new PutObjectRequest(bucketName, key, input, objectMetadata)
+                                .withCannedAcl(acl));
+            } catch (IOException e) {
+                throw new StorageException("Error reading blob contents for " + key, e);
+            }
+        }
 
         putParametersMetadata(obj.getLayerName(), obj.getParametersId(), obj.getParameters());
 
@@ -248,43 +288,38 @@ public class S3BlobStore implements BlobStore {
         }
     }
 
-    private ByteArrayInputStream toByteArray(final Resource blob) throws StorageException {
-        final byte[] bytes;
-        if (blob instanceof ByteArrayResource) {
-            bytes = ((ByteArrayResource) blob).getContents();
-        } else {
-            try (ByteArrayOutputStream out = new ByteArrayOutputStream((int) blob.getSize());
-                    WritableByteChannel channel = Channels.newChannel(out)) {
-                blob.transferTo(channel);
-                bytes = out.toByteArray();
-            } catch (IOException e) {
-                throw new StorageException("Error copying blob contents", e);
-            }
-        }
-        ByteArrayInputStream input = new ByteArrayInputStream(bytes);
-        return input;
-    }
-
     @Override
     public boolean get(TileObject obj) throws StorageException {
         final String key = keyBuilder.forTile(obj);
-        try (S3Object object = s3Ops.getObject(key)) {
+        try (S3Object object = s3Ops.getObject(key, 0, STREAMING_THRESHOLD - 1, null)) {
             if (object == null) {
                 return false;
             }
+            final ObjectMetadata metadata = object.getObjectMetadata();
+            final long size = metadata.getInstanceLength();
+            final long lastModified = metadata.getLastModified().getTime();
+            final byte[] head = new byte[(int) metadata.getContentLength()];
             try (S3ObjectInputStream in = object.getObjectContent()) {
-                byte[] bytes = ByteStreams.toByteArray(in);
-                obj.setBlobSize(bytes.length);
-                obj.setBlob(new ByteArrayResource(bytes));
-                obj.setCreated(object.getObjectMetadata().getLastModified().getTime());
+                ByteStreams.readFully(in, head);
             }
+            final Resource blob;
+            if (head.length == size) {
+                blob = new ByteArrayResource(head);
+            } else {
+                blob =
+                        new S3ObjectResource(
+                                s3Ops, key, metadata.getETag(), head, size, lastModified);
+            }
+            obj.setBlobSize((int) size);
+            obj.setBlob(blob);
+            obj.setCreated(lastModified);
         } catch (IOException e) {
             throw new StorageException("Error getting " + key, e);
         }
         return true;
     }
 
-    private class TileToKey implements Function<long[], KeyVersion> {
+    private class TileToKey implements Function<long[], String> {
 
         private final String coordsPrefix;
 
@@ -296,13 +331,13 @@ public class S3BlobStore implements BlobStore {
         }
 
         @Override
-        public KeyVersion apply(long[] loc) {
+        public String apply(long[] loc) {
             long z = loc[2];
             long x = loc[0];
             long y = loc[1];
             StringBuilder sb = new StringBuilder(coordsPrefix);
             sb.append(z).append('/').append(x).append('/').append(y).append('.').append(extension);
-            return new KeyVersion(sb.toString());
+            return sb.toString();
         }
     }
 
@@ -331,18 +366,19 @@ public class S3BlobStore implements BlobStore {
         if (listeners.isEmpty()) {
             // if there are no listeners, don't bother requesting every tile
             // metadata to notify the listeners
-            Iterator<List<long[]>> partition = Iterators.partition(tileLocations, 1000);
+            final Iterator<List<long[]>> partition = Iterators.partition(tileLocations, 1000);
             final TileToKey tileToKey = new TileToKey(coordsPrefix, tileRange.getMimeType());
-
-            while (partition.hasNext() && !shutDown) {
-                List<long[]> locations = partition.next();
-                List<KeyVersion> keys = Lists.transform(locations, tileToKey);
-
-                DeleteObjectsRequest req = new DeleteObjectsRequest(bucketName);
-                req.setQuiet(true);
-                req.setKeys(keys);
-                conn.deleteObjects(req);
-            }
+            Iterator<List<String>> keys =
+                    new AbstractIterator<List<String>>() {
+                        @Override
+                        protected List<String> computeNext() {
+                            if (!partition.hasNext() || shutDown) {
+                                return endOfData();
+                            }
+                            return Lists.transform(partition.next(), tileToKey);
+                        }
+                    };
+            s3Ops.deleteObjects(keys, String.format("'%s/%s'", bucketName, coordsPrefix));
 
         } else {
             long[] xyz;
@@ -364,6 +400,46 @@ public class S3BlobStore implements BlobStore {
         return true;
     }
 
+    /** Lists the tiles of each zoom level of the range, one object listing per zoom level */
+    @Override
+    public boolean scan(final TileRange tileRange, TileScanVisitor visitor)
+            throws StorageException {
+        final String coordsPrefix = keyBuilder.coordinatesPrefix(tileRange);
+        for (int z = tileRange.getZoomStart(); z <= tileRange.getZoomStop(); z++) {
+            final String zoomPrefix = coordsPrefix + z + "/";
+            Iterator<S3ObjectSummary> objects = s3Ops.objectStream(zoomPrefix).iterator();
+            while (objects.hasNext()) {
+                if (shutDown) {
+                    throw new StorageException("Blob store shut down while scanning " + zoomPrefix);
+                }
+                S3ObjectSummary object = objects.next();
+                long[] xy = parseColumnAndRow(object.getKey().substring(zoomPrefix.length()));
+                if (xy != null && tileRange.contains(xy[0], xy[1], z)) {
+                    visitor.visit(xy[0], xy[1], z, object.getSize());
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Parses {@code <x>/<y>.<extension>}, returns {@code null} if the key isn't a tile one */
+    @Nullable
+    private static long[] parseColumnAndRow(String name) {
+        int slash = name.indexOf('/');
+        int dot = name.lastIndexOf('.');
+        if (slash <= 0 || dot <= slash + 1) {
+            return null;
+        }
+        try {
+            return new long[] {
+                Long.parseLong(name.substring(0, slash)),
+                Long.parseLong(name.substring(slash + 1, dot))
+            };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     @Override
     public boolean delete(String layerName) throws StorageException {
         checkNotNull(layerName, "layerName");
@@ -95,6 +95,8 @@ public class S3BlobStoreConfigProvider implements XMLConfigurationProvider {
                 S3BlobStoreInfo.class, "useHTTPS", EnvironmentNullableBooleanConverter);
         xs.registerLocalConverter(
                 S3BlobStoreInfo.class, "useGzip", EnvironmentNullableBooleanConverter);
+        xs.registerLocalConverter(
+                S3BlobStoreInfo.class, "existenceTracking", EnvironmentNullableBooleanConverter);
         xs.registerLocalConverter(S3BlobStoreInfo.class, "bucket", EnvironmentStringConverter);
         xs.registerLocalConverter(
                 S3BlobStoreInfo.class, "awsAccessKey", EnvironmentStringConverter);
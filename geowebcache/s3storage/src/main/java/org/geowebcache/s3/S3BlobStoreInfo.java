@@ -71,6 +71,8 @@ public class S3BlobStoreInfo extends BlobStoreInfo {
 
     private String endpoint;
 
+    private Boolean existenceTracking;
+
     public S3BlobStoreInfo() {
         super();
     }
@@ -322,6 +324,27 @@ public class S3BlobStoreInfo extends BlobStoreInfo {
         this.useGzip = use;
     }
 
+    /**
+     * Checks whether the blob store tracks the tiles it stored, so that it does not need to ask S3
+     * whether a tile existed before storing it in order to notify the listeners (e.g. disk quota)
+     *
+     * @return whether tile existence is tracked locally
+     */
+    public Boolean isExistenceTracking() {
+        return existenceTracking;
+    }
+
+    /**
+     * Sets whether the blob store tracks the tiles it stored, instead of asking S3 whether each
+     * tile existed before storing it. Only safe when this blob store is the only one writing to
+     * its bucket and prefix.
+     *
+     * @param existenceTracking whether tile existence is tracked locally
+     */
+    public void setExistenceTracking(Boolean existenceTracking) {
+        this.existenceTracking = existenceTracking;
+    }
+
     @Override
     public BlobStore createInstance(TileLayerDispatcher layers, LockProvider lockProvider)
             throws StorageException {
@@ -0,0 +1,116 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.s3;
+
+import com.amazonaws.services.s3.model.S3Object;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import org.geowebcache.io.Resource;
+import org.geowebcache.storage.StorageException;
+
+/**
+ * Read only {@link Resource} for an S3 object whose first bytes are already in memory. The rest of
+ * the object is fetched on each read and streamed to the target as it arrives, so large tiles are
+ * never held in memory as a whole, and no connection is held open while the resource is unused.
+ */
+class S3ObjectResource implements Resource {
+
+    private final S3Ops s3Ops;
+
+    private final String key;
+
+    private final String eTag;
+
+    private final byte[] head;
+
+    private final long size;
+
+    private final long lastModified;
+
+    /**
+     * @param eTag the object's ETag, the rest of the contents are only read if it still matches
+     * @param head the first bytes of the object
+     * @param size the full size of the object
+     */
+    S3ObjectResource(
+            S3Ops s3Ops, String key, String eTag, byte[] head, long size, long lastModified) {
+        this.s3Ops = s3Ops;
+        this.key = key;
+        this.eTag = eTag;
+        this.head = head;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    /** @see org.geowebcache.io.Resource#getSize() */
+    public long getSize() {
+        return size;
+    }
+
+    /** @see org.geowebcache.io.Resource#transferTo(java.nio.channels.WritableByteChannel) */
+    public long transferTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(head);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        try (S3Object rest = fetchRest();
+                ReadableByteChannel in = Channels.newChannel(rest.getObjectContent())) {
+            ByteStreams.copy(in, channel);
+        }
+        return size;
+    }
+
+    /** Not supported, the resource is read only */
+    public long transferFrom(ReadableByteChannel channel) throws IOException {
+        throw new UnsupportedOperationException("S3ObjectResource is read only");
+    }
+
+    /** @see org.geowebcache.io.Resource#getInputStream() */
+    public InputStream getInputStream() throws IOException {
+        S3Object rest = fetchRest();
+        return new SequenceInputStream(new ByteArrayInputStream(head), rest.getObjectContent());
+    }
+
+    /** Not supported, the resource is read only */
+    public OutputStream getOutputStream() throws IOException {
+        throw new UnsupportedOperationException("S3ObjectResource is read only");
+    }
+
+    /** @see org.geowebcache.io.Resource#getLastModified() */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    private S3Object fetchRest() throws IOException {
+        S3Object rest;
+        try {
+            rest = s3Ops.getObject(key, head.length, size - 1, eTag);
+        } catch (StorageException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        if (rest == null) {
+            throw new IOException(key + " was deleted or replaced while being read");
+        }
+        return rest;
+    }
+}
@@ -14,12 +14,14 @@
  */
 package org.geowebcache.s3;
 
-import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.iterable.S3Objects;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.DeleteObjectsRequest;
 import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.S3Object;
@@ -33,6 +35,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -42,7 +45,6 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -53,6 +55,7 @@ import org.geowebcache.GeoWebCacheException;
 import org.geowebcache.locks.LockProvider;
 import org.geowebcache.locks.LockProvider.Lock;
 import org.geowebcache.locks.NoOpLockProvider;
+import org.geowebcache.storage.ParallelBulkDelete;
 import org.geowebcache.storage.StorageException;
 
 class S3Ops {
@@ -67,16 +70,28 @@ class S3Ops {
 
     private ExecutorService deleteExecutorService;
 
+    /** Runs the listing and delete requests of all bulk deletes, bounded to not hog connections */
+    private ExecutorService deleteWorkers;
+
+    private ParallelBulkDelete bulkDelete;
+
     private Map<String, Long> pendingDeletesKeyTime = new ConcurrentHashMap<>();
 
+    /** @param deleteParallelism maximum number of concurrent requests issued by bulk deletes */
     public S3Ops(
-            AmazonS3Client conn, String bucketName, TMSKeyBuilder keyBuilder, LockProvider locks)
+            AmazonS3Client conn,
+            String bucketName,
+            TMSKeyBuilder keyBuilder,
+            LockProvider locks,
+            int deleteParallelism)
             throws StorageException {
         this.conn = conn;
         this.bucketName = bucketName;
         this.keyBuilder = keyBuilder;
         this.locks = locks == null ? new NoOpLockProvider() : locks;
         this.deleteExecutorService = createDeleteExecutorService();
+        this.deleteWorkers = createDeleteWorkers(deleteParallelism);
+        this.bulkDelete = new ParallelBulkDelete(deleteWorkers, deleteParallelism);
         issuePendingBulkDeletes();
     }
 
@@ -91,8 +106,19 @@ class S3Ops {
         return Executors.newCachedThreadPool(tf);
     }
 
+    private ExecutorService createDeleteWorkers(int parallelism) {
+        ThreadFactory tf =
+                new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat("GWC S3BlobStore delete worker-%d. Bucket: " + bucketName)
+                        .setPriority(Thread.MIN_PRIORITY)
+                        .build();
+        return Executors.newFixedThreadPool(parallelism, tf);
+    }
+
     public void shutDown() {
         deleteExecutorService.shutdownNow();
+        deleteWorkers.shutdownNow();
     }
 
     private void issuePendingBulkDeletes() throws StorageException {
@@ -106,14 +132,22 @@ class S3Ops {
 
         try {
             Properties deletes = getProperties(pendingDeletesKey);
-            for (Entry<Object, Object> e : deletes.entrySet()) {
+            boolean cleared = false;
+            for (Entry<Object, Object> e : new ArrayList<>(deletes.entrySet())) {
                 final String prefix = e.getKey().toString();
                 final long timestamp = Long.parseLong(e.getValue().toString());
                 S3BlobStore.log.info(
                         String.format(
                                 "Restarting pending bulk delete on '%s/%s':%d",
                                 bucketName, prefix, timestamp));
-                asyncDelete(prefix, timestamp);
+                if (!asyncDelete(prefix, timestamp)) {
+                    // finished before the marker could be cleared, don't retry it on every start
+                    deletes.remove(prefix);
+                    cleared = true;
+                }
+            }
+            if (cleared) {
+                putProperties(pendingDeletesKey, deletes);
             }
         } finally {
             try {
@@ -198,7 +232,7 @@ class S3Ops {
             return false;
         }
 
-        BulkDelete task = new BulkDelete(conn, bucketName, prefix, timestamp);
+        BulkDelete task = new BulkDelete(prefix, timestamp);
         deleteExecutorService.submit(task);
         pendingDeletesKeyTime.put(prefix, timestamp);
 
@@ -229,15 +263,50 @@ class S3Ops {
 
     @Nullable
     public S3Object getObject(String key) throws StorageException {
+        return getObject(new GetObjectRequest(bucketName, key));
+    }
+
+    /**
+     * Fetches a range of an object's contents, the object metadata still reports the full object
+     * size as {@link ObjectMetadata#getInstanceLength() instance length}.
+     *
+     * @param firstByte the first byte to fetch
+     * @param lastByte the last byte to fetch, inclusive, may be past the end of the object
+     * @param eTag if not {@code null}, the object is only returned if it still has this ETag
+     * @return the object, or {@code null} if it does not exist or no longer matches {@code eTag}
+     */
+    @Nullable
+    public S3Object getObject(String key, long firstByte, long lastByte, @Nullable String eTag)
+            throws StorageException {
+        GetObjectRequest request =
+                new GetObjectRequest(bucketName, key).withRange(firstByte, lastByte);
+        if (eTag != null) {
+            request.withMatchingETagConstraint(eTag);
+        }
+        return getObject(request);
+    }
+
+    @Nullable
+    private S3Object getObject(GetObjectRequest request) throws StorageException {
+        final String key = request.getKey();
         final S3Object object;
         try {
-            object = conn.getObject(bucketName, key);
+            object = conn.getObject(request);
         } catch (AmazonS3Exception e) {
             if (404 == e.getStatusCode()) { // 404 == not found
                 return null;
             }
+            if (416 == e.getStatusCode() && request.getRange() != null) {
+                // range not satisfiable, the object is empty
+                GetObjectRequest whole = new GetObjectRequest(bucketName, key);
+                whole.setMatchingETagConstraints(request.getMatchingETagConstraints());
+                return getObject(whole);
+            }
             throw new StorageException("Error fetching " + key + ": " + e.getMessage(), e);
         }
+        if (object == null) { // ETag constraint not met
+            return null;
+        }
         if (isPendingDelete(object)) {
             closeObject(object);
             return null;
@@ -348,23 +417,68 @@ class S3Ops {
                 S3Objects.withPrefix(conn, bucketName, prefix).spliterator(), false);
     }
 
+    /**
+     * Deletes batches of keys in parallel, blocking until done
+     *
+     * @return the number of deleted objects
+     */
+    public long deleteObjects(Iterator<List<String>> batches, String description)
+            throws StorageException {
+        try {
+            return bulkDelete.deleteKeys(batches, this::deleteObjects, description);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted deleting " + description, e);
+        }
+    }
+
+    private void deleteObjects(List<String> keys) {
+        List<KeyVersion> versions = keys.stream().map(KeyVersion::new).collect(Collectors.toList());
+        DeleteObjectsRequest deleteReq = new DeleteObjectsRequest(bucketName);
+        deleteReq.setQuiet(true);
+        deleteReq.setKeys(versions);
+        conn.deleteObjects(deleteReq);
+    }
+
+    /**
+     * Lists a level of the key hierarchy, or all the keys under the prefix if {@code flat},
+     * skipping objects newer than {@code timestamp}
+     */
+    private ParallelBulkDelete.Page listObjects(
+            String prefix, String marker, boolean flat, long timestamp) {
+        ListObjectsRequest request =
+                new ListObjectsRequest()
+                        .withBucketName(bucketName)
+                        .withPrefix(prefix)
+                        .withDelimiter(flat ? null : "/")
+                        .withMarker(marker);
+        ObjectListing listing = conn.listObjects(request);
+        Predicate<S3ObjectSummary> filter = new TimeStampFilter(timestamp);
+        List<String> keys =
+                listing.getObjectSummaries()
+                        .stream()
+                        .filter(filter)
+                        .map(S3ObjectSummary::getKey)
+                        .collect(Collectors.toList());
+        String nextMarker = null;
+        if (listing.isTruncated()) {
+            nextMarker = listing.getNextMarker();
+            List<S3ObjectSummary> summaries = listing.getObjectSummaries();
+            if (nextMarker == null && !summaries.isEmpty()) {
+                // S3 only returns the next marker of delimited listings
+                nextMarker = summaries.get(summaries.size() - 1).getKey();
+            }
+        }
+        return new ParallelBulkDelete.Page(keys, listing.getCommonPrefixes(), nextMarker);
+    }
+
     private class BulkDelete implements Callable<Long> {
 
         private final String prefix;
 
         private final long timestamp;
 
-        private final AmazonS3 conn;
-
-        private final String bucketName;
-
-        public BulkDelete(
-                final AmazonS3 conn,
-                final String bucketName,
-                final String prefix,
-                final long timestamp) {
-            this.conn = conn;
-            this.bucketName = bucketName;
+        public BulkDelete(final String prefix, final long timestamp) {
             this.prefix = prefix;
             this.timestamp = timestamp;
         }
@@ -373,42 +487,17 @@ class S3Ops {
         public Long call() throws Exception {
             long count = 0L;
             try {
-                checkInterrupted();
                 S3BlobStore.log.info(
                         String.format(
                                 "Running bulk delete on '%s/%s':%d",
                                 bucketName, prefix, timestamp));
-                Predicate<S3ObjectSummary> filter = new TimeStampFilter(timestamp);
-                AtomicInteger n = new AtomicInteger(0);
-                Iterable<List<S3ObjectSummary>> partitions =
-                        objectStream(prefix)
-                                .filter(filter)
-                                .collect(Collectors.groupingBy((x) -> n.getAndIncrement() % 1000))
-                                .values();
-
-                for (List<S3ObjectSummary> partition : partitions) {
-
-                    checkInterrupted();
-
-                    List<KeyVersion> keys = new ArrayList<>(partition.size());
-                    for (S3ObjectSummary so : partition) {
-                        String key = so.getKey();
-                        keys.add(new KeyVersion(key));
-                    }
-
-                    checkInterrupted();
-
-                    if (!keys.isEmpty()) {
-                        DeleteObjectsRequest deleteReq = new DeleteObjectsRequest(bucketName);
-                        deleteReq.setQuiet(true);
-                        deleteReq.setKeys(keys);
-
-                        checkInterrupted();
-
-                        conn.deleteObjects(deleteReq);
-                        count += keys.size();
-                    }
-                }
+                count =
+                        bulkDelete.deletePrefix(
+                                prefix,
+                                (p, marker, flat) -> listObjects(p, marker, flat, timestamp),
+                                S3Ops.this::deleteObjects,
+                                1000,
+                                String.format("'%s/%s'", bucketName, prefix));
             } catch (InterruptedException | IllegalStateException e) {
                 S3BlobStore.log.info(
                         String.format(
@@ -432,12 +521,6 @@ class S3Ops {
             S3Ops.this.clearPendingBulkDelete(prefix, timestamp);
             return count;
         }
-
-        private void checkInterrupted() throws InterruptedException {
-            if (Thread.interrupted()) {
-                throw new InterruptedException();
-            }
-        }
     }
 
     /** Filters objects that are newer than the given timestamp */
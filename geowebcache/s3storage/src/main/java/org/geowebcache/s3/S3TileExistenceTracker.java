@@ -0,0 +1,88 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.s3;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+
+/**
+ * Tells whether a tile about to be stored is known not to exist in the bucket, so that {@link
+ * S3BlobStore#put} can notify listeners without a HEAD request per tile.
+ *
+ * <p>A tile key is known to be new when its column prefix ({@code .../z/x/}) was found empty the
+ * first time a tile was stored in it, and the key has not been stored since according to a bloom
+ * filter of the keys stored by this instance. Anything else, including bloom filter false positives
+ * and forgotten prefixes, answers "don't know" and the caller falls back to a HEAD request, so
+ * quota accounting stays exact as long as this blob store is the only writer to its prefix.
+ */
+class S3TileExistenceTracker {
+
+    /** Expected number of tiles stored per bloom filter, beyond it false positives grow */
+    static final int EXPECTED_TILES = 10_000_000;
+
+    static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    /** Maximum number of column prefixes whose emptiness is remembered */
+    static final int MAX_PREFIXES = 100_000;
+
+    private final Predicate<String> prefixExists;
+
+    private final BloomFilter<CharSequence> stored;
+
+    private final Cache<String, Boolean> emptyPrefixes;
+
+    /** @param prefixExists tells whether there is any object under a key prefix */
+    S3TileExistenceTracker(Predicate<String> prefixExists) {
+        this(prefixExists, EXPECTED_TILES, MAX_PREFIXES);
+    }
+
+    S3TileExistenceTracker(Predicate<String> prefixExists, int expectedTiles, int maxPrefixes) {
+        this.prefixExists = prefixExists;
+        this.stored =
+                BloomFilter.create(
+                        Funnels.stringFunnel(StandardCharsets.UTF_8),
+                        expectedTiles,
+                        FALSE_POSITIVE_PROBABILITY);
+        this.emptyPrefixes = CacheBuilder.newBuilder().maximumSize(maxPrefixes).build();
+    }
+
+    /**
+     * @return {@code true} if the tile is known not to exist, {@code false} if it may exist and
+     *     has to be checked
+     */
+    boolean isKnownNew(String key) {
+        if (stored.mightContain(key)) {
+            return false;
+        }
+        final String prefix = key.substring(0, key.lastIndexOf('/') + 1);
+        try {
+            return emptyPrefixes.get(prefix, () -> !prefixExists.test(prefix));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            S3BlobStore.log.debug("Failed to check if " + prefix + " is empty", e);
+            return false;
+        }
+    }
+
+    /** Records a tile as stored, before the actual PUT is issued */
+    void stored(String key) {
+        stored.put(key);
+    }
+}
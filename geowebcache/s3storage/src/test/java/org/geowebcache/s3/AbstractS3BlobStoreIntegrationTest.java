@@ -14,6 +14,7 @@
  */
 package org.geowebcache.s3;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -33,6 +34,8 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Files;
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -138,6 +141,33 @@ public abstract class AbstractS3BlobStoreIntegrationTest {
         assertEquals(1024, resource.getSize());
     }
 
+    @Test
+    public void testPutGetLargeTile() throws MimeException, IOException {
+        byte[] bytes = new byte[S3BlobStore.STREAMING_THRESHOLD * 2 + 17];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        TileObject tile = queryTile(20, 30, 12);
+        tile.setBlob(new ByteArrayResource(bytes));
+
+        blobStore.put(tile);
+
+        TileObject queryTile = queryTile(20, 30, 12);
+        boolean found = blobStore.get(queryTile);
+        assertTrue(found);
+        assertEquals(bytes.length, queryTile.getBlobSize());
+        Resource resource = queryTile.getBlob();
+        assertEquals(bytes.length, resource.getSize());
+        // can be read more than once
+        for (int i = 0; i < 2; i++) {
+            ByteArrayResource copy = new ByteArrayResource();
+            try (WritableByteChannel channel = Channels.newChannel(copy.getOutputStream())) {
+                resource.transferTo(channel);
+            }
+            assertArrayEquals(bytes, copy.getContents());
+        }
+    }
+
     @Test
     public void testPutWithListener() throws MimeException, StorageException {
         byte[] bytes = new byte[1024];
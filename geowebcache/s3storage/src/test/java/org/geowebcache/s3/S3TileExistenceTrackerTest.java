@@ -0,0 +1,91 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+
+public class S3TileExistenceTrackerTest {
+
+    /** Keys in the fake bucket */
+    private Set<String> bucket;
+
+    /** Prefixes listed so far */
+    private List<String> listed;
+
+    private S3TileExistenceTracker tracker;
+
+    @Before
+    public void setUp() {
+        bucket = new HashSet<>();
+        listed = new ArrayList<>();
+        tracker =
+                new S3TileExistenceTracker(
+                        prefix -> {
+                            listed.add(prefix);
+                            return bucket.stream().anyMatch(k -> k.startsWith(prefix));
+                        },
+                        1000,
+                        10);
+    }
+
+    private void put(String key) {
+        tracker.stored(key);
+        bucket.add(key);
+    }
+
+    @Test
+    public void testEmptyColumn() {
+        String prefix = "layer/grid/png/default/5/3/";
+        for (int y = 0; y < 10; y++) {
+            String key = prefix + y + ".png";
+            assertTrue(tracker.isKnownNew(key));
+            put(key);
+        }
+        // a single listing for the whole column
+        assertEquals(1, listed.size());
+        // and whatever got stored is no longer new
+        assertFalse(tracker.isKnownNew(prefix + "0.png"));
+    }
+
+    @Test
+    public void testNonEmptyColumn() {
+        bucket.add("layer/grid/png/default/5/3/0.png");
+        assertFalse(tracker.isKnownNew("layer/grid/png/default/5/3/1.png"));
+        assertFalse(tracker.isKnownNew("layer/grid/png/default/5/3/2.png"));
+        assertEquals(1, listed.size());
+    }
+
+    @Test
+    public void testForgottenColumn() {
+        String key = "layer/grid/png/default/5/0/0.png";
+        assertTrue(tracker.isKnownNew(key));
+        put(key);
+        // push the column out of the bounded prefix cache
+        for (int x = 1; x <= 20; x++) {
+            tracker.isKnownNew("layer/grid/png/default/5/" + x + "/0.png");
+        }
+        // listed again, it's no longer empty, so the caller has to check each tile
+        assertFalse(tracker.isKnownNew("layer/grid/png/default/5/0/1.png"));
+    }
+}
@@ -232,6 +232,32 @@ final class FileManager {
         return getFiles(pathBuilderCopy);
     }
 
+    /**
+     * Return the files present in the root directory that may contain tiles of a certain zoom level
+     * of a tile set. NULL is returned if the path template doesn't identify the tile set, i.e. if
+     * it misses the layer, grid set, format or parameters id terms, since then files would be
+     * shared with other tile sets.
+     */
+    List<File> getFiles(
+            String layerName, String gridSetId, String format, String parametersId, long z) {
+        if (!replaceLayerName.first
+                || !replaceGridSetId.first
+                || !replaceFormat.first
+                || !replaceParametersId.first) {
+            return null;
+        }
+        // init the thread local path builder
+        String[] pathBuilderCopy = getPathBuilderCopy();
+        // we replace the tile set terms, columns, rows and custom parameters stay as regex
+        pathBuilderCopy[replaceLayerName.second] = normalizeAttributeValue("layer", layerName);
+        pathBuilderCopy[replaceGridSetId.second] = normalizeAttributeValue("grid", gridSetId);
+        pathBuilderCopy[replaceFormat.second] = normalizeAttributeValue("format", format);
+        pathBuilderCopy[replaceParametersId.second] =
+                normalizeAttributeValue("params", handleParametersId(parametersId, null));
+        if (replaceZoom.first) pathBuilderCopy[replaceZoom.second] = String.valueOf(z);
+        return getFiles(pathBuilderCopy);
+    }
+
     /**
      * Build the paths correspondent to a tile range. For each file we return the associated tiles
      * range by zoom.
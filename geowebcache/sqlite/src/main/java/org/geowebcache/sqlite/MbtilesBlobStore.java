@@ -24,6 +24,10 @@ import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -51,12 +55,14 @@ import org.geotools.mbtiles.MBTilesTile;
 import org.geowebcache.filter.parameters.ParametersUtils;
 import org.geowebcache.mime.MimeException;
 import org.geowebcache.mime.MimeType;
+import org.geowebcache.sqlite.TileWriteBatcher.PendingTile;
 import org.geowebcache.storage.BlobStoreListener;
 import org.geowebcache.storage.BlobStoreListenerList;
 import org.geowebcache.storage.CompositeBlobStore;
 import org.geowebcache.storage.StorageException;
 import org.geowebcache.storage.TileObject;
 import org.geowebcache.storage.TileRange;
+import org.geowebcache.storage.TileScanVisitor;
 
 /** Blobstore that store the tiles in a sqlite database using the mbtiles specification. */
 public final class MbtilesBlobStore extends SqliteBlobStore {
@@ -87,12 +93,12 @@ public final class MbtilesBlobStore extends SqliteBlobStore {
     // Apply GZIP compression to uncompressed vector tile formats.
     private final boolean gzipVector;
 
+    // groups the writes of tiles to the same file in transactions, NULL if batching is disabled
+    private final TileWriteBatcher writeBatcher;
+
     MbtilesBlobStore(MbtilesInfo configuration) throws StorageException {
         // caution this constructor will create a new connection pool
-        this(
-                configuration,
-                new SqliteConnectionManager(
-                        configuration.getPoolSize(), configuration.getPoolReaperIntervalMs()));
+        this(configuration, new SqliteConnectionManager(configuration));
     }
 
     public MbtilesBlobStore(MbtilesInfo configuration, SqliteConnectionManager connectionManager)
@@ -132,13 +138,17 @@ public final class MbtilesBlobStore extends SqliteBlobStore {
         executorService = Executors.newFixedThreadPool(configuration.getExecutorConcurrency());
         listeners = new BlobStoreListenerList();
         gzipVector = configuration.isGzipVector();
+        writeBatcher =
+                configuration.getWriteBatchSize() > 1
+                        ? new TileWriteBatcher(this::writeTiles, configuration.getWriteBatchSize())
+                        : null;
 
         initMbtilesLayersMetadata(configuration.getMbtilesMetadataDirectory());
         if (LOGGER.isInfoEnabled()) {
             LOGGER.info(
                     String.format(
-                            "MBTiles blob store initiated: [eagerDelete='%b', useCreateTime='%b'.",
-                            eagerDelete, useCreateTime));
+                            "MBTiles blob store initiated: [eagerDelete='%b', useCreateTime='%b', writeBatchSize='%d'].",
+                            eagerDelete, useCreateTime, configuration.getWriteBatchSize()));
         }
     }
 
@@ -146,6 +156,32 @@ public final class MbtilesBlobStore extends SqliteBlobStore {
         return gzipVector && MimeType.createFromFormat(tile.getBlobFormat()).isVector();
     }
 
+    /** Returns the data to store for a tile, compressed if needed. */
+    private byte[] encodeTile(TileObject tile) throws Exception {
+        byte[] bytes = Utils.resourceToByteArray(tile.getBlob());
+        if (!tileIsGzipped(tile)) {
+            return bytes;
+        }
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzOut = new GZIPOutputStream(byteStream)) {
+            gzOut.write(bytes);
+        }
+        return byteStream.toByteArray();
+    }
+
+    /** Returns the data of a tile from the stored data, decompressing it if needed. */
+    private byte[] decodeTile(TileObject tile, byte[] data) throws Exception {
+        if (!tileIsGzipped(tile)) {
+            return data;
+        }
+        try (ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
+                ByteArrayInputStream byteIn = new ByteArrayInputStream(data);
+                GZIPInputStream gzIn = new GZIPInputStream(byteIn); ) {
+            IOUtils.copy(gzIn, byteOut);
+            return byteOut.toByteArray();
+        }
+    }
+
     @Override
     public void put(TileObject tile) throws StorageException {
         File file = fileManager.getFile(tile);
@@ -153,72 +189,103 @@ public final class MbtilesBlobStore extends SqliteBlobStore {
             LOGGER.debug(String.format("Tile '%s' mapped to file '%s'.", tile, file));
         }
         initDatabaseFileIfNeeded(file, tile.getLayerName(), tile.getBlobFormat());
+        long z = tile.getXYZ()[2];
+        long x = tile.getXYZ()[0];
+        long y = tile.getXYZ()[1];
+        PendingTile pendingTile;
+        try {
+            pendingTile = new PendingTile(z, x, y, encodeTile(tile), System.currentTimeMillis());
+        } catch (Exception exception) {
+            throw Utils.exception(exception, "Error saving tile '%s' in file '%s'.", tile, file);
+        }
+        // saving the tile, along with the ones concurrently stored in the same file if batching
+        if (writeBatcher != null) {
+            writeBatcher.add(file, pendingTile);
+        } else {
+            writeTiles(file, Collections.singletonList(pendingTile));
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(String.format("Tile '%s' saved in file '%s'.", tile, file));
+        }
+        // a tile replaced in its batch by a later one was never stored
+        if (!listeners.isEmpty() && pendingTile.written) {
+            if (pendingTile.previousSize < 0) {
+                // this was new tile
+                listeners.sendTileStored(tile);
+            } else {
+                // this an update
+                listeners.sendTileUpdated(tile, pendingTile.previousSize);
+            }
+        }
+        persistParameterMap(tile);
+    }
+
+    /**
+     * Writes tiles to a database file in a single transaction. When batching, the database is
+     * synchronized only at WAL checkpoints, a crash may lose the last batches but not corrupt it.
+     */
+    private void writeTiles(File file, Collection<PendingTile> tiles) {
         // do work in write mode
         connectionManager.doWork(
                 file,
                 false,
                 connection -> {
-                    // instantiating geotools needed objects
-                    MBTilesFile mbtiles = GeoToolsMbtilesUtils.getMBTilesFile(connection, file);
-                    MBTilesTile gtTile =
-                            new MBTilesTile(tile.getXYZ()[2], tile.getXYZ()[0], tile.getXYZ()[1]);
                     try {
-                        final boolean gzipped = tileIsGzipped(tile);
-
-                        byte[] bytes;
-                        if (gzipped) {
-                            try (ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-                                    GZIPOutputStream gzOut = new GZIPOutputStream(byteStream); ) {
-                                bytes = byteStream.toByteArray();
-                            }
-                        } else {
-                            bytes = Utils.resourceToByteArray(tile.getBlob());
+                        if (writeBatcher != null) {
+                            connectionManager.executeSql(connection, "PRAGMA synchronous=NORMAL;");
                         }
-                        gtTile.setData(bytes);
-
-                        // if necessary getting old data size for listeners
-                        byte[] olData = null;
-                        if (!listeners.isEmpty()) {
-                            olData =
-                                    mbtiles.loadTile(
-                                                    tile.getXYZ()[2],
-                                                    tile.getXYZ()[0],
-                                                    tile.getXYZ()[1])
-                                            .getData();
-                        }
-                        // saving the tile
-                        mbtiles.saveTile(gtTile);
                         if (useCreateTime) {
-                            // we need to store this tile create time
-                            putTileCreateTime(
-                                    connection,
-                                    tile.getXYZ()[2],
-                                    tile.getXYZ()[0],
-                                    tile.getXYZ()[1],
-                                    System.currentTimeMillis());
-                        }
-                        if (LOGGER.isDebugEnabled()) {
-                            LOGGER.debug(
-                                    String.format("Tile '%s' saved in file '%s'.", tile, file));
-                        }
-                        if (listeners.isEmpty()) {
-                            // no listeners to update we are done
-                            return;
+                            createTilesMetadataTable(connection);
                         }
-                        if (olData == null) {
-                            // this was new tile
-                            listeners.sendTileStored(tile);
-                        } else {
-                            // this an update
-                            listeners.sendTileUpdated(tile, olData.length);
+                        connection.setAutoCommit(false);
+                        try {
+                            // instantiating geotools needed objects
+                            MBTilesFile mbtiles =
+                                    GeoToolsMbtilesUtils.getMBTilesFile(connection, file);
+                            for (PendingTile tile : tiles) {
+                                if (!listeners.isEmpty()) {
+                                    // getting old data size for listeners
+                                    byte[] olData =
+                                            mbtiles.loadTile(tile.z, tile.x, tile.y).getData();
+                                    tile.previousSize = olData == null ? -1 : olData.length;
+                                }
+                                MBTilesTile gtTile = new MBTilesTile(tile.z, tile.x, tile.y);
+                                gtTile.setData(tile.data);
+                                mbtiles.saveTile(gtTile);
+                            }
+                            if (useCreateTime) {
+                                // we need to store the tiles create time
+                                try (PreparedStatement statement =
+                                        connection.prepareStatement(
+                                                "INSERT OR REPLACE INTO tiles_metadata VALUES (?, ?, ?, ?);")) {
+                                    for (PendingTile tile : tiles) {
+                                        statement.setLong(1, tile.z);
+                                        statement.setLong(2, tile.x);
+                                        statement.setLong(3, tile.y);
+                                        statement.setLong(4, tile.createTime);
+                                        statement.addBatch();
+                                    }
+                                    statement.executeBatch();
+                                }
+                            }
+                            connection.commit();
+                            for (PendingTile tile : tiles) {
+                                tile.written = true;
+                            }
+                        } catch (Exception exception) {
+                            connection.rollback();
+                            throw exception;
+                        } finally {
+                            connection.setAutoCommit(true);
                         }
                     } catch (Exception exception) {
                         throw Utils.exception(
-                                exception, "Error saving tile '%s' in file '%s'.", tile, file);
+                                exception,
+                                "Error saving %d tiles in file '%s'.",
+                                tiles.size(),
+                                file);
                     }
                 });
-
-        persistParameterMap(tile);
     }
 
     @Override
@@ -238,9 +305,6 @@ public final class MbtilesBlobStore extends SqliteBlobStore {
                             MBTilesFile mbtiles =
                                     GeoToolsMbtilesUtils.getMBTilesFile(connection, file);
                             try {
-
-                                final boolean gzipped = tileIsGzipped(tile);
-
                                 // loading the tile using geotools reader
                                 MBTilesTile gtTile =
                                         mbtiles.loadTile(
@@ -248,21 +312,8 @@ public final class MbtilesBlobStore extends SqliteBlobStore {
                                                 tile.getXYZ()[0],
                                                 tile.getXYZ()[1]);
 
-                                byte[] bytes = gtTile.getData();
                                 if (gtTile.getData() != null) {
-                                    if (gzipped) {
-                                        try (ByteArrayOutputStream byteOut =
-                                                        new ByteArrayOutputStream();
-                                                ByteArrayInputStream byteIn =
-                                                        new ByteArrayInputStream(gtTile.getData());
-                                                GZIPInputStream gzIn =
-                                                        new GZIPInputStream(byteIn); ) {
-                                            IOUtils.copy(gzIn, byteOut);
-                                            bytes = byteOut.toByteArray();
-                                        }
-                                    } else {
-                                        bytes = gtTile.getData();
-                                    }
+                                    byte[] bytes = decodeTile(tile, gtTile.getData());
                                     tile.setBlob(Utils.byteArrayToResource(bytes));
 
                                     if (LOGGER.isDebugEnabled()) {
@@ -529,6 +580,68 @@ public final class MbtilesBlobStore extends SqliteBlobStore {
         return true;
     }
 
+    @Override
+    public boolean scan(TileRange tileRange, TileScanVisitor visitor) throws StorageException {
+        for (int z = tileRange.getZoomStart(); z <= tileRange.getZoomStop(); z++) {
+            List<File> files =
+                    fileManager.getFiles(
+                            tileRange.getLayerName(),
+                            tileRange.getGridSetId(),
+                            tileRange.getMimeType().getFormat(),
+                            tileRange.getParametersId(),
+                            z);
+            if (files == null) {
+                // files may be shared with other tile sets
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Path template doesn't allow scanning tile sets.");
+                }
+                return false;
+            }
+            for (File file : files) {
+                List<long[]> tiles = loadTileSizes(file, z);
+                for (long[] tile : tiles) {
+                    if (tileRange.contains(tile[0], tile[1], z)) {
+                        visitor.visit(tile[0], tile[1], z, tile[2]);
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Returns the column, row and size of the tiles of a zoom level stored in a file. */
+    private List<long[]> loadTileSizes(File file, int z) {
+        // do work in readonly mode
+        return connectionManager.doWork(
+                file,
+                true,
+                connection -> {
+                    try (PreparedStatement statement =
+                            connection.prepareStatement(
+                                    "SELECT tile_column, tile_row, length(tile_data) FROM tiles WHERE zoom_level = ?;")) {
+                        statement.setInt(1, z);
+                        List<long[]> tiles = new ArrayList<>();
+                        try (ResultSet resultSet = statement.executeQuery()) {
+                            while (resultSet.next()) {
+                                tiles.add(
+                                        new long[] {
+                                            resultSet.getLong(1),
+                                            resultSet.getLong(2),
+                                            resultSet.getLong(3)
+                                        });
+                            }
+                        }
+                        return tiles;
+                    } catch (Exception exception) {
+                        throw Utils.exception(
+                                exception,
+                                "Error listing tiles of zoom level '%d' in file '%s'.",
+                                z,
+                                file);
+                    }
+                });
+    }
+
     @Override
     public boolean rename(String oldLayerName, String newLayerName) throws StorageException {
         List<File> files = fileManager.getFiles(oldLayerName);
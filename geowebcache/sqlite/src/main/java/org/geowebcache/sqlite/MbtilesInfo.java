@@ -37,6 +37,8 @@ public class MbtilesInfo extends SqliteInfo {
 
     private Boolean gzipVector = false;
 
+    private Integer writeBatchSize = 1;
+
     public String getMbtilesMetadataDirectory() {
         return mbtilesMetadataDirectory;
     }
@@ -61,6 +63,20 @@ public class MbtilesInfo extends SqliteInfo {
         this.gzipVector = gzipVector;
     }
 
+    /**
+     * Maximum number of tiles stored concurrently in the same database file that are written in a
+     * single transaction. The default, 1, writes each tile in its own transaction; larger values,
+     * like 100, speed up seeding considerably, as the tiles stored while a transaction is running
+     * are written together by the next one. A put still returns only once its tile is committed.
+     */
+    public int getWriteBatchSize() {
+        return writeBatchSize == null ? 1 : writeBatchSize;
+    }
+
+    public void setWriteBatchSize(int writeBatchSize) {
+        this.writeBatchSize = writeBatchSize;
+    }
+
     @Override
     public BlobStore createInstance(TileLayerDispatcher layers, LockProvider lockProvider)
             throws StorageException {
@@ -83,6 +99,7 @@ public class MbtilesInfo extends SqliteInfo {
                         + ((mbtilesMetadataDirectory == null)
                                 ? 0
                                 : mbtilesMetadataDirectory.hashCode());
+        result = prime * result + ((writeBatchSize == null) ? 0 : writeBatchSize.hashCode());
         return result;
     }
 
@@ -99,6 +116,9 @@ public class MbtilesInfo extends SqliteInfo {
         if (mbtilesMetadataDirectory == null) {
             if (other.mbtilesMetadataDirectory != null) return false;
         } else if (!mbtilesMetadataDirectory.equals(other.mbtilesMetadataDirectory)) return false;
+        if (writeBatchSize == null) {
+            if (other.writeBatchSize != null) return false;
+        } else if (!writeBatchSize.equals(other.writeBatchSize)) return false;
         return true;
     }
 }
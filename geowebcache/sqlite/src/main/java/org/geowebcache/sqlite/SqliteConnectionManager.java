@@ -21,21 +21,30 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.sqlite.SQLiteConfig;
 
 /**
  * Manages the connections to sqlite databases files taking care of the concurrent access. The
  * concurrent access are managed by JVM if two JVMs access the same database file the result is
  * unpredictable.
+ *
+ * <p>Database files are used in WAL mode, each one with a single connection for writing and a pool
+ * of read only connections for reading, so that readers run in parallel and don't wait for writers.
  */
 public final class SqliteConnectionManager {
 
@@ -45,17 +54,47 @@ public final class SqliteConnectionManager {
 
     private volatile boolean stopPoolReaper = false;
 
+    // maximum number of read connections per database file
+    private final int readersPoolSize;
+
+    // read connections unused for longer than this are closed
+    private final long readersIdleTimeoutMs;
+
+    private final AtomicLong openReaders = new AtomicLong();
+    private final AtomicLong readersOpened = new AtomicLong();
+    private final AtomicLong readersEvicted = new AtomicLong();
+    private final AtomicLong readersBorrowed = new AtomicLong();
+    private final AtomicLong readersWaited = new AtomicLong();
+
     public SqliteConnectionManager(SqliteInfo configuration) {
-        this(configuration.getPoolSize(), configuration.getPoolReaperIntervalMs());
+        this(
+                configuration.getPoolSize(),
+                configuration.getPoolReaperIntervalMs(),
+                configuration.getReadersPoolSize(),
+                configuration.getReadersIdleTimeoutMs());
     }
 
     SqliteConnectionManager(long poolSize, long poolReaperIntervalMs) {
+        this(poolSize, poolReaperIntervalMs, 4, 60000);
+    }
+
+    SqliteConnectionManager(
+            long poolSize,
+            long poolReaperIntervalMs,
+            int readersPoolSize,
+            long readersIdleTimeoutMs) {
         if (LOGGER.isInfoEnabled()) {
             LOGGER.info(
                     String.format(
-                            "Initiating connection poll: [poolSize='%d', poolReaperIntervalMs='%d'].",
-                            poolSize, poolReaperIntervalMs));
+                            "Initiating connection poll: [poolSize='%d', poolReaperIntervalMs='%d', "
+                                    + "readersPoolSize='%d', readersIdleTimeoutMs='%d'].",
+                            poolSize,
+                            poolReaperIntervalMs,
+                            readersPoolSize,
+                            readersIdleTimeoutMs));
         }
+        this.readersPoolSize = Math.max(1, readersPoolSize);
+        this.readersIdleTimeoutMs = readersIdleTimeoutMs;
         // let's load the sqlite driver
         try {
             Class.forName("org.sqlite.JDBC");
@@ -69,20 +108,25 @@ public final class SqliteConnectionManager {
         new Thread(
                         () -> {
                             while (!stopPoolReaper) {
+                                // closing the read connections that are no longer used
+                                long idleLimit = System.currentTimeMillis() - readersIdleTimeoutMs;
+                                pool.values().forEach(pooled -> pooled.evictReaders(idleLimit));
                                 if (LOGGER.isDebugEnabled()) {
                                     LOGGER.debug(
                                             String.format(
-                                                    "Current pool size is '%d' and threshold is '%f'.",
-                                                    pool.size(), poolSizeThreshold));
+                                                    "Current pool size is '%d' and threshold is '%f', %s.",
+                                                    getOpenConnections(),
+                                                    poolSizeThreshold,
+                                                    getStatistics()));
                                 }
-                                if (pool.size() > poolSizeThreshold) {
+                                if (getOpenConnections() > poolSizeThreshold) {
                                     // we exceed the pool size threshold, time to reap the less used
                                     // connections
                                     if (LOGGER.isInfoEnabled()) {
                                         LOGGER.info(
                                                 String.format(
                                                         "Reaping connections, current pool size %d.",
-                                                        pool.size()));
+                                                        getOpenConnections()));
                                     }
                                     List<PooledConnection> pooledConnections =
                                             new ArrayList<>(pool.values());
@@ -202,38 +246,58 @@ public final class SqliteConnectionManager {
                 LOGGER.debug(String.format("Starting work on file '%s' in write mode.", file));
             }
         }
-        // let's find or instantiate on the fly a pool connection for the current file
-        PooledConnection pooledConnection = getPooledConnection(file);
-        // acquiring the proper lock on the pooled connection (read or write lock)
-        pooledConnection =
-                readOnly
-                        ? pooledConnection.getReadLockOnValidConnection()
-                        : pooledConnection.getWriteLockOnValidConnection();
+        // let's find or instantiate on the fly a pool connection for the current file, the read
+        // lock only prevents the connections from being closed while we use them
+        PooledConnection pooledConnection =
+                getPooledConnection(file).getReadLockOnValidConnection();
+        try {
+            return readOnly
+                    ? doReadWork(pooledConnection, work)
+                    : doWriteWork(pooledConnection, work);
+        } finally {
+            pooledConnection.releaseReadLock();
+        }
+    }
+
+    /** Executes some work with one of the read connections of a database file. */
+    private <T> T doReadWork(PooledConnection pooledConnection, WorkWithResult<T> work) {
+        Connection reader = pooledConnection.borrowReader();
+        try {
+            return doWork(pooledConnection, reader, work);
+        } finally {
+            pooledConnection.returnReader(reader);
+        }
+    }
+
+    /** Executes some work with the write connection of a database file, one writer at a time. */
+    private <T> T doWriteWork(PooledConnection pooledConnection, WorkWithResult<T> work) {
+        pooledConnection.getWriterLock();
+        try {
+            return doWork(pooledConnection, pooledConnection.connection, work);
+        } finally {
+            pooledConnection.releaseWriterLock();
+        }
+    }
+
+    private <T> T doWork(
+            PooledConnection pooledConnection, Connection target, WorkWithResult<T> work) {
+        File file = pooledConnection.file;
         // the PooledConnection seems to  manage the actual connection
         @SuppressWarnings("PMD.CloseResource")
-        ExtendedConnection connection = pooledConnection.getExtendedConnection();
-        try {
-            // do the work
-            T result = work.doWork(connection);
-            if (!connection.closeInvoked()) {
-                // the work didn't close the connection, this is fine unless the connection was
-                // retained for future usage
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("Close was not invoked on extended connection.");
-                }
-            }
+        ExtendedConnection connection = pooledConnection.getExtendedConnection(target);
+        // do the work
+        T result = work.doWork(connection);
+        if (!connection.closeInvoked()) {
+            // the work didn't close the connection, this is fine unless the connection was
+            // retained for future usage
             if (LOGGER.isDebugEnabled()) {
-                LOGGER.debug(String.format("Work on file '%s' is done.", file));
-            }
-            return result;
-        } finally {
-            // releasing the acquired lock
-            if (readOnly) {
-                pooledConnection.releaseReadLock();
-            } else {
-                pooledConnection.releaseWriteLock();
+                LOGGER.debug("Close was not invoked on extended connection.");
             }
         }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(String.format("Work on file '%s' is done.", file));
+        }
+        return result;
     }
 
     void replace(File currentFile, File newFile) {
@@ -311,6 +375,77 @@ public final class SqliteConnectionManager {
         return pool;
     }
 
+    /** Returns the number of open connections, for writing and reading. */
+    public long getOpenConnections() {
+        return pool.size() + openReaders.get();
+    }
+
+    /** Returns a snapshot of the read connections pools usage. */
+    public Statistics getStatistics() {
+        return new Statistics(
+                openReaders.get(),
+                readersOpened.get(),
+                readersEvicted.get(),
+                readersBorrowed.get(),
+                readersWaited.get());
+    }
+
+    /** Usage statistics of the read connections pools. */
+    public static final class Statistics {
+
+        private final long openReaders;
+        private final long readersOpened;
+        private final long readersEvicted;
+        private final long readersBorrowed;
+        private final long readersWaited;
+
+        Statistics(
+                long openReaders,
+                long readersOpened,
+                long readersEvicted,
+                long readersBorrowed,
+                long readersWaited) {
+            this.openReaders = openReaders;
+            this.readersOpened = readersOpened;
+            this.readersEvicted = readersEvicted;
+            this.readersBorrowed = readersBorrowed;
+            this.readersWaited = readersWaited;
+        }
+
+        /** Number of currently open read connections. */
+        public long getOpenReaders() {
+            return openReaders;
+        }
+
+        /** Number of read connections opened so far. */
+        public long getReadersOpened() {
+            return readersOpened;
+        }
+
+        /** Number of read connections closed because they were idle. */
+        public long getReadersEvicted() {
+            return readersEvicted;
+        }
+
+        /** Number of times a read connection was used. */
+        public long getReadersBorrowed() {
+            return readersBorrowed;
+        }
+
+        /** Number of times a reader had to wait for a read connection to be available. */
+        public long getReadersWaited() {
+            return readersWaited;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "[openReaders='%d', readersOpened='%d', readersEvicted='%d', "
+                            + "readersBorrowed='%d', readersWaited='%d']",
+                    openReaders, readersOpened, readersEvicted, readersBorrowed, readersWaited);
+        }
+    }
+
     void reapAllConnections() {
         if (LOGGER.isInfoEnabled()) {
             LOGGER.info("Reaping all connections.");
@@ -362,25 +497,59 @@ public final class SqliteConnectionManager {
         }
     }
 
-    /** Helper class that contains all the info associated to an open connection. */
+    /** A read connection waiting to be used. */
+    private static final class IdleReader {
+
+        private final Connection connection;
+        private final long idleSince;
+
+        IdleReader(Connection connection, long idleSince) {
+            this.connection = connection;
+            this.idleSince = idleSince;
+        }
+    }
+
+    /**
+     * Helper class that contains all the info associated to the open connections of a file: the
+     * write connection and the pool of read connections.
+     */
     private final class PooledConnection implements Comparable<PooledConnection> {
 
         private final File file;
         private Connection connection;
 
+        // read lock is held while using the connections, write lock while closing them
         private final ReentrantReadWriteLock lock;
 
+        // serializes the work done with the write connection
+        private final ReentrantLock writerLock;
+
+        // idle read connections, the most recently used first
+        private final Deque<IdleReader> readers = new ArrayDeque<>();
+
+        // limits the number of read connections in use
+        private final Semaphore readersPermits;
+
         private long lastAccess;
         private volatile boolean closed;
 
         PooledConnection(File file) {
             this.file = file;
             lock = new ReentrantReadWriteLock();
+            writerLock = new ReentrantLock();
+            readersPermits = new Semaphore(readersPoolSize);
             closed = true;
         }
 
         void init() {
-            connection = openConnection(file);
+            connection = openConnection(file, false);
+            try {
+                // allows readers to run concurrently with the writer
+                executeSql(connection, "PRAGMA journal_mode=WAL;");
+            } catch (Exception exception) {
+                closeQuietly(connection);
+                throw exception;
+            }
             lastAccess = System.currentTimeMillis();
             closed = false;
         }
@@ -393,9 +562,96 @@ public final class SqliteConnectionManager {
             return 1;
         }
 
-        ExtendedConnection getExtendedConnection() {
+        ExtendedConnection getExtendedConnection(Connection target) {
             lastAccess = System.currentTimeMillis();
-            return new ExtendedConnection(connection);
+            return new ExtendedConnection(target);
+        }
+
+        Connection borrowReader() {
+            if (!readersPermits.tryAcquire()) {
+                readersWaited.incrementAndGet();
+                readersPermits.acquireUninterruptibly();
+            }
+            readersBorrowed.incrementAndGet();
+            synchronized (readers) {
+                IdleReader reader = readers.pollFirst();
+                if (reader != null) {
+                    return reader.connection;
+                }
+            }
+            try {
+                Connection reader = openConnection(file, true);
+                openReaders.incrementAndGet();
+                readersOpened.incrementAndGet();
+                return reader;
+            } catch (Exception exception) {
+                readersPermits.release();
+                throw exception;
+            }
+        }
+
+        void returnReader(Connection reader) {
+            try {
+                if (!reader.getAutoCommit()) {
+                    // the work left a transaction open, the connection can't be reused as is
+                    reader.rollback();
+                    reader.setAutoCommit(true);
+                }
+                synchronized (readers) {
+                    readers.addFirst(new IdleReader(reader, System.currentTimeMillis()));
+                }
+            } catch (Exception exception) {
+                closeReader(reader);
+                if (LOGGER.isErrorEnabled()) {
+                    LOGGER.error(
+                            String.format("Error resetting read connection to file '%s'.", file),
+                            exception);
+                }
+            } finally {
+                readersPermits.release();
+            }
+        }
+
+        /** Closes the read connections that are idle since before the provided time. */
+        void evictReaders(long idleLimit) {
+            int evicted = closeReaders(idleLimit);
+            if (evicted > 0) {
+                readersEvicted.addAndGet(evicted);
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug(
+                            String.format(
+                                    "Closed %d idle read connections to file '%s'.",
+                                    evicted, file));
+                }
+            }
+        }
+
+        private int closeReaders(long idleLimit) {
+            List<Connection> idle = new ArrayList<>();
+            synchronized (readers) {
+                while (!readers.isEmpty() && readers.peekLast().idleSince < idleLimit) {
+                    idle.add(readers.pollLast().connection);
+                }
+            }
+            idle.forEach(this::closeReader);
+            return idle.size();
+        }
+
+        private void closeReader(Connection reader) {
+            openReaders.decrementAndGet();
+            closeQuietly(reader);
+        }
+
+        private void closeQuietly(Connection connection) {
+            try {
+                connection.close();
+            } catch (Exception exception) {
+                if (LOGGER.isErrorEnabled()) {
+                    LOGGER.error(
+                            String.format("Error closing connection to file '%s'.", file),
+                            exception);
+                }
+            }
         }
 
         void reapConnection() {
@@ -410,6 +666,8 @@ public final class SqliteConnectionManager {
 
         void closeConnection() {
             if (!closed) {
+                // closing the read connections first, they are all idle since we hold the lock
+                closeReaders(Long.MAX_VALUE);
                 // this connection is open let's close it
                 try {
                     connection.close();
@@ -505,13 +763,28 @@ public final class SqliteConnectionManager {
             }
         }
 
-        private Connection openConnection(File file) {
+        void getWriterLock() {
+            writerLock.lock();
+        }
+
+        void releaseWriterLock() {
+            writerLock.unlock();
+        }
+
+        /** Opens a connection to the file, read only connections can't modify the database. */
+        private Connection openConnection(File file, boolean readOnly) {
             if (LOGGER.isInfoEnabled()) {
-                LOGGER.info(String.format("Opening connection to file '%s'.", file));
+                LOGGER.info(
+                        String.format(
+                                "Opening %s connection to file '%s'.",
+                                readOnly ? "read only" : "read write", file));
             }
             Utils.createFileParents(file);
             try {
-                return DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+                SQLiteConfig config = new SQLiteConfig();
+                config.setReadOnly(readOnly);
+                return DriverManager.getConnection(
+                        "jdbc:sqlite:" + file.getPath(), config.toProperties());
             } catch (Exception exception) {
                 throw Utils.exception(exception, "Error opening connection to file '%s'.", file);
             }
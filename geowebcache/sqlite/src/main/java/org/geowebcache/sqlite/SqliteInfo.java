@@ -41,6 +41,10 @@ public abstract class SqliteInfo extends BlobStoreInfo {
 
     private long poolReaperIntervalMs = 500;
 
+    private Integer readersPoolSize = 4;
+
+    private Long readersIdleTimeoutMs = 60000L;
+
     private long rowRangeCount = 250;
 
     private long columnRangeCount = 250;
@@ -89,6 +93,24 @@ public abstract class SqliteInfo extends BlobStoreInfo {
         this.poolReaperIntervalMs = poolReaperIntervalMs;
     }
 
+    /** Maximum number of connections reading a database file at the same time. */
+    public int getReadersPoolSize() {
+        return readersPoolSize == null ? 4 : readersPoolSize;
+    }
+
+    public void setReadersPoolSize(int readersPoolSize) {
+        this.readersPoolSize = readersPoolSize;
+    }
+
+    /** Read connections unused for longer than this are closed. */
+    public long getReadersIdleTimeoutMs() {
+        return readersIdleTimeoutMs == null ? 60000 : readersIdleTimeoutMs;
+    }
+
+    public void setReadersIdleTimeoutMs(long readersIdleTimeoutMs) {
+        this.readersIdleTimeoutMs = readersIdleTimeoutMs;
+    }
+
     public long getRowRangeCount() {
         return rowRangeCount;
     }
@@ -141,6 +163,10 @@ public abstract class SqliteInfo extends BlobStoreInfo {
         result = prime * result + (eagerDelete ? 1231 : 1237);
         result = prime * result + (int) (poolReaperIntervalMs ^ (poolReaperIntervalMs >>> 32));
         result = prime * result + (int) (poolSize ^ (poolSize >>> 32));
+        result = prime * result + ((readersPoolSize == null) ? 0 : readersPoolSize.hashCode());
+        result =
+                prime * result
+                        + ((readersIdleTimeoutMs == null) ? 0 : readersIdleTimeoutMs.hashCode());
         result = prime * result + ((rootDirectory == null) ? 0 : rootDirectory.hashCode());
         result = prime * result + (int) (rowRangeCount ^ (rowRangeCount >>> 32));
         result = prime * result + ((templatePath == null) ? 0 : templatePath.hashCode());
@@ -158,6 +184,12 @@ public abstract class SqliteInfo extends BlobStoreInfo {
         if (eagerDelete != other.eagerDelete) return false;
         if (poolReaperIntervalMs != other.poolReaperIntervalMs) return false;
         if (poolSize != other.poolSize) return false;
+        if (readersPoolSize == null) {
+            if (other.readersPoolSize != null) return false;
+        } else if (!readersPoolSize.equals(other.readersPoolSize)) return false;
+        if (readersIdleTimeoutMs == null) {
+            if (other.readersIdleTimeoutMs != null) return false;
+        } else if (!readersIdleTimeoutMs.equals(other.readersIdleTimeoutMs)) return false;
         if (rootDirectory == null) {
             if (other.rootDirectory != null) return false;
         } else if (!rootDirectory.equals(other.rootDirectory)) return false;
@@ -0,0 +1,202 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2020
+ */
+package org.geowebcache.sqlite;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Groups the tiles stored concurrently in the same database file, so that they are written in a
+ * single transaction instead of paying a transaction (and its fsync) per tile.
+ *
+ * <p>This is a group commit: a tile added while no batch of its file is being written is written
+ * right away by the adding thread, while tiles added during a write wait for it to complete and are
+ * then written together, up to {@code maxBatchSize} of them, by one of the adding threads. {@link
+ * #add(File, PendingTile)} only returns once the tile's batch is committed, and throws if its write
+ * failed, so each put sees the outcome of its own tile.
+ */
+final class TileWriteBatcher {
+
+    private static Log LOGGER = LogFactory.getLog(TileWriteBatcher.class);
+
+    /** A tile waiting to be written. */
+    static final class PendingTile {
+
+        final long z;
+        final long x;
+        final long y;
+        final byte[] data;
+        final long createTime;
+
+        // set by the writer, size of the tile this one replaced, -1 if there was none
+        int previousSize = -1;
+
+        // set by the writer once the tile is committed, false if a later tile replaced it first
+        boolean written;
+
+        PendingTile(long z, long x, long y, byte[] data, long createTime) {
+            this.z = z;
+            this.x = x;
+            this.y = y;
+            this.data = data;
+            this.createTime = createTime;
+        }
+    }
+
+    /**
+     * Writes a batch of tiles to a database file, in a single transaction, setting their {@link
+     * PendingTile#previousSize previous size} and {@link PendingTile#written written} flag.
+     */
+    interface Writer {
+        void write(File file, Collection<PendingTile> tiles);
+    }
+
+    /** Tiles written in the same transaction. */
+    private static final class Batch {
+
+        private final Map<List<Long>, PendingTile> tiles = new LinkedHashMap<>();
+
+        private boolean completed;
+
+        private Throwable failure;
+    }
+
+    /** The batches of a file, guarded by its own monitor. */
+    private static final class FileQueue {
+
+        // the batch taking tiles, written once the write in progress completes
+        private Batch open;
+
+        private boolean writing;
+
+        // set once removed from the queues, threads that got it have to look up a new one
+        private boolean retired;
+    }
+
+    private final Map<File, FileQueue> queues = new ConcurrentHashMap<>();
+
+    private final Writer writer;
+
+    private final int maxBatchSize;
+
+    TileWriteBatcher(Writer writer, int maxBatchSize) {
+        this.writer = writer;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Adds a tile to the file's next batch and waits for the batch to be written, writing it if no
+     * other thread is writing to the file.
+     */
+    void add(File file, PendingTile tile) {
+        boolean interrupted = false;
+        FileQueue queue;
+        Batch batch;
+        try {
+            while (true) {
+                queue = queues.computeIfAbsent(file, f -> new FileQueue());
+                synchronized (queue) {
+                    if (queue.retired) {
+                        continue;
+                    }
+                    while (queue.open != null && queue.open.tiles.size() >= maxBatchSize) {
+                        interrupted |= await(queue);
+                    }
+                    if (queue.retired) {
+                        // the full batch was written while waiting, and nothing followed it
+                        continue;
+                    }
+                    if (queue.open == null) {
+                        queue.open = new Batch();
+                    }
+                    batch = queue.open;
+                    batch.tiles.put(key(tile.z, tile.x, tile.y), tile);
+                    while (!batch.completed && queue.writing) {
+                        interrupted |= await(queue);
+                    }
+                    if (batch.completed) {
+                        // written by another thread of the batch
+                        if (batch.failure != null) {
+                            throw new RuntimeException(
+                                    String.format("Error saving tiles in file '%s'.", file),
+                                    batch.failure);
+                        }
+                        return;
+                    }
+                    // our turn to write the batch, the next tiles go to a new one
+                    queue.writing = true;
+                    queue.open = null;
+                    queue.notifyAll();
+                    break;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Throwable failure = null;
+        try {
+            writer.write(file, batch.tiles.values());
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(
+                        String.format(
+                                "Wrote a batch of %d tiles to file '%s'.",
+                                batch.tiles.size(), file));
+            }
+        } catch (RuntimeException | Error exception) {
+            failure = exception;
+            throw exception;
+        } finally {
+            synchronized (queue) {
+                batch.completed = true;
+                batch.failure = failure;
+                queue.writing = false;
+                if (queue.open == null) {
+                    // nobody is waiting on it
+                    queue.retired = true;
+                    queues.remove(file, queue);
+                }
+                queue.notifyAll();
+            }
+        }
+    }
+
+    /** Waits for the queue to change, returns whether the thread was interrupted meanwhile. */
+    private static boolean await(FileQueue queue) {
+        try {
+            queue.wait();
+            return false;
+        } catch (InterruptedException exception) {
+            // the batch will complete soon enough, the put can't be abandoned half way
+            return true;
+        }
+    }
+
+    private static List<Long> key(long z, long x, long y) {
+        List<Long> key = new ArrayList<>(3);
+        key.add(z);
+        key.add(x);
+        key.add(y);
+        return key;
+    }
+}
@@ -26,7 +26,13 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.geowebcache.mime.MimeType;
+import org.geowebcache.storage.BlobStoreListener;
 import org.geowebcache.storage.CompositeBlobStore;
 import org.geowebcache.storage.SuitabilityCheckRule;
 import org.geowebcache.storage.TileObject;
@@ -79,6 +85,121 @@ public final class MbtilesBlobStoreTest extends TestSupport {
         assertThat(getTile.getBlob(), nullValue());
     }
 
+    @Test
+    public void testBatchedTilePutGetDeleteOperations() throws Exception {
+        // instantiating the store, tiles stored concurrently will be written together
+        MbtilesInfo configuration = getDefaultConfiguration();
+        configuration.setWriteBatchSize(100);
+        MbtilesBlobStore store = new MbtilesBlobStore(configuration);
+        addStoresToClean(store);
+        AtomicInteger stored = new AtomicInteger();
+        AtomicLong updatedOldSize = new AtomicLong(-1);
+        store.addListener(
+                new BlobStoreListener() {
+                    @Override
+                    public void tileStored(
+                            String layerName,
+                            String gridSetId,
+                            String blobFormat,
+                            String parametersId,
+                            long x,
+                            long y,
+                            int z,
+                            long blobSize) {
+                        stored.incrementAndGet();
+                    }
+
+                    @Override
+                    public void tileDeleted(
+                            String layerName,
+                            String gridSetId,
+                            String blobFormat,
+                            String parametersId,
+                            long x,
+                            long y,
+                            int z,
+                            long blobSize) {}
+
+                    @Override
+                    public void tileUpdated(
+                            String layerName,
+                            String gridSetId,
+                            String blobFormat,
+                            String parametersId,
+                            long x,
+                            long y,
+                            int z,
+                            long blobSize,
+                            long oldSize) {
+                        updatedOldSize.set(oldSize);
+                    }
+
+                    @Override
+                    public void layerDeleted(String layerName) {}
+
+                    @Override
+                    public void layerRenamed(String oldLayerName, String newLayerName) {}
+
+                    @Override
+                    public void gridSubsetDeleted(String layerName, String gridSetId) {}
+
+                    @Override
+                    public void parametersDeleted(String layerName, String parametersId) {}
+                });
+        // storing some tiles concurrently
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> results = new ArrayList<>();
+        for (int x = 0; x < 40; x++) {
+            long column = x;
+            results.add(
+                    executor.submit(
+                            () -> {
+                                store.put(
+                                        TileObject.createCompleteTileObject(
+                                                "africa",
+                                                new long[] {column, 50, 5},
+                                                "EPSG:4326",
+                                                "image/png",
+                                                null,
+                                                stringToResource("IMAGE-" + column + "-50-5")));
+                                return null;
+                            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+        // once put returns the tile is committed and the listeners notified
+        assertThat(stored.get(), is(40));
+        for (int x = 0; x < 40; x++) {
+            TileObject getTile =
+                    TileObject.createQueryTileObject(
+                            "africa", new long[] {x, 50, 5}, "EPSG:4326", "image/png", null);
+            assertThat(store.get(getTile), is(true));
+            assertThat(resourceToString(getTile.getBlob()), is("IMAGE-" + x + "-50-5"));
+        }
+        // replacing a tile reports the size of the old one
+        store.put(
+                TileObject.createCompleteTileObject(
+                        "africa",
+                        new long[] {3, 50, 5},
+                        "EPSG:4326",
+                        "image/png",
+                        null,
+                        stringToResource("IMAGE-3-50-5-UPDATED")));
+        assertThat(stored.get(), is(40));
+        assertThat(updatedOldSize.get(), is((long) "IMAGE-3-50-5".length()));
+        // deleting a tile
+        TileObject deleteTile =
+                TileObject.createQueryTileObject(
+                        "africa", new long[] {5, 50, 5}, "EPSG:4326", "image/png", null);
+        assertThat(store.delete(deleteTile), is(true));
+        TileObject getTile =
+                TileObject.createQueryTileObject(
+                        "africa", new long[] {5, 50, 5}, "EPSG:4326", "image/png", null);
+        assertThat(store.get(getTile), is(false));
+    }
+
     @Test
     public void testTileMetadataOperations() throws Exception {
         // instantiating the store
@@ -16,19 +16,23 @@ package org.geowebcache.sqlite;
 
 import static org.geowebcache.sqlite.Utils.Tuple;
 import static org.geowebcache.sqlite.Utils.Tuple.tuple;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -73,7 +77,7 @@ public final class SqliteConnectionManagerTest extends TestSupport {
         connectionManagersToClean.add(connectionManager);
         connectionManager.doWork(
                 buildRootFile("tiles", "data_base.sqlite"),
-                true,
+                false,
                 connection -> {
                     insertInTestTable(connection, "name", "europe");
                 });
@@ -90,6 +94,119 @@ public final class SqliteConnectionManagerTest extends TestSupport {
                 });
     }
 
+    @Test
+    public void testReadersDoNotWaitForWriter() throws Exception {
+        SqliteConnectionManager connectionManager =
+                new SqliteConnectionManager(Integer.MAX_VALUE, 1000, 2, 60000);
+        connectionManagersToClean.add(connectionManager);
+        File file = buildRootFile("tiles", "data_base.sqlite");
+        connectionManager.doWork(
+                file,
+                false,
+                connection -> {
+                    insertInTestTable(connection, "name", "europe");
+                });
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            // a writer keeps a transaction open
+            Future<?> writer =
+                    executor.submit(
+                            () ->
+                                    connectionManager.doWork(
+                                            file,
+                                            false,
+                                            connection -> {
+                                                try {
+                                                    connection.setAutoCommit(false);
+                                                    insertInTestTable(connection, "name2", "asia");
+                                                    writing.countDown();
+                                                    done.await(30, TimeUnit.SECONDS);
+                                                    connection.commit();
+                                                    connection.setAutoCommit(true);
+                                                } catch (Exception exception) {
+                                                    throw Utils.exception(
+                                                            exception, "Error writing.");
+                                                }
+                                            }));
+            assertThat(writing.await(30, TimeUnit.SECONDS), is(true));
+            // concurrent readers see the committed data only
+            List<Future<String>> readers = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                readers.add(
+                        executor.submit(
+                                () ->
+                                        connectionManager.doWork(
+                                                file,
+                                                true,
+                                                connection -> {
+                                                    return getFromTestTable(connection, "name")
+                                                            + getFromTestTable(connection, "name2");
+                                                })));
+            }
+            for (Future<String> reader : readers) {
+                assertThat(reader.get(10, TimeUnit.SECONDS), is("europenull"));
+            }
+            done.countDown();
+            writer.get(10, TimeUnit.SECONDS);
+        } finally {
+            done.countDown();
+            executor.shutdownNow();
+        }
+        assertThat(connectionManager.getStatistics().getReadersBorrowed(), is(2L));
+        assertThat(connectionManager.getStatistics().getOpenReaders(), greaterThan(0L));
+        // closing the connections closes the read connections too
+        connectionManager.reapAllConnections();
+        assertThat(connectionManager.getOpenConnections(), is(0L));
+        assertThat(connectionManager.getStatistics().getOpenReaders(), is(0L));
+    }
+
+    @Test
+    public void testReadersAreReadOnly() throws Exception {
+        SqliteConnectionManager connectionManager =
+                new SqliteConnectionManager(Integer.MAX_VALUE, 1000);
+        connectionManagersToClean.add(connectionManager);
+        File file = buildRootFile("tiles", "data_base.sqlite");
+        connectionManager.doWork(
+                file,
+                false,
+                connection -> {
+                    insertInTestTable(connection, "name", "europe");
+                });
+        boolean readOnly =
+                connectionManager.doWork(
+                        file,
+                        true,
+                        connection -> {
+                            try {
+                                return connection.isReadOnly();
+                            } catch (SQLException exception) {
+                                throw Utils.exception(exception, "Error reading connection.");
+                            }
+                        });
+        assertThat(readOnly, is(true));
+        try {
+            connectionManager.doWork(
+                    file,
+                    true,
+                    connection -> {
+                        insertInTestTable(connection, "name2", "asia");
+                    });
+            fail("Read connections should not be able to write");
+        } catch (RuntimeException exception) {
+            // expected
+        }
+        String value =
+                connectionManager.doWork(
+                        file,
+                        false,
+                        connection -> {
+                            return getFromTestTable(connection, "name2");
+                        });
+        assertThat(value, nullValue());
+    }
+
     @Test
     @Ignore
     public void testMultiThreadsWithSingleFile() throws Exception {
@@ -35,7 +35,9 @@ import org.geowebcache.GeoWebCacheException;
 import org.geowebcache.config.ConfigurationException;
 import org.geowebcache.config.DefaultingConfiguration;
 import org.geowebcache.config.GridSetConfiguration;
+import org.geowebcache.config.ListenerCollection;
 import org.geowebcache.config.TileLayerConfiguration;
+import org.geowebcache.config.TileLayerConfigurationListener;
 import org.geowebcache.config.legends.LegendRawInfo;
 import org.geowebcache.config.legends.LegendsRawInfo;
 import org.geowebcache.config.wms.parameters.NaiveWMSDimensionFilter;
@@ -86,6 +88,9 @@ public class GetCapabilitiesConfiguration implements TileLayerConfiguration, Gri
 
     private Map<String, GridSet> generatedGridSets = new HashMap<>();
 
+    private ListenerCollection<TileLayerConfigurationListener> layerListeners =
+            new ListenerCollection<>();
+
     public GetCapabilitiesConfiguration(
             GridSetBroker gridSetBroker,
             String url,
@@ -556,6 +561,27 @@ public class GetCapabilitiesConfiguration implements TileLayerConfiguration, Gri
                             .collect(Collectors.toMap(GridSet::getName, UnaryOperator.identity()));
             generatedGridSets.putAll(generatedForLayer);
         }
+        notifyLayersChanged();
+    }
+
+    private void notifyLayersChanged() {
+        try {
+            layerListeners.safeForEach(listener -> listener.handleLayersChanged(this));
+        } catch (GeoWebCacheException | IOException e) {
+            // handleLayersChanged does not throw checked exceptions
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean addLayerConfigurationListener(TileLayerConfigurationListener listener) {
+        layerListeners.add(listener);
+        return true;
+    }
+
+    @Override
+    public void removeLayerConfigurationListener(TileLayerConfigurationListener listener) {
+        layerListeners.remove(listener);
     }
 
     /** @see TileLayerConfiguration#getLayers() */
@@ -589,6 +615,7 @@ public class GetCapabilitiesConfiguration implements TileLayerConfiguration, Gri
         if (layers.remove(layerName) == null) {
             throw new NoSuchElementException("Layer " + layerName + " does not exist");
         }
+        notifyLayersChanged();
     }
 
     /** @see TileLayerConfiguration#modifyLayer(org.geowebcache.layer.TileLayer) */
@@ -688,5 +715,6 @@ public class GetCapabilitiesConfiguration implements TileLayerConfiguration, Gri
     public void deinitialize() throws Exception {
         this.generatedGridSets.clear();
         this.layers.clear();
+        notifyLayersChanged();
     }
 }
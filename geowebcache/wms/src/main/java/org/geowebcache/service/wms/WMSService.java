@@ -16,14 +16,20 @@ package org.geowebcache.service.wms;
 
 import static org.geowebcache.grid.GridUtil.findBestMatchingGrid;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
 import java.nio.channels.Channels;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
@@ -58,9 +64,12 @@ import org.geowebcache.stats.RuntimeStats;
 import org.geowebcache.storage.StorageBroker;
 import org.geowebcache.util.NullURLMangler;
 import org.geowebcache.util.ServletUtils;
+import org.geowebcache.util.TaskContextPropagator;
 import org.geowebcache.util.URLMangler;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 
-public class WMSService extends Service {
+public class WMSService extends Service implements InitializingBean, DisposableBean {
     public static final String GEOWEBCACHE_WMS_PROXY_REQUEST_WHITELIST =
             "GEOWEBCACHE_WMS_PROXY_REQUEST_WHITELIST";
 
@@ -95,6 +104,38 @@ public class WMSService extends Service {
 
     private SecurityDispatcher securityDispatcher;
 
+    // Number of tiles fetched at the same time to answer a full WMS request
+    private int fuserParallelism = 4;
+
+    // Fetches and decodes the tiles of full WMS requests, created on initialization
+    private ExecutorService fuserExecutor;
+
+    // Carry the request context over to the fuser threads
+    private List<TaskContextPropagator> contextPropagators = Collections.emptyList();
+
+    /**
+     * Creates the pool fetching the tiles of full WMS requests. Fetches mostly wait on the backend
+     * or the storage, so there are more threads than processors, still bounded as the requests
+     * are. Once the queue is full the request threads fetch their own tiles, idle threads die off.
+     */
+    private ExecutorService createFuserExecutor() {
+        int threads = Math.max(fuserParallelism, 2 * Runtime.getRuntime().availableProcessors());
+        ThreadPoolExecutor executor =
+                new ThreadPoolExecutor(
+                        threads,
+                        threads,
+                        60L,
+                        TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(threads * 4),
+                        new ThreadFactoryBuilder()
+                                .setDaemon(true)
+                                .setNameFormat("GWC WMS tile fuser-%d")
+                                .build(),
+                        new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     /** Protected no-argument constructor to allow run-time instrumentation */
     protected WMSService() {
         super(SERVICE_WMS);
@@ -123,6 +164,22 @@ public class WMSService extends Service {
         this.controller = controller;
     }
 
+    /** Creates the pool fetching the tiles of full WMS requests */
+    @Override
+    public void afterPropertiesSet() {
+        fuserExecutor = createFuserExecutor();
+        contextPropagators = GeoWebCacheExtensions.extensions(TaskContextPropagator.class);
+    }
+
+    /** Stops the pool fetching the tiles of full WMS requests */
+    @Override
+    public void destroy() {
+        if (fuserExecutor != null) {
+            fuserExecutor.shutdownNow();
+            fuserExecutor = null;
+        }
+    }
+
     @Override
     public ConveyorTile getConveyor(HttpServletRequest request, HttpServletResponse response)
             throws GeoWebCacheException {
@@ -359,6 +416,8 @@ public class WMSService extends Service {
         wmsFuser.setApplicationContext(utility.getApplicationContext());
         // Setting of the hintConfiguration if present
         wmsFuser.setHintsConfiguration(hintsConfig);
+        wmsFuser.setExecutor(fuserExecutor, fuserParallelism);
+        wmsFuser.setContextPropagators(contextPropagators);
         return wmsFuser;
     }
 
@@ -520,6 +579,14 @@ public class WMSService extends Service {
         this.hintsConfig = hintsConfig;
     }
 
+    /**
+     * Sets how many source tiles are fetched and decoded at the same time to answer a full WMS
+     * request, 1 fetches them one after the other on the request thread.
+     */
+    public void setFuserParallelism(int fuserParallelism) {
+        this.fuserParallelism = fuserParallelism;
+    }
+
     public void setUtility(WMSUtilities utility) {
         this.utility = utility;
     }
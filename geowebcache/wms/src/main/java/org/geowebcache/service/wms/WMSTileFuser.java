@@ -21,11 +21,18 @@ import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import javax.media.jai.PlanarImage;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
@@ -55,6 +62,7 @@ import org.geowebcache.storage.StorageBroker;
 import org.geowebcache.util.AccountingOutputStream;
 import org.geowebcache.util.IOUtils;
 import org.geowebcache.util.ServletUtils;
+import org.geowebcache.util.TaskContextPropagator;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 
@@ -150,6 +158,15 @@ public class WMSTileFuser {
 
     private SecurityDispatcher securityDispatcher;
 
+    /** Executor used to fetch and decode the source tiles concurrently, may be null */
+    private ExecutorService executor;
+
+    /** Maximum number of source tiles fetched at the same time */
+    private int parallelism = 1;
+
+    /** Carry the context of the request thread over to the executor threads */
+    private List<TaskContextPropagator> contextPropagators = Collections.emptyList();
+
     /** Enum storing the Hints associated to one of the 3 configurations(SPEED, QUALITY, DEFAULT) */
     public enum HintsLevel {
         QUALITY(0, "quality"),
@@ -568,11 +585,51 @@ public class WMSTileFuser {
         gfx.addRenderingHints(hintsTemp);
     }
 
+    /** A source tile and the part of it that is drawn on the canvas. */
+    private static class CanvasTile {
+        final ConveyorTile tile;
+        final int tilex;
+        final int tiley;
+        final int tileWidth;
+        final int tileHeight;
+        final int canvasx;
+        final int canvasy;
+
+        CanvasTile(
+                ConveyorTile tile,
+                int tilex,
+                int tiley,
+                int tileWidth,
+                int tileHeight,
+                int canvasx,
+                int canvasy) {
+            this.tile = tile;
+            this.tilex = tilex;
+            this.tiley = tiley;
+            this.tileWidth = tileWidth;
+            this.tileHeight = tileHeight;
+            this.canvasx = canvasx;
+            this.canvasy = canvasy;
+        }
+    }
+
+    /** A source tile fetched, decoded and cut down, ready to be drawn on the canvas. */
+    private static class RenderedTile {
+        final CanvasTile canvasTile;
+        final BufferedImage image;
+
+        RenderedTile(CanvasTile canvasTile, BufferedImage image) {
+            this.canvasTile = canvasTile;
+            this.image = image;
+        }
+    }
+
     protected void renderCanvas()
             throws OutsideCoverageException, GeoWebCacheException, IOException, Exception {
 
         // Now we loop over all the relevant tiles and write them to the canvas,
         // Starting at the bottom, moving to the right and up
+        List<CanvasTile> canvasTiles = new ArrayList<>();
 
         // Bottom row of tiles, in tile coordinates
         long starty = srcRectangle[1];
@@ -634,18 +691,6 @@ public class WMSTileFuser {
                     continue;
                 }
 
-                layer.getTile(tile);
-                // Selection of the resource input stream
-                Resource blob = tile.getBlob();
-                // Extraction of the image associated with the defined MimeType
-                String formatName = srcFormat.getMimeType();
-                BufferedImage tileImg =
-                        decoderMap.decode(
-                                formatName,
-                                blob,
-                                decoderMap.isAggressiveInputStreamSupported(formatName),
-                                null);
-
                 int tilex = 0;
                 int canvasx = (int) (gridx - startx) * gridSubset.getTileWidth();
                 int tileWidth = gridSubset.getTileWidth();
@@ -678,36 +723,125 @@ public class WMSTileFuser {
                     continue;
                 }
 
-                // Cut down the tile to the part we want
-                if (tileWidth != gridSubset.getTileWidth()
-                        || tileHeight != gridSubset.getTileHeight()) {
-                    log.debug(
-                            "tileImg.getSubimage("
-                                    + tilex
-                                    + ","
-                                    + tiley
-                                    + ","
-                                    + tileWidth
-                                    + ","
-                                    + tileHeight
-                                    + ")");
-                    tileImg = tileImg.getSubimage(tilex, tiley, tileWidth, tileHeight);
+                canvasTiles.add(
+                        new CanvasTile(
+                                tile, tilex, tiley, tileWidth, tileHeight, canvasx, canvasy));
+            }
+        }
+
+        // The tiles cover disjoint areas of the canvas, so the order in which they are drawn
+        // doesn't change the result
+        if (executor == null || parallelism <= 1 || canvasTiles.size() <= 1) {
+            for (CanvasTile canvasTile : canvasTiles) {
+                drawTile(renderTile(canvasTile));
+            }
+        } else {
+            renderTilesInParallel(canvasTiles);
+        }
+
+        gfx.dispose();
+    }
+
+    /**
+     * Fetches and decodes up to {@link #parallelism} tiles at a time on the executor, drawing
+     * them on the canvas from the calling thread as they are ready. The tasks run with the context
+     * of the calling thread, as carried over by the {@link #contextPropagators}, as the layer may
+     * depend on it.
+     */
+    private void renderTilesInParallel(List<CanvasTile> canvasTiles) throws Exception {
+        CompletionService<RenderedTile> completionService =
+                new ExecutorCompletionService<>(executor);
+        List<Future<RenderedTile>> futures = new ArrayList<>();
+        Iterator<CanvasTile> pending = canvasTiles.iterator();
+        try {
+            while (pending.hasNext() && futures.size() < parallelism) {
+                futures.add(completionService.submit(renderTask(pending.next())));
+            }
+            for (int i = 0; i < canvasTiles.size(); i++) {
+                RenderedTile rendered = takeRendered(completionService);
+                if (pending.hasNext()) {
+                    futures.add(completionService.submit(renderTask(pending.next())));
                 }
+                drawTile(rendered);
+            }
+        } finally {
+            // only does something if we failed half way
+            for (Future<RenderedTile> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
 
-                // Render the tile on the big canvas
-                log.debug(
-                        "drawImage(subtile,"
-                                + canvasx
-                                + ","
-                                + canvasy
-                                + ",null) "
-                                + Arrays.toString(gridLoc));
+    /** Returns a task rendering the tile with the context of the calling thread */
+    private Callable<RenderedTile> renderTask(CanvasTile canvasTile) {
+        return TaskContextPropagator.propagate(contextPropagators, () -> renderTile(canvasTile));
+    }
 
-                gfx.drawImage(tileImg, canvasx, canvasy, null); // imageObserver
+    private RenderedTile takeRendered(CompletionService<RenderedTile> completionService)
+            throws Exception {
+        try {
+            return completionService.take().get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
             }
+            throw e;
         }
+    }
 
-        gfx.dispose();
+    /** Fetches a tile and decodes the part of it that is drawn on the canvas. */
+    private RenderedTile renderTile(CanvasTile canvasTile) throws Exception {
+        ConveyorTile tile = canvasTile.tile;
+        layer.getTile(tile);
+        // Selection of the resource input stream
+        Resource blob = tile.getBlob();
+        // Extraction of the image associated with the defined MimeType
+        String formatName = srcFormat.getMimeType();
+        BufferedImage tileImg =
+                decoderMap.decode(
+                        formatName,
+                        blob,
+                        decoderMap.isAggressiveInputStreamSupported(formatName),
+                        null);
+
+        // Cut down the tile to the part we want
+        if (canvasTile.tileWidth != gridSubset.getTileWidth()
+                || canvasTile.tileHeight != gridSubset.getTileHeight()) {
+            log.debug(
+                    "tileImg.getSubimage("
+                            + canvasTile.tilex
+                            + ","
+                            + canvasTile.tiley
+                            + ","
+                            + canvasTile.tileWidth
+                            + ","
+                            + canvasTile.tileHeight
+                            + ")");
+            tileImg =
+                    tileImg.getSubimage(
+                            canvasTile.tilex,
+                            canvasTile.tiley,
+                            canvasTile.tileWidth,
+                            canvasTile.tileHeight);
+        }
+        return new RenderedTile(canvasTile, tileImg);
+    }
+
+    /** Draws a rendered tile on the canvas, must be called from a single thread. */
+    private void drawTile(RenderedTile rendered) {
+        CanvasTile canvasTile = rendered.canvasTile;
+        // Render the tile on the big canvas
+        log.debug(
+                "drawImage(subtile,"
+                        + canvasTile.canvasx
+                        + ","
+                        + canvasTile.canvasy
+                        + ",null) "
+                        + Arrays.toString(canvasTile.tile.getTileIndex()));
+
+        // null imageObserver
+        gfx.drawImage(rendered.image, canvasTile.canvasx, canvasTile.canvasy, null);
     }
 
     protected void scaleRaster() {
@@ -804,4 +938,20 @@ public class WMSTileFuser {
     public void setSecurityDispatcher(SecurityDispatcher securityDispatcher) {
         this.securityDispatcher = securityDispatcher;
     }
+
+    /**
+     * Sets the executor used to fetch and decode the source tiles concurrently. If not set, or if
+     * parallelism is 1, the tiles are fetched one after the other by the calling thread.
+     *
+     * @param parallelism the maximum number of tiles fetched at the same time for this request
+     */
+    public void setExecutor(ExecutorService executor, int parallelism) {
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /** Sets what carries the context of the calling thread over to the executor threads */
+    public void setContextPropagators(List<TaskContextPropagator> contextPropagators) {
+        this.contextPropagators = contextPropagators;
+    }
 }
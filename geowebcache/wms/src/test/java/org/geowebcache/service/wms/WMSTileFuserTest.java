@@ -31,6 +31,11 @@ import java.util.Hashtable;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javax.servlet.http.HttpServletRequest;
 import org.geowebcache.GeoWebCacheException;
 import org.geowebcache.config.DefaultGridsets;
@@ -52,6 +57,7 @@ import org.geowebcache.storage.StorageException;
 import org.geowebcache.storage.TileObject;
 import org.geowebcache.storage.TransientCache;
 import org.geowebcache.storage.blobstore.file.FileBlobStore;
+import org.geowebcache.util.TaskContextPropagator;
 import org.hamcrest.Matchers;
 import org.junit.Rule;
 import org.junit.Test;
@@ -315,6 +321,111 @@ public class WMSTileFuserTest {
         }
     }
 
+    @Test
+    public void testParallelRenderingMatchesSequential() throws Exception {
+        final TileLayer layer = createWMSLayer();
+        // request larger than -30.0,15.0,45.0,30, not aligned with the tiles
+        BoundingBox bounds = new BoundingBox(-35.0, 14.0, 55.0, 39);
+        int width = (int) bounds.getWidth() * 25;
+        int height = (int) bounds.getHeight() * 25;
+        File temp = File.createTempFile("gwc", "wms");
+        temp.delete();
+        temp.mkdirs();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        // stands for the request context held in thread locals
+        ThreadLocal<String> requestContext = new ThreadLocal<>();
+        requestContext.set("request");
+        try {
+            TileLayerDispatcher dispatcher =
+                    new TileLayerDispatcher(gridSetBroker) {
+
+                        @Override
+                        public TileLayer getTileLayer(String layerName)
+                                throws GeoWebCacheException {
+                            return layer;
+                        }
+                    };
+            final File imageTile = new File(getClass().getResource("/image.png").toURI());
+            Set<String> fetchContexts = ConcurrentHashMap.newKeySet();
+            StorageBroker broker =
+                    new DefaultStorageBroker(
+                            new FileBlobStore(temp.getAbsolutePath()) {
+
+                                @Override
+                                public boolean get(TileObject stObj) throws StorageException {
+                                    fetchContexts.add(String.valueOf(requestContext.get()));
+                                    stObj.setBlob(new FileResource(imageTile));
+                                    stObj.setCreated((new Date()).getTime());
+                                    stObj.setBlobSize(1000);
+                                    return true;
+                                }
+                            },
+                            new TransientCache(100, 1024, 2000));
+            GridSubset gridSubset = layer.getGridSubset(layer.getGridSubsets().iterator().next());
+            ClassPathXmlApplicationContext context =
+                    new ClassPathXmlApplicationContext("appContextTest.xml");
+
+            WMSTileFuser sequential =
+                    new WMSTileFuser(
+                            dispatcher,
+                            broker,
+                            fuserRequest(layer, gridSubset, bounds, width, height));
+            sequential.setSecurityDispatcher(secDisp);
+            sequential.setApplicationContext(context);
+            sequential.determineSourceResolution();
+            sequential.determineCanvasLayout();
+            sequential.createCanvas();
+            sequential.renderCanvas();
+
+            WMSTileFuser parallel =
+                    new WMSTileFuser(
+                            dispatcher,
+                            broker,
+                            fuserRequest(layer, gridSubset, bounds, width, height));
+            parallel.setSecurityDispatcher(secDisp);
+            parallel.setApplicationContext(context);
+            parallel.setExecutor(executor, 3);
+            parallel.setContextPropagators(
+                    Collections.singletonList(
+                            new TaskContextPropagator() {
+                                @Override
+                                public <T> Callable<T> propagate(Callable<T> task) {
+                                    String context = requestContext.get();
+                                    return () -> {
+                                        String previous = requestContext.get();
+                                        requestContext.set(context);
+                                        try {
+                                            return task.call();
+                                        } finally {
+                                            requestContext.set(previous);
+                                        }
+                                    };
+                                }
+                            }));
+            parallel.determineSourceResolution();
+            parallel.determineCanvasLayout();
+            parallel.createCanvas();
+            parallel.renderCanvas();
+
+            int canvasWidth = sequential.canvas.getWidth();
+            int canvasHeight = sequential.canvas.getHeight();
+            assertEquals(canvasWidth, parallel.canvas.getWidth());
+            assertEquals(canvasHeight, parallel.canvas.getHeight());
+            assertTrue(
+                    Arrays.equals(
+                            sequential.canvas.getRGB(
+                                    0, 0, canvasWidth, canvasHeight, null, 0, canvasWidth),
+                            parallel.canvas.getRGB(
+                                    0, 0, canvasWidth, canvasHeight, null, 0, canvasWidth)));
+            // the layer may depend on the context of the request thread
+            assertEquals(Collections.singleton("request"), fetchContexts);
+        } finally {
+            requestContext.remove();
+            executor.shutdownNow();
+            temp.delete();
+        }
+    }
+
     private WMSLayer createWMSLayer() {
         String[] urls = {"http://localhost:38080/wms"};
         List<String> formatList = new LinkedList<String>();